@@ -40,6 +40,11 @@ import org.infinispan.eviction.EvictionThreadPolicy;
 import org.infinispan.jmx.MBeanServerLookup;
 import org.infinispan.manager.DefaultCacheManager;
 import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.spring.support.embedded.eviction.ByteBudgetEviction;
+import org.infinispan.spring.support.embedded.eviction.EntrySizer;
+import org.infinispan.spring.support.embedded.eviction.TimingWheelExpirationReaper;
+import org.infinispan.spring.support.embedded.eviction.WindowTinyLfuEviction;
+import org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig.SyncPolicy;
 import org.infinispan.transaction.lookup.TransactionManagerLookup;
 import org.infinispan.util.concurrent.IsolationLevel;
 import org.springframework.core.io.Resource;
@@ -62,25 +67,82 @@ public class AbstractInfinispanEmbeddedCacheManagerBackedCacheManagerFactory {
 
 	protected final ConfigurationOverrides configurationOverrides = new ConfigurationOverrides();
 
+	private Map<String, Long> evictionMaxBytesPerCache;
+
+	private EntrySizer entrySizer;
+
+	private StartupTimingReport startupTimingReport;
+
 	// ------------------------------------------------------------------------
 	// Create fully configured EmbeddedCacheManager instance
 	// ------------------------------------------------------------------------
 
 	protected EmbeddedCacheManager createBackingEmbeddedCacheManager() throws ConfigurationException, IOException {
+		long phaseStarted = System.nanoTime();
 		final ConfigurationContainer templateConfiguration = createTemplateConfiguration();
+		final StartupTimingReport timing = new StartupTimingReport(
+				templateConfiguration.globalConfiguration.getCacheManagerName());
+		phaseStarted = timing.record("parse configuration", phaseStarted);
 
 		this.globalConfigurationOverrides.applyOverridesTo(templateConfiguration.globalConfiguration);
 		this.configurationOverrides.applyOverridesTo(templateConfiguration.defaultConfiguration);
+		phaseStarted = timing.record("apply overrides", phaseStarted);
 
 		final EmbeddedCacheManager nativeEmbeddedCacheManager = new DefaultCacheManager(
-				templateConfiguration.globalConfiguration, templateConfiguration.defaultConfiguration);
+				templateConfiguration.globalConfiguration, templateConfiguration.defaultConfiguration, false);
+		phaseStarted = timing.record("construct DefaultCacheManager", phaseStarted);
 		for (final Map.Entry<String, Configuration> namedCacheConfig : templateConfiguration.namedCaches.entrySet()) {
 			nativeEmbeddedCacheManager.defineConfiguration(namedCacheConfig.getKey(), namedCacheConfig.getValue());
+			phaseStarted = timing.record("defineConfiguration [" + namedCacheConfig.getKey() + "]", phaseStarted);
+		}
+		nativeEmbeddedCacheManager.start();
+		phaseStarted = timing.record("start DefaultCacheManager", phaseStarted);
+
+		if (this.configurationOverrides.isWindowTinyLfuEvictionSelected()) {
+			WindowTinyLfuEviction.installInCachesStartedBy(nativeEmbeddedCacheManager,
+					templateConfiguration.namedCaches.keySet());
+		}
+		if (this.configurationOverrides.isTimingWheelExpirationSelected()) {
+			TimingWheelExpirationReaper.installInCachesStartedBy(nativeEmbeddedCacheManager);
+		}
+		if ((this.evictionMaxBytesPerCache != null) && !this.evictionMaxBytesPerCache.isEmpty()) {
+			ByteBudgetEviction.installInCachesStartedBy(nativeEmbeddedCacheManager, this.evictionMaxBytesPerCache,
+					this.entrySizer);
+		}
+		phaseStarted = timing.record("install listeners", phaseStarted);
+
+		// DefaultCacheManager.start() leaves global components and transport alone. They are started along with
+		// the first cache, so start the default cache here rather than have its first caller join the cluster.
+		nativeEmbeddedCacheManager.getCache();
+		timing.record("start default cache and join cluster", phaseStarted);
+
+		this.logger.info(timing);
+		if (templateConfiguration.globalConfiguration.isExposeGlobalJmxStatistics()) {
+			timing.registerInJmxDomain(templateConfiguration.globalConfiguration.getJmxDomain());
 		}
+		this.startupTimingReport = timing;
 
 		return nativeEmbeddedCacheManager;
 	}
 
+	/**
+	 * @return The timing of the phases the last {@link #createBackingEmbeddedCacheManager() creation} of an
+	 *         <code>EmbeddedCacheManager</code> went through, or <code>null</code> if none has been created yet
+	 */
+	public StartupTimingReport getStartupTimingReport() {
+		return this.startupTimingReport;
+	}
+
+	/**
+	 * Unregister the {@link #getStartupTimingReport() startup timing report} from JMX. To be called when the
+	 * <code>EmbeddedCacheManager</code> created is stopped.
+	 */
+	protected void unregisterStartupTimingReport() {
+		if (this.startupTimingReport != null) {
+			this.startupTimingReport.unregister();
+		}
+	}
+
 	// ------------------------------------------------------------------------
 	// Create ConfigurationContainer
 	// ------------------------------------------------------------------------
@@ -793,6 +855,125 @@ public class AbstractInfinispanEmbeddedCacheManagerBackedCacheManagerFactory {
 		this.configurationOverrides.setCustomInterceptors(customInterceptors);
 	}
 
+	/**
+	 * @param useAdaptiveReplQueue
+	 * @see org.infinispan.spring.ConfigurationOverrides#setUseAdaptiveReplQueue(java.lang.Boolean)
+	 */
+	public void setUseAdaptiveReplQueue(final Boolean useAdaptiveReplQueue) {
+		this.configurationOverrides.setUseAdaptiveReplQueue(useAdaptiveReplQueue);
+	}
+
+	/**
+	 * @param autoLockStriping
+	 * @see org.infinispan.spring.ConfigurationOverrides#setAutoLockStriping(java.lang.Boolean)
+	 */
+	public void setAutoLockStriping(final Boolean autoLockStriping) {
+		this.configurationOverrides.setAutoLockStriping(autoLockStriping);
+	}
+
+	/**
+	 * @param expectedEntryCount
+	 * @see org.infinispan.spring.ConfigurationOverrides#setExpectedEntryCount(java.lang.Integer)
+	 */
+	public void setExpectedEntryCount(final Integer expectedEntryCount) {
+		this.configurationOverrides.setExpectedEntryCount(expectedEntryCount);
+	}
+
+	/**
+	 * @param useTimingWheelExpiration
+	 * @see org.infinispan.spring.ConfigurationOverrides#setUseTimingWheelExpiration(java.lang.Boolean)
+	 */
+	public void setUseTimingWheelExpiration(final Boolean useTimingWheelExpiration) {
+		this.configurationOverrides.setUseTimingWheelExpiration(useTimingWheelExpiration);
+	}
+
+	/**
+	 * @param segmentFileStoreLocation
+	 * @see org.infinispan.spring.ConfigurationOverrides#setSegmentFileStoreLocation(java.lang.String)
+	 */
+	public void setSegmentFileStoreLocation(final String segmentFileStoreLocation) {
+		this.configurationOverrides.setSegmentFileStoreLocation(segmentFileStoreLocation);
+	}
+
+	/**
+	 * @param segmentFileStoreSegmentSize
+	 * @see org.infinispan.spring.ConfigurationOverrides#setSegmentFileStoreSegmentSize(java.lang.Integer)
+	 */
+	public void setSegmentFileStoreSegmentSize(final Integer segmentFileStoreSegmentSize) {
+		this.configurationOverrides.setSegmentFileStoreSegmentSize(segmentFileStoreSegmentSize);
+	}
+
+	/**
+	 * @param segmentFileStoreSyncPolicy
+	 * @see org.infinispan.spring.ConfigurationOverrides#setSegmentFileStoreSyncPolicy(org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig.SyncPolicy)
+	 */
+	public void setSegmentFileStoreSyncPolicy(final SyncPolicy segmentFileStoreSyncPolicy) {
+		this.configurationOverrides.setSegmentFileStoreSyncPolicy(segmentFileStoreSyncPolicy);
+	}
+
+	/**
+	 * @param writeBehindEnabled
+	 * @see org.infinispan.spring.ConfigurationOverrides#setWriteBehindEnabled(java.lang.Boolean)
+	 */
+	public void setWriteBehindEnabled(final Boolean writeBehindEnabled) {
+		this.configurationOverrides.setWriteBehindEnabled(writeBehindEnabled);
+	}
+
+	/**
+	 * @param writeBehindBatchSize
+	 * @see org.infinispan.spring.ConfigurationOverrides#setWriteBehindBatchSize(java.lang.Integer)
+	 */
+	public void setWriteBehindBatchSize(final Integer writeBehindBatchSize) {
+		this.configurationOverrides.setWriteBehindBatchSize(writeBehindBatchSize);
+	}
+
+	/**
+	 * @param writeBehindFlushInterval
+	 * @see org.infinispan.spring.ConfigurationOverrides#setWriteBehindFlushInterval(java.lang.Long)
+	 */
+	public void setWriteBehindFlushInterval(final Long writeBehindFlushInterval) {
+		this.configurationOverrides.setWriteBehindFlushInterval(writeBehindFlushInterval);
+	}
+
+	/**
+	 * @param writeBehindMaxQueueDepth
+	 * @see org.infinispan.spring.ConfigurationOverrides#setWriteBehindMaxQueueDepth(java.lang.Integer)
+	 */
+	public void setWriteBehindMaxQueueDepth(final Integer writeBehindMaxQueueDepth) {
+		this.configurationOverrides.setWriteBehindMaxQueueDepth(writeBehindMaxQueueDepth);
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for byte budget eviction
+	// ------------------------------------------------------------------------
+
+	/**
+	 * <p>
+	 * Sets, per cache name, the maximum number of bytes a cache may retain, as estimated by the
+	 * {@link #setEntrySizer(EntrySizer) <code>EntrySizer</code>}. Least recently used entries are evicted to
+	 * keep each listed cache within its budget. Caches not listed are not affected.
+	 * </p>
+	 * 
+	 * @param evictionMaxBytesPerCache
+	 * @see org.infinispan.spring.support.embedded.eviction.ByteBudgetEviction
+	 */
+	public void setEvictionMaxBytesPerCache(final Map<String, Long> evictionMaxBytesPerCache) {
+		this.evictionMaxBytesPerCache = evictionMaxBytesPerCache;
+	}
+
+	/**
+	 * <p>
+	 * Sets the {@link org.infinispan.spring.support.embedded.eviction.EntrySizer <code>EntrySizer</code>} used
+	 * to estimate entry sizes in caches that have been given a
+	 * {@link #setEvictionMaxBytesPerCache(Map) byte budget}. Defaults to using an entry's marshalled length.
+	 * </p>
+	 * 
+	 * @param entrySizer
+	 */
+	public void setEntrySizer(final EntrySizer entrySizer) {
+		this.entrySizer = entrySizer;
+	}
+
 	// ------------------------------------------------------------------------
 	// Helper classes
 	// ------------------------------------------------------------------------
@@ -19,6 +19,8 @@
 
 package org.infinispan.spring;
 
+import static org.infinispan.client.hotrod.impl.ConfigurationProperties.SERVER_LIST;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
@@ -27,6 +29,7 @@ import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.infinispan.client.hotrod.RemoteCacheManager;
 import org.springframework.core.io.Resource;
 
 /**
@@ -40,6 +43,12 @@ import org.springframework.core.io.Resource;
  */
 public abstract class AbstractInfinispanRemoteCacheManagerBackedCacheManagerFactory {
 
+	/**
+	 * The JMX domain {@link StartupTimingReport startup timing reports} of <code>RemoteCacheManagers</code> are
+	 * registered in.
+	 */
+	public static final String STARTUP_TIMING_JMX_DOMAIN = "org.infinispan.spring";
+
 	protected final Log logger = LogFactory.getLog(getClass());
 
 	protected boolean startAutomatically = true;
@@ -50,6 +59,8 @@ public abstract class AbstractInfinispanRemoteCacheManagerBackedCacheManagerFact
 
 	private final ConfigurationPropertiesOverrides configurationPropertiesOverrides = new ConfigurationPropertiesOverrides();
 
+	private StartupTimingReport startupTimingReport;
+
 	protected void assertCorrectlyConfigured() throws IllegalStateException {
 		if ((this.configurationProperties != null) && (this.configurationPropertiesFileLocation != null)) {
 			throw new IllegalStateException(
@@ -83,6 +94,60 @@ public abstract class AbstractInfinispanRemoteCacheManagerBackedCacheManagerFact
 		return answer;
 	}
 
+	/**
+	 * Create a <code>RemoteCacheManager</code> from <code>configurationPropertiesToUse</code>, starting it if
+	 * <code>startAutomatically</code> is set, and record how long each phase took in a
+	 * {@link StartupTimingReport <code>StartupTimingReport</code>}.
+	 * 
+	 * @param configurationPropertiesToUse
+	 *            As returned by {@link #configurationProperties()}
+	 * @param configurationStartedNanos
+	 *            The value of {@link System#nanoTime()} before <code>configurationPropertiesToUse</code> were loaded
+	 * @return The <code>RemoteCacheManager</code> created
+	 */
+	protected RemoteCacheManager createBackingRemoteCacheManager(final Properties configurationPropertiesToUse,
+			final long configurationStartedNanos) {
+		final String serverList = configurationPropertiesToUse != null ? configurationPropertiesToUse
+				.getProperty(SERVER_LIST) : null;
+		final StartupTimingReport timing = new StartupTimingReport("RemoteCacheManager"
+				+ (serverList != null ? " [" + serverList + "]" : ""));
+		long phaseStarted = timing.record("load configuration properties", configurationStartedNanos);
+
+		final RemoteCacheManager nativeRemoteCacheManager = new RemoteCacheManager(configurationPropertiesToUse,
+				false);
+		phaseStarted = timing.record("construct RemoteCacheManager", phaseStarted);
+		if (this.startAutomatically) {
+			// Opens the connection pool and, if pingOnStartup is set, pings the servers
+			nativeRemoteCacheManager.start();
+			timing.record("start and ping", phaseStarted);
+		}
+
+		this.logger.info(timing);
+		timing.registerInJmxDomain(STARTUP_TIMING_JMX_DOMAIN);
+		this.startupTimingReport = timing;
+
+		return nativeRemoteCacheManager;
+	}
+
+	/**
+	 * @return The timing of the phases the last {@link #createBackingRemoteCacheManager(Properties, long)
+	 *         creation} of a <code>RemoteCacheManager</code> went through, or <code>null</code> if none has been
+	 *         created yet
+	 */
+	public StartupTimingReport getStartupTimingReport() {
+		return this.startupTimingReport;
+	}
+
+	/**
+	 * Unregister the {@link #getStartupTimingReport() startup timing report} from JMX. To be called when the
+	 * <code>RemoteCacheManager</code> created is stopped.
+	 */
+	protected void unregisterStartupTimingReport() {
+		if (this.startupTimingReport != null) {
+			this.startupTimingReport.unregister();
+		}
+	}
+
 	private Properties loadPropertiesFromFile(final Resource propertiesFileLocation) throws IOException {
 		InputStream propsStream = null;
 		try {
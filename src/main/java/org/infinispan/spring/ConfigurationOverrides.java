@@ -19,6 +19,8 @@
 
 package org.infinispan.spring;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -28,6 +30,15 @@ import org.infinispan.config.Configuration;
 import org.infinispan.config.CustomInterceptorConfig;
 import org.infinispan.eviction.EvictionStrategy;
 import org.infinispan.eviction.EvictionThreadPolicy;
+import org.infinispan.loaders.CacheLoaderConfig;
+import org.infinispan.loaders.CacheStoreConfig;
+import org.infinispan.spring.support.embedded.AdaptiveReplicationQueue;
+import org.infinispan.spring.support.embedded.LockStripingAdvisor;
+import org.infinispan.spring.support.embedded.eviction.TimingWheelExpirationReaper;
+import org.infinispan.spring.support.embedded.eviction.WindowTinyLfuEviction;
+import org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig;
+import org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig.SyncPolicy;
+import org.infinispan.spring.support.embedded.store.WriteBehindCacheStoreConfig;
 import org.infinispan.transaction.lookup.TransactionManagerLookup;
 import org.infinispan.util.concurrent.IsolationLevel;
 
@@ -150,6 +161,30 @@ public final class ConfigurationOverrides {
 
 	private List<CustomInterceptorConfig> customInterceptors;
 
+	private Boolean writeBehindEnabled;
+
+	private Integer writeBehindBatchSize;
+
+	private Long writeBehindFlushInterval;
+
+	private Integer writeBehindMaxQueueDepth;
+
+	private String segmentFileStoreLocation;
+
+	private Integer segmentFileStoreSegmentSize;
+
+	private SyncPolicy segmentFileStoreSyncPolicy;
+
+	private Boolean useTimingWheelExpiration;
+
+	private Boolean autoLockStriping;
+
+	private Integer expectedEntryCount;
+
+	private LockStripingAdvisor lockStripingAdvisor;
+
+	private Boolean useAdaptiveReplQueue;
+
 	/**
 	 * @param eagerDeadlockSpinDuration the eagerDeadlockSpinDuration to set
 	 */
@@ -284,12 +319,28 @@ public final class ConfigurationOverrides {
 	}
 
 	/**
+	 * <p>
+	 * Besides the names of INFINISPAN's built-in {@link org.infinispan.eviction.EvictionStrategy eviction strategies}
+	 * this accepts {@link org.infinispan.spring.support.embedded.eviction.WindowTinyLfuEviction#STRATEGY_NAME
+	 * <code>W_TINYLFU</code>}, selecting Window-TinyLFU eviction with <code>evictionMaxEntries</code> as its
+	 * capacity.
+	 * </p>
+	 * 
 	 * @param evictionStrategyClass the evictionStrategyClass to set
+	 * @see org.infinispan.spring.support.embedded.eviction.WindowTinyLfuEviction
 	 */
 	public void setEvictionStrategyClass(final String evictionStrategyClass) {
 		this.evictionStrategyClass = evictionStrategyClass;
 	}
 
+	/**
+	 * @return <code>true</code> if these overrides select Window-TinyLFU eviction
+	 * @see #setEvictionStrategyClass(String)
+	 */
+	public boolean isWindowTinyLfuEvictionSelected() {
+		return WindowTinyLfuEviction.isSelectedBy(this.evictionStrategyClass);
+	}
+
 	/**
 	 * @param evictionThreadPolicy the evictionThreadPolicy to set
 	 */
@@ -521,6 +572,148 @@ public final class ConfigurationOverrides {
 		this.customInterceptors = customInterceptors;
 	}
 
+	/**
+	 * <p>
+	 * Turn the {@link org.infinispan.spring.support.embedded.AdaptiveReplicationQueue adaptive replication queue}
+	 * on or off. Turning it on implies <code>useReplQueue</code>. While it is on, <code>replQueueInterval</code> is
+	 * interpreted as the latency target and <code>replQueueMaxElements</code> as the upper bound on the size of a
+	 * single batch.
+	 * </p>
+	 * 
+	 * @param useAdaptiveReplQueue the useAdaptiveReplQueue to set
+	 */
+	public void setUseAdaptiveReplQueue(final Boolean useAdaptiveReplQueue) {
+		this.useAdaptiveReplQueue = useAdaptiveReplQueue;
+	}
+
+	/**
+	 * <p>
+	 * Turn automatic lock striping on or off. While it is on, <code>concurrencyLevel</code> and
+	 * <code>useLockStriping</code> - unless set explicitly - are derived from the number of available processors
+	 * and the {@link #setExpectedEntryCount(Integer) expected number of entries}. If a
+	 * {@link #setLockStripingAdvisor(LockStripingAdvisor) <code>LockStripingAdvisor</code>} has been set, a
+	 * concurrency level it recommended during a previous run takes precedence, and its lock contention measuring
+	 * interceptors are added to <code>customInterceptors</code>.
+	 * </p>
+	 * 
+	 * @param autoLockStriping the autoLockStriping to set
+	 * @see org.infinispan.spring.support.embedded.LockStripingAdvisor
+	 */
+	public void setAutoLockStriping(final Boolean autoLockStriping) {
+		this.autoLockStriping = autoLockStriping;
+	}
+
+	/**
+	 * @param expectedEntryCount the expectedEntryCount to set
+	 * @see #setAutoLockStriping(Boolean)
+	 */
+	public void setExpectedEntryCount(final Integer expectedEntryCount) {
+		this.expectedEntryCount = expectedEntryCount;
+	}
+
+	/**
+	 * <p>
+	 * Note that a <code>LockStripingAdvisor</code> monitors exactly one cache. Do not share it between
+	 * configurations.
+	 * </p>
+	 * 
+	 * @param lockStripingAdvisor the lockStripingAdvisor to set
+	 * @see #setAutoLockStriping(Boolean)
+	 */
+	public void setLockStripingAdvisor(final LockStripingAdvisor lockStripingAdvisor) {
+		this.lockStripingAdvisor = lockStripingAdvisor;
+	}
+
+	/**
+	 * <p>
+	 * Turn timing wheel expiration on or off. While it is on, expired entries are purged as they expire by a
+	 * {@link org.infinispan.spring.support.embedded.eviction.TimingWheelExpirationReaper
+	 * <code>TimingWheelExpirationReaper</code>}, and <code>evictionWakeUpInterval</code> - unless set explicitly -
+	 * is stretched to
+	 * {@link org.infinispan.spring.support.embedded.eviction.TimingWheelExpirationReaper#SAFETY_SWEEP_INTERVAL}.
+	 * </p>
+	 * 
+	 * @param useTimingWheelExpiration the useTimingWheelExpiration to set
+	 */
+	public void setUseTimingWheelExpiration(final Boolean useTimingWheelExpiration) {
+		this.useTimingWheelExpiration = useTimingWheelExpiration;
+	}
+
+	/**
+	 * @return <code>true</code> if these overrides select timing wheel expiration
+	 * @see #setUseTimingWheelExpiration(Boolean)
+	 */
+	public boolean isTimingWheelExpirationSelected() {
+		return Boolean.TRUE.equals(this.useTimingWheelExpiration);
+	}
+
+	/**
+	 * <p>
+	 * Add a {@link org.infinispan.spring.support.embedded.store.SegmentFileCacheStore
+	 * <code>SegmentFileCacheStore</code>} keeping entries in memory-mapped, append-only segment files below
+	 * <code>segmentFileStoreLocation</code>. Each cache uses a subdirectory named after it.
+	 * </p>
+	 * 
+	 * @param segmentFileStoreLocation the segmentFileStoreLocation to set
+	 */
+	public void setSegmentFileStoreLocation(final String segmentFileStoreLocation) {
+		this.segmentFileStoreLocation = segmentFileStoreLocation;
+	}
+
+	/**
+	 * @param segmentFileStoreSegmentSize the segmentFileStoreSegmentSize to set
+	 * @see #setSegmentFileStoreLocation(String)
+	 */
+	public void setSegmentFileStoreSegmentSize(final Integer segmentFileStoreSegmentSize) {
+		this.segmentFileStoreSegmentSize = segmentFileStoreSegmentSize;
+	}
+
+	/**
+	 * @param segmentFileStoreSyncPolicy the segmentFileStoreSyncPolicy to set
+	 * @see #setSegmentFileStoreLocation(String)
+	 */
+	public void setSegmentFileStoreSyncPolicy(final SyncPolicy segmentFileStoreSyncPolicy) {
+		this.segmentFileStoreSyncPolicy = segmentFileStoreSyncPolicy;
+	}
+
+	/**
+	 * <p>
+	 * Turn write-behind on or off. While it is on, every cache store configured - including one added through
+	 * {@link #setSegmentFileStoreLocation(String)} - is decorated by a
+	 * {@link org.infinispan.spring.support.embedded.store.WriteBehindCacheStore <code>WriteBehindCacheStore</code>}
+	 * that coalesces repeated writes to the same key and writes them in batches.
+	 * </p>
+	 * 
+	 * @param writeBehindEnabled the writeBehindEnabled to set
+	 */
+	public void setWriteBehindEnabled(final Boolean writeBehindEnabled) {
+		this.writeBehindEnabled = writeBehindEnabled;
+	}
+
+	/**
+	 * @param writeBehindBatchSize the writeBehindBatchSize to set
+	 * @see #setWriteBehindEnabled(Boolean)
+	 */
+	public void setWriteBehindBatchSize(final Integer writeBehindBatchSize) {
+		this.writeBehindBatchSize = writeBehindBatchSize;
+	}
+
+	/**
+	 * @param writeBehindFlushInterval the writeBehindFlushInterval to set
+	 * @see #setWriteBehindEnabled(Boolean)
+	 */
+	public void setWriteBehindFlushInterval(final Long writeBehindFlushInterval) {
+		this.writeBehindFlushInterval = writeBehindFlushInterval;
+	}
+
+	/**
+	 * @param writeBehindMaxQueueDepth the writeBehindMaxQueueDepth to set
+	 * @see #setWriteBehindEnabled(Boolean)
+	 */
+	public void setWriteBehindMaxQueueDepth(final Integer writeBehindMaxQueueDepth) {
+		this.writeBehindMaxQueueDepth = writeBehindMaxQueueDepth;
+	}
+
 	public void applyOverridesTo(final Configuration configurationToOverride) {
 		this.logger.debug("Applying configuration overrides to Configuration [" + configurationToOverride + "] ...");
 
@@ -612,7 +805,11 @@ public final class ConfigurationOverrides {
 		if (this.evictionStrategyClass != null) {
 			this.logger.debug("Overriding property [evictionStrategyClass] with value [" + this.evictionStrategyClass
 					+ "]");
-			configurationToOverride.setEvictionStrategy(this.evictionStrategyClass);
+			if (WindowTinyLfuEviction.isSelectedBy(this.evictionStrategyClass)) {
+				WindowTinyLfuEviction.prepare(configurationToOverride);
+			} else {
+				configurationToOverride.setEvictionStrategy(this.evictionStrategyClass);
+			}
 		}
 		if (this.evictionThreadPolicy != null) {
 			this.logger.debug("Overriding property [evictionThreadPolicy] with value [" + this.evictionThreadPolicy
@@ -764,8 +961,124 @@ public final class ConfigurationOverrides {
 			this.logger.debug("Overriding property [customInterceptors] with value [" + this.customInterceptors + "]");
 			configurationToOverride.setCustomInterceptors(this.customInterceptors);
 		}
+		if (Boolean.TRUE.equals(this.useAdaptiveReplQueue)) {
+			this.logger.debug("Overriding properties [useReplQueue, replQueueClass] to use ["
+					+ AdaptiveReplicationQueue.class.getName() + "]");
+			configurationToOverride.setUseReplQueue(true);
+			configurationToOverride.setReplQueueClass(AdaptiveReplicationQueue.class.getName());
+		}
+		if (Boolean.TRUE.equals(this.autoLockStriping)) {
+			applyAutoLockStripingTo(configurationToOverride);
+		}
+		if (isTimingWheelExpirationSelected() && (this.evictionWakeUpInterval == null)) {
+			this.logger.debug("Stretching property [evictionWakeUpInterval] to ["
+					+ TimingWheelExpirationReaper.SAFETY_SWEEP_INTERVAL + "] for timing wheel expiration");
+			configurationToOverride.setEvictionWakeUpInterval(TimingWheelExpirationReaper.SAFETY_SWEEP_INTERVAL);
+		}
+		if (this.segmentFileStoreLocation != null) {
+			applySegmentFileStoreTo(configurationToOverride);
+		}
+		if (Boolean.TRUE.equals(this.writeBehindEnabled)) {
+			applyWriteBehindTo(configurationToOverride);
+		}
 
 		this.logger.debug("Finished applying configuration overrides to Configuration [" + configurationToOverride
 				+ "]");
 	}
+
+	private void applySegmentFileStoreTo(final Configuration configurationToOverride) {
+		CacheLoaderManagerConfig loaderManagerConfig = configurationToOverride.getCacheLoaderManagerConfig();
+		if (loaderManagerConfig == null) {
+			loaderManagerConfig = new CacheLoaderManagerConfig();
+			configurationToOverride.setCacheLoaderManagerConfig(loaderManagerConfig);
+		}
+		for (final CacheLoaderConfig loaderConfig : loaderManagerConfig.getCacheLoaderConfigs()) {
+			if (loaderConfig instanceof SegmentFileCacheStoreConfig) {
+				return;
+			}
+		}
+		final SegmentFileCacheStoreConfig storeConfig = new SegmentFileCacheStoreConfig();
+		storeConfig.setLocation(this.segmentFileStoreLocation);
+		if (this.segmentFileStoreSegmentSize != null) {
+			storeConfig.setSegmentSize(this.segmentFileStoreSegmentSize.intValue());
+		}
+		if (this.segmentFileStoreSyncPolicy != null) {
+			storeConfig.setSyncPolicy(this.segmentFileStoreSyncPolicy);
+		}
+		this.logger.debug("Adding SegmentFileCacheStore with location [" + this.segmentFileStoreLocation + "]");
+		loaderManagerConfig.addCacheLoaderConfig(storeConfig);
+	}
+
+	private void applyWriteBehindTo(final Configuration configurationToOverride) {
+		final CacheLoaderManagerConfig loaderManagerConfig = configurationToOverride.getCacheLoaderManagerConfig();
+		if (loaderManagerConfig == null) {
+			return;
+		}
+		final List<CacheLoaderConfig> decoratedLoaderConfigs = new ArrayList<CacheLoaderConfig>();
+		for (final CacheLoaderConfig loaderConfig : loaderManagerConfig.getCacheLoaderConfigs()) {
+			if ((loaderConfig instanceof CacheStoreConfig) && !(loaderConfig instanceof WriteBehindCacheStoreConfig)) {
+				final WriteBehindCacheStoreConfig writeBehindConfig = new WriteBehindCacheStoreConfig(
+						(CacheStoreConfig) loaderConfig);
+				if (this.writeBehindBatchSize != null) {
+					writeBehindConfig.setBatchSize(this.writeBehindBatchSize.intValue());
+				}
+				if (this.writeBehindFlushInterval != null) {
+					writeBehindConfig.setFlushInterval(this.writeBehindFlushInterval.longValue());
+				}
+				if (this.writeBehindMaxQueueDepth != null) {
+					writeBehindConfig.setMaxQueueDepth(this.writeBehindMaxQueueDepth.intValue());
+				}
+				this.logger.debug("Decorating cache store [" + loaderConfig.getCacheLoaderClassName()
+						+ "] with write-behind");
+				decoratedLoaderConfigs.add(writeBehindConfig);
+			} else {
+				decoratedLoaderConfigs.add(loaderConfig);
+			}
+		}
+		loaderManagerConfig.setCacheLoaders(decoratedLoaderConfigs);
+	}
+
+	private void applyAutoLockStripingTo(final Configuration configurationToOverride) {
+		final int expectedEntries = this.expectedEntryCount != null ? this.expectedEntryCount.intValue() : 0;
+		if (this.concurrencyLevel == null) {
+			Integer level = recommendedConcurrencyLevel();
+			if (level == null) {
+				level = Integer.valueOf(LockStripingAdvisor.recommendInitialConcurrencyLevel(Runtime.getRuntime()
+						.availableProcessors(), expectedEntries));
+			}
+			this.logger.debug("Automatically setting property [concurrencyLevel] to value [" + level + "]");
+			configurationToOverride.setConcurrencyLevel(level);
+		}
+		if (this.useLockStriping == null) {
+			final boolean striping = LockStripingAdvisor.recommendInitialUseLockStriping(expectedEntries);
+			this.logger.debug("Automatically setting property [useLockStriping] to value [" + striping + "]");
+			configurationToOverride.setUseLockStriping(striping);
+		}
+		if (this.lockStripingAdvisor != null) {
+			this.lockStripingAdvisor.setConcurrencyLevelInUse(configurationToOverride.getConcurrencyLevel());
+			final List<CustomInterceptorConfig> interceptors = new ArrayList<CustomInterceptorConfig>(
+					configurationToOverride.getCustomInterceptors());
+			for (final CustomInterceptorConfig interceptor : this.lockStripingAdvisor.getCustomInterceptors()) {
+				if (!interceptors.contains(interceptor)) {
+					interceptors.add(interceptor);
+				}
+			}
+			this.logger.debug("Adding lock contention measuring interceptors to property [customInterceptors]");
+			configurationToOverride.setCustomInterceptors(interceptors);
+		}
+	}
+
+	private Integer recommendedConcurrencyLevel() {
+		if (this.lockStripingAdvisor == null) {
+			return null;
+		}
+		try {
+			return LockStripingAdvisor.loadRecommendedConcurrencyLevel(this.lockStripingAdvisor
+					.getRecommendationFile());
+		} catch (final IOException e) {
+			this.logger.warn("Failed to load recommended concurrency level from ["
+					+ this.lockStripingAdvisor.getRecommendationFile() + "] - will ignore it: " + e.getMessage());
+			return null;
+		}
+	}
 }
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>
+ * Records how long each phase of starting up an INFINISPAN cache manager took, e.g. parsing the configuration
+ * file, constructing the cache manager or joining the cluster, so that it becomes obvious where startup time
+ * goes.
+ * </p>
+ * <p>
+ * The cache manager factories record a <code>StartupTimingReport</code> whenever they create a cache manager,
+ * log it at level <code>INFO</code> and publish it over JMX as
+ * <code>&lt;jmxDomain&gt;:type=StartupTiming,name="&lt;name&gt;"</code>.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class StartupTimingReport implements StartupTimingReportMBean {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final String name;
+
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+
+	private MBeanServer mBeanServer;
+
+	private ObjectName objectName;
+
+	/**
+	 * @param name
+	 *            The name of the cache manager whose startup this report records
+	 */
+	public StartupTimingReport(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Record that <code>phase</code>, started at <code>startedNanos</code>, has just finished. Recording a phase
+	 * more than once adds up its durations.
+	 *
+	 * @param phase
+	 * @param startedNanos
+	 *            The value of {@link System#nanoTime()} when <code>phase</code> started
+	 * @return The current value of {@link System#nanoTime()}, i.e. the start of the next phase
+	 */
+	public synchronized long record(final String phase, final long startedNanos) {
+		final long now = System.nanoTime();
+		final Long previous = this.phaseNanos.get(phase);
+		this.phaseNanos.put(phase, Long.valueOf((previous != null ? previous.longValue() : 0L) + now - startedNanos));
+		return now;
+	}
+
+	/**
+	 * @param phase
+	 * @return The time in milliseconds <code>phase</code> took, or <code>-1</code> if it has not been recorded
+	 */
+	public synchronized long getPhaseMillis(final String phase) {
+		final Long nanos = this.phaseNanos.get(phase);
+		return nanos != null ? TimeUnit.NANOSECONDS.toMillis(nanos.longValue()) : -1L;
+	}
+
+	/**
+	 * @see org.infinispan.spring.StartupTimingReportMBean#getPhases()
+	 */
+	@Override
+	public synchronized String[] getPhases() {
+		final String[] phases = new String[this.phaseNanos.size()];
+		int i = 0;
+		for (final Map.Entry<String, Long> phase : this.phaseNanos.entrySet()) {
+			phases[i++] = phase.getKey() + ": " + TimeUnit.NANOSECONDS.toMillis(phase.getValue().longValue()) + " ms";
+		}
+		return phases;
+	}
+
+	/**
+	 * @see org.infinispan.spring.StartupTimingReportMBean#getTotalMillis()
+	 */
+	@Override
+	public synchronized long getTotalMillis() {
+		long total = 0L;
+		for (final Long nanos : this.phaseNanos.values()) {
+			total += nanos.longValue();
+		}
+		return TimeUnit.NANOSECONDS.toMillis(total);
+	}
+
+	// ------------------------------------------------------------------------
+	// JMX
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Register this report with the platform <code>MBeanServer</code> under <code>jmxDomain</code>. If a report
+	 * of the same name has already been registered, this report is not registered.
+	 *
+	 * @param jmxDomain
+	 */
+	public void registerInJmxDomain(final String jmxDomain) {
+		try {
+			final ObjectName candidate = new ObjectName(jmxDomain + ":type=StartupTiming,name="
+					+ ObjectName.quote(this.name));
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, candidate);
+			this.mBeanServer = server;
+			this.objectName = candidate;
+		} catch (final InstanceAlreadyExistsException e) {
+			this.logger.debug("Startup timing report [" + this.name + "] has already been registered in JMX domain ["
+					+ jmxDomain + "]");
+		} catch (final JMException e) {
+			this.logger.warn("Failed to register startup timing report [" + this.name + "] in JMX domain ["
+					+ jmxDomain + "]: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Unregister this report from JMX, if it has been registered.
+	 */
+	public void unregister() {
+		if (this.objectName == null) {
+			return;
+		}
+		try {
+			this.mBeanServer.unregisterMBean(this.objectName);
+		} catch (final JMException e) {
+			this.logger.warn("Failed to unregister startup timing report [" + this.name + "]: " + e.getMessage());
+		}
+		this.objectName = null;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder report = new StringBuilder("Startup of [").append(this.name).append("] took [")
+				.append(getTotalMillis()).append(" ms]");
+		final String[] phases = getPhases();
+		if (phases.length > 0) {
+			report.append(": ");
+			for (int i = 0; i < phases.length; i++) {
+				if (i > 0) {
+					report.append(", ");
+				}
+				report.append(phases[i]);
+			}
+		}
+		return report.toString();
+	}
+}
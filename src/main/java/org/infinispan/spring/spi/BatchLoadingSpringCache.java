@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link org.infinispan.spring.spi.SpringCache <code>SpringCache</code>} that loads missing values through a
+ * {@link org.infinispan.spring.spi.BulkLoader <code>BulkLoader</code>}, batching the misses of concurrent callers
+ * into a single bulk load.
+ * </p>
+ * <p>
+ * The first caller to miss opens a batch and waits for at most {@link #setBatchWindow(long)
+ * <code>batchWindow</code>} milliseconds for other callers to add their missing keys to it. The batch is
+ * dispatched as soon as the window has elapsed or {@link #setMaxBatchSize(int) <code>maxBatchSize</code>}
+ * distinct keys have been collected, whichever comes first. The opening caller then loads the batch on behalf of
+ * all callers waiting on it, writes the values found into the cache in bulk and hands each caller its value.
+ * Keys the backend holds no value for are stored as <code>null</code> if
+ * {@link #setNegativeCacheLifespan(long) negative caching} is enabled, and are looked up again on the next miss
+ * otherwise.
+ * </p>
+ * <p>
+ * Should the bulk load fail, each caller waiting on the batch gets an <code>IllegalStateException</code> having
+ * the loader's exception as its cause. Note that values loaded are written with <code>putAll</code>, so a value
+ * written by another caller while a batch is being loaded may be overwritten with the value loaded.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class BatchLoadingSpringCache<K, V> extends SpringCache<K, V> {
+
+	public static final long DEFAULT_BATCH_WINDOW = 5L;
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final BulkLoader<K, V> bulkLoader;
+
+	private final Object batchLock = new Object();
+
+	private Batch<K, V> openBatch;
+
+	private volatile long batchWindow = DEFAULT_BATCH_WINDOW;
+
+	private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	/**
+	 * @param nativeCache
+	 * @param bulkLoader
+	 */
+	public BatchLoadingSpringCache(final org.infinispan.Cache<K, V> nativeCache, final BulkLoader<K, V> bulkLoader) {
+		super(nativeCache);
+		Assert.notNull(bulkLoader, "A non-null BulkLoader is required");
+		this.bulkLoader = bulkLoader;
+	}
+
+	/**
+	 * Return the value cached for <code>key</code>, loading it as part of a batch if it is missing.
+	 *
+	 * @see org.infinispan.spring.spi.SpringCache#get(java.lang.Object)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		final V cached = super.get(key);
+		if ((cached != null) || (isNegativeCachingEnabled() && super.containsKey(key))) {
+			return cached;
+		}
+		// Keys read from a Cache<K, V> are Ks
+		return load((K) key);
+	}
+
+	private V load(final K key) {
+		final Batch<K, V> batch;
+		final boolean opened;
+		synchronized (this.batchLock) {
+			opened = this.openBatch == null;
+			if (opened) {
+				this.openBatch = new Batch<K, V>();
+			}
+			batch = this.openBatch;
+			batch.keys.add(key);
+			if (batch.keys.size() >= this.maxBatchSize) {
+				this.openBatch = null;
+				this.batchLock.notifyAll();
+			}
+		}
+		if (opened) {
+			awaitDispatch(batch);
+			dispatch(batch);
+		}
+		return batch.await(key);
+	}
+
+	private void awaitDispatch(final Batch<K, V> batch) {
+		synchronized (this.batchLock) {
+			final long deadline = System.nanoTime() + this.batchWindow * 1000000L;
+			try {
+				long remaining = this.batchWindow;
+				while ((this.openBatch == batch) && (remaining > 0L)) {
+					this.batchLock.wait(remaining);
+					remaining = (deadline - System.nanoTime()) / 1000000L;
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (this.openBatch == batch) {
+					this.openBatch = null;
+				}
+			}
+		}
+	}
+
+	private void dispatch(final Batch<K, V> batch) {
+		final long start = System.nanoTime();
+		try {
+			final Map<K, V> loaded = this.bulkLoader.loadAll(Collections.unmodifiableSet(batch.keys));
+			final Map<K, V> values = loaded != null ? loaded : Collections.<K, V> emptyMap();
+			storeLoaded(batch.keys, values);
+			batch.complete(values);
+			if (this.logger.isTraceEnabled()) {
+				this.logger.trace("Loaded [" + values.size() + "] of [" + batch.keys.size() + "] keys into cache ["
+						+ getName() + "] in [" + (System.nanoTime() - start) / 1000L + " us]");
+			}
+		} catch (final RuntimeException e) {
+			this.logger.warn("Failed to load [" + batch.keys.size() + "] keys into cache [" + getName() + "]: "
+					+ e.getMessage(), e);
+			batch.fail(e);
+		} catch (final Error e) {
+			batch.fail(e);
+			throw e;
+		}
+	}
+
+	private void storeLoaded(final Set<K> keys, final Map<K, V> values) {
+		final Map<K, V> puts = new HashMap<K, V>(values.size());
+		for (final K key : keys) {
+			final V value = values.get(key);
+			if (value == null) {
+				if (isNegativeCachingEnabled()) {
+					store(key, null);
+				}
+			} else if (expires(value)) {
+				store(key, value);
+			} else {
+				puts.put(key, value);
+			}
+		}
+		if (!puts.isEmpty()) {
+			getNativeCache().putAll(puts);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Sets the time in milliseconds the first caller to miss waits for other callers to join its batch. Defaults
+	 * to {@link #DEFAULT_BATCH_WINDOW}.
+	 *
+	 * @param batchWindow
+	 */
+	public void setBatchWindow(final long batchWindow) {
+		Assert.isTrue(batchWindow >= 0L, "batchWindow must not be negative");
+		this.batchWindow = batchWindow;
+	}
+
+	/**
+	 * Sets the maximum number of distinct keys loaded in a single batch. Defaults to
+	 * {@link #DEFAULT_MAX_BATCH_SIZE}.
+	 *
+	 * @param maxBatchSize
+	 */
+	public void setMaxBatchSize(final int maxBatchSize) {
+		Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BatchLoadingSpringCache [nativeCache = " + getNativeCache() + ", bulkLoader = " + this.bulkLoader
+				+ "]";
+	}
+
+	// ------------------------------------------------------------------------
+	// Helper classes
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The keys missed by one or more callers, and eventually the values loaded for them. Keys are only added while
+	 * the batch is open, i.e. while holding the cache's batch lock, and only read once it has been dispatched.
+	 */
+	private static final class Batch<K, V> {
+
+		final Set<K> keys = new LinkedHashSet<K>();
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		private volatile Map<K, V> values;
+
+		private volatile Throwable failure;
+
+		void complete(final Map<K, V> loaded) {
+			this.values = loaded;
+			this.done.countDown();
+		}
+
+		void fail(final Throwable cause) {
+			this.failure = cause;
+			this.done.countDown();
+		}
+
+		V await(final K key) {
+			try {
+				this.done.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for key [" + key + "] to be loaded", e);
+			}
+			if (this.failure != null) {
+				throw new IllegalStateException("Failed to load key [" + key + "]: " + this.failure.getMessage(),
+						this.failure);
+			}
+			return this.values.get(key);
+		}
+	}
+}
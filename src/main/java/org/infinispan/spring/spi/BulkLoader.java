@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * <p>
+ * Loads the values for a batch of keys from a backend in one go, on behalf of a
+ * {@link org.infinispan.spring.spi.BatchLoadingSpringCache <code>BatchLoadingSpringCache</code>}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public interface BulkLoader<K, V> {
+
+	/**
+	 * @param keys
+	 *            The keys to load, never empty and no more than the cache's
+	 *            {@link org.infinispan.spring.spi.BatchLoadingSpringCache#setMaxBatchSize(int) maximum batch size}
+	 * @return The values found, keyed by key. Keys the backend holds no value for are simply left out.
+	 */
+	Map<K, V> loadAll(Collection<K> keys);
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cache.Cache;
+
+/**
+ * <p>
+ * Records cache operations, cache creation and failed operations as structured events to the dedicated log
+ * category {@link #EVENT_LOG <code>org.infinispan.spring.events</code>}, so that cache latency may be correlated
+ * with garbage collection and I/O recorded over the same period of time.
+ * </p>
+ * <p>
+ * Each event is logged at level <code>DEBUG</code> as a single line of <code>name=value</code> pairs, starting
+ * with the event's type, its start time in milliseconds since the epoch and its duration:
+ * </p>
+ * 
+ * <pre>
+ * event=CacheOperation start=1290000000000 durationMicros=25314 cache=users operation=GET outcome=MISS thread=http-8080-1
+ * event=CacheCreated start=1290000000000 durationMicros=183021 cache=users
+ * event=CacheOperationFailed start=1290000000000 durationMicros=60002 cache=users operation=PUT servers=host1:11222;host2:11222 thread=main
+ * </pre>
+ * <p>
+ * Operations taking less than {@link #setThreshold(long) <code>threshold</code>} are not recorded, failed
+ * operations always are. Since the HotRod client fails over to another server transparently, only operations
+ * that failed on all servers tried show up as <code>CacheOperationFailed</code>.
+ * </p>
+ * <p>
+ * Recording costs nothing unless enabled: <code>SpringEmbeddedCacheManager</code> and
+ * <code>SpringRemoteCacheManager</code> register this recorder only with those caches obtained while
+ * <code>DEBUG</code> is enabled for {@link #EVENT_LOG}. Operations not
+ * {@link SpringCache#setSamplingInterval(int) sampled} are not recorded either.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheEventRecorder implements CacheOperationListener {
+
+	public static final String EVENT_LOG = "org.infinispan.spring.events";
+
+	public static final long DEFAULT_THRESHOLD = 20L;
+
+	private final Log eventLog;
+
+	private volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD);
+
+	private volatile String serverAddress;
+
+	public CacheEventRecorder() {
+		this(LogFactory.getLog(EVENT_LOG));
+	}
+
+	/**
+	 * @param eventLog
+	 *            The log to record events to, in place of {@link #EVENT_LOG}
+	 */
+	CacheEventRecorder(final Log eventLog) {
+		this.eventLog = eventLog;
+	}
+
+	/**
+	 * @return <code>true</code> if events are currently being recorded
+	 */
+	public boolean isEnabled() {
+		return this.eventLog.isDebugEnabled();
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.spring.spi.CacheOperationListener
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.spring.spi.CacheOperationListener#beforeOperation(org.springframework.cache.Cache,
+	 *      org.infinispan.spring.spi.CacheOperationListener.Operation, java.lang.Object)
+	 */
+	@Override
+	public void beforeOperation(final Cache<?, ?> cache, final Operation operation, final Object key) {
+		// Nothing to do
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.CacheOperationListener#afterOperation(org.springframework.cache.Cache,
+	 *      org.infinispan.spring.spi.CacheOperationListener.Operation, java.lang.Object,
+	 *      org.infinispan.spring.spi.CacheOperationListener.Outcome, long)
+	 */
+	@Override
+	public void afterOperation(final Cache<?, ?> cache, final Operation operation, final Object key,
+			final Outcome outcome, final long durationNanos) {
+		final boolean failed = outcome == Outcome.FAILED;
+		if ((!failed && (durationNanos < this.thresholdNanos)) || !isEnabled()) {
+			return;
+		}
+		final StringBuilder event = startEvent(failed ? "CacheOperationFailed" : "CacheOperation", durationNanos)
+				.append(" cache=").append(cache.getName()).append(" operation=").append(operation);
+		if (failed) {
+			if (this.serverAddress != null) {
+				event.append(" servers=").append(this.serverAddress);
+			}
+		} else {
+			event.append(" outcome=").append(outcome);
+		}
+		event.append(" thread=").append(Thread.currentThread().getName());
+		this.eventLog.debug(event);
+	}
+
+	// ------------------------------------------------------------------------
+	// Cache manager events
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Record that the cache named <code>cacheName</code> has been created, i.e. started for embedded caches or
+	 * first requested for remote ones.
+	 * 
+	 * @param cacheName
+	 * @param startedNanos
+	 *            The value of <code>System.nanoTime()</code> when creation started
+	 */
+	public void recordCacheCreated(final String cacheName, final long startedNanos) {
+		if (!isEnabled()) {
+			return;
+		}
+		this.eventLog.debug(startEvent("CacheCreated", System.nanoTime() - startedNanos).append(" cache=").append(
+				cacheName));
+	}
+
+	private static StringBuilder startEvent(final String type, final long durationNanos) {
+		final long durationMicros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+		return new StringBuilder(128).append("event=").append(type).append(" start=")
+				.append(System.currentTimeMillis() - durationMicros / 1000L).append(" durationMicros=")
+				.append(durationMicros);
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param threshold
+	 *            The duration in milliseconds from which on a successful operation is recorded. Defaults to
+	 *            {@link #DEFAULT_THRESHOLD}.
+	 */
+	public void setThreshold(final long threshold) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+	}
+
+	/**
+	 * @param serverAddress
+	 *            The HotRod servers to include in events about failed remote operations
+	 */
+	public void setServerAddress(final String serverAddress) {
+		this.serverAddress = serverAddress;
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.infinispan.Cache;
+import org.infinispan.interceptors.CacheMgmtInterceptor;
+import org.infinispan.interceptors.base.CommandInterceptor;
+
+/**
+ * <p>
+ * An immutable snapshot of the statistics INFINISPAN collects for each running cache of an
+ * <code>EmbeddedCacheManager</code> when <code>exposeJmxStatistics</code> is turned on, as returned by
+ * {@link SpringEmbeddedCacheManager#getMetricsSnapshot()}.
+ * </p>
+ * <p>
+ * Statistics are read directly from each cache's
+ * {@link org.infinispan.interceptors.CacheMgmtInterceptor <code>CacheMgmtInterceptor</code>} rather than through
+ * the <code>MBeanServer</code>, so taking a snapshot involves neither JMX attribute lookups nor boxing of every
+ * attribute value, and may cheaply be done once a second. Counters are cumulative since a cache's statistics
+ * were last reset; rates are obtained by subtracting two snapshots.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public final class CacheMetricsSnapshot {
+
+	private final long takenAt;
+
+	private final Map<String, CacheMetrics> cacheMetrics;
+
+	CacheMetricsSnapshot(final long takenAt, final Map<String, CacheMetrics> cacheMetrics) {
+		this.takenAt = takenAt;
+		this.cacheMetrics = Collections.unmodifiableMap(new LinkedHashMap<String, CacheMetrics>(cacheMetrics));
+	}
+
+	/**
+	 * @return The time in milliseconds since the epoch this snapshot was taken at
+	 */
+	public long getTakenAt() {
+		return this.takenAt;
+	}
+
+	/**
+	 * @return The metrics of each running cache, keyed by cache name
+	 */
+	public Map<String, CacheMetrics> getCacheMetrics() {
+		return this.cacheMetrics;
+	}
+
+	/**
+	 * @param cacheName
+	 * @return The metrics of the cache named <code>cacheName</code>, or <code>null</code> if that cache was not
+	 *         running when this snapshot was taken
+	 */
+	public CacheMetrics getCacheMetrics(final String cacheName) {
+		return this.cacheMetrics.get(cacheName);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CacheMetricsSnapshot [takenAt = " + this.takenAt + ", cacheMetrics = " + this.cacheMetrics + "]";
+	}
+
+	// ------------------------------------------------------------------------
+	// Per cache metrics
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The statistics of a single cache. If statistics are disabled for that cache, all counters are
+	 * <code>-1</code>, and {@link #isStatisticsEnabled()} returns <code>false</code>.
+	 */
+	public static final class CacheMetrics {
+
+		private final boolean statisticsEnabled;
+
+		private final int numberOfEntries;
+
+		private final long hits;
+
+		private final long misses;
+
+		private final long stores;
+
+		private final long removeHits;
+
+		private final long removeMisses;
+
+		private final long evictions;
+
+		private final long averageReadTime;
+
+		private final long averageWriteTime;
+
+		private final long timeSinceReset;
+
+		private CacheMetrics(final boolean statisticsEnabled, final int numberOfEntries, final long hits,
+				final long misses, final long stores, final long removeHits, final long removeMisses,
+				final long evictions, final long averageReadTime, final long averageWriteTime, final long timeSinceReset) {
+			this.statisticsEnabled = statisticsEnabled;
+			this.numberOfEntries = numberOfEntries;
+			this.hits = hits;
+			this.misses = misses;
+			this.stores = stores;
+			this.removeHits = removeHits;
+			this.removeMisses = removeMisses;
+			this.evictions = evictions;
+			this.averageReadTime = averageReadTime;
+			this.averageWriteTime = averageWriteTime;
+			this.timeSinceReset = timeSinceReset;
+		}
+
+		static CacheMetrics of(final Cache<?, ?> cache) {
+			final int numberOfEntries = cache.getAdvancedCache().getDataContainer().size();
+			final CacheMgmtInterceptor statistics = statisticsOf(cache);
+			if ((statistics == null) || !statistics.getStatisticsEnabled()) {
+				return new CacheMetrics(false, numberOfEntries, -1L, -1L, -1L, -1L, -1L, -1L, -1L, -1L, -1L);
+			}
+			return new CacheMetrics(true, numberOfEntries, statistics.getHits(), statistics.getMisses(),
+					statistics.getStores(), statistics.getRemoveHits(), statistics.getRemoveMisses(),
+					statistics.getEvictions(), statistics.getAverageReadTime(), statistics.getAverageWriteTime(),
+					statistics.getTimeSinceReset());
+		}
+
+		private static CacheMgmtInterceptor statisticsOf(final Cache<?, ?> cache) {
+			for (final CommandInterceptor interceptor : cache.getAdvancedCache().getInterceptorChain()) {
+				if (interceptor instanceof CacheMgmtInterceptor) {
+					return (CacheMgmtInterceptor) interceptor;
+				}
+			}
+			return null;
+		}
+
+		public boolean isStatisticsEnabled() {
+			return this.statisticsEnabled;
+		}
+
+		/**
+		 * @return The number of entries held locally
+		 */
+		public int getNumberOfEntries() {
+			return this.numberOfEntries;
+		}
+
+		public long getHits() {
+			return this.hits;
+		}
+
+		public long getMisses() {
+			return this.misses;
+		}
+
+		public long getStores() {
+			return this.stores;
+		}
+
+		public long getRemoveHits() {
+			return this.removeHits;
+		}
+
+		public long getRemoveMisses() {
+			return this.removeMisses;
+		}
+
+		public long getEvictions() {
+			return this.evictions;
+		}
+
+		/**
+		 * @return The average time in milliseconds a read took
+		 */
+		public long getAverageReadTime() {
+			return this.averageReadTime;
+		}
+
+		/**
+		 * @return The average time in milliseconds a write took
+		 */
+		public long getAverageWriteTime() {
+			return this.averageWriteTime;
+		}
+
+		/**
+		 * @return The time in seconds since statistics were last reset
+		 */
+		public long getTimeSinceReset() {
+			return this.timeSinceReset;
+		}
+
+		/**
+		 * @return The ratio of hits to all reads, or <code>0</code> if there have been no reads
+		 */
+		public double getHitRatio() {
+			final long reads = this.hits + this.misses;
+			return reads > 0L ? (double) this.hits / reads : 0.0;
+		}
+
+		@Override
+		public String toString() {
+			return "CacheMetrics [numberOfEntries = " + this.numberOfEntries + ", hits = " + this.hits
+					+ ", misses = " + this.misses + ", stores = " + this.stores + ", evictions = " + this.evictions
+					+ "]";
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import org.springframework.cache.Cache;
+
+/**
+ * <p>
+ * Callback interface for observing the operations performed on a
+ * {@link org.infinispan.spring.spi.SpringCache <code>SpringCache</code>}, e.g. for tracing, sampling or auditing.
+ * Listeners are registered per cache on {@link SpringEmbeddedCacheManager <code>SpringEmbeddedCacheManager</code>}
+ * and {@link SpringRemoteCacheManager <code>SpringRemoteCacheManager</code>}, or directly on a
+ * <code>SpringCache</code>.
+ * </p>
+ * <p>
+ * Both callbacks are invoked on the thread performing the operation, so implementations should be fast and
+ * must be thread-safe. An exception thrown by a listener is logged and otherwise ignored: it neither aborts
+ * the operation nor keeps other listeners from being notified.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public interface CacheOperationListener {
+
+	/**
+	 * The operations a <code>SpringCache</code> reports.
+	 */
+	enum Operation {
+		CONTAINS_KEY, GET, PUT, PUT_IF_ABSENT, REMOVE, REMOVE_IF_EQUAL, REPLACE, REPLACE_IF_EQUAL, CLEAR
+	}
+
+	/**
+	 * The outcome of an operation. Reads are either a {@link #HIT} or a {@link #MISS}, writes are either
+	 * {@link #APPLIED} or - if a conditional write's condition did not hold, or there was nothing to remove or
+	 * replace - {@link #NOT_APPLIED}. An operation that threw an exception has {@link #FAILED}.
+	 */
+	enum Outcome {
+		HIT, MISS, APPLIED, NOT_APPLIED, FAILED
+	}
+
+	/**
+	 * Invoked before <code>operation</code> is performed.
+	 *
+	 * @param cache
+	 *            The cache <code>operation</code> is performed on
+	 * @param operation
+	 * @param key
+	 *            The key <code>operation</code> affects, or <code>null</code> if it is {@link Operation#CLEAR}
+	 */
+	void beforeOperation(Cache<?, ?> cache, Operation operation, Object key);
+
+	/**
+	 * Invoked after <code>operation</code> has been performed, whether successfully or not.
+	 *
+	 * @param cache
+	 *            The cache <code>operation</code> has been performed on
+	 * @param operation
+	 * @param key
+	 *            The key <code>operation</code> affected, or <code>null</code> if it is {@link Operation#CLEAR}
+	 * @param outcome
+	 * @param durationNanos
+	 *            How long <code>operation</code> took, in nanoseconds
+	 */
+	void afterOperation(Cache<?, ?> cache, Operation operation, Object key, Outcome outcome, long durationNanos);
+}
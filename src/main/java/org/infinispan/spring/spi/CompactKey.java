@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A cache key built by {@link CompactKeyGenerator <code>CompactKeyGenerator</code>}, wrapping the compact binary
+ * encoding of a method's arguments together with a hash precomputed from that encoding.
+ * </p>
+ * <p>
+ * <code>CompactKey</code> is {@link java.io.Externalizable <code>Externalizable</code>}, writing nothing but its
+ * encoding, so that it takes up few bytes on the wire both when replicated or distributed among INFINISPAN nodes
+ * and when sent to a HotRod server. Its hash code - used by INFINISPAN's consistent hash to locate an embedded
+ * key's owners - is computed once, using MurmurHash3. The HotRod client, on the other hand, hashes a key's
+ * marshalled bytes and never calls {@link #hashCode()}, so remote caches only profit from the smaller size.
+ * <code>CompactKeys</code> are immutable: the no-argument constructor and {@link #readExternal(ObjectInput)} are
+ * reserved for deserialization.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public final class CompactKey implements Externalizable {
+
+	private static final long serialVersionUID = 4212887326449658146L;
+
+	private byte[] encoded;
+
+	private int hash;
+
+	/**
+	 * Only to be used for deserialization.
+	 */
+	public CompactKey() {
+		// Required by Externalizable
+	}
+
+	CompactKey(final byte[] encoded) {
+		this.encoded = encoded;
+		this.hash = murmurHash3(encoded);
+	}
+
+	/**
+	 * @return The number of bytes this key's arguments have been encoded into
+	 */
+	public int getEncodedLength() {
+		return this.encoded.length;
+	}
+
+	// ------------------------------------------------------------------------
+	// java.io.Externalizable
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		CompactKeyGenerator.writeVarLong(out, this.encoded.length);
+		out.write(this.encoded);
+	}
+
+	/**
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException {
+		if (this.encoded != null) {
+			throw new IllegalStateException("CompactKey is immutable");
+		}
+		final byte[] read = new byte[(int) CompactKeyGenerator.readVarLong(in)];
+		in.readFully(read);
+		this.encoded = read;
+		this.hash = murmurHash3(read);
+	}
+
+	// ------------------------------------------------------------------------
+	// equals(), hashCode(), toString()
+	// ------------------------------------------------------------------------
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CompactKey)) {
+			return false;
+		}
+		final CompactKey other = (CompactKey) obj;
+		return (this.hash == other.hash) && Arrays.equals(this.encoded, other.encoded);
+	}
+
+	@Override
+	public String toString() {
+		return "CompactKey [hash = " + Integer.toHexString(this.hash) + ", encodedLength = " + this.encoded.length
+				+ "]";
+	}
+
+	// ------------------------------------------------------------------------
+	// Hashing
+	// ------------------------------------------------------------------------
+
+	static int murmurHash3(final byte[] data) {
+		final int c1 = 0xcc9e2d51;
+		final int c2 = 0x1b873593;
+		int h = 0x9747b28c;
+		final int blocks = data.length >>> 2;
+		for (int i = 0; i < blocks; i++) {
+			final int offset = i << 2;
+			int k = (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8) | ((data[offset + 2] & 0xff) << 16)
+					| (data[offset + 3] << 24);
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		final int tail = blocks << 2;
+		int k = 0;
+		switch (data.length & 3) {
+		case 3:
+			k ^= (data[tail + 2] & 0xff) << 16;
+		case 2:
+			k ^= (data[tail + 1] & 0xff) << 8;
+		case 1:
+			k ^= data[tail] & 0xff;
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+		default:
+			break;
+		}
+		h ^= data.length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Date;
+
+import org.springframework.cache.interceptor.KeyGenerator;
+
+/**
+ * <p>
+ * A {@link org.springframework.cache.interceptor.KeyGenerator <code>KeyGenerator</code>} for
+ * <code>@Cacheable</code> methods backed by INFINISPAN caches, building {@link CompactKey
+ * <code>CompactKeys</code>} from a method's arguments.
+ * </p>
+ * <p>
+ * A single <code>String</code>, <code>Integer</code> or <code>Long</code> argument is used as key as is, since
+ * INFINISPAN marshals these compactly anyway. Any other combination of arguments is wrapped in a
+ * <code>CompactKey</code>.
+ * </p>
+ * <p>
+ * Arguments are encoded into a single byte array, each prefixed by a one byte type tag: strings as UTF-8,
+ * integral numbers and <code>java.util.Dates</code> as variable-length zig-zag integers, floating point numbers
+ * as their IEEE 754 bits, enums by class and constant name, and byte arrays as is. Any other argument needs to be
+ * <code>Serializable</code> and is encoded using Java serialization, which is considerably larger and - for
+ * types like hash based collections - not guaranteed to encode equal instances identically, which would merely
+ * cause cache misses. Keys built from the same arguments are always equal.
+ * </p>
+ * <p>
+ * As with Spring's default key generator, neither the target nor the method become part of the key: methods
+ * sharing a cache need to take different arguments.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CompactKeyGenerator implements KeyGenerator<Object> {
+
+	private static final int TAG_NULL = 0;
+
+	private static final int TAG_STRING = 1;
+
+	private static final int TAG_INTEGER = 2;
+
+	private static final int TAG_LONG = 3;
+
+	private static final int TAG_TRUE = 4;
+
+	private static final int TAG_FALSE = 5;
+
+	private static final int TAG_SHORT = 6;
+
+	private static final int TAG_BYTE = 7;
+
+	private static final int TAG_CHARACTER = 8;
+
+	private static final int TAG_DOUBLE = 9;
+
+	private static final int TAG_FLOAT = 10;
+
+	private static final int TAG_ENUM = 11;
+
+	private static final int TAG_BYTES = 12;
+
+	private static final int TAG_DATE = 13;
+
+	private static final int TAG_SERIALIZED = 14;
+
+	private static final CompactKey NO_ARGUMENTS = new CompactKey(new byte[0]);
+
+	/**
+	 * @see org.springframework.cache.interceptor.KeyGenerator#extract(java.lang.Object, java.lang.reflect.Method,
+	 *      java.lang.Object[])
+	 */
+	@Override
+	public Object extract(final Object target, final Method method, final Object... params) {
+		if ((params != null) && (params.length == 1) && isCompactAsIs(params[0])) {
+			return params[0];
+		}
+		return generate(params);
+	}
+
+	/**
+	 * Strings, integers and longs are marshalled compactly by INFINISPAN and the HotRod client without any help,
+	 * and hash well, strings caching their hash code. Wrapping a single such argument would only add the wrapper's
+	 * class descriptor.
+	 */
+	private static boolean isCompactAsIs(final Object param) {
+		return (param instanceof String) || (param instanceof Integer) || (param instanceof Long);
+	}
+
+	/**
+	 * @param params
+	 * @return A <code>CompactKey</code> encoding <code>params</code>
+	 * @throws IllegalArgumentException
+	 *             If any of <code>params</code> is of a type not supported natively that is not
+	 *             <code>Serializable</code>
+	 */
+	public CompactKey generate(final Object... params) throws IllegalArgumentException {
+		if ((params == null) || (params.length == 0)) {
+			return NO_ARGUMENTS;
+		}
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * params.length);
+			final DataOutputStream out = new DataOutputStream(bytes);
+			for (final Object param : params) {
+				encode(out, param);
+			}
+			out.flush();
+			return new CompactKey(bytes.toByteArray());
+		} catch (final IOException e) {
+			// Cannot happen when writing to a byte array
+			throw new IllegalStateException("Failed to encode cache key: " + e.getMessage(), e);
+		}
+	}
+
+	private void encode(final DataOutputStream out, final Object param) throws IOException {
+		if (param == null) {
+			out.writeByte(TAG_NULL);
+		} else if (param instanceof String) {
+			out.writeByte(TAG_STRING);
+			final byte[] utf8 = ((String) param).getBytes("UTF-8");
+			writeVarLong(out, utf8.length);
+			out.write(utf8);
+		} else if (param instanceof Integer) {
+			out.writeByte(TAG_INTEGER);
+			writeVarLong(out, zigZag(((Integer) param).intValue()));
+		} else if (param instanceof Long) {
+			out.writeByte(TAG_LONG);
+			writeVarLong(out, zigZag(((Long) param).longValue()));
+		} else if (param instanceof Boolean) {
+			out.writeByte(((Boolean) param).booleanValue() ? TAG_TRUE : TAG_FALSE);
+		} else if (param instanceof Short) {
+			out.writeByte(TAG_SHORT);
+			writeVarLong(out, zigZag(((Short) param).shortValue()));
+		} else if (param instanceof Byte) {
+			out.writeByte(TAG_BYTE);
+			out.writeByte(((Byte) param).byteValue());
+		} else if (param instanceof Character) {
+			out.writeByte(TAG_CHARACTER);
+			writeVarLong(out, ((Character) param).charValue());
+		} else if (param instanceof Double) {
+			out.writeByte(TAG_DOUBLE);
+			out.writeLong(Double.doubleToLongBits(((Double) param).doubleValue()));
+		} else if (param instanceof Float) {
+			out.writeByte(TAG_FLOAT);
+			out.writeInt(Float.floatToIntBits(((Float) param).floatValue()));
+		} else if (param instanceof Enum<?>) {
+			out.writeByte(TAG_ENUM);
+			out.writeUTF(((Enum<?>) param).getDeclaringClass().getName());
+			out.writeUTF(((Enum<?>) param).name());
+		} else if (param instanceof byte[]) {
+			out.writeByte(TAG_BYTES);
+			writeVarLong(out, ((byte[]) param).length);
+			out.write((byte[]) param);
+		} else if (param.getClass() == Date.class) {
+			out.writeByte(TAG_DATE);
+			writeVarLong(out, zigZag(((Date) param).getTime()));
+		} else if (param instanceof Serializable) {
+			out.writeByte(TAG_SERIALIZED);
+			final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+			final ObjectOutputStream objectOut = new ObjectOutputStream(serialized);
+			objectOut.writeObject(param);
+			objectOut.close();
+			writeVarLong(out, serialized.size());
+			serialized.writeTo(out);
+		} else {
+			throw new IllegalArgumentException("Cannot build a cache key from argument [" + param + "] of type ["
+					+ param.getClass().getName() + "] since it is neither natively supported nor Serializable");
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Variable-length integers
+	// ------------------------------------------------------------------------
+
+	private static long zigZag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static void writeVarLong(final DataOutput out, final long value) throws IOException {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0L) {
+			out.writeByte((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		out.writeByte((int) remaining);
+	}
+
+	static long readVarLong(final DataInput in) throws IOException {
+		long value = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+}
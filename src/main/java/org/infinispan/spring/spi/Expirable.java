@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+/**
+ * <p>
+ * Implemented by values that know how long they may be cached. A
+ * {@link org.infinispan.spring.spi.SpringCache <code>SpringCache</code>} stores such values with their own
+ * lifespan instead of its {@link org.infinispan.spring.spi.SpringCache#setDefaultLifespan(long) default
+ * lifespan}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public interface Expirable {
+
+	/**
+	 * @return The lifespan of this value in milliseconds, or a value less than or equal to 0 to use the cache's
+	 *         default lifespan
+	 */
+	long getLifespan();
+}
@@ -0,0 +1,558 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link org.infinispan.spring.spi.CacheOperationListener <code>CacheOperationListener</code>} that estimates
+ * online which hit ratio a cache would achieve at a range of sizes, i.e. its miss ratio curve, so that
+ * settings like <code>evictionMaxEntries</code> may be chosen from observed access patterns.
+ * </p>
+ * <p>
+ * Estimation follows SHARDS (Waldspurger et al., FAST '15): only keys whose spatial hash falls below a threshold
+ * are tracked, and for each read of such a key its reuse distance - the number of distinct sampled keys accessed
+ * since its previous access - is computed and scaled by the inverse sampling rate. The histogram of scaled reuse
+ * distances yields the hit ratio of an LRU cache of any size, after correcting for the sample holding more or
+ * fewer reads than the sampling rate predicts. No more than {@link #setMaxSamples(int)
+ * <code>maxSamples</code>} keys are tracked: once that limit is exceeded, the threshold is lowered to drop the
+ * keys having the largest hash, and the histogram is rescaled to the new sampling rate. Memory used is therefore
+ * bounded independent of the number of keys a cache holds. Reads of keys not sampled cost one hash computation.
+ * </p>
+ * <p>
+ * Writes count as accesses but not as reads, removals make the next read of a key a miss. Since reuse distances
+ * require seeing every access to a sampled key, this listener should be registered with a
+ * {@link SpringCache#setSamplingInterval(int) sampling interval} of <code>1</code>: SHARDS does its own sampling.
+ * As of now only INFINISPAN's LRU eviction is modelled.
+ * </p>
+ * <p>
+ * The curve is published as MBean
+ * <code>&lt;jmxDomain&gt;:type=Cache,name="&lt;cacheName&gt;",component=MissRatioCurve</code>.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class MissRatioCurveEstimator implements CacheOperationListener, MissRatioCurveEstimatorMBean,
+		InitializingBean, DisposableBean {
+
+	public static final double DEFAULT_SAMPLING_RATE = 0.01;
+
+	public static final int DEFAULT_MAX_SAMPLES = 8192;
+
+	public static final long DEFAULT_MAX_CACHE_SIZE = 1000000L;
+
+	public static final int DEFAULT_CURVE_POINTS = 20;
+
+	public static final String DEFAULT_JMX_DOMAIN = "org.infinispan.spring";
+
+	private static final int MODULUS = 1 << 24;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final AtomicLong references = new AtomicLong(0);
+
+	private String cacheName;
+
+	private double samplingRate = DEFAULT_SAMPLING_RATE;
+
+	private int maxSamples = DEFAULT_MAX_SAMPLES;
+
+	private long maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+	private int curvePoints = DEFAULT_CURVE_POINTS;
+
+	private String jmxDomain = DEFAULT_JMX_DOMAIN;
+
+	private MBeanServer mBeanServer;
+
+	private ObjectName registeredName;
+
+	// Sampled keys are those whose spatial hash is below threshold. Read without locking on the access path.
+	private volatile int threshold;
+
+	// Everything below is guarded by this
+
+	private Map<Object, Sample> samples;
+
+	private TreeMap<Integer, Set<Object>> keysBySpatialHash;
+
+	// Fenwick tree over logical access times, holding a 1 at each sampled key's last access time
+	private int[] accessTimes;
+
+	private int clock;
+
+	private double[] histogram;
+
+	private double bucketWidth;
+
+	private double beyondLargestSize;
+
+	private double coldMisses;
+
+	private double sampledReferences;
+
+	public MissRatioCurveEstimator() {
+		reset();
+	}
+
+	// ------------------------------------------------------------------------
+	// org.springframework.beans.factory.InitializingBean
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Register this estimator as MBean.
+	 * 
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.hasText(this.cacheName, "Property 'cacheName' must be set");
+		if (this.mBeanServer == null) {
+			this.mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		}
+		final ObjectName objectName = objectName();
+		try {
+			this.mBeanServer.registerMBean(this, objectName);
+			this.registeredName = objectName;
+		} catch (final JMException e) {
+			this.logger.warn("Failed to register miss ratio curve MBean of cache [" + this.cacheName + "]: "
+					+ e.getMessage());
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// org.springframework.beans.factory.DisposableBean
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Unregister this estimator's MBean.
+	 * 
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception {
+		if (this.registeredName == null) {
+			return;
+		}
+		try {
+			this.mBeanServer.unregisterMBean(this.registeredName);
+		} catch (final JMException e) {
+			this.logger.warn("Failed to unregister miss ratio curve MBean of cache [" + this.cacheName + "]: "
+					+ e.getMessage());
+		}
+		this.registeredName = null;
+	}
+
+	ObjectName objectName() throws JMException {
+		return new ObjectName(this.jmxDomain + ":type=Cache,name=" + ObjectName.quote(this.cacheName)
+				+ ",component=MissRatioCurve");
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.spring.spi.CacheOperationListener
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void beforeOperation(final Cache<?, ?> cache, final Operation operation, final Object key) {
+		// Nothing to do
+	}
+
+	@Override
+	public void afterOperation(final Cache<?, ?> cache, final Operation operation, final Object key,
+			final Outcome outcome, final long durationNanos) {
+		if ((outcome == Outcome.FAILED) || ((this.cacheName != null) && !this.cacheName.equals(cache.getName()))) {
+			return;
+		}
+		switch (operation) {
+		case GET:
+		case CONTAINS_KEY:
+			recordRead(key);
+			break;
+		case PUT:
+		case PUT_IF_ABSENT:
+		case REPLACE:
+		case REPLACE_IF_EQUAL:
+			recordWrite(key);
+			break;
+		case REMOVE:
+		case REMOVE_IF_EQUAL:
+			if (outcome == Outcome.APPLIED) {
+				recordRemoval(key);
+			}
+			break;
+		case CLEAR:
+			recordClear();
+			break;
+		default:
+			break;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Sampling
+	// ------------------------------------------------------------------------
+
+	void recordRead(final Object key) {
+		this.references.incrementAndGet();
+		if (key == null) {
+			return;
+		}
+		final int spatialHash = spatialHashOf(key);
+		if (spatialHash >= this.threshold) {
+			return;
+		}
+		synchronized (this) {
+			if (spatialHash >= this.threshold) {
+				return;
+			}
+			ensureClockCapacity();
+			this.sampledReferences += 1.0;
+			final Sample sample = this.samples.get(key);
+			if (sample == null) {
+				this.coldMisses += 1.0;
+				track(key, spatialHash);
+				return;
+			}
+			final int distinctKeysSince = prefixSum(this.clock - 1) - prefixSum(sample.lastAccess);
+			recordReuseDistance(distinctKeysSince * ((double) MODULUS / this.threshold));
+			updateAccessTime(sample.lastAccess, -1);
+			sample.lastAccess = nextAccessTime();
+		}
+	}
+
+	void recordWrite(final Object key) {
+		if (key == null) {
+			return;
+		}
+		final int spatialHash = spatialHashOf(key);
+		if (spatialHash >= this.threshold) {
+			return;
+		}
+		synchronized (this) {
+			if (spatialHash >= this.threshold) {
+				return;
+			}
+			ensureClockCapacity();
+			final Sample sample = this.samples.get(key);
+			if (sample == null) {
+				track(key, spatialHash);
+			} else {
+				updateAccessTime(sample.lastAccess, -1);
+				sample.lastAccess = nextAccessTime();
+			}
+		}
+	}
+
+	synchronized void recordRemoval(final Object key) {
+		final Sample sample = key != null ? this.samples.remove(key) : null;
+		if (sample != null) {
+			untrack(key, sample);
+		}
+	}
+
+	synchronized void recordClear() {
+		this.samples.clear();
+		this.keysBySpatialHash.clear();
+		Arrays.fill(this.accessTimes, 0);
+		this.clock = 1;
+	}
+
+	private void track(final Object key, final int spatialHash) {
+		this.samples.put(key, new Sample(spatialHash, nextAccessTime()));
+		Set<Object> keys = this.keysBySpatialHash.get(Integer.valueOf(spatialHash));
+		if (keys == null) {
+			keys = new HashSet<Object>(2);
+			this.keysBySpatialHash.put(Integer.valueOf(spatialHash), keys);
+		}
+		keys.add(key);
+		while (this.samples.size() > this.maxSamples) {
+			lowerThreshold();
+		}
+	}
+
+	private void untrack(final Object key, final Sample sample) {
+		updateAccessTime(sample.lastAccess, -1);
+		final Set<Object> keys = this.keysBySpatialHash.get(Integer.valueOf(sample.spatialHash));
+		keys.remove(key);
+		if (keys.isEmpty()) {
+			this.keysBySpatialHash.remove(Integer.valueOf(sample.spatialHash));
+		}
+	}
+
+	/**
+	 * Drop the keys having the largest spatial hash, making that hash the new threshold, and rescale what has
+	 * been observed so far to the lowered sampling rate.
+	 */
+	private void lowerThreshold() {
+		final Map.Entry<Integer, Set<Object>> largest = this.keysBySpatialHash.pollLastEntry();
+		for (final Object key : largest.getValue()) {
+			updateAccessTime(this.samples.remove(key).lastAccess, -1);
+		}
+		final int lowered = largest.getKey().intValue();
+		final double ratio = (double) lowered / this.threshold;
+		for (int i = 0; i < this.histogram.length; i++) {
+			this.histogram[i] *= ratio;
+		}
+		this.beyondLargestSize *= ratio;
+		this.coldMisses *= ratio;
+		this.sampledReferences *= ratio;
+		this.threshold = lowered;
+	}
+
+	private void recordReuseDistance(final double scaledDistance) {
+		final int bucket = (int) (scaledDistance / this.bucketWidth);
+		if (bucket < this.histogram.length) {
+			this.histogram[bucket] += 1.0;
+		} else {
+			this.beyondLargestSize += 1.0;
+		}
+	}
+
+	static int spatialHashOf(final Object key) {
+		// MurmurHash3's finalizer, since many hashCode() implementations are poorly distributed
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h & (MODULUS - 1);
+	}
+
+	// ------------------------------------------------------------------------
+	// Logical access times
+	// ------------------------------------------------------------------------
+
+	private int nextAccessTime() {
+		final int accessTime = this.clock++;
+		updateAccessTime(accessTime, 1);
+		return accessTime;
+	}
+
+	/**
+	 * Renumber all sampled keys' access times, preserving their order, once the clock has run past the end of
+	 * the Fenwick tree. Since no more than <code>maxSamples + 1</code> keys are ever tracked this happens at most
+	 * every <code>3 * maxSamples</code> accesses.
+	 */
+	private void ensureClockCapacity() {
+		if (this.clock < this.accessTimes.length) {
+			return;
+		}
+		final List<Sample> byAccessTime = new ArrayList<Sample>(this.samples.values());
+		Collections.sort(byAccessTime, new Comparator<Sample>() {
+			@Override
+			public int compare(final Sample first, final Sample second) {
+				return first.lastAccess < second.lastAccess ? -1 : (first.lastAccess == second.lastAccess ? 0 : 1);
+			}
+		});
+		Arrays.fill(this.accessTimes, 0);
+		this.clock = 1;
+		for (final Sample sample : byAccessTime) {
+			sample.lastAccess = nextAccessTime();
+		}
+	}
+
+	private void updateAccessTime(final int accessTime, final int delta) {
+		for (int i = accessTime; i < this.accessTimes.length; i += i & -i) {
+			this.accessTimes[i] += delta;
+		}
+	}
+
+	private int prefixSum(final int accessTime) {
+		int sum = 0;
+		for (int i = accessTime; i > 0; i -= i & -i) {
+			sum += this.accessTimes[i];
+		}
+		return sum;
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.spring.spi.MissRatioCurveEstimatorMBean
+	// ------------------------------------------------------------------------
+
+	@Override
+	public synchronized String[] getHitRatioCurve() {
+		final String[] curve = new String[this.histogram.length];
+		for (int i = 0; i < curve.length; i++) {
+			final long cacheSize = (long) ((i + 1) * this.bucketWidth);
+			curve[i] = String.format(Locale.ENGLISH, "%d=%.4f", Long.valueOf(cacheSize),
+					Double.valueOf(getEstimatedHitRatio(cacheSize)));
+		}
+		return curve;
+	}
+
+	@Override
+	public synchronized double getEstimatedHitRatio(final long cacheSize) {
+		// SHARDS_adj: whatever the sample over- or under-represents relative to the sampling rate is attributed
+		// to the smallest reuse distances, which corrects most of the error caused by sampling a hot key or not
+		final double expectedReferences = this.references.get() * getSamplingRate();
+		if ((expectedReferences <= 0.0) || (cacheSize <= 0L)) {
+			return 0.0;
+		}
+		double hits = (expectedReferences - this.sampledReferences) * Math.min(1.0, cacheSize / this.bucketWidth);
+		for (int i = 0; i < this.histogram.length; i++) {
+			final double lower = i * this.bucketWidth;
+			if (lower >= cacheSize) {
+				break;
+			}
+			hits += this.histogram[i] * Math.min(1.0, (cacheSize - lower) / this.bucketWidth);
+		}
+		return Math.max(0.0, Math.min(1.0, hits / expectedReferences));
+	}
+
+	@Override
+	public long getReferences() {
+		return this.references.get();
+	}
+
+	@Override
+	public synchronized int getSampledKeys() {
+		return this.samples.size();
+	}
+
+	@Override
+	public double getSamplingRate() {
+		return (double) this.threshold / MODULUS;
+	}
+
+	@Override
+	public synchronized void reset() {
+		this.threshold = Math.max(1, (int) Math.round(this.samplingRate * MODULUS));
+		this.samples = new HashMap<Object, Sample>();
+		this.keysBySpatialHash = new TreeMap<Integer, Set<Object>>();
+		this.accessTimes = new int[4 * this.maxSamples + 2];
+		this.clock = 1;
+		this.histogram = new double[this.curvePoints];
+		this.bucketWidth = Math.max(1.0, (double) this.maxCacheSize / this.curvePoints);
+		this.beyondLargestSize = 0.0;
+		this.coldMisses = 0.0;
+		this.sampledReferences = 0.0;
+		this.references.set(0);
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param cacheName
+	 *            The name of the cache to estimate the miss ratio curve of. Operations on other caches are
+	 *            ignored.
+	 */
+	public void setCacheName(final String cacheName) {
+		this.cacheName = cacheName;
+	}
+
+	/**
+	 * @param samplingRate
+	 *            The fraction of keys to sample initially. Defaults to {@link #DEFAULT_SAMPLING_RATE}.
+	 */
+	public void setSamplingRate(final double samplingRate) {
+		Assert.isTrue((samplingRate > 0.0) && (samplingRate <= 1.0), "Sampling rate must be in (0, 1]");
+		this.samplingRate = samplingRate;
+		reset();
+	}
+
+	/**
+	 * @param maxSamples
+	 *            The maximum number of keys to track. Defaults to {@link #DEFAULT_MAX_SAMPLES}.
+	 */
+	public void setMaxSamples(final int maxSamples) {
+		Assert.isTrue(maxSamples > 0, "Max samples must be positive");
+		this.maxSamples = maxSamples;
+		reset();
+	}
+
+	/**
+	 * @param maxCacheSize
+	 *            The largest cache size in number of entries to estimate the hit ratio for. Defaults to
+	 *            {@link #DEFAULT_MAX_CACHE_SIZE}.
+	 */
+	public void setMaxCacheSize(final long maxCacheSize) {
+		Assert.isTrue(maxCacheSize > 0L, "Max cache size must be positive");
+		this.maxCacheSize = maxCacheSize;
+		reset();
+	}
+
+	/**
+	 * @param curvePoints
+	 *            The number of evenly spaced cache sizes up to <code>maxCacheSize</code> to report the hit ratio
+	 *            for. Defaults to {@link #DEFAULT_CURVE_POINTS}.
+	 */
+	public void setCurvePoints(final int curvePoints) {
+		Assert.isTrue(curvePoints > 0, "Curve points must be positive");
+		this.curvePoints = curvePoints;
+		reset();
+	}
+
+	/**
+	 * @param jmxDomain
+	 *            Defaults to {@link #DEFAULT_JMX_DOMAIN}.
+	 */
+	public void setJmxDomain(final String jmxDomain) {
+		this.jmxDomain = jmxDomain;
+	}
+
+	/**
+	 * @param mBeanServer
+	 *            The <code>MBeanServer</code> to register with. Defaults to the platform
+	 *            <code>MBeanServer</code>.
+	 */
+	public void setMBeanServer(final MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	private static final class Sample {
+
+		private final int spatialHash;
+
+		private int lastAccess;
+
+		Sample(final int spatialHash, final int lastAccess) {
+			this.spatialHash = spatialHash;
+			this.lastAccess = lastAccess;
+		}
+	}
+}
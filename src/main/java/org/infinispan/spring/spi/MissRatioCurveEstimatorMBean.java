@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+/**
+ * <p>
+ * Management interface of {@link MissRatioCurveEstimator <code>MissRatioCurveEstimator</code>}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public interface MissRatioCurveEstimatorMBean {
+
+	/**
+	 * @return The estimated hit ratio at each of the cache sizes the curve is evaluated at, formatted as
+	 *         <code>size=hitRatio</code> and ordered by ascending cache size
+	 */
+	String[] getHitRatioCurve();
+
+	/**
+	 * @param cacheSize
+	 *            A cache size in number of entries
+	 * @return The estimated hit ratio of an LRU cache holding at most <code>cacheSize</code> entries
+	 */
+	double getEstimatedHitRatio(long cacheSize);
+
+	/**
+	 * @return The number of reads observed
+	 */
+	long getReferences();
+
+	/**
+	 * @return The number of distinct keys currently tracked
+	 */
+	int getSampledKeys();
+
+	/**
+	 * @return The fraction of the key space currently sampled
+	 */
+	double getSamplingRate();
+
+	/**
+	 * Discard everything observed so far.
+	 */
+	void reset();
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+
+/**
+ * <p>
+ * The sentinel a {@link SpringCache <code>SpringCache</code>} in negative caching mode stores in place of a
+ * <code>null</code> value, and translates back to <code>null</code> on read.
+ * </p>
+ * <p>
+ * <code>NullValue</code> is {@link java.io.Externalizable <code>Externalizable</code>} and writes nothing, so that
+ * a negatively cached entry takes up as few bytes as possible when replicated or sent to a HotRod server. Any
+ * deserialized instance resolves to {@link #INSTANCE}; nevertheless all <code>NullValues</code> are equal.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public final class NullValue implements Externalizable {
+
+	public static final NullValue INSTANCE = new NullValue();
+
+	private static final long serialVersionUID = -2480561458375128046L;
+
+	/**
+	 * Only to be used for deserialization. Use {@link #INSTANCE} instead.
+	 */
+	public NullValue() {
+		// Required by Externalizable
+	}
+
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		// Nothing to write
+	}
+
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException {
+		// Nothing to read
+	}
+
+	private Object readResolve() throws ObjectStreamException {
+		return INSTANCE;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		return obj instanceof NullValue;
+	}
+
+	@Override
+	public int hashCode() {
+		return NullValue.class.getName().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "NullValue";
+	}
+}
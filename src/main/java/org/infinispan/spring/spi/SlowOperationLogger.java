@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cache.Cache;
+
+/**
+ * <p>
+ * A {@link org.infinispan.spring.spi.CacheOperationListener <code>CacheOperationListener</code>} that logs
+ * operations taking longer than a per-cache threshold, so that sporadic slow calls hidden by aggregate metrics
+ * become visible.
+ * </p>
+ * <p>
+ * Each slow operation is logged at level <code>WARN</code> with the cache's name, the operation, a digest of its
+ * key, its duration and - for remote caches - the HotRod servers the cache is connected to. Keys are logged as
+ * digests only, since they may be large or contain sensitive data. No more than
+ * {@link #setMaxLogsPerMinute(int) <code>maxLogsPerMinute</code>} operations are logged per minute, so that a
+ * cluster in trouble cannot flood the logs. Operations suppressed are counted, and that count is logged once
+ * logging resumes.
+ * </p>
+ * <p>
+ * Usually not instantiated directly, but through <code>setSlowOperationThreshold</code> and
+ * <code>setSlowOperationThresholds</code> on {@link SpringEmbeddedCacheManager
+ * <code>SpringEmbeddedCacheManager</code>}, {@link SpringRemoteCacheManager <code>SpringRemoteCacheManager</code>}
+ * or their factory beans.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class SlowOperationLogger implements CacheOperationListener {
+
+	public static final int DEFAULT_MAX_LOGS_PER_MINUTE = 10;
+
+	private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final AtomicLong rateLimitWindowStart = new AtomicLong(System.nanoTime());
+
+	private final AtomicInteger logsInWindow = new AtomicInteger(0);
+
+	private final AtomicLong suppressed = new AtomicLong(0);
+
+	private volatile Map<String, Long> thresholdsNanos = Collections.emptyMap();
+
+	private volatile long defaultThresholdNanos = -1L;
+
+	private volatile int maxLogsPerMinute = DEFAULT_MAX_LOGS_PER_MINUTE;
+
+	private volatile String serverAddress;
+
+	/**
+	 * @param cacheName
+	 * @return <code>true</code> if a threshold applies to the cache named <code>cacheName</code>
+	 */
+	public boolean isEnabledFor(final String cacheName) {
+		return (this.defaultThresholdNanos >= 0L) || this.thresholdsNanos.containsKey(cacheName);
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.spring.spi.CacheOperationListener
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.spring.spi.CacheOperationListener#beforeOperation(org.springframework.cache.Cache,
+	 *      org.infinispan.spring.spi.CacheOperationListener.Operation, java.lang.Object)
+	 */
+	@Override
+	public void beforeOperation(final Cache<?, ?> cache, final Operation operation, final Object key) {
+		// Nothing to do
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.CacheOperationListener#afterOperation(org.springframework.cache.Cache,
+	 *      org.infinispan.spring.spi.CacheOperationListener.Operation, java.lang.Object,
+	 *      org.infinispan.spring.spi.CacheOperationListener.Outcome, long)
+	 */
+	@Override
+	public void afterOperation(final Cache<?, ?> cache, final Operation operation, final Object key,
+			final Outcome outcome, final long durationNanos) {
+		final Long threshold = this.thresholdsNanos.get(cache.getName());
+		final long thresholdNanos = threshold != null ? threshold.longValue() : this.defaultThresholdNanos;
+		if ((thresholdNanos < 0L) || (durationNanos < thresholdNanos)) {
+			return;
+		}
+		if (!acquireLogPermit()) {
+			this.suppressed.incrementAndGet();
+			return;
+		}
+		final StringBuilder message = new StringBuilder("Slow operation on cache [").append(cache.getName())
+				.append("]: ").append(operation).append(" of key [").append(digestOf(key)).append("] took [")
+				.append(TimeUnit.NANOSECONDS.toMillis(durationNanos)).append(" ms] (threshold [")
+				.append(TimeUnit.NANOSECONDS.toMillis(thresholdNanos)).append(" ms], outcome [").append(outcome)
+				.append("])");
+		if (this.serverAddress != null) {
+			message.append(" - servers [").append(this.serverAddress).append("]");
+		}
+		final long suppressedSoFar = this.suppressed.getAndSet(0L);
+		if (suppressedSoFar > 0L) {
+			message.append(" - [").append(suppressedSoFar).append("] slow operations not logged due to rate limit");
+		}
+		this.logger.warn(message);
+	}
+
+	boolean acquireLogPermit() {
+		final long now = System.nanoTime();
+		final long windowStart = this.rateLimitWindowStart.get();
+		if ((now - windowStart >= MINUTE_NANOS) && this.rateLimitWindowStart.compareAndSet(windowStart, now)) {
+			this.logsInWindow.set(0);
+		}
+		return this.logsInWindow.incrementAndGet() <= this.maxLogsPerMinute;
+	}
+
+	static String digestOf(final Object key) {
+		if (key == null) {
+			return "-";
+		}
+		try {
+			final byte[] digest = MessageDigest.getInstance("MD5").digest(String.valueOf(key).getBytes("UTF-8"));
+			final char[] hex = new char[8];
+			for (int i = 0; i < 4; i++) {
+				hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+				hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0x0F];
+			}
+			return key.getClass().getSimpleName() + "#" + new String(hex);
+		} catch (final NoSuchAlgorithmException e) {
+			return key.getClass().getSimpleName() + "@" + Integer.toHexString(key.hashCode());
+		} catch (final UnsupportedEncodingException e) {
+			return key.getClass().getSimpleName() + "@" + Integer.toHexString(key.hashCode());
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param defaultThreshold
+	 *            The duration in milliseconds from which on an operation on a cache without a threshold of its own
+	 *            counts as slow, or <code>null</code> to only log operations on caches having a threshold of their
+	 *            own
+	 */
+	public void setDefaultThreshold(final Long defaultThreshold) {
+		this.defaultThresholdNanos = defaultThreshold != null ? TimeUnit.MILLISECONDS.toNanos(defaultThreshold
+				.longValue()) : -1L;
+	}
+
+	/**
+	 * @param thresholds
+	 *            The durations in milliseconds from which on an operation counts as slow, keyed by cache name
+	 */
+	public void setThresholds(final Map<String, Long> thresholds) {
+		final Map<String, Long> thresholdsNanos = new HashMap<String, Long>();
+		if (thresholds != null) {
+			for (final Map.Entry<String, Long> threshold : thresholds.entrySet()) {
+				thresholdsNanos.put(threshold.getKey(),
+						Long.valueOf(TimeUnit.MILLISECONDS.toNanos(threshold.getValue().longValue())));
+			}
+		}
+		this.thresholdsNanos = thresholdsNanos;
+	}
+
+	/**
+	 * @param maxLogsPerMinute
+	 *            The maximum number of slow operations to log per minute
+	 */
+	public void setMaxLogsPerMinute(final int maxLogsPerMinute) {
+		this.maxLogsPerMinute = maxLogsPerMinute;
+	}
+
+	/**
+	 * @param serverAddress
+	 *            The address of the server(s) operations are performed on, or <code>null</code> for embedded
+	 *            caches
+	 */
+	public void setServerAddress(final String serverAddress) {
+		this.serverAddress = serverAddress;
+	}
+}
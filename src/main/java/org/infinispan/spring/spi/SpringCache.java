@@ -19,6 +19,15 @@
 
 package org.infinispan.spring.spi;
 
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.spring.spi.CacheOperationListener.Operation;
+import org.infinispan.spring.spi.CacheOperationListener.Outcome;
 import org.springframework.cache.Cache;
 import org.springframework.util.Assert;
 
@@ -28,14 +37,57 @@ import org.springframework.util.Assert;
  * a {@link org.infinispan.Cache <code>org.infinispan.Cache</code>} instance supplied at construction
  * time.
  * </p>
+ * <p>
+ * Operations may be observed by {@link #setOperationListeners(Collection) registering}
+ * {@link org.infinispan.spring.spi.CacheOperationListener <code>CacheOperationListeners</code>}. If a
+ * {@link #setSamplingInterval(int) sampling interval} of <code>n</code> is set, only every <code>n</code>th
+ * operation is reported. Without any listener registered, operations are passed on to the native cache
+ * without any additional allocation.
+ * </p>
+ * <p>
+ * In {@link #setNegativeCacheLifespan(long) negative caching} mode, <code>null</code> values are stored as the
+ * {@link NullValue <code>NullValue</code>} sentinel with a lifespan of their own, usually shorter than that of
+ * regular entries, and translated back to <code>null</code> on read. {@link #containsKey(Object)} then
+ * distinguishes a key cached as <code>null</code> from a key not cached at all, so that lookups which resolve to
+ * nothing need not be repeated each time.
+ * </p>
+ * <p>
+ * Values may be stored with a {@link #setDefaultLifespan(long) default lifespan} and
+ * {@link #setDefaultMaxIdle(long) max idle time} set on this cache rather than on the native one, which is the
+ * only way to have remote entries expire. Values implementing {@link Expirable <code>Expirable</code>} may carry
+ * a lifespan of their own. A {@link #setLifespanJitter(double) jitter} keeps entries written together from
+ * expiring together.
+ * </p>
  *
  * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
  *
  */
 public class SpringCache<K, V> implements Cache<K, V> {
 
+	private static final CacheOperationListener[] NO_LISTENERS = new CacheOperationListener[0];
+
+	private static final Random JITTER = new Random();
+
+	private final Log logger = LogFactory.getLog(getClass());
+
 	private final org.infinispan.Cache<K, V> nativeCache;
 
+	private volatile AtomicLong operationCount = new AtomicLong(0);
+
+	private volatile CacheOperationListener[] listeners = NO_LISTENERS;
+
+	private volatile int samplingInterval = 1;
+
+	private volatile long negativeCacheLifespan = -1L;
+
+	private volatile long defaultLifespan = -1L;
+
+	private volatile long defaultMaxIdle = -1L;
+
+	private volatile double lifespanJitter = 0.0D;
+
+	private volatile boolean wholeSecondExpiration;
+
 	/**
 	 * @param nativeCache
 	 */
@@ -65,7 +117,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public boolean containsKey(final Object key) {
-		return this.nativeCache.containsKey(key);
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			return this.nativeCache.containsKey(key);
+		}
+		final long start = fireBeforeOperation(sampled, Operation.CONTAINS_KEY, key);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			final boolean contained = this.nativeCache.containsKey(key);
+			outcome = contained ? Outcome.HIT : Outcome.MISS;
+			return contained;
+		} finally {
+			fireAfterOperation(sampled, Operation.CONTAINS_KEY, key, outcome, start);
+		}
 	}
 
 	/**
@@ -73,7 +137,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public V get(final Object key) {
-		return this.nativeCache.get(key);
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			return fromStored(this.nativeCache.get(key));
+		}
+		final long start = fireBeforeOperation(sampled, Operation.GET, key);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			final V value = this.nativeCache.get(key);
+			outcome = value != null ? Outcome.HIT : Outcome.MISS;
+			return fromStored(value);
+		} finally {
+			fireAfterOperation(sampled, Operation.GET, key, outcome, start);
+		}
 	}
 
 	/**
@@ -81,7 +157,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public V put(final K key, final V value) {
-		return this.nativeCache.put(key, value);
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			return fromStored(storePut(key, value));
+		}
+		final long start = fireBeforeOperation(sampled, Operation.PUT, key);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			final V previous = storePut(key, value);
+			outcome = Outcome.APPLIED;
+			return fromStored(previous);
+		} finally {
+			fireAfterOperation(sampled, Operation.PUT, key, outcome, start);
+		}
 	}
 
 	/**
@@ -89,7 +177,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public V putIfAbsent(final K key, final V value) {
-		return this.nativeCache.putIfAbsent(key, value);
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			return fromStored(storePutIfAbsent(key, value));
+		}
+		final long start = fireBeforeOperation(sampled, Operation.PUT_IF_ABSENT, key);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			final V existing = storePutIfAbsent(key, value);
+			outcome = existing == null ? Outcome.APPLIED : Outcome.NOT_APPLIED;
+			return fromStored(existing);
+		} finally {
+			fireAfterOperation(sampled, Operation.PUT_IF_ABSENT, key, outcome, start);
+		}
 	}
 
 	/**
@@ -97,7 +197,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public V remove(final Object key) {
-		return this.nativeCache.remove(key);
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			return fromStored(this.nativeCache.remove(key));
+		}
+		final long start = fireBeforeOperation(sampled, Operation.REMOVE, key);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			final V previous = this.nativeCache.remove(key);
+			outcome = previous != null ? Outcome.APPLIED : Outcome.NOT_APPLIED;
+			return fromStored(previous);
+		} finally {
+			fireAfterOperation(sampled, Operation.REMOVE, key, outcome, start);
+		}
 	}
 
 	/**
@@ -105,7 +217,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public boolean remove(final Object key, final Object value) {
-		return this.nativeCache.remove(key, value);
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			return this.nativeCache.remove(key, toStored(value));
+		}
+		final long start = fireBeforeOperation(sampled, Operation.REMOVE_IF_EQUAL, key);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			final boolean removed = this.nativeCache.remove(key, toStored(value));
+			outcome = removed ? Outcome.APPLIED : Outcome.NOT_APPLIED;
+			return removed;
+		} finally {
+			fireAfterOperation(sampled, Operation.REMOVE_IF_EQUAL, key, outcome, start);
+		}
 	}
 
 	/**
@@ -113,7 +237,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public boolean replace(final K key, final V oldValue, final V newValue) {
-		return this.nativeCache.replace(key, oldValue, newValue);
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			return storeReplace(key, oldValue, newValue);
+		}
+		final long start = fireBeforeOperation(sampled, Operation.REPLACE_IF_EQUAL, key);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			final boolean replaced = storeReplace(key, oldValue, newValue);
+			outcome = replaced ? Outcome.APPLIED : Outcome.NOT_APPLIED;
+			return replaced;
+		} finally {
+			fireAfterOperation(sampled, Operation.REPLACE_IF_EQUAL, key, outcome, start);
+		}
 	}
 
 	/**
@@ -121,7 +257,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public V replace(final K key, final V value) {
-		return this.nativeCache.replace(key, value);
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			return fromStored(storeReplace(key, value));
+		}
+		final long start = fireBeforeOperation(sampled, Operation.REPLACE, key);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			final V previous = storeReplace(key, value);
+			outcome = previous != null ? Outcome.APPLIED : Outcome.NOT_APPLIED;
+			return fromStored(previous);
+		} finally {
+			fireAfterOperation(sampled, Operation.REPLACE, key, outcome, start);
+		}
 	}
 
 	/**
@@ -129,7 +277,19 @@ public class SpringCache<K, V> implements Cache<K, V> {
 	 */
 	@Override
 	public void clear() {
-		this.nativeCache.clear();
+		final CacheOperationListener[] sampled = sampledListeners();
+		if (sampled == null) {
+			this.nativeCache.clear();
+			return;
+		}
+		final long start = fireBeforeOperation(sampled, Operation.CLEAR, null);
+		Outcome outcome = Outcome.FAILED;
+		try {
+			this.nativeCache.clear();
+			outcome = Outcome.APPLIED;
+		} finally {
+			fireAfterOperation(sampled, Operation.CLEAR, null, outcome, start);
+		}
 	}
 
 	/**
@@ -140,4 +300,274 @@ public class SpringCache<K, V> implements Cache<K, V> {
 		return "InfinispanCache [nativeCache = " + this.nativeCache + "]";
 	}
 
+	// ------------------------------------------------------------------------
+	// Negative caching
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Sets the lifespan in milliseconds of <code>null</code> values stored in this cache. A positive lifespan
+	 * turns on negative caching, a negative one - the default - turns it off. Without negative caching,
+	 * <code>null</code> values are passed on to the native cache as is.
+	 *
+	 * @param negativeCacheLifespan
+	 */
+	public void setNegativeCacheLifespan(final long negativeCacheLifespan) {
+		Assert.isTrue(negativeCacheLifespan != 0L, "negativeCacheLifespan must not be 0");
+		this.negativeCacheLifespan = negativeCacheLifespan;
+	}
+
+	/**
+	 * @return <code>true</code> if <code>null</code> values are stored as {@link NullValue
+	 *         <code>NullValue</code>}
+	 */
+	public boolean isNegativeCachingEnabled() {
+		return this.negativeCacheLifespan > 0L;
+	}
+
+	/**
+	 * @param value
+	 * @return {@link NullValue#INSTANCE} if <code>value</code> is <code>null</code> and negative caching is
+	 *         enabled, <code>value</code> otherwise
+	 */
+	@SuppressWarnings("unchecked")
+	protected final <T> T toStored(final T value) {
+		return (value == null) && isNegativeCachingEnabled() ? (T) NullValue.INSTANCE : value;
+	}
+
+	/**
+	 * @param stored
+	 * @return <code>null</code> if <code>stored</code> is a {@link NullValue <code>NullValue</code>},
+	 *         <code>stored</code> otherwise
+	 */
+	protected static <T> T fromStored(final T stored) {
+		return stored instanceof NullValue ? null : stored;
+	}
+
+	/**
+	 * Store a value buffered by a subclass in the native cache, applying negative caching and expiration just like
+	 * {@link #put(Object, Object)} does.
+	 *
+	 * @param key
+	 * @param value
+	 *            The value as passed in, i.e. <code>null</code> rather than {@link NullValue
+	 *            <code>NullValue</code>}
+	 */
+	protected final void store(final K key, final V value) {
+		storePut(key, value);
+	}
+
+	/**
+	 * @param value
+	 *            The value as passed in
+	 * @return <code>true</code> if <code>value</code> needs to be stored with a lifespan or max idle time of its
+	 *         own rather than as part of a bulk write
+	 */
+	protected final boolean expires(final V value) {
+		return (lifespanOf(value) > 0L) || (maxIdleOf(value) > 0L);
+	}
+
+	private V storePut(final K key, final V value) {
+		final long lifespan = granular(jittered(lifespanOf(value)));
+		final long maxIdle = granular(maxIdleOf(value));
+		if ((lifespan < 0L) && (maxIdle < 0L)) {
+			return this.nativeCache.put(key, toStored(value));
+		}
+		return this.nativeCache.put(key, toStored(value), lifespan, TimeUnit.MILLISECONDS, maxIdle,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private V storePutIfAbsent(final K key, final V value) {
+		final long lifespan = granular(jittered(lifespanOf(value)));
+		final long maxIdle = granular(maxIdleOf(value));
+		if ((lifespan < 0L) && (maxIdle < 0L)) {
+			return this.nativeCache.putIfAbsent(key, toStored(value));
+		}
+		return this.nativeCache.putIfAbsent(key, toStored(value), lifespan, TimeUnit.MILLISECONDS, maxIdle,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private V storeReplace(final K key, final V value) {
+		final long lifespan = granular(jittered(lifespanOf(value)));
+		final long maxIdle = granular(maxIdleOf(value));
+		if ((lifespan < 0L) && (maxIdle < 0L)) {
+			return this.nativeCache.replace(key, toStored(value));
+		}
+		return this.nativeCache.replace(key, toStored(value), lifespan, TimeUnit.MILLISECONDS, maxIdle,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private boolean storeReplace(final K key, final V oldValue, final V newValue) {
+		final long lifespan = granular(jittered(lifespanOf(newValue)));
+		final long maxIdle = granular(maxIdleOf(newValue));
+		if ((lifespan < 0L) && (maxIdle < 0L)) {
+			return this.nativeCache.replace(key, toStored(oldValue), toStored(newValue));
+		}
+		return this.nativeCache.replace(key, toStored(oldValue), toStored(newValue), lifespan,
+				TimeUnit.MILLISECONDS, maxIdle, TimeUnit.MILLISECONDS);
+	}
+
+	// ------------------------------------------------------------------------
+	// Expiration
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Sets the lifespan in milliseconds of values stored in this cache that do not carry a lifespan of their own
+	 * by implementing {@link Expirable <code>Expirable</code>}. A negative lifespan - the default - leaves
+	 * expiration to the native cache's configuration.
+	 *
+	 * @param defaultLifespan
+	 */
+	public void setDefaultLifespan(final long defaultLifespan) {
+		Assert.isTrue(defaultLifespan != 0L, "defaultLifespan must not be 0");
+		this.defaultLifespan = defaultLifespan;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which values stored in this cache expire if they have not been
+	 * accessed. A negative max idle time - the default - leaves this to the native cache's configuration. It does
+	 * not apply to <code>null</code> values stored in {@link #setNegativeCacheLifespan(long) negative caching}
+	 * mode.
+	 *
+	 * @param defaultMaxIdle
+	 */
+	public void setDefaultMaxIdle(final long defaultMaxIdle) {
+		Assert.isTrue(defaultMaxIdle != 0L, "defaultMaxIdle must not be 0");
+		this.defaultMaxIdle = defaultMaxIdle;
+	}
+
+	/**
+	 * Sets the fraction, between 0 and 1, by which the lifespan of each value stored is randomly shortened, so
+	 * that entries written together do not expire together. Given a jitter of 0.1, a value with a lifespan of
+	 * 60 seconds will expire after between 54 and 60 seconds. Defaults to 0, i.e. no jitter.
+	 *
+	 * @param lifespanJitter
+	 */
+	public void setLifespanJitter(final double lifespanJitter) {
+		Assert.isTrue((lifespanJitter >= 0.0D) && (lifespanJitter < 1.0D), "lifespanJitter must be in [0, 1)");
+		this.lifespanJitter = lifespanJitter;
+	}
+
+	/**
+	 * Tells this cache that its native cache only supports lifespans and max idle times in whole seconds, as a
+	 * HotRod <code>RemoteCache</code> does. These are then rounded up to the next second instead of being
+	 * truncated, which would turn anything shorter than a second into 0, i.e. no expiration at all.
+	 *
+	 * @param wholeSecondExpiration
+	 */
+	void setWholeSecondExpiration(final boolean wholeSecondExpiration) {
+		this.wholeSecondExpiration = wholeSecondExpiration;
+	}
+
+	private long lifespanOf(final V value) {
+		if (value == null) {
+			return isNegativeCachingEnabled() ? this.negativeCacheLifespan : this.defaultLifespan;
+		}
+		if (value instanceof Expirable) {
+			final long lifespan = ((Expirable) value).getLifespan();
+			if (lifespan > 0L) {
+				return lifespan;
+			}
+		}
+		return this.defaultLifespan;
+	}
+
+	private long maxIdleOf(final V value) {
+		return (value == null) && isNegativeCachingEnabled() ? -1L : this.defaultMaxIdle;
+	}
+
+	private long jittered(final long lifespan) {
+		final double jitter = this.lifespanJitter;
+		if ((lifespan <= 0L) || (jitter == 0.0D)) {
+			return lifespan;
+		}
+		return Math.max(1L, lifespan - (long) (lifespan * jitter * JITTER.nextDouble()));
+	}
+
+	private long granular(final long millis) {
+		if ((millis <= 0L) || !this.wholeSecondExpiration) {
+			return millis;
+		}
+		return (millis + 999L) / 1000L * 1000L;
+	}
+
+	// ------------------------------------------------------------------------
+	// Operation listeners
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Sets the {@link org.infinispan.spring.spi.CacheOperationListener <code>CacheOperationListeners</code>} to
+	 * notify of operations on this cache, replacing any listeners set before. They are notified in iteration
+	 * order. Passing <code>null</code> or an empty collection removes all listeners.
+	 *
+	 * @param operationListeners
+	 */
+	public void setOperationListeners(final Collection<? extends CacheOperationListener> operationListeners) {
+		this.listeners = (operationListeners != null) && !operationListeners.isEmpty() ? operationListeners
+				.toArray(new CacheOperationListener[operationListeners.size()]) : NO_LISTENERS;
+	}
+
+	/**
+	 * Sets how many operations pass for each one that is reported to this cache's
+	 * {@link #setOperationListeners(Collection) listeners}. The default of <code>1</code> reports every operation.
+	 *
+	 * @param samplingInterval
+	 */
+	public void setSamplingInterval(final int samplingInterval) {
+		Assert.isTrue(samplingInterval > 0, "samplingInterval must be positive, was [" + samplingInterval + "]");
+		this.samplingInterval = samplingInterval;
+	}
+
+	/**
+	 * Have this cache count operations for sampling on <code>operationCount</code>, shared with other instances
+	 * wrapping the same native cache. A <code>CacheManager</code> handing out a new instance per call to
+	 * <code>getCache()</code> needs to do so, as each instance would otherwise see too few operations to ever
+	 * sample one.
+	 *
+	 * @param operationCount
+	 */
+	void setOperationCount(final AtomicLong operationCount) {
+		Assert.notNull(operationCount, "operationCount must not be null");
+		this.operationCount = operationCount;
+	}
+
+	/**
+	 * @return The listeners to notify of the current operation, or <code>null</code> if it is not to be reported
+	 */
+	private CacheOperationListener[] sampledListeners() {
+		final CacheOperationListener[] current = this.listeners;
+		if (current.length == 0) {
+			return null;
+		}
+		final int interval = this.samplingInterval;
+		if ((interval > 1) && ((this.operationCount.incrementAndGet() % interval) != 0L)) {
+			return null;
+		}
+		return current;
+	}
+
+	private long fireBeforeOperation(final CacheOperationListener[] sampled, final Operation operation,
+			final Object key) {
+		for (final CacheOperationListener listener : sampled) {
+			try {
+				listener.beforeOperation(this, operation, key);
+			} catch (final RuntimeException e) {
+				this.logger.warn("CacheOperationListener [" + listener + "] failed before operation [" + operation
+						+ "] on cache [" + getName() + "]: " + e.getMessage(), e);
+			}
+		}
+		return System.nanoTime();
+	}
+
+	private void fireAfterOperation(final CacheOperationListener[] sampled, final Operation operation,
+			final Object key, final Outcome outcome, final long start) {
+		final long durationNanos = System.nanoTime() - start;
+		for (final CacheOperationListener listener : sampled) {
+			try {
+				listener.afterOperation(this, operation, key, outcome, durationNanos);
+			} catch (final RuntimeException e) {
+				this.logger.warn("CacheOperationListener [" + listener + "] failed after operation [" + operation
+						+ "] on cache [" + getName() + "]: " + e.getMessage(), e);
+			}
+		}
+	}
 }
@@ -19,8 +19,19 @@
 
 package org.infinispan.spring.spi;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.infinispan.manager.CacheContainer;
 import org.infinispan.manager.EmbeddedCacheManager;
 import org.springframework.cache.CacheManager;
 import org.springframework.util.Assert;
@@ -45,17 +56,115 @@ public class SpringEmbeddedCacheManager implements CacheManager {
 
 	private final EmbeddedCacheManager nativeCacheManager;
 
+	private final SlowOperationLogger slowOperationLogger = new SlowOperationLogger();
+
+	private final CacheEventRecorder cacheEventRecorder;
+
+	private final ConcurrentMap<String, SpringCache<?, ?>> batchLoadingCaches = new ConcurrentHashMap<String, SpringCache<?, ?>>();
+
+	private final ConcurrentMap<String, AtomicLong> operationCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+	private boolean transactionAware;
+
+	private Map<String, List<CacheOperationListener>> cacheOperationListeners = Collections.emptyMap();
+
+	private int cacheOperationSamplingInterval = 1;
+
+	private Map<String, Long> negativeCacheLifespans = Collections.emptyMap();
+
+	private Map<String, Long> defaultLifespans = Collections.emptyMap();
+
+	private Map<String, Long> defaultMaxIdles = Collections.emptyMap();
+
+	private double lifespanJitter;
+
+	private Map<String, BulkLoader<?, ?>> bulkLoaders = Collections.emptyMap();
+
+	private long bulkLoadBatchWindow = BatchLoadingSpringCache.DEFAULT_BATCH_WINDOW;
+
+	private int bulkLoadMaxBatchSize = BatchLoadingSpringCache.DEFAULT_MAX_BATCH_SIZE;
+
 	/**
 	 * @param nativeCacheManager
 	 */
 	public SpringEmbeddedCacheManager(final EmbeddedCacheManager nativeCacheManager) {
+		this(nativeCacheManager, new CacheEventRecorder());
+	}
+
+	SpringEmbeddedCacheManager(final EmbeddedCacheManager nativeCacheManager,
+			final CacheEventRecorder cacheEventRecorder) {
 		Assert.notNull(nativeCacheManager, "A non-null instance of EmbeddedCacheManager needs to be supplied");
 		this.nativeCacheManager = nativeCacheManager;
+		this.cacheEventRecorder = cacheEventRecorder;
 	}
 
 	@Override
 	public <K, V> SpringCache<K, V> getCache(final String name) {
-		return new SpringCache<K, V>(this.nativeCacheManager.<K, V> getCache(name));
+		if (this.bulkLoaders.containsKey(name)) {
+			return getBatchLoadingCache(name);
+		}
+		return createCache(name);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <K, V> SpringCache<K, V> getBatchLoadingCache(final String name) {
+		final SpringCache<K, V> existing = (SpringCache<K, V>) this.batchLoadingCaches.get(name);
+		if (existing != null) {
+			return existing;
+		}
+		// A batch is collected per instance, so all callers need to share the same one
+		synchronized (this.batchLoadingCaches) {
+			final SpringCache<K, V> raced = (SpringCache<K, V>) this.batchLoadingCaches.get(name);
+			if (raced != null) {
+				return raced;
+			}
+			final SpringCache<K, V> created = createCache(name);
+			this.batchLoadingCaches.put(name, created);
+			return created;
+		}
+	}
+
+	private <K, V> SpringCache<K, V> createCache(final String name) {
+		final boolean starting = !this.nativeCacheManager.isRunning(name);
+		final long started = System.nanoTime();
+		final org.infinispan.Cache<K, V> nativeCache = this.nativeCacheManager.<K, V> getCache(name);
+		if (starting) {
+			this.cacheEventRecorder.recordCacheCreated(name, started);
+		}
+		final SpringCache<K, V> cache = newSpringCache(name, nativeCache);
+		final Long negativeCacheLifespan = this.negativeCacheLifespans.get(name);
+		if (negativeCacheLifespan != null) {
+			cache.setNegativeCacheLifespan(negativeCacheLifespan.longValue());
+		}
+		final Long defaultLifespan = this.defaultLifespans.get(name);
+		if (defaultLifespan != null) {
+			cache.setDefaultLifespan(defaultLifespan.longValue());
+		}
+		final Long defaultMaxIdle = this.defaultMaxIdles.get(name);
+		if (defaultMaxIdle != null) {
+			cache.setDefaultMaxIdle(defaultMaxIdle.longValue());
+		}
+		cache.setLifespanJitter(this.lifespanJitter);
+		final List<CacheOperationListener> listeners = operationListenersFor(name);
+		if (!listeners.isEmpty()) {
+			cache.setOperationListeners(listeners);
+			cache.setSamplingInterval(this.cacheOperationSamplingInterval);
+			cache.setOperationCount(operationCountFor(name));
+		}
+		return cache;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <K, V> SpringCache<K, V> newSpringCache(final String name, final org.infinispan.Cache<K, V> nativeCache) {
+		final BulkLoader<K, V> bulkLoader = (BulkLoader<K, V>) this.bulkLoaders.get(name);
+		if (bulkLoader != null) {
+			final BatchLoadingSpringCache<K, V> cache = new BatchLoadingSpringCache<K, V>(nativeCache, bulkLoader);
+			cache.setBatchWindow(this.bulkLoadBatchWindow);
+			cache.setMaxBatchSize(this.bulkLoadMaxBatchSize);
+			return cache;
+		}
+		return this.transactionAware ? new TransactionAwareSpringCache<K, V>(nativeCache,
+				nativeCache.getConfiguration().isInvocationBatchingEnabled()) : new SpringCache<K, V>(nativeCache);
 	}
 
 	@Override
@@ -74,11 +183,227 @@ public class SpringEmbeddedCacheManager implements CacheManager {
 		return this.nativeCacheManager;
 	}
 
+	/**
+	 * Take a {@link org.infinispan.spring.spi.CacheMetricsSnapshot <code>CacheMetricsSnapshot</code>} of the
+	 * statistics of every cache currently running in the backing <code>EmbeddedCacheManager</code>. Caches that
+	 * have been defined but not yet started are skipped rather than started.
+	 * 
+	 * @return An immutable <code>CacheMetricsSnapshot</code>
+	 */
+	public CacheMetricsSnapshot getMetricsSnapshot() {
+		final long takenAt = System.currentTimeMillis();
+		final Collection<String> cacheNames = new LinkedHashSet<String>();
+		cacheNames.add(CacheContainer.DEFAULT_CACHE_NAME);
+		cacheNames.addAll(this.nativeCacheManager.getCacheNames());
+		final Map<String, CacheMetricsSnapshot.CacheMetrics> cacheMetrics = new LinkedHashMap<String, CacheMetricsSnapshot.CacheMetrics>();
+		for (final String cacheName : cacheNames) {
+			if (this.nativeCacheManager.isRunning(cacheName)) {
+				cacheMetrics.put(cacheName,
+						CacheMetricsSnapshot.CacheMetrics.of(this.nativeCacheManager.getCache(cacheName)));
+			}
+		}
+		return new CacheMetricsSnapshot(takenAt, cacheMetrics);
+	}
+
 	/**
 	 * Stop the {@link EmbeddedCacheManager <code>EmbeddedCacheManager</code>} this <code>CacheManager</code>
 	 * delegates to. 
 	 */
 	public void stop() {
 		this.nativeCacheManager.stop();
+		this.batchLoadingCaches.clear();
+	}
+
+	/**
+	 * Sets whether the <code>Caches</code> returned by this <code>CacheManager</code> defer writes made within a
+	 * Spring-managed transaction until that transaction has committed. Writes are then applied within one
+	 * INFINISPAN batch if invocation batching is enabled for the cache.
+	 * 
+	 * @param transactionAware
+	 * @see org.infinispan.spring.spi.TransactionAwareSpringCache
+	 */
+	public void setTransactionAware(final boolean transactionAware) {
+		this.transactionAware = transactionAware;
+	}
+
+	/**
+	 * Turns on negative caching for the <code>Caches</code> named, storing <code>null</code> values with the
+	 * lifespan in milliseconds given for each cache name.
+	 * 
+	 * @param negativeCacheLifespans
+	 * @see org.infinispan.spring.spi.SpringCache#setNegativeCacheLifespan(long)
+	 */
+	public void setNegativeCacheLifespans(final Map<String, Long> negativeCacheLifespans) {
+		this.negativeCacheLifespans = negativeCacheLifespans != null ? new HashMap<String, Long>(
+				negativeCacheLifespans) : Collections.<String, Long> emptyMap();
+	}
+
+	/**
+	 * Sets the lifespan in milliseconds of values stored in the <code>Caches</code> named, keyed by cache name,
+	 * unless a value carries a lifespan of its own.
+	 * 
+	 * @param defaultLifespans
+	 * @see org.infinispan.spring.spi.SpringCache#setDefaultLifespan(long)
+	 */
+	public void setDefaultLifespans(final Map<String, Long> defaultLifespans) {
+		this.defaultLifespans = defaultLifespans != null ? new HashMap<String, Long>(defaultLifespans)
+				: Collections.<String, Long> emptyMap();
+	}
+
+	/**
+	 * Sets the max idle time in milliseconds of values stored in the <code>Caches</code> named, keyed by cache
+	 * name.
+	 * 
+	 * @param defaultMaxIdles
+	 * @see org.infinispan.spring.spi.SpringCache#setDefaultMaxIdle(long)
+	 */
+	public void setDefaultMaxIdles(final Map<String, Long> defaultMaxIdles) {
+		this.defaultMaxIdles = defaultMaxIdles != null ? new HashMap<String, Long>(defaultMaxIdles)
+				: Collections.<String, Long> emptyMap();
+	}
+
+	/**
+	 * @param lifespanJitter
+	 * @see org.infinispan.spring.spi.SpringCache#setLifespanJitter(double)
+	 */
+	public void setLifespanJitter(final double lifespanJitter) {
+		Assert.isTrue((lifespanJitter >= 0.0D) && (lifespanJitter < 1.0D), "lifespanJitter must be in [0, 1)");
+		this.lifespanJitter = lifespanJitter;
+	}
+
+	/**
+	 * Sets the {@link org.infinispan.spring.spi.BulkLoader <code>BulkLoaders</code>} loading missing values into
+	 * the <code>Caches</code> named, keyed by cache name. These caches are returned as
+	 * {@link org.infinispan.spring.spi.BatchLoadingSpringCache <code>BatchLoadingSpringCaches</code>}, which are
+	 * not transaction aware. Only one such instance is created per cache name, so that misses by different callers
+	 * are loaded in the same batch.
+	 * 
+	 * @param bulkLoaders
+	 */
+	public void setBulkLoaders(final Map<String, ? extends BulkLoader<?, ?>> bulkLoaders) {
+		this.bulkLoaders = bulkLoaders != null ? new HashMap<String, BulkLoader<?, ?>>(bulkLoaders) : Collections
+				.<String, BulkLoader<?, ?>> emptyMap();
+	}
+
+	/**
+	 * @param bulkLoadBatchWindow
+	 * @see org.infinispan.spring.spi.BatchLoadingSpringCache#setBatchWindow(long)
+	 */
+	public void setBulkLoadBatchWindow(final long bulkLoadBatchWindow) {
+		Assert.isTrue(bulkLoadBatchWindow >= 0L, "bulkLoadBatchWindow must not be negative");
+		this.bulkLoadBatchWindow = bulkLoadBatchWindow;
+	}
+
+	/**
+	 * @param bulkLoadMaxBatchSize
+	 * @see org.infinispan.spring.spi.BatchLoadingSpringCache#setMaxBatchSize(int)
+	 */
+	public void setBulkLoadMaxBatchSize(final int bulkLoadMaxBatchSize) {
+		Assert.isTrue(bulkLoadMaxBatchSize > 0, "bulkLoadMaxBatchSize must be positive");
+		this.bulkLoadMaxBatchSize = bulkLoadMaxBatchSize;
+	}
+
+	/**
+	 * Sets the {@link org.infinispan.spring.spi.CacheOperationListener <code>CacheOperationListeners</code>} to
+	 * register with the <code>Caches</code> returned by this <code>CacheManager</code>, keyed by cache name.
+	 * 
+	 * @param cacheOperationListeners
+	 * @see org.infinispan.spring.spi.SpringCache#setOperationListeners(Collection)
+	 */
+	public void setCacheOperationListeners(
+			final Map<String, ? extends Collection<? extends CacheOperationListener>> cacheOperationListeners) {
+		final Map<String, List<CacheOperationListener>> copy = new HashMap<String, List<CacheOperationListener>>();
+		if (cacheOperationListeners != null) {
+			for (final Map.Entry<String, ? extends Collection<? extends CacheOperationListener>> entry : cacheOperationListeners
+					.entrySet()) {
+				copy.put(entry.getKey(), new ArrayList<CacheOperationListener>(entry.getValue()));
+			}
+		}
+		this.cacheOperationListeners = copy;
+	}
+
+	/**
+	 * Sets how many operations pass for each one that is reported to the listeners. Operations are counted per
+	 * cache name, across all <code>Caches</code> returned for that name.
+	 * 
+	 * @param cacheOperationSamplingInterval
+	 * @see org.infinispan.spring.spi.SpringCache#setSamplingInterval(int)
+	 */
+	public void setCacheOperationSamplingInterval(final int cacheOperationSamplingInterval) {
+		this.cacheOperationSamplingInterval = cacheOperationSamplingInterval;
+	}
+
+	/**
+	 * Operations are sampled per cache name rather than per instance, as a new instance is returned by each call
+	 * to {@link #getCache(String)}.
+	 */
+	private AtomicLong operationCountFor(final String name) {
+		final AtomicLong existing = this.operationCounts.get(name);
+		if (existing != null) {
+			return existing;
+		}
+		final AtomicLong created = new AtomicLong(0);
+		final AtomicLong raced = this.operationCounts.putIfAbsent(name, created);
+		return raced != null ? raced : created;
+	}
+
+	private List<CacheOperationListener> operationListenersFor(final String name) {
+		final List<CacheOperationListener> registered = this.cacheOperationListeners.get(name);
+		final boolean slowOperationLogEnabled = this.slowOperationLogger.isEnabledFor(name);
+		final boolean cacheEventsEnabled = this.cacheEventRecorder.isEnabled();
+		if (!slowOperationLogEnabled && !cacheEventsEnabled) {
+			return registered != null ? registered : Collections.<CacheOperationListener> emptyList();
+		}
+		final List<CacheOperationListener> listeners = new ArrayList<CacheOperationListener>();
+		if (registered != null) {
+			listeners.addAll(registered);
+		}
+		if (slowOperationLogEnabled) {
+			listeners.add(this.slowOperationLogger);
+		}
+		if (cacheEventsEnabled) {
+			listeners.add(this.cacheEventRecorder);
+		}
+		return listeners;
+	}
+
+	/**
+	 * Sets the duration in milliseconds from which on an operation on any of the <code>Caches</code> returned by
+	 * this <code>CacheManager</code> is logged as slow, unless a threshold of its own has been
+	 * {@link #setSlowOperationThresholds(Map) set} for that cache. Note that operations not
+	 * {@link #setCacheOperationSamplingInterval(int) sampled} are not checked either.
+	 * 
+	 * @param slowOperationThreshold
+	 * @see org.infinispan.spring.spi.SlowOperationLogger#setDefaultThreshold(Long)
+	 */
+	public void setSlowOperationThreshold(final Long slowOperationThreshold) {
+		this.slowOperationLogger.setDefaultThreshold(slowOperationThreshold);
+	}
+
+	/**
+	 * @param slowOperationThresholds
+	 * @see org.infinispan.spring.spi.SlowOperationLogger#setThresholds(Map)
+	 */
+	public void setSlowOperationThresholds(final Map<String, Long> slowOperationThresholds) {
+		this.slowOperationLogger.setThresholds(slowOperationThresholds);
+	}
+
+	/**
+	 * @param maxSlowOperationLogsPerMinute
+	 * @see org.infinispan.spring.spi.SlowOperationLogger#setMaxLogsPerMinute(int)
+	 */
+	public void setMaxSlowOperationLogsPerMinute(final int maxSlowOperationLogsPerMinute) {
+		this.slowOperationLogger.setMaxLogsPerMinute(maxSlowOperationLogsPerMinute);
+	}
+
+	/**
+	 * Sets the duration in milliseconds from which on an operation on any of the <code>Caches</code> returned by
+	 * this <code>CacheManager</code> is recorded as an event, provided that event recording is enabled.
+	 * 
+	 * @param cacheEventThreshold
+	 * @see org.infinispan.spring.spi.CacheEventRecorder#setThreshold(long)
+	 */
+	public void setCacheEventThreshold(final long cacheEventThreshold) {
+		this.cacheEventRecorder.setThreshold(cacheEventThreshold);
 	}
 }
@@ -19,8 +19,14 @@
 
 package org.infinispan.spring.spi;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
 import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.spring.AbstractInfinispanEmbeddedCacheManagerBackedCacheManagerFactory;
+import org.infinispan.spring.support.embedded.snapshot.CacheSnapshot;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
@@ -69,6 +75,42 @@ public class SpringEmbeddedCacheManagerFactoryBean extends
 
 	private SpringEmbeddedCacheManager cacheManager;
 
+	private File snapshotDirectory;
+
+	private Collection<String> snapshotCacheNames;
+
+	private Integer snapshotReaders;
+
+	private boolean transactionAware;
+
+	private boolean invocationBatchingEnabledSet;
+
+	private Map<String, ? extends Collection<? extends CacheOperationListener>> cacheOperationListeners;
+
+	private int cacheOperationSamplingInterval = 1;
+
+	private Long slowOperationThreshold;
+
+	private Map<String, Long> slowOperationThresholds;
+
+	private int maxSlowOperationLogsPerMinute = SlowOperationLogger.DEFAULT_MAX_LOGS_PER_MINUTE;
+
+	private long cacheEventThreshold = CacheEventRecorder.DEFAULT_THRESHOLD;
+
+	private Map<String, Long> negativeCacheLifespans;
+
+	private Map<String, Long> defaultLifespans;
+
+	private Map<String, Long> defaultMaxIdles;
+
+	private double lifespanJitter;
+
+	private Map<String, ? extends BulkLoader<?, ?>> bulkLoaders;
+
+	private long bulkLoadBatchWindow = BatchLoadingSpringCache.DEFAULT_BATCH_WINDOW;
+
+	private int bulkLoadMaxBatchSize = BatchLoadingSpringCache.DEFAULT_MAX_BATCH_SIZE;
+
 	// ------------------------------------------------------------------------
 	// org.springframework.beans.factory.InitializingBean
 	// ------------------------------------------------------------------------
@@ -80,8 +122,29 @@ public class SpringEmbeddedCacheManagerFactoryBean extends
 	public void afterPropertiesSet() throws Exception {
 		this.logger.info("Initializing SpringEmbeddedCacheManager instance ...");
 
+		if (this.transactionAware && !this.invocationBatchingEnabledSet) {
+			// Lets each transaction's writes be applied in a single batch
+			this.configurationOverrides.setInvocationBatchingEnabled(Boolean.TRUE);
+		}
 		final EmbeddedCacheManager nativeEmbeddedCacheManager = createBackingEmbeddedCacheManager();
 		this.cacheManager = new SpringEmbeddedCacheManager(nativeEmbeddedCacheManager);
+		this.cacheManager.setTransactionAware(this.transactionAware);
+		this.cacheManager.setCacheOperationListeners(this.cacheOperationListeners);
+		this.cacheManager.setCacheOperationSamplingInterval(this.cacheOperationSamplingInterval);
+		this.cacheManager.setSlowOperationThreshold(this.slowOperationThreshold);
+		this.cacheManager.setSlowOperationThresholds(this.slowOperationThresholds);
+		this.cacheManager.setMaxSlowOperationLogsPerMinute(this.maxSlowOperationLogsPerMinute);
+		this.cacheManager.setCacheEventThreshold(this.cacheEventThreshold);
+		this.cacheManager.setNegativeCacheLifespans(this.negativeCacheLifespans);
+		this.cacheManager.setDefaultLifespans(this.defaultLifespans);
+		this.cacheManager.setDefaultMaxIdles(this.defaultMaxIdles);
+		this.cacheManager.setLifespanJitter(this.lifespanJitter);
+		this.cacheManager.setBulkLoaders(this.bulkLoaders);
+		this.cacheManager.setBulkLoadBatchWindow(this.bulkLoadBatchWindow);
+		this.cacheManager.setBulkLoadMaxBatchSize(this.bulkLoadMaxBatchSize);
+		if (isWarmRestartEnabled()) {
+			restoreSnapshots(nativeEmbeddedCacheManager);
+		}
 
 		this.logger.info("Successfully initialized SpringEmbeddedCacheManager instance [" + this.cacheManager + "]");
 	}
@@ -132,7 +195,246 @@ public class SpringEmbeddedCacheManagerFactoryBean extends
 	public void destroy() throws Exception {
 		// Probably being paranoid here ...
 		if (this.cacheManager != null) {
+			if (isWarmRestartEnabled()) {
+				saveSnapshots(this.cacheManager.getNativeCacheManager());
+			}
 			this.cacheManager.stop();
 		}
+		unregisterStartupTimingReport();
+	}
+
+	// ------------------------------------------------------------------------
+	// Transaction awareness
+	// ------------------------------------------------------------------------
+
+	/**
+	 * <p>
+	 * Sets whether the <code>SpringEmbeddedCacheManager</code>'s caches defer writes made within a Spring-managed
+	 * transaction until that transaction has committed. Unless {@link #setInvocationBatchingEnabled(Boolean)
+	 * <code>invocationBatchingEnabled</code>} is set explicitly, this also enables invocation batching, so that
+	 * each transaction's writes are applied in a single batch.
+	 * </p>
+	 * 
+	 * @param transactionAware
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setTransactionAware(boolean)
+	 */
+	public void setTransactionAware(final boolean transactionAware) {
+		this.transactionAware = transactionAware;
+	}
+
+	/**
+	 * @see org.infinispan.spring.AbstractInfinispanEmbeddedCacheManagerBackedCacheManagerFactory#setInvocationBatchingEnabled(java.lang.Boolean)
+	 */
+	@Override
+	public void setInvocationBatchingEnabled(final Boolean invocationBatchingEnabled) {
+		super.setInvocationBatchingEnabled(invocationBatchingEnabled);
+		this.invocationBatchingEnabledSet = true;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for operation listeners
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param cacheOperationListeners
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setCacheOperationListeners(java.util.Map)
+	 */
+	public void setCacheOperationListeners(
+			final Map<String, ? extends Collection<? extends CacheOperationListener>> cacheOperationListeners) {
+		this.cacheOperationListeners = cacheOperationListeners;
+	}
+
+	/**
+	 * @param cacheOperationSamplingInterval
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setCacheOperationSamplingInterval(int)
+	 */
+	public void setCacheOperationSamplingInterval(final int cacheOperationSamplingInterval) {
+		this.cacheOperationSamplingInterval = cacheOperationSamplingInterval;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for slow operation log
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param slowOperationThreshold
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setSlowOperationThreshold(java.lang.Long)
+	 */
+	public void setSlowOperationThreshold(final Long slowOperationThreshold) {
+		this.slowOperationThreshold = slowOperationThreshold;
+	}
+
+	/**
+	 * @param slowOperationThresholds
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setSlowOperationThresholds(java.util.Map)
+	 */
+	public void setSlowOperationThresholds(final Map<String, Long> slowOperationThresholds) {
+		this.slowOperationThresholds = slowOperationThresholds;
+	}
+
+	/**
+	 * @param maxSlowOperationLogsPerMinute
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setMaxSlowOperationLogsPerMinute(int)
+	 */
+	public void setMaxSlowOperationLogsPerMinute(final int maxSlowOperationLogsPerMinute) {
+		this.maxSlowOperationLogsPerMinute = maxSlowOperationLogsPerMinute;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for cache events
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param cacheEventThreshold
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setCacheEventThreshold(long)
+	 */
+	public void setCacheEventThreshold(final long cacheEventThreshold) {
+		this.cacheEventThreshold = cacheEventThreshold;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for negative caching
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param negativeCacheLifespans
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setNegativeCacheLifespans(java.util.Map)
+	 */
+	public void setNegativeCacheLifespans(final Map<String, Long> negativeCacheLifespans) {
+		this.negativeCacheLifespans = negativeCacheLifespans;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for expiration
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param defaultLifespans
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setDefaultLifespans(java.util.Map)
+	 */
+	public void setDefaultLifespans(final Map<String, Long> defaultLifespans) {
+		this.defaultLifespans = defaultLifespans;
+	}
+
+	/**
+	 * @param defaultMaxIdles
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setDefaultMaxIdles(java.util.Map)
+	 */
+	public void setDefaultMaxIdles(final Map<String, Long> defaultMaxIdles) {
+		this.defaultMaxIdles = defaultMaxIdles;
+	}
+
+	/**
+	 * @param lifespanJitter
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setLifespanJitter(double)
+	 */
+	public void setLifespanJitter(final double lifespanJitter) {
+		this.lifespanJitter = lifespanJitter;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for bulk loading
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param bulkLoaders
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setBulkLoaders(java.util.Map)
+	 */
+	public void setBulkLoaders(final Map<String, ? extends BulkLoader<?, ?>> bulkLoaders) {
+		this.bulkLoaders = bulkLoaders;
+	}
+
+	/**
+	 * @param bulkLoadBatchWindow
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setBulkLoadBatchWindow(long)
+	 */
+	public void setBulkLoadBatchWindow(final long bulkLoadBatchWindow) {
+		this.bulkLoadBatchWindow = bulkLoadBatchWindow;
+	}
+
+	/**
+	 * @param bulkLoadMaxBatchSize
+	 * @see org.infinispan.spring.spi.SpringEmbeddedCacheManager#setBulkLoadMaxBatchSize(int)
+	 */
+	public void setBulkLoadMaxBatchSize(final int bulkLoadMaxBatchSize) {
+		this.bulkLoadMaxBatchSize = bulkLoadMaxBatchSize;
+	}
+
+	// ------------------------------------------------------------------------
+	// Warm restart
+	// ------------------------------------------------------------------------
+
+	private boolean isWarmRestartEnabled() {
+		return (this.snapshotDirectory != null) && (this.snapshotCacheNames != null);
+	}
+
+	private CacheSnapshot createCacheSnapshot() {
+		final CacheSnapshot cacheSnapshot = new CacheSnapshot(this.snapshotDirectory);
+		if (this.snapshotReaders != null) {
+			cacheSnapshot.setParts(this.snapshotReaders.intValue());
+		}
+		return cacheSnapshot;
+	}
+
+	private void restoreSnapshots(final EmbeddedCacheManager nativeEmbeddedCacheManager) throws InterruptedException {
+		final CacheSnapshot cacheSnapshot = createCacheSnapshot();
+		for (final String cacheName : this.snapshotCacheNames) {
+			try {
+				cacheSnapshot.restore(nativeEmbeddedCacheManager.getCache(cacheName));
+			} catch (final IOException e) {
+				this.logger.error("Failed to restore cache [" + cacheName + "] from snapshot - starting cold: "
+						+ e.getMessage(), e);
+			}
+		}
+	}
+
+	private void saveSnapshots(final EmbeddedCacheManager nativeEmbeddedCacheManager) {
+		final CacheSnapshot cacheSnapshot = createCacheSnapshot();
+		for (final String cacheName : this.snapshotCacheNames) {
+			try {
+				cacheSnapshot.save(nativeEmbeddedCacheManager.getCache(cacheName));
+			} catch (final IOException e) {
+				this.logger.error("Failed to save snapshot of cache [" + cacheName + "]: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for warm restart
+	// ------------------------------------------------------------------------
+
+	/**
+	 * <p>
+	 * Sets the directory to keep cache snapshots in. If both this and {@link #setSnapshotCacheNames(Collection)
+	 * <code>snapshotCacheNames</code>} are set, the local content of each listed cache is saved to a snapshot when
+	 * this <code>FactoryBean</code> is {@link #destroy() destroyed}, and restored - honoring remaining lifespans -
+	 * when it is next {@link #afterPropertiesSet() initialized}. Only caches in <code>LOCAL</code> mode are
+	 * saved and restored, clustered caches being skipped.
+	 * </p>
+	 * 
+	 * @param snapshotDirectory
+	 * @see org.infinispan.spring.support.embedded.snapshot.CacheSnapshot
+	 */
+	public void setSnapshotDirectory(final File snapshotDirectory) {
+		this.snapshotDirectory = snapshotDirectory;
+	}
+
+	/**
+	 * @param snapshotCacheNames
+	 *            The names of the caches to snapshot
+	 * @see #setSnapshotDirectory(File)
+	 */
+	public void setSnapshotCacheNames(final Collection<String> snapshotCacheNames) {
+		this.snapshotCacheNames = snapshotCacheNames;
+	}
+
+	/**
+	 * @param snapshotReaders
+	 *            The number of threads restoring a cache's snapshot in parallel. Defaults to the number of
+	 *            available processors.
+	 * @see #setSnapshotDirectory(File)
+	 */
+	public void setSnapshotReaders(final Integer snapshotReaders) {
+		this.snapshotReaders = snapshotReaders;
 	}
 }
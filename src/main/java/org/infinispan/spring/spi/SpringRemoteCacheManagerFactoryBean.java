@@ -19,6 +19,10 @@
 
 package org.infinispan.spring.spi;
 
+import static org.infinispan.client.hotrod.impl.ConfigurationProperties.SERVER_LIST;
+
+import java.util.Collection;
+import java.util.Map;
 import java.util.Properties;
 
 import org.infinispan.client.hotrod.RemoteCacheManager;
@@ -72,6 +76,42 @@ public class SpringRemoteCacheManagerFactoryBean extends AbstractInfinispanRemot
 
 	private SpringRemoteCacheManager springRemoteCacheManager;
 
+	private Collection<String> writeBehindCacheNames;
+
+	private long writeBehindFlushInterval = WriteBehindSpringCache.DEFAULT_FLUSH_INTERVAL;
+
+	private int writeBehindMaxBufferedEntries = WriteBehindSpringCache.DEFAULT_MAX_BUFFERED_ENTRIES;
+
+	private int writeBehindMaxBatchSize = WriteBehindSpringCache.DEFAULT_MAX_BATCH_SIZE;
+
+	private boolean transactionAware;
+
+	private Map<String, ? extends Collection<? extends CacheOperationListener>> cacheOperationListeners;
+
+	private int cacheOperationSamplingInterval = 1;
+
+	private Long slowOperationThreshold;
+
+	private Map<String, Long> slowOperationThresholds;
+
+	private int maxSlowOperationLogsPerMinute = SlowOperationLogger.DEFAULT_MAX_LOGS_PER_MINUTE;
+
+	private long cacheEventThreshold = CacheEventRecorder.DEFAULT_THRESHOLD;
+
+	private Map<String, Long> negativeCacheLifespans;
+
+	private Map<String, Long> defaultLifespans;
+
+	private Map<String, Long> defaultMaxIdles;
+
+	private double lifespanJitter;
+
+	private Map<String, ? extends BulkLoader<?, ?>> bulkLoaders;
+
+	private long bulkLoadBatchWindow = BatchLoadingSpringCache.DEFAULT_BATCH_WINDOW;
+
+	private int bulkLoadMaxBatchSize = BatchLoadingSpringCache.DEFAULT_MAX_BATCH_SIZE;
+
 	// ------------------------------------------------------------------------
 	// org.springframework.beans.factory.InitializingBean
 	// ------------------------------------------------------------------------
@@ -83,10 +123,32 @@ public class SpringRemoteCacheManagerFactoryBean extends AbstractInfinispanRemot
 	public void afterPropertiesSet() throws Exception {
 		assertCorrectlyConfigured();
 		this.logger.info("Creating new instance of RemoteCacheManager ...");
+		final long started = System.nanoTime();
 		final Properties configurationPropertiesToUse = configurationProperties();
-		final RemoteCacheManager nativeRemoteCacheManager = new RemoteCacheManager(configurationPropertiesToUse,
-				this.startAutomatically);
+		final RemoteCacheManager nativeRemoteCacheManager = createBackingRemoteCacheManager(
+				configurationPropertiesToUse, started);
 		this.springRemoteCacheManager = new SpringRemoteCacheManager(nativeRemoteCacheManager);
+		this.springRemoteCacheManager.setWriteBehindCacheNames(this.writeBehindCacheNames);
+		this.springRemoteCacheManager.setWriteBehindFlushInterval(this.writeBehindFlushInterval);
+		this.springRemoteCacheManager.setWriteBehindMaxBufferedEntries(this.writeBehindMaxBufferedEntries);
+		this.springRemoteCacheManager.setWriteBehindMaxBatchSize(this.writeBehindMaxBatchSize);
+		this.springRemoteCacheManager.setTransactionAware(this.transactionAware);
+		this.springRemoteCacheManager.setCacheOperationListeners(this.cacheOperationListeners);
+		this.springRemoteCacheManager.setCacheOperationSamplingInterval(this.cacheOperationSamplingInterval);
+		this.springRemoteCacheManager.setSlowOperationThreshold(this.slowOperationThreshold);
+		this.springRemoteCacheManager.setSlowOperationThresholds(this.slowOperationThresholds);
+		this.springRemoteCacheManager.setMaxSlowOperationLogsPerMinute(this.maxSlowOperationLogsPerMinute);
+		this.springRemoteCacheManager.setCacheEventThreshold(this.cacheEventThreshold);
+		this.springRemoteCacheManager.setNegativeCacheLifespans(this.negativeCacheLifespans);
+		this.springRemoteCacheManager.setDefaultLifespans(this.defaultLifespans);
+		this.springRemoteCacheManager.setDefaultMaxIdles(this.defaultMaxIdles);
+		this.springRemoteCacheManager.setLifespanJitter(this.lifespanJitter);
+		this.springRemoteCacheManager.setBulkLoaders(this.bulkLoaders);
+		this.springRemoteCacheManager.setBulkLoadBatchWindow(this.bulkLoadBatchWindow);
+		this.springRemoteCacheManager.setBulkLoadMaxBatchSize(this.bulkLoadMaxBatchSize);
+		if (configurationPropertiesToUse != null) {
+			this.springRemoteCacheManager.setServerList(configurationPropertiesToUse.getProperty(SERVER_LIST));
+		}
 		this.logger.info("Finished creating new instance of RemoteCacheManager");
 	}
 
@@ -137,5 +199,179 @@ public class SpringRemoteCacheManagerFactoryBean extends AbstractInfinispanRemot
 		if (this.springRemoteCacheManager != null) {
 			this.springRemoteCacheManager.stop();
 		}
+		unregisterStartupTimingReport();
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for write-behind configuration
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param writeBehindCacheNames
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setWriteBehindCacheNames(java.util.Collection)
+	 */
+	public void setWriteBehindCacheNames(final Collection<String> writeBehindCacheNames) {
+		this.writeBehindCacheNames = writeBehindCacheNames;
+	}
+
+	/**
+	 * @param writeBehindFlushInterval
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setWriteBehindFlushInterval(long)
+	 */
+	public void setWriteBehindFlushInterval(final long writeBehindFlushInterval) {
+		this.writeBehindFlushInterval = writeBehindFlushInterval;
+	}
+
+	/**
+	 * @param writeBehindMaxBufferedEntries
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setWriteBehindMaxBufferedEntries(int)
+	 */
+	public void setWriteBehindMaxBufferedEntries(final int writeBehindMaxBufferedEntries) {
+		this.writeBehindMaxBufferedEntries = writeBehindMaxBufferedEntries;
+	}
+
+	/**
+	 * @param writeBehindMaxBatchSize
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setWriteBehindMaxBatchSize(int)
+	 */
+	public void setWriteBehindMaxBatchSize(final int writeBehindMaxBatchSize) {
+		this.writeBehindMaxBatchSize = writeBehindMaxBatchSize;
+	}
+
+	/**
+	 * @param transactionAware
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setTransactionAware(boolean)
+	 */
+	public void setTransactionAware(final boolean transactionAware) {
+		this.transactionAware = transactionAware;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for operation listeners
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param cacheOperationListeners
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setCacheOperationListeners(java.util.Map)
+	 */
+	public void setCacheOperationListeners(
+			final Map<String, ? extends Collection<? extends CacheOperationListener>> cacheOperationListeners) {
+		this.cacheOperationListeners = cacheOperationListeners;
+	}
+
+	/**
+	 * @param cacheOperationSamplingInterval
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setCacheOperationSamplingInterval(int)
+	 */
+	public void setCacheOperationSamplingInterval(final int cacheOperationSamplingInterval) {
+		this.cacheOperationSamplingInterval = cacheOperationSamplingInterval;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for slow operation log
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param slowOperationThreshold
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setSlowOperationThreshold(java.lang.Long)
+	 */
+	public void setSlowOperationThreshold(final Long slowOperationThreshold) {
+		this.slowOperationThreshold = slowOperationThreshold;
+	}
+
+	/**
+	 * @param slowOperationThresholds
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setSlowOperationThresholds(java.util.Map)
+	 */
+	public void setSlowOperationThresholds(final Map<String, Long> slowOperationThresholds) {
+		this.slowOperationThresholds = slowOperationThresholds;
+	}
+
+	/**
+	 * @param maxSlowOperationLogsPerMinute
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setMaxSlowOperationLogsPerMinute(int)
+	 */
+	public void setMaxSlowOperationLogsPerMinute(final int maxSlowOperationLogsPerMinute) {
+		this.maxSlowOperationLogsPerMinute = maxSlowOperationLogsPerMinute;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for cache events
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param cacheEventThreshold
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setCacheEventThreshold(long)
+	 */
+	public void setCacheEventThreshold(final long cacheEventThreshold) {
+		this.cacheEventThreshold = cacheEventThreshold;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for negative caching
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param negativeCacheLifespans
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setNegativeCacheLifespans(java.util.Map)
+	 */
+	public void setNegativeCacheLifespans(final Map<String, Long> negativeCacheLifespans) {
+		this.negativeCacheLifespans = negativeCacheLifespans;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for expiration
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param defaultLifespans
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setDefaultLifespans(java.util.Map)
+	 */
+	public void setDefaultLifespans(final Map<String, Long> defaultLifespans) {
+		this.defaultLifespans = defaultLifespans;
+	}
+
+	/**
+	 * @param defaultMaxIdles
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setDefaultMaxIdles(java.util.Map)
+	 */
+	public void setDefaultMaxIdles(final Map<String, Long> defaultMaxIdles) {
+		this.defaultMaxIdles = defaultMaxIdles;
+	}
+
+	/**
+	 * @param lifespanJitter
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setLifespanJitter(double)
+	 */
+	public void setLifespanJitter(final double lifespanJitter) {
+		this.lifespanJitter = lifespanJitter;
+	}
+
+	// ------------------------------------------------------------------------
+	// Setters for bulk loading
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param bulkLoaders
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setBulkLoaders(java.util.Map)
+	 */
+	public void setBulkLoaders(final Map<String, ? extends BulkLoader<?, ?>> bulkLoaders) {
+		this.bulkLoaders = bulkLoaders;
+	}
+
+	/**
+	 * @param bulkLoadBatchWindow
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setBulkLoadBatchWindow(long)
+	 */
+	public void setBulkLoadBatchWindow(final long bulkLoadBatchWindow) {
+		this.bulkLoadBatchWindow = bulkLoadBatchWindow;
+	}
+
+	/**
+	 * @param bulkLoadMaxBatchSize
+	 * @see org.infinispan.spring.spi.SpringRemoteCacheManager#setBulkLoadMaxBatchSize(int)
+	 */
+	public void setBulkLoadMaxBatchSize(final int bulkLoadMaxBatchSize) {
+		this.bulkLoadMaxBatchSize = bulkLoadMaxBatchSize;
 	}
 }
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Hits and misses of both tiers of the caches of a given name handed out by a {@link TieredCacheManager
+ * <code>TieredCacheManager</code>}. The L2 tier only sees reads that missed L1, so its hit ratio is that of L1
+ * misses.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public final class TierStatistics {
+
+	private final AtomicLong l1Hits = new AtomicLong(0);
+
+	private final AtomicLong l1Misses = new AtomicLong(0);
+
+	private final AtomicLong l2Hits = new AtomicLong(0);
+
+	private final AtomicLong l2Misses = new AtomicLong(0);
+
+	void recordL1Hit() {
+		this.l1Hits.incrementAndGet();
+	}
+
+	void recordL2Hit() {
+		this.l1Misses.incrementAndGet();
+		this.l2Hits.incrementAndGet();
+	}
+
+	void recordMiss() {
+		this.l1Misses.incrementAndGet();
+		this.l2Misses.incrementAndGet();
+	}
+
+	public long getL1Hits() {
+		return this.l1Hits.get();
+	}
+
+	public long getL1Misses() {
+		return this.l1Misses.get();
+	}
+
+	public long getL2Hits() {
+		return this.l2Hits.get();
+	}
+
+	public long getL2Misses() {
+		return this.l2Misses.get();
+	}
+
+	/**
+	 * @return The ratio of reads served by L1, or <code>0</code> if there have been no reads
+	 */
+	public double getL1HitRatio() {
+		return ratio(getL1Hits(), getL1Misses());
+	}
+
+	/**
+	 * @return The ratio of L1 misses served by L2, or <code>0</code> if no read has missed L1
+	 */
+	public double getL2HitRatio() {
+		return ratio(getL2Hits(), getL2Misses());
+	}
+
+	/**
+	 * @return The ratio of reads served by either tier, or <code>0</code> if there have been no reads
+	 */
+	public double getHitRatio() {
+		return ratio(getL1Hits() + getL2Hits(), getL2Misses());
+	}
+
+	private static double ratio(final long hits, final long misses) {
+		final long reads = hits + misses;
+		return reads > 0L ? (double) hits / reads : 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return "TierStatistics [l1Hits = " + getL1Hits() + ", l1Misses = " + getL1Misses() + ", l2Hits = "
+				+ getL2Hits() + ", l2Misses = " + getL2Misses() + "]";
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.config.Configuration;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.manager.CacheContainer;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link org.springframework.cache.CacheManager <code>CacheManager</code>} composing a
+ * {@link SpringEmbeddedCacheManager <code>SpringEmbeddedCacheManager</code>} as local L1 tier with a
+ * {@link SpringRemoteCacheManager <code>SpringRemoteCacheManager</code>} as remote L2 tier. The caches it hands
+ * out are {@link TieredSpringCache <code>TieredSpringCaches</code>}: reads are served from L1 if possible, L2 hits
+ * are promoted to L1, and writes go through to both tiers.
+ * </p>
+ * <p>
+ * Since L1 is not told about writes other clients make to L2, it should be bounded and expire entries after a
+ * short time. Unless a cache has explicitly been defined in the embedded cache manager, its L1 tier is therefore
+ * defined on first use as a local cache with LRU eviction of all but {@link #setL1MaxEntries(int)
+ * <code>l1MaxEntries</code>} entries and an expiration lifespan of {@link #setL1Lifespan(long)
+ * <code>l1Lifespan</code>}.
+ * </p>
+ * <p>
+ * Hits and misses of each tier are {@link #getTierStatistics(String) reported} per cache name.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class TieredCacheManager implements CacheManager {
+
+	public static final int DEFAULT_L1_MAX_ENTRIES = 10000;
+
+	public static final long DEFAULT_L1_LIFESPAN = 60000L;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final SpringEmbeddedCacheManager l1CacheManager;
+
+	private final SpringRemoteCacheManager l2CacheManager;
+
+	private final ConcurrentMap<String, TierStatistics> tierStatistics = new ConcurrentHashMap<String, TierStatistics>();
+
+	private int l1MaxEntries = DEFAULT_L1_MAX_ENTRIES;
+
+	private long l1Lifespan = DEFAULT_L1_LIFESPAN;
+
+	/**
+	 * @param l1CacheManager
+	 * @param l2CacheManager
+	 */
+	public TieredCacheManager(final SpringEmbeddedCacheManager l1CacheManager,
+			final SpringRemoteCacheManager l2CacheManager) {
+		Assert.notNull(l1CacheManager, "A non-null SpringEmbeddedCacheManager needs to be supplied as L1");
+		Assert.notNull(l2CacheManager, "A non-null SpringRemoteCacheManager needs to be supplied as L2");
+		this.l1CacheManager = l1CacheManager;
+		this.l2CacheManager = l2CacheManager;
+	}
+
+	/**
+	 * @see org.springframework.cache.CacheManager#getCache(java.lang.String)
+	 */
+	@Override
+	public <K, V> TieredSpringCache<K, V> getCache(final String name) {
+		defineL1ConfigurationUnlessDefined(name);
+		final Cache<K, V> l1 = this.l1CacheManager.getCache(name);
+		final Cache<K, V> l2 = this.l2CacheManager.getCache(name);
+		return new TieredSpringCache<K, V>(l1, l2, getTierStatistics(name));
+	}
+
+	private void defineL1ConfigurationUnlessDefined(final String name) {
+		final EmbeddedCacheManager nativeCacheManager = this.l1CacheManager.getNativeCacheManager();
+		if (CacheContainer.DEFAULT_CACHE_NAME.equals(name) || nativeCacheManager.isRunning(name)) {
+			return;
+		}
+		synchronized (nativeCacheManager) {
+			if (nativeCacheManager.getCacheNames().contains(name)) {
+				return;
+			}
+			final Configuration l1Configuration = new Configuration();
+			// Otherwise L1 would inherit a clustered default cache's mode and replicate every promotion
+			l1Configuration.setCacheMode(Configuration.CacheMode.LOCAL);
+			l1Configuration.setEvictionStrategy(EvictionStrategy.LRU);
+			l1Configuration.setEvictionMaxEntries(this.l1MaxEntries);
+			l1Configuration.setExpirationLifespan(this.l1Lifespan);
+			nativeCacheManager.defineConfiguration(name, l1Configuration);
+			this.logger.debug("Defined L1 cache [" + name + "] holding at most [" + this.l1MaxEntries
+					+ "] entries for at most [" + this.l1Lifespan + " ms]");
+		}
+	}
+
+	/**
+	 * As {@link SpringRemoteCacheManager#getCacheNames()} is not supported, this returns the names of the L1
+	 * caches only.
+	 * 
+	 * @see org.springframework.cache.CacheManager#getCacheNames()
+	 */
+	@Override
+	public Collection<String> getCacheNames() {
+		return this.l1CacheManager.getCacheNames();
+	}
+
+	/**
+	 * @param name
+	 * @return The hits and misses of each tier of the caches named <code>name</code>
+	 */
+	public TierStatistics getTierStatistics(final String name) {
+		final TierStatistics existing = this.tierStatistics.get(name);
+		if (existing != null) {
+			return existing;
+		}
+		final TierStatistics created = new TierStatistics();
+		final TierStatistics raced = this.tierStatistics.putIfAbsent(name, created);
+		return raced != null ? raced : created;
+	}
+
+	/**
+	 * @return The <code>SpringEmbeddedCacheManager</code> serving as L1 tier
+	 */
+	public SpringEmbeddedCacheManager getL1CacheManager() {
+		return this.l1CacheManager;
+	}
+
+	/**
+	 * @return The <code>SpringRemoteCacheManager</code> serving as L2 tier
+	 */
+	public SpringRemoteCacheManager getL2CacheManager() {
+		return this.l2CacheManager;
+	}
+
+	/**
+	 * @param l1MaxEntries
+	 *            The maximum number of entries of each L1 cache not explicitly defined. Defaults to
+	 *            {@link #DEFAULT_L1_MAX_ENTRIES}.
+	 */
+	public void setL1MaxEntries(final int l1MaxEntries) {
+		Assert.isTrue(l1MaxEntries > 0, "l1MaxEntries must be positive");
+		this.l1MaxEntries = l1MaxEntries;
+	}
+
+	/**
+	 * @param l1Lifespan
+	 *            The lifespan in milliseconds of entries of each L1 cache not explicitly defined. Defaults to
+	 *            {@link #DEFAULT_L1_LIFESPAN}.
+	 */
+	public void setL1Lifespan(final long l1Lifespan) {
+		Assert.isTrue(l1Lifespan > 0L, "l1Lifespan must be positive");
+		this.l1Lifespan = l1Lifespan;
+	}
+}
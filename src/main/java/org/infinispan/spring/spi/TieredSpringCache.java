@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import org.springframework.cache.Cache;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link org.springframework.cache.Cache <code>Cache</code>} composed of a local L1 and a remote L2 cache, as
+ * handed out by {@link TieredCacheManager <code>TieredCacheManager</code>}.
+ * </p>
+ * <p>
+ * Reads go to L1 first. On an L1 miss they go to L2, and values found there are promoted to L1 unless a
+ * concurrent write has put a value into L1 in the meantime. Writes go to L2 first, which is authoritative, and are
+ * then applied to L1. Should a conditional write fail on L2, the key is dropped from L1 instead, as L1 might be
+ * stale. Writes made to L2 by other clients are not propagated to L1, and neither is a removal racing with a
+ * promotion of the value removed, hence L1 should expire entries after a short time.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class TieredSpringCache<K, V> implements Cache<K, V> {
+
+	private final Cache<K, V> l1;
+
+	private final Cache<K, V> l2;
+
+	private final TierStatistics statistics;
+
+	/**
+	 * @param l1
+	 * @param l2
+	 * @param statistics
+	 *            The statistics to record hits and misses in
+	 */
+	public TieredSpringCache(final Cache<K, V> l1, final Cache<K, V> l2, final TierStatistics statistics) {
+		Assert.notNull(l1, "A non-null L1 cache is required");
+		Assert.notNull(l2, "A non-null L2 cache is required");
+		Assert.notNull(statistics, "Non-null TierStatistics are required");
+		this.l1 = l1;
+		this.l2 = l2;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#getName()
+	 */
+	@Override
+	public String getName() {
+		return this.l2.getName();
+	}
+
+	/**
+	 * @return The L2 cache's native cache, L2 being authoritative
+	 * @see org.springframework.cache.Cache#getNativeCache()
+	 */
+	@Override
+	public Object getNativeCache() {
+		return this.l2.getNativeCache();
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(final Object key) {
+		return this.l1.containsKey(key) || this.l2.containsKey(key);
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#get(java.lang.Object)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		final V cached = this.l1.get(key);
+		if (cached != null) {
+			this.statistics.recordL1Hit();
+			return cached;
+		}
+		final V stored = this.l2.get(key);
+		if (stored == null) {
+			this.statistics.recordMiss();
+			return null;
+		}
+		this.statistics.recordL2Hit();
+		// Keys read from a Cache<K, V> are Ks. Never overwrite what a concurrent writer put into L1 meanwhile.
+		this.l1.putIfAbsent((K) key, stored);
+		return stored;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V put(final K key, final V value) {
+		final V previous = this.l2.put(key, value);
+		updateL1(key, value);
+		return previous;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#putIfAbsent(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		final V existing = this.l2.putIfAbsent(key, value);
+		updateL1(key, existing != null ? existing : value);
+		return existing;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#remove(java.lang.Object)
+	 */
+	@Override
+	public V remove(final Object key) {
+		final V previous = this.l2.remove(key);
+		this.l1.remove(key);
+		return previous;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#remove(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		final boolean removed = this.l2.remove(key, value);
+		this.l1.remove(key);
+		return removed;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#replace(java.lang.Object, java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		final boolean replaced = this.l2.replace(key, oldValue, newValue);
+		if (replaced) {
+			updateL1(key, newValue);
+		} else {
+			this.l1.remove(key);
+		}
+		return replaced;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#replace(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V replace(final K key, final V value) {
+		final V previous = this.l2.replace(key, value);
+		if (previous != null) {
+			updateL1(key, value);
+		} else {
+			this.l1.remove(key);
+		}
+		return previous;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#clear()
+	 */
+	@Override
+	public void clear() {
+		this.l2.clear();
+		this.l1.clear();
+	}
+
+	private void updateL1(final K key, final V value) {
+		if (value != null) {
+			this.l1.put(key, value);
+		} else {
+			this.l1.remove(key);
+		}
+	}
+
+	/**
+	 * @return The statistics this cache records hits and misses in
+	 */
+	public TierStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "TieredSpringCache [l1 = " + this.l1 + ", l2 = " + this.l2 + "]";
+	}
+}
@@ -0,0 +1,349 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * <p>
+ * A {@link org.infinispan.spring.spi.SpringCache <code>SpringCache</code>} that defers writes made within a
+ * Spring-managed transaction until that transaction has committed.
+ * </p>
+ * <p>
+ * While transaction synchronization is active, puts and removals are buffered per transaction rather than
+ * applied to the underlying cache, and reads within the same transaction see the buffered writes. Once the
+ * transaction has committed, all buffered writes are applied together: puts through a single
+ * <code>putAll</code>, and - if <code>useInvocationBatching</code> is set, which requires
+ * {@link org.infinispan.config.Configuration#setInvocationBatchingEnabled(boolean) invocation batching} to be
+ * enabled for the underlying cache - all of them within one INFINISPAN batch, i.e. a single replication. If the
+ * transaction is rolled back, the buffered writes are discarded, leaving the cache untouched.
+ * </p>
+ * <p>
+ * Outside of a transaction this cache behaves exactly like a plain <code>SpringCache</code>. Note that within a
+ * transaction conditional operations are evaluated against the transaction's view of the cache, but are not
+ * atomic with respect to other nodes or transactions, and that <code>put</code> and <code>remove</code> return the
+ * previously <em>buffered</em> value, if any, and <code>null</code> otherwise.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class TransactionAwareSpringCache<K, V> extends SpringCache<K, V> {
+
+	private static final Object EVICTED = new Object();
+
+	private final boolean useInvocationBatching;
+
+	private final ResourceKey resourceKey;
+
+	/**
+	 * @param nativeCache
+	 * @param useInvocationBatching
+	 *            Whether to apply each transaction's writes within one INFINISPAN batch
+	 */
+	public TransactionAwareSpringCache(final org.infinispan.Cache<K, V> nativeCache,
+			final boolean useInvocationBatching) {
+		super(nativeCache);
+		this.useInvocationBatching = useInvocationBatching;
+		this.resourceKey = new ResourceKey(nativeCache);
+	}
+
+	// ------------------------------------------------------------------------
+	// org.springframework.cache.Cache
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(final Object key) {
+		final TransactionBuffer buffer = currentBuffer();
+		if (buffer == null) {
+			return super.containsKey(key);
+		}
+		final Object buffered = buffer.writes.get(key);
+		if (buffered != null) {
+			return buffered != EVICTED;
+		}
+		return !buffer.clear && super.containsKey(key);
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#get(java.lang.Object)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		final TransactionBuffer buffer = currentBuffer();
+		if (buffer != null) {
+			final Object buffered = buffer.writes.get(key);
+			if (buffered != null) {
+				return buffered != EVICTED ? fromStored((V) buffered) : null;
+			}
+			if (buffer.clear) {
+				return null;
+			}
+		}
+		return super.get(key);
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V put(final K key, final V value) {
+		final TransactionBuffer buffer = bindBufferIfInTransaction();
+		if (buffer == null) {
+			return super.put(key, value);
+		}
+		return fromStored(buffer.<V> write(key, toStored(value)));
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#putIfAbsent(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		final TransactionBuffer buffer = bindBufferIfInTransaction();
+		if (buffer == null) {
+			return super.putIfAbsent(key, value);
+		}
+		final V current = get(key);
+		if (current == null) {
+			buffer.write(key, toStored(value));
+		}
+		return current;
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#remove(java.lang.Object)
+	 */
+	@Override
+	public V remove(final Object key) {
+		final TransactionBuffer buffer = bindBufferIfInTransaction();
+		if (buffer == null) {
+			return super.remove(key);
+		}
+		return fromStored(buffer.<V> write(key, EVICTED));
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#remove(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		final TransactionBuffer buffer = bindBufferIfInTransaction();
+		if (buffer == null) {
+			return super.remove(key, value);
+		}
+		final V current = get(key);
+		if ((current == null) || !current.equals(value)) {
+			return false;
+		}
+		buffer.write(key, EVICTED);
+		return true;
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#replace(java.lang.Object, java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		final TransactionBuffer buffer = bindBufferIfInTransaction();
+		if (buffer == null) {
+			return super.replace(key, oldValue, newValue);
+		}
+		final V current = get(key);
+		if ((current == null) || !current.equals(oldValue)) {
+			return false;
+		}
+		buffer.write(key, toStored(newValue));
+		return true;
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#replace(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V replace(final K key, final V value) {
+		final TransactionBuffer buffer = bindBufferIfInTransaction();
+		if (buffer == null) {
+			return super.replace(key, value);
+		}
+		final V current = get(key);
+		if (current != null) {
+			buffer.write(key, toStored(value));
+		}
+		return current;
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#clear()
+	 */
+	@Override
+	public void clear() {
+		final TransactionBuffer buffer = bindBufferIfInTransaction();
+		if (buffer == null) {
+			super.clear();
+			return;
+		}
+		buffer.writes.clear();
+		buffer.clear = true;
+	}
+
+	/**
+	 * @see org.infinispan.spring.spi.SpringCache#toString()
+	 */
+	@Override
+	public String toString() {
+		return "TransactionAwareInfinispanCache [nativeCache = " + getNativeCache() + ", useInvocationBatching = "
+				+ this.useInvocationBatching + "]";
+	}
+
+	// ------------------------------------------------------------------------
+	// Transaction synchronization
+	// ------------------------------------------------------------------------
+
+	private TransactionBuffer currentBuffer() {
+		return (TransactionBuffer) TransactionSynchronizationManager.getResource(this.resourceKey);
+	}
+
+	private TransactionBuffer bindBufferIfInTransaction() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		TransactionBuffer buffer = currentBuffer();
+		if (buffer == null) {
+			buffer = new TransactionBuffer();
+			TransactionSynchronizationManager.bindResource(this.resourceKey, buffer);
+			TransactionSynchronizationManager.registerSynchronization(new BufferSynchronization(buffer));
+		}
+		return buffer;
+	}
+
+	@SuppressWarnings("unchecked")
+	void apply(final TransactionBuffer buffer) {
+		final org.infinispan.Cache<K, V> nativeCache = getNativeCache();
+		final boolean batchStarted = this.useInvocationBatching && nativeCache.startBatch();
+		boolean successful = false;
+		try {
+			if (buffer.clear) {
+				nativeCache.clear();
+			}
+			final Map<K, V> puts = new HashMap<K, V>();
+			for (final Map.Entry<Object, Object> write : buffer.writes.entrySet()) {
+				if (write.getValue() == EVICTED) {
+					nativeCache.remove(write.getKey());
+				} else if (write.getValue() instanceof NullValue) {
+					store((K) write.getKey(), null);
+				} else if (expires((V) write.getValue())) {
+					store((K) write.getKey(), (V) write.getValue());
+				} else {
+					puts.put((K) write.getKey(), (V) write.getValue());
+				}
+			}
+			if (!puts.isEmpty()) {
+				nativeCache.putAll(puts);
+			}
+			successful = true;
+		} finally {
+			if (batchStarted) {
+				nativeCache.endBatch(successful);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Helper classes
+	// ------------------------------------------------------------------------
+
+	static final class TransactionBuffer {
+
+		final LinkedHashMap<Object, Object> writes = new LinkedHashMap<Object, Object>();
+
+		boolean clear;
+
+		@SuppressWarnings("unchecked")
+		<V> V write(final Object key, final Object value) {
+			final Object previous = this.writes.put(key, value);
+			return previous != EVICTED ? (V) previous : null;
+		}
+	}
+
+	/**
+	 * Binds a transaction's buffer to the underlying cache rather than to a <code>TransactionAwareSpringCache</code>
+	 * instance, since a <code>CacheManager</code> may hand out several instances for the same cache.
+	 */
+	private static final class ResourceKey {
+
+		private final org.infinispan.Cache<?, ?> nativeCache;
+
+		ResourceKey(final org.infinispan.Cache<?, ?> nativeCache) {
+			this.nativeCache = nativeCache;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return (obj instanceof ResourceKey) && (((ResourceKey) obj).nativeCache == this.nativeCache);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this.nativeCache);
+		}
+	}
+
+	private final class BufferSynchronization extends TransactionSynchronizationAdapter {
+
+		private final TransactionBuffer buffer;
+
+		BufferSynchronization(final TransactionBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Unbind this transaction's buffer while it is suspended, so that an inner transaction - e.g. one started
+		 * with <code>REQUIRES_NEW</code> - gets a buffer of its own instead of writing into the outer one.
+		 */
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(TransactionAwareSpringCache.this.resourceKey);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(TransactionAwareSpringCache.this.resourceKey, this.buffer);
+		}
+
+		@Override
+		public void afterCompletion(final int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(TransactionAwareSpringCache.this.resourceKey);
+			if (status == TransactionSynchronization.STATUS_COMMITTED) {
+				apply(this.buffer);
+			}
+		}
+	}
+}
@@ -0,0 +1,442 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cache.Cache;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link org.springframework.cache.Cache <code>Cache</code>} implementation that buffers writes to
+ * an underlying {@link org.infinispan.Cache <code>org.infinispan.Cache</code>} - typically a
+ * {@link org.infinispan.client.hotrod.RemoteCache <code>RemoteCache</code>} - and flushes them in batches
+ * from a background thread.
+ * </p>
+ * <p>
+ * Within a flush interval only the <em>latest</em> value written for a given key is retained, i.e. a burst
+ * of overwrites to the same key results in a single remote <code>put</code>. Reads are served from the
+ * buffer first, so a caller always sees its own writes even before they have been flushed. The buffer is
+ * bounded: once it holds {@link #setMaxBufferedEntries(int) <code>maxBufferedEntries</code>} distinct keys
+ * the writing thread flushes the buffer itself before buffering any further key. This bound is a soft one:
+ * threads concurrently buffering new keys may each see room for one more key, so that the buffer may
+ * briefly exceed <code>maxBufferedEntries</code> by up to the number of writing threads.
+ * </p>
+ * <p>
+ * Conditional operations - <code>putIfAbsent</code>, <code>replace</code> and <code>remove(key, value)</code> -
+ * cannot be answered from the buffer. They first flush any pending write for their key and are then executed
+ * synchronously against the underlying cache. Note that <code>put</code> and <code>remove</code> return the
+ * previously <em>buffered</em> value, if any, and <code>null</code> otherwise. This mirrors a
+ * <code>RemoteCache</code>'s behaviour when <code>forceReturnValues</code> is turned off.
+ * </p>
+ * <p>
+ * Instances need to be {@link #start() started} before use and {@link #stop() stopped} when no longer needed.
+ * Stopping a <code>WriteBehindSpringCache</code> flushes all pending writes. Writes made while an instance is not
+ * started are not buffered but written through to the underlying cache, as nothing would ever flush them.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class WriteBehindSpringCache<K, V> implements Cache<K, V> {
+
+	public static final long DEFAULT_FLUSH_INTERVAL = 100L;
+
+	public static final int DEFAULT_MAX_BUFFERED_ENTRIES = 10000;
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+	private static final Object REMOVED = new Object();
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final org.infinispan.Cache<K, V> nativeCache;
+
+	private final ConcurrentMap<Object, Object> pendingWrites = new ConcurrentHashMap<Object, Object>();
+
+	private final AtomicInteger pendingWritesCount = new AtomicInteger(0);
+
+	private final Lock flushLock = new ReentrantLock();
+
+	private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+	private int maxBufferedEntries = DEFAULT_MAX_BUFFERED_ENTRIES;
+
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	private ScheduledExecutorService flushExecutor;
+
+	private volatile boolean running;
+
+	/**
+	 * @param nativeCache
+	 */
+	public WriteBehindSpringCache(final org.infinispan.Cache<K, V> nativeCache) {
+		Assert.notNull(nativeCache, "A non-null Infinispan cache implementation is required");
+		this.nativeCache = nativeCache;
+	}
+
+	// ------------------------------------------------------------------------
+	// Lifecycle
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Start the background thread that periodically flushes buffered writes. Calling this method on an
+	 * already started instance has no effect.
+	 */
+	public synchronized void start() {
+		if (this.flushExecutor != null) {
+			return;
+		}
+		this.flushExecutor = Executors.newSingleThreadScheduledExecutor(new FlushThreadFactory(getName()));
+		this.flushExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (final RuntimeException e) {
+					WriteBehindSpringCache.this.logger.error("Failed to flush buffered writes to cache ["
+							+ getName() + "]: " + e.getMessage(), e);
+				}
+			}
+		}, this.flushInterval, this.flushInterval, TimeUnit.MILLISECONDS);
+		this.running = true;
+		this.logger.info("Started write-behind buffer for cache [" + getName() + "] using flush interval ["
+				+ this.flushInterval + " ms], max buffered entries [" + this.maxBufferedEntries
+				+ "] and max batch size [" + this.maxBatchSize + "]");
+	}
+
+	/**
+	 * Stop the background flush thread and synchronously flush all writes that are still pending.
+	 */
+	public synchronized void stop() {
+		this.running = false;
+		if (this.flushExecutor != null) {
+			this.flushExecutor.shutdown();
+			try {
+				if (!this.flushExecutor.awaitTermination(this.flushInterval * 10, TimeUnit.MILLISECONDS)) {
+					this.logger.warn("Background flush of cache [" + getName() + "] did not terminate in time");
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.flushExecutor = null;
+		}
+		flush();
+		this.logger.info("Stopped write-behind buffer for cache [" + getName() + "]");
+	}
+
+	/**
+	 * Write all currently buffered modifications to the underlying cache, in batches of at most
+	 * {@link #setMaxBatchSize(int) <code>maxBatchSize</code>} entries. Modifications that fail to be written
+	 * remain buffered and will be retried on the next flush.
+	 */
+	public void flush() {
+		this.flushLock.lock();
+		try {
+			final Map<Object, Object> batch = new HashMap<Object, Object>();
+			final Iterator<Map.Entry<Object, Object>> pending = this.pendingWrites.entrySet().iterator();
+			while (pending.hasNext()) {
+				final Map.Entry<Object, Object> entry = pending.next();
+				batch.put(entry.getKey(), entry.getValue());
+				if (batch.size() >= this.maxBatchSize) {
+					writeBatch(batch);
+					batch.clear();
+				}
+			}
+			if (!batch.isEmpty()) {
+				writeBatch(batch);
+			}
+		} finally {
+			this.flushLock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void writeBatch(final Map<Object, Object> batch) {
+		final Map<K, V> puts = new HashMap<K, V>(batch.size());
+		for (final Map.Entry<Object, Object> write : batch.entrySet()) {
+			if (write.getValue() == REMOVED) {
+				this.nativeCache.remove(write.getKey());
+			} else {
+				puts.put((K) write.getKey(), (V) write.getValue());
+			}
+		}
+		if (!puts.isEmpty()) {
+			this.nativeCache.putAll(puts);
+		}
+		// Only discard what we have written: a key overwritten in the meantime stays buffered
+		for (final Map.Entry<Object, Object> written : batch.entrySet()) {
+			if (this.pendingWrites.remove(written.getKey(), written.getValue())) {
+				this.pendingWritesCount.decrementAndGet();
+			}
+		}
+		if (this.logger.isTraceEnabled()) {
+			this.logger.trace("Flushed [" + batch.size() + "] buffered writes to cache [" + getName() + "]");
+		}
+	}
+
+	private void flushKey(final Object key) {
+		this.flushLock.lock();
+		try {
+			final Object pending = this.pendingWrites.get(key);
+			if (pending == null) {
+				return;
+			}
+			final Map<Object, Object> batch = new HashMap<Object, Object>(1);
+			batch.put(key, pending);
+			writeBatch(batch);
+		} finally {
+			this.flushLock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V buffer(final Object key, final Object valueOrRemoved) {
+		if (!this.running) {
+			return writeThrough(key, valueOrRemoved);
+		}
+		// Checking and buffering are not atomic, making maxBufferedEntries a soft bound
+		if (!this.pendingWrites.containsKey(key) && (this.pendingWritesCount.get() >= this.maxBufferedEntries)) {
+			this.logger.debug("Write-behind buffer for cache [" + getName() + "] is full - flushing synchronously");
+			flush();
+		}
+		final Object previous = this.pendingWrites.put(key, valueOrRemoved);
+		if (previous == null) {
+			this.pendingWritesCount.incrementAndGet();
+		}
+		if (!this.running) {
+			// Stopped while buffering, possibly after stop() had flushed
+			flushKey(key);
+		}
+		return (previous != null) && (previous != REMOVED) ? (V) previous : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V writeThrough(final Object key, final Object valueOrRemoved) {
+		flushKey(key);
+		return valueOrRemoved != REMOVED ? this.nativeCache.put((K) key, (V) valueOrRemoved) : this.nativeCache
+				.remove(key);
+	}
+
+	// ------------------------------------------------------------------------
+	// org.springframework.cache.Cache
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.springframework.cache.Cache#getName()
+	 */
+	@Override
+	public String getName() {
+		return this.nativeCache.getName();
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#getNativeCache()
+	 */
+	@Override
+	public org.infinispan.Cache<K, V> getNativeCache() {
+		return this.nativeCache;
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(final Object key) {
+		final Object pending = this.pendingWrites.get(key);
+		if (pending != null) {
+			return pending != REMOVED;
+		}
+		return this.nativeCache.containsKey(key);
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#get(java.lang.Object)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		final Object pending = this.pendingWrites.get(key);
+		if (pending != null) {
+			return pending != REMOVED ? (V) pending : null;
+		}
+		return this.nativeCache.get(key);
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V put(final K key, final V value) {
+		Assert.notNull(value, "Null values are not supported");
+		return buffer(key, value);
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#putIfAbsent(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		flushKey(key);
+		return this.nativeCache.putIfAbsent(key, value);
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#remove(java.lang.Object)
+	 */
+	@Override
+	public V remove(final Object key) {
+		return buffer(key, REMOVED);
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#remove(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		flushKey(key);
+		return this.nativeCache.remove(key, value);
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#replace(java.lang.Object, java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		flushKey(key);
+		return this.nativeCache.replace(key, oldValue, newValue);
+	}
+
+	/**
+	 * @see org.springframework.cache.Cache#replace(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public V replace(final K key, final V value) {
+		flushKey(key);
+		return this.nativeCache.replace(key, value);
+	}
+
+	/**
+	 * Discards all buffered writes and clears the underlying cache.
+	 *
+	 * @see org.springframework.cache.Cache#clear()
+	 */
+	@Override
+	public void clear() {
+		this.flushLock.lock();
+		try {
+			this.pendingWrites.clear();
+			this.pendingWritesCount.set(0);
+			this.nativeCache.clear();
+		} finally {
+			this.flushLock.unlock();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @return The number of distinct keys currently waiting to be flushed
+	 */
+	public int getPendingWritesCount() {
+		return this.pendingWritesCount.get();
+	}
+
+	/**
+	 * Sets the interval in milliseconds between two background flushes. Must be set before this
+	 * <code>WriteBehindSpringCache</code> is {@link #start() started}.
+	 *
+	 * @param flushInterval
+	 *            The interval in milliseconds between two background flushes
+	 */
+	public void setFlushInterval(final long flushInterval) {
+		Assert.isTrue(flushInterval > 0, "flushInterval must be positive");
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Sets the maximum number of distinct keys to buffer before a writing thread is forced to flush
+	 * synchronously. This is a soft bound that concurrent writers may briefly exceed by one key each.
+	 *
+	 * @param maxBufferedEntries
+	 *            The maximum number of distinct keys to buffer
+	 */
+	public void setMaxBufferedEntries(final int maxBufferedEntries) {
+		Assert.isTrue(maxBufferedEntries > 0, "maxBufferedEntries must be positive");
+		this.maxBufferedEntries = maxBufferedEntries;
+	}
+
+	/**
+	 * Sets the maximum number of entries written to the underlying cache in a single batch.
+	 *
+	 * @param maxBatchSize
+	 *            The maximum number of entries written in a single batch
+	 */
+	public void setMaxBatchSize(final int maxBatchSize) {
+		Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "WriteBehindSpringCache [nativeCache = " + this.nativeCache + ", pendingWrites = "
+				+ this.pendingWritesCount.get() + "]";
+	}
+
+	// ------------------------------------------------------------------------
+	// Helper classes
+	// ------------------------------------------------------------------------
+
+	private static final class FlushThreadFactory implements ThreadFactory {
+
+		private final String cacheName;
+
+		FlushThreadFactory(final String cacheName) {
+			this.cacheName = cacheName;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread flushThread = new Thread(runnable, "WriteBehindFlush-" + this.cacheName);
+			flushThread.setDaemon(true);
+			return flushThread;
+		}
+	}
+}
@@ -0,0 +1,349 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.commands.CommandsFactory;
+import org.infinispan.commands.ReplicableCommand;
+import org.infinispan.commands.remote.MultipleRpcCommand;
+import org.infinispan.config.Configuration;
+import org.infinispan.factories.KnownComponentNames;
+import org.infinispan.factories.annotations.ComponentName;
+import org.infinispan.factories.annotations.Inject;
+import org.infinispan.factories.annotations.Start;
+import org.infinispan.factories.annotations.Stop;
+import org.infinispan.jmx.annotations.MBean;
+import org.infinispan.jmx.annotations.ManagedAttribute;
+import org.infinispan.remoting.ReplicationQueue;
+import org.infinispan.remoting.rpc.ResponseMode;
+import org.infinispan.remoting.rpc.RpcManager;
+
+/**
+ * <p>
+ * A {@link org.infinispan.remoting.ReplicationQueue <code>ReplicationQueue</code>} that continuously adjusts
+ * its flush interval and batch size to the observed write rate and RPC latency.
+ * </p>
+ * <p>
+ * A static replication queue either adds latency at low load - a single write waits for the full
+ * <code>replQueueInterval</code> - or sends tiny batches at high load. This queue instead interprets
+ * <ul>
+ * <li>
+ * <code>replQueueInterval</code> as its <em>latency target</em>, i.e. the maximum time a write should wait
+ * in the queue, including the time needed to send it, and
+ * </li>
+ * <li>
+ * <code>replQueueMaxElements</code> as the <em>upper bound</em> on the size of a single batch.
+ * </li>
+ * </ul>
+ * Every {@link #TICK_INTERVAL_MILLIS tick} it re-estimates the write rate and sizes the next batch so that
+ * it fills up within the latency target minus the average RPC latency. If fewer than two writes are expected
+ * within that budget, batching buys nothing and writes are flushed immediately.
+ * </p>
+ * <p>
+ * Batches are sent asynchronously, so timing them would only measure how long it takes to hand them to the
+ * transport. RPC latency is therefore sampled once every {@link #RPC_PROBE_INTERVAL_MILLIS second} by sending an
+ * empty batch synchronously to all members and timing the round trip.
+ * </p>
+ * <p>
+ * Use {@link org.infinispan.spring.ConfigurationOverrides#setUseAdaptiveReplQueue(Boolean)} to select this
+ * queue. Its current settings are exposed over JMX as component <code>AdaptiveReplicationQueue</code> of the
+ * cache it belongs to, provided that cache has <code>exposeJmxStatistics</code> turned on.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+@MBean(objectName = "AdaptiveReplicationQueue", description = "Replication queue adjusting flush interval and batch size to load")
+public class AdaptiveReplicationQueue implements ReplicationQueue {
+
+	public static final long TICK_INTERVAL_MILLIS = 10L;
+
+	public static final long RPC_PROBE_INTERVAL_MILLIS = 1000L;
+
+	private static final double SMOOTHING_FACTOR = 0.2;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final BlockingQueue<ReplicableCommand> elements = new LinkedBlockingQueue<ReplicableCommand>();
+
+	private final AtomicLong writesSinceLastTick = new AtomicLong(0);
+
+	private volatile long oldestElementEnqueuedAt;
+
+	private volatile double writeRatePerMilli;
+
+	private volatile double averageRpcLatencyMillis;
+
+	private volatile long currentFlushInterval = TICK_INTERVAL_MILLIS;
+
+	private volatile int currentBatchSize = 1;
+
+	private long lastTickAt;
+
+	private long lastRpcProbeAt;
+
+	private ScheduledExecutorService scheduledExecutor;
+
+	private RpcManager rpcManager;
+
+	private Configuration configuration;
+
+	private CommandsFactory commandsFactory;
+
+	private ScheduledFuture<?> tickTask;
+
+	private boolean enabled;
+
+	@Inject
+	public void injectDependencies(
+			@ComponentName(KnownComponentNames.ASYNC_REPL_QUEUE_EXECUTOR) final ScheduledExecutorService executor,
+			final RpcManager rpcManager, final Configuration configuration, final CommandsFactory commandsFactory) {
+		this.scheduledExecutor = executor;
+		this.rpcManager = rpcManager;
+		this.configuration = configuration;
+		this.commandsFactory = commandsFactory;
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.remoting.ReplicationQueue
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.remoting.ReplicationQueue#isEnabled()
+	 */
+	@Override
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * @see org.infinispan.remoting.ReplicationQueue#start()
+	 */
+	@Override
+	@Start
+	public void start() {
+		this.enabled = this.configuration.isUseReplQueue();
+		if (!this.enabled) {
+			return;
+		}
+		this.lastTickAt = System.currentTimeMillis();
+		this.tickTask = this.scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		}, TICK_INTERVAL_MILLIS, TICK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		this.logger.info("Started AdaptiveReplicationQueue for cache [" + this.configuration.getName()
+				+ "] using latency target [" + latencyTargetMillis() + " ms] and max batch size ["
+				+ maxBatchSize() + "]");
+	}
+
+	/**
+	 * @see org.infinispan.remoting.ReplicationQueue#stop()
+	 */
+	@Override
+	@Stop(priority = 9)
+	public void stop() {
+		if (this.tickTask != null) {
+			this.tickTask.cancel(true);
+			this.tickTask = null;
+		}
+		try {
+			flush();
+		} catch (final RuntimeException e) {
+			this.logger.error("Failed to flush AdaptiveReplicationQueue on stop: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @see org.infinispan.remoting.ReplicationQueue#add(org.infinispan.commands.ReplicableCommand)
+	 */
+	@Override
+	public void add(final ReplicableCommand job) {
+		if (job == null) {
+			throw new NullPointerException("job is null");
+		}
+		if (this.elements.isEmpty()) {
+			this.oldestElementEnqueuedAt = System.currentTimeMillis();
+		}
+		this.elements.offer(job);
+		this.writesSinceLastTick.incrementAndGet();
+		if (this.elements.size() >= this.currentBatchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Flushes are serialized, so that batches drained by writers and by the tick are sent in the order their
+	 * elements were added.
+	 * 
+	 * @see org.infinispan.remoting.ReplicationQueue#flush()
+	 */
+	@Override
+	public synchronized int flush() {
+		final List<ReplicableCommand> toReplicate = new ArrayList<ReplicableCommand>(this.currentBatchSize);
+		this.elements.drainTo(toReplicate);
+		if (toReplicate.isEmpty()) {
+			return 0;
+		}
+		this.oldestElementEnqueuedAt = System.currentTimeMillis();
+
+		try {
+			final MultipleRpcCommand multipleRpcCommand = this.commandsFactory.buildMultipleRpcCommand(toReplicate);
+			final ResponseMode responseMode = this.configuration.isUseAsyncMarshalling() ? ResponseMode.ASYNCHRONOUS
+					: ResponseMode.ASYNCHRONOUS_WITH_SYNC_MARSHALLING;
+			this.rpcManager.invokeRemotely(null, multipleRpcCommand, responseMode,
+					this.configuration.getSyncReplTimeout());
+		} catch (final Exception e) {
+			// Like INFINISPAN's own ReplicationQueue, neither fail the writer nor kill the scheduled tick
+			this.logger.error("Failed replicating [" + toReplicate.size() + "] elements in replication queue", e);
+		}
+		return toReplicate.size();
+	}
+
+	/**
+	 * @see org.infinispan.remoting.ReplicationQueue#getElementsCount()
+	 */
+	@Override
+	@ManagedAttribute(description = "Number of elements currently waiting in the replication queue")
+	public int getElementsCount() {
+		return this.elements.size();
+	}
+
+	/**
+	 * @see org.infinispan.remoting.ReplicationQueue#reset()
+	 */
+	@Override
+	public void reset() {
+		this.elements.clear();
+	}
+
+	// ------------------------------------------------------------------------
+	// Adaptive tuning
+	// ------------------------------------------------------------------------
+
+	void tick() {
+		try {
+			final long now = System.currentTimeMillis();
+			final long elapsed = Math.max(1L, now - this.lastTickAt);
+			this.lastTickAt = now;
+			recordWrites(this.writesSinceLastTick.getAndSet(0), elapsed);
+
+			if (!this.elements.isEmpty() && (now - this.oldestElementEnqueuedAt >= this.currentFlushInterval)) {
+				flush();
+			}
+			if (now - this.lastRpcProbeAt >= RPC_PROBE_INTERVAL_MILLIS) {
+				this.lastRpcProbeAt = now;
+				probeRpcLatency();
+			}
+		} catch (final RuntimeException e) {
+			this.logger.error("AdaptiveReplicationQueue tick failed: " + e.getMessage(), e);
+		}
+	}
+
+	void probeRpcLatency() {
+		final MultipleRpcCommand probe = this.commandsFactory.buildMultipleRpcCommand(Collections
+				.<ReplicableCommand> emptyList());
+		final long started = System.nanoTime();
+		try {
+			this.rpcManager.invokeRemotely(null, probe, ResponseMode.SYNCHRONOUS,
+					this.configuration.getSyncReplTimeout());
+		} catch (final Exception e) {
+			// Keep the previous estimate rather than count a timeout as latency
+			this.logger.debug("RPC latency probe failed: " + e.getMessage(), e);
+			return;
+		}
+		final double rpcLatencyMillis = (System.nanoTime() - started) / 1000000.0;
+		this.averageRpcLatencyMillis = smooth(this.averageRpcLatencyMillis, rpcLatencyMillis);
+	}
+
+	void recordWrites(final long writes, final long elapsedMillis) {
+		this.writeRatePerMilli = smooth(this.writeRatePerMilli, (double) writes / elapsedMillis);
+		retune();
+	}
+
+	private void retune() {
+		final double budgetMillis = Math.max(TICK_INTERVAL_MILLIS, latencyTargetMillis()
+				- this.averageRpcLatencyMillis);
+		final double expectedBatchSize = this.writeRatePerMilli * budgetMillis;
+		if (expectedBatchSize < 2.0) {
+			// Batching would only add latency
+			this.currentBatchSize = 1;
+			this.currentFlushInterval = TICK_INTERVAL_MILLIS;
+		} else {
+			final int batchSize = (int) Math.min(maxBatchSize(), expectedBatchSize);
+			this.currentBatchSize = batchSize;
+			this.currentFlushInterval = Math.max(TICK_INTERVAL_MILLIS,
+					(long) Math.min(budgetMillis, batchSize / this.writeRatePerMilli));
+		}
+	}
+
+	private long latencyTargetMillis() {
+		return this.configuration.getReplQueueInterval();
+	}
+
+	private int maxBatchSize() {
+		return Math.max(1, this.configuration.getReplQueueMaxElements());
+	}
+
+	private static double smooth(final double average, final double sample) {
+		return average + SMOOTHING_FACTOR * (sample - average);
+	}
+
+	// ------------------------------------------------------------------------
+	// JMX
+	// ------------------------------------------------------------------------
+
+	@ManagedAttribute(description = "Current maximum time in milliseconds an element waits before being flushed")
+	public long getCurrentFlushInterval() {
+		return this.currentFlushInterval;
+	}
+
+	@ManagedAttribute(description = "Current number of elements that triggers an immediate flush")
+	public int getCurrentBatchSize() {
+		return this.currentBatchSize;
+	}
+
+	@ManagedAttribute(description = "Smoothed write rate in elements per second")
+	public double getObservedWriteRate() {
+		return this.writeRatePerMilli * 1000.0;
+	}
+
+	@ManagedAttribute(description = "Smoothed round trip time in milliseconds of a synchronous RPC to all members")
+	public double getAverageRpcLatency() {
+		return this.averageRpcLatencyMillis;
+	}
+
+	@ManagedAttribute(description = "Configured latency target in milliseconds")
+	public long getLatencyTarget() {
+		return latencyTargetMillis();
+	}
+}
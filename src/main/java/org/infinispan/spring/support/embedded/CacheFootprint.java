@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+/**
+ * <p>
+ * The memory footprint of a single INFINISPAN cache as last estimated by a
+ * {@link CacheFootprintEstimator <code>CacheFootprintEstimator</code>}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheFootprint implements CacheFootprintMBean {
+
+	private volatile long estimatedBytes;
+
+	private volatile int entryCount;
+
+	private volatile int sampledEntries;
+
+	private volatile long averageEntryBytes;
+
+	private volatile long lastSampledAt;
+
+	void update(final int entryCount, final int sampledEntries, final long sampledBytes, final long sampledAt) {
+		this.averageEntryBytes = sampledEntries > 0 ? sampledBytes / sampledEntries : 0L;
+		this.estimatedBytes = sampledEntries > 0 ? (long) ((double) sampledBytes / sampledEntries * entryCount) : 0L;
+		this.entryCount = entryCount;
+		this.sampledEntries = sampledEntries;
+		this.lastSampledAt = sampledAt;
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+		return this.estimatedBytes;
+	}
+
+	@Override
+	public int getEntryCount() {
+		return this.entryCount;
+	}
+
+	@Override
+	public int getSampledEntries() {
+		return this.sampledEntries;
+	}
+
+	@Override
+	public long getAverageEntryBytes() {
+		return this.averageEntryBytes;
+	}
+
+	@Override
+	public long getLastSampledAt() {
+		return this.lastSampledAt;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheFootprint [estimatedBytes = " + this.estimatedBytes + ", entryCount = " + this.entryCount
+				+ ", sampledEntries = " + this.sampledEntries + "]";
+	}
+}
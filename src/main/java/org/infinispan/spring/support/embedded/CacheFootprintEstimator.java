@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.Cache;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.manager.CacheContainer;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.spring.spi.SpringEmbeddedCacheManager;
+import org.infinispan.spring.support.embedded.eviction.EntrySizer;
+import org.infinispan.spring.support.embedded.eviction.MarshalledEntrySizer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * Periodically estimates how many bytes each cache of an INFINISPAN <code>EmbeddedCacheManager</code> retains,
+ * and publishes the result over JMX. Intended as a basis for sizing <code>evictionMaxEntries</code>.
+ * </p>
+ * <p>
+ * Every {@link #setSampleInterval(long) <code>sampleInterval</code>} milliseconds, up to
+ * {@link #setSampleSize(int) <code>sampleSize</code>} entries are taken from each running cache's local data
+ * container and sized by an {@link org.infinispan.spring.support.embedded.eviction.EntrySizer
+ * <code>EntrySizer</code>} - by default a {@link MarshalledEntrySizer <code>MarshalledEntrySizer</code>}, i.e.
+ * by marshalled length. Their average size is then scaled by the number of entries the cache holds. Since the
+ * data container is hash-ordered, the entries sampled are spread over the key space.
+ * </p>
+ * <p>
+ * Each cache's {@link CacheFootprint footprint} is registered as MBean
+ * <code>&lt;jmxDomain&gt;:type=Cache,name="&lt;cacheName&gt;",component=MemoryFootprint</code>, using the JMX
+ * domain configured for the cache manager through <code>setJmxDomain</code>. Sampling runs on a thread of its
+ * own, so that sizing large values does not hold up INFINISPAN's own threads.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheFootprintEstimator implements InitializingBean, DisposableBean {
+
+	public static final int DEFAULT_SAMPLE_SIZE = 1000;
+
+	public static final long DEFAULT_SAMPLE_INTERVAL = 60000L;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final ConcurrentMap<String, CacheFootprint> footprints = new ConcurrentHashMap<String, CacheFootprint>();
+
+	private EmbeddedCacheManager infinispanEmbeddedCacheManager;
+
+	private Collection<String> cacheNames;
+
+	private int sampleSize = DEFAULT_SAMPLE_SIZE;
+
+	private long sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+	private EntrySizer entrySizer;
+
+	private MBeanServer mBeanServer;
+
+	private ScheduledExecutorService sampler;
+
+	// ------------------------------------------------------------------------
+	// org.springframework.beans.factory.InitializingBean
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.state(this.infinispanEmbeddedCacheManager != null, "No INFINISPAN EmbeddedCacheManager has been set");
+		if (this.mBeanServer == null) {
+			this.mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		}
+		this.sampler = Executors.newSingleThreadScheduledExecutor(new SamplerThreadFactory());
+		this.sampler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sample();
+				} catch (final RuntimeException e) {
+					CacheFootprintEstimator.this.logger.error("Failed to estimate cache footprints: "
+							+ e.getMessage(), e);
+				}
+			}
+		}, 0L, this.sampleInterval, TimeUnit.MILLISECONDS);
+		this.logger.info("Estimating footprint of caches every [" + this.sampleInterval + "] ms");
+	}
+
+	// ------------------------------------------------------------------------
+	// org.springframework.beans.factory.DisposableBean
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Stop sampling and unregister all footprint MBeans.
+	 *
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception {
+		if (this.sampler != null) {
+			this.sampler.shutdownNow();
+		}
+		for (final String cacheName : this.footprints.keySet()) {
+			try {
+				this.mBeanServer.unregisterMBean(objectNameOf(cacheName));
+			} catch (final JMException e) {
+				this.logger.warn("Failed to unregister footprint MBean of cache [" + cacheName + "]: "
+						+ e.getMessage());
+			}
+		}
+		this.footprints.clear();
+	}
+
+	// ------------------------------------------------------------------------
+	// Sampling
+	// ------------------------------------------------------------------------
+
+	void sample() {
+		for (final String cacheName : cacheNamesToSample()) {
+			if (!this.infinispanEmbeddedCacheManager.isRunning(cacheName)) {
+				continue;
+			}
+			final Cache<Object, Object> cache = this.infinispanEmbeddedCacheManager.getCache(cacheName);
+			final EntrySizer sizer = this.entrySizer != null ? this.entrySizer : MarshalledEntrySizer.forCache(cache);
+			int sampled = 0;
+			long sampledBytes = 0L;
+			for (final InternalCacheEntry entry : cache.getAdvancedCache().getDataContainer()) {
+				if (sampled >= this.sampleSize) {
+					break;
+				}
+				if (entry.isExpired()) {
+					continue;
+				}
+				sampledBytes += sizer.sizeOf(entry.getKey(), entry.getValue());
+				sampled++;
+			}
+			footprintOf(cacheName).update(cache.getAdvancedCache().getDataContainer().size(), sampled, sampledBytes,
+					System.currentTimeMillis());
+		}
+	}
+
+	private Set<String> cacheNamesToSample() {
+		final Set<String> names = new HashSet<String>();
+		if (this.cacheNames != null) {
+			names.addAll(this.cacheNames);
+		} else {
+			names.addAll(this.infinispanEmbeddedCacheManager.getCacheNames());
+			names.add(CacheContainer.DEFAULT_CACHE_NAME);
+		}
+		return names;
+	}
+
+	private CacheFootprint footprintOf(final String cacheName) {
+		final CacheFootprint existing = this.footprints.get(cacheName);
+		if (existing != null) {
+			return existing;
+		}
+		final CacheFootprint created = new CacheFootprint();
+		final CacheFootprint raced = this.footprints.putIfAbsent(cacheName, created);
+		if (raced != null) {
+			return raced;
+		}
+		try {
+			this.mBeanServer.registerMBean(created, objectNameOf(cacheName));
+		} catch (final JMException e) {
+			this.logger.warn("Failed to register footprint MBean of cache [" + cacheName + "]: " + e.getMessage());
+		}
+		return created;
+	}
+
+	ObjectName objectNameOf(final String cacheName) throws JMException {
+		return new ObjectName(this.infinispanEmbeddedCacheManager.getGlobalConfiguration().getJmxDomain()
+				+ ":type=Cache,name=" + ObjectName.quote(cacheName) + ",component=MemoryFootprint");
+	}
+
+	/**
+	 * @param cacheName
+	 * @return The last footprint estimated for the cache named <code>cacheName</code>, or <code>null</code> if
+	 *         that cache has not been sampled yet
+	 */
+	public CacheFootprint getFootprint(final String cacheName) {
+		return this.footprints.get(cacheName);
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param infinispanEmbeddedCacheManager
+	 *            The INFINISPAN <code>EmbeddedCacheManager</code> whose caches to sample
+	 */
+	public void setInfinispanEmbeddedCacheManager(final EmbeddedCacheManager infinispanEmbeddedCacheManager) {
+		this.infinispanEmbeddedCacheManager = infinispanEmbeddedCacheManager;
+	}
+
+	/**
+	 * Convenience alternative to {@link #setInfinispanEmbeddedCacheManager(EmbeddedCacheManager)}.
+	 *
+	 * @param springEmbeddedCacheManager
+	 *            The <code>SpringEmbeddedCacheManager</code> whose caches to sample
+	 */
+	public void setSpringEmbeddedCacheManager(final SpringEmbeddedCacheManager springEmbeddedCacheManager) {
+		this.infinispanEmbeddedCacheManager = springEmbeddedCacheManager.getNativeCacheManager();
+	}
+
+	/**
+	 * @param cacheNames
+	 *            The names of the caches to sample. Defaults to all caches, including the default cache.
+	 */
+	public void setCacheNames(final Collection<String> cacheNames) {
+		this.cacheNames = cacheNames;
+	}
+
+	/**
+	 * @param sampleSize
+	 *            The maximum number of entries to size per cache and sample
+	 */
+	public void setSampleSize(final int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 * @param sampleInterval
+	 *            The time in milliseconds between two samples
+	 */
+	public void setSampleInterval(final long sampleInterval) {
+		this.sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * @param entrySizer
+	 *            The <code>EntrySizer</code> to size sampled entries with. Defaults to a
+	 *            <code>MarshalledEntrySizer</code> per cache.
+	 */
+	public void setEntrySizer(final EntrySizer entrySizer) {
+		this.entrySizer = entrySizer;
+	}
+
+	/**
+	 * @param mBeanServer
+	 *            The <code>MBeanServer</code> to register footprints with. Defaults to the platform
+	 *            <code>MBeanServer</code>.
+	 */
+	public void setMBeanServer(final MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	// ------------------------------------------------------------------------
+	// Helper classes
+	// ------------------------------------------------------------------------
+
+	private static final class SamplerThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "CacheFootprintEstimator");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+/**
+ * <p>
+ * JMX management interface of a {@link CacheFootprint <code>CacheFootprint</code>}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public interface CacheFootprintMBean {
+
+	/**
+	 * @return The estimated number of bytes retained by all entries of the cache
+	 */
+	long getEstimatedBytes();
+
+	/**
+	 * @return The number of entries the cache held when it was last sampled
+	 */
+	int getEntryCount();
+
+	/**
+	 * @return The number of entries sized when the cache was last sampled
+	 */
+	int getSampledEntries();
+
+	/**
+	 * @return The average number of bytes retained by a sampled entry
+	 */
+	long getAverageEntryBytes();
+
+	/**
+	 * @return The time in milliseconds since the epoch the cache was last sampled at
+	 */
+	long getLastSampledAt();
+}
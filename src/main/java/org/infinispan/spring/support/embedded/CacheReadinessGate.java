@@ -0,0 +1,382 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.Cache;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.lifecycle.ComponentStatus;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.spring.spi.SpringEmbeddedCacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link org.springframework.context.SmartLifecycle <code>SmartLifecycle</code>} that holds up the startup of
+ * the enclosing application context until selected INFINISPAN caches are ready to serve traffic.
+ * </p>
+ * <p>
+ * Being started in the {@link #setPhase(int) last phase} by default, a <code>CacheReadinessGate</code> blocks in
+ * {@link #start()}, and hence keeps the application context from finishing its refresh - and components started
+ * in later phases, such as a web container's connectors, from starting - until each selected cache has passed
+ * three phases in turn:
+ * <ol>
+ * <li><em>Topology</em>: the cache is running and, if distributed, has completed joining the cluster and is not
+ * rehashing. Replicated caches complete state transfer while starting.</li>
+ * <li><em>Warm-up</em>: the optional {@link CacheWarmer <code>CacheWarmer</code>} has run.</li>
+ * <li><em>Fill</em>: the cache holds at least {@link #setMinimumEntries(int) <code>minimumEntries</code>} local
+ * entries.</li>
+ * </ol>
+ * The time spent in each phase, summed up over all selected caches, is exposed through
+ * {@link #getTopologyMillis()}, {@link #getWarmUpMillis()} and {@link #getFillMillis()}.
+ * </p>
+ * <p>
+ * If the caches are not ready within {@link #setTimeout(long) <code>timeout</code>} milliseconds, the gate either
+ * fails startup or - by default - logs a warning and opens anyway.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheReadinessGate implements SmartLifecycle {
+
+	public static final long DEFAULT_TIMEOUT = 300000L;
+
+	public static final long DEFAULT_POLL_INTERVAL = 100L;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private EmbeddedCacheManager infinispanEmbeddedCacheManager;
+
+	private Collection<String> cacheNames;
+
+	private CacheWarmer cacheWarmer;
+
+	private int minimumEntries;
+
+	private long timeout = DEFAULT_TIMEOUT;
+
+	private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+	private boolean failOnTimeout;
+
+	private int phase = Integer.MAX_VALUE;
+
+	private volatile boolean running;
+
+	private volatile long topologyMillis;
+
+	private volatile long warmUpMillis;
+
+	private volatile long fillMillis;
+
+	// ------------------------------------------------------------------------
+	// org.springframework.context.SmartLifecycle
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Blocks until all selected caches are ready, or until <code>timeout</code> has expired.
+	 *
+	 * @see org.springframework.context.Lifecycle#start()
+	 * @throws IllegalStateException
+	 *             If the caches are not ready in time and <code>failOnTimeout</code> is set
+	 */
+	@Override
+	public void start() {
+		Assert.state(this.infinispanEmbeddedCacheManager != null, "No INFINISPAN EmbeddedCacheManager has been set");
+		final long started = System.currentTimeMillis();
+		final long deadline = started + this.timeout;
+		this.logger.info("Waiting for caches " + cacheNamesToAwait() + " to become ready ...");
+
+		final List<Cache<Object, Object>> caches = new ArrayList<Cache<Object, Object>>();
+		for (final String cacheName : cacheNamesToAwait()) {
+			caches.add(this.infinispanEmbeddedCacheManager.<Object, Object> getCache(cacheName));
+		}
+		try {
+			long phaseStarted = System.currentTimeMillis();
+			try {
+				for (final Cache<Object, Object> cache : caches) {
+					awaitStableTopology(cache, deadline);
+				}
+			} finally {
+				this.topologyMillis = System.currentTimeMillis() - phaseStarted;
+			}
+
+			phaseStarted = System.currentTimeMillis();
+			try {
+				if (this.cacheWarmer != null) {
+					for (final Cache<Object, Object> cache : caches) {
+						warmUp(cache);
+					}
+				}
+			} finally {
+				this.warmUpMillis = System.currentTimeMillis() - phaseStarted;
+			}
+
+			phaseStarted = System.currentTimeMillis();
+			try {
+				for (final Cache<Object, Object> cache : caches) {
+					awaitMinimumEntries(cache, deadline);
+				}
+			} finally {
+				this.fillMillis = System.currentTimeMillis() - phaseStarted;
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for caches to become ready", e);
+		} catch (final ReadinessTimeoutException e) {
+			if (this.failOnTimeout) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+			this.logger.warn(e.getMessage() + " - opening anyway");
+		}
+		this.running = true;
+		this.logger.info("Caches " + cacheNamesToAwait() + " ready after [" + (System.currentTimeMillis() - started)
+				+ "] ms (topology: [" + this.topologyMillis + "] ms, warm-up: [" + this.warmUpMillis
+				+ "] ms, fill: [" + this.fillMillis + "] ms)");
+	}
+
+	/**
+	 * @see org.springframework.context.Lifecycle#stop()
+	 */
+	@Override
+	public void stop() {
+		this.running = false;
+	}
+
+	/**
+	 * @see org.springframework.context.SmartLifecycle#stop(java.lang.Runnable)
+	 */
+	@Override
+	public void stop(final Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	/**
+	 * @return <code>true</code> once all selected caches have become ready
+	 * @see org.springframework.context.Lifecycle#isRunning()
+	 */
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * Always returns <code>true</code>.
+	 *
+	 * @see org.springframework.context.SmartLifecycle#isAutoStartup()
+	 */
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	/**
+	 * @see org.springframework.context.Phased#getPhase()
+	 */
+	@Override
+	public int getPhase() {
+		return this.phase;
+	}
+
+	// ------------------------------------------------------------------------
+	// Phases
+	// ------------------------------------------------------------------------
+
+	private void awaitStableTopology(final Cache<Object, Object> cache, final long deadline)
+			throws InterruptedException, ReadinessTimeoutException {
+		while (!hasStableTopology(cache)) {
+			pause(cache, "stable topology", deadline);
+		}
+	}
+
+	static boolean hasStableTopology(final Cache<?, ?> cache) {
+		if (cache.getStatus() != ComponentStatus.RUNNING) {
+			return false;
+		}
+		final DistributionManager distributionManager = cache.getAdvancedCache().getDistributionManager();
+		return (distributionManager == null)
+				|| (distributionManager.isJoinComplete() && !distributionManager.isRehashInProgress());
+	}
+
+	private void warmUp(final Cache<Object, Object> cache) {
+		final long started = System.currentTimeMillis();
+		try {
+			this.cacheWarmer.warmUp(cache);
+			this.logger.info("Warmed up cache [" + cache.getName() + "] in [" + (System.currentTimeMillis() - started)
+					+ "] ms");
+		} catch (final Exception e) {
+			this.logger.error("Failed to warm up cache [" + cache.getName() + "]: " + e.getMessage(), e);
+		}
+	}
+
+	private void awaitMinimumEntries(final Cache<Object, Object> cache, final long deadline)
+			throws InterruptedException, ReadinessTimeoutException {
+		while (cache.getAdvancedCache().getDataContainer().size() < this.minimumEntries) {
+			pause(cache, "[" + this.minimumEntries + "] entries", deadline);
+		}
+	}
+
+	private void pause(final Cache<?, ?> cache, final String awaited, final long deadline)
+			throws InterruptedException, ReadinessTimeoutException {
+		if (System.currentTimeMillis() >= deadline) {
+			throw new ReadinessTimeoutException("Cache [" + cache.getName() + "] has not reached " + awaited
+					+ " within [" + this.timeout + "] ms");
+		}
+		Thread.sleep(this.pollInterval);
+	}
+
+	private Collection<String> cacheNamesToAwait() {
+		return this.cacheNames != null ? this.cacheNames : this.infinispanEmbeddedCacheManager.getCacheNames();
+	}
+
+	// ------------------------------------------------------------------------
+	// Statistics
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @return The milliseconds spent waiting for a stable topology
+	 */
+	public long getTopologyMillis() {
+		return this.topologyMillis;
+	}
+
+	/**
+	 * @return The milliseconds spent warming up
+	 */
+	public long getWarmUpMillis() {
+		return this.warmUpMillis;
+	}
+
+	/**
+	 * @return The milliseconds spent waiting for the minimum number of entries
+	 */
+	public long getFillMillis() {
+		return this.fillMillis;
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/**
+	 * <p>
+	 * Sets the {@link org.infinispan.manager.EmbeddedCacheManager <code>EmbeddedCacheManager</code>} whose caches
+	 * to wait for, e.g. the one created by an
+	 * {@link InfinispanEmbeddedCacheManagerFactoryBean <code>InfinispanEmbeddedCacheManagerFactoryBean</code>}.
+	 * Either this or {@link #setSpringEmbeddedCacheManager(SpringEmbeddedCacheManager)} is
+	 * <strong>mandatory</strong>.
+	 * </p>
+	 *
+	 * @param infinispanEmbeddedCacheManager
+	 */
+	public void setInfinispanEmbeddedCacheManager(final EmbeddedCacheManager infinispanEmbeddedCacheManager) {
+		this.infinispanEmbeddedCacheManager = infinispanEmbeddedCacheManager;
+	}
+
+	/**
+	 * <p>
+	 * Sets the {@link org.infinispan.spring.spi.SpringEmbeddedCacheManager <code>SpringEmbeddedCacheManager</code>}
+	 * - e.g. the one created by a {@link org.infinispan.spring.spi.SpringEmbeddedCacheManagerFactoryBean
+	 * <code>SpringEmbeddedCacheManagerFactoryBean</code>} - whose caches to wait for.
+	 * </p>
+	 *
+	 * @param springEmbeddedCacheManager
+	 */
+	public void setSpringEmbeddedCacheManager(final SpringEmbeddedCacheManager springEmbeddedCacheManager) {
+		this.infinispanEmbeddedCacheManager = springEmbeddedCacheManager.getNativeCacheManager();
+	}
+
+	/**
+	 * @param cacheNames
+	 *            The names of the caches to wait for. Defaults to all caches defined by the cache manager.
+	 */
+	public void setCacheNames(final Collection<String> cacheNames) {
+		this.cacheNames = cacheNames;
+	}
+
+	/**
+	 * @param cacheWarmer
+	 *            The <code>CacheWarmer</code> to run on each cache once its topology is stable
+	 */
+	public void setCacheWarmer(final CacheWarmer cacheWarmer) {
+		this.cacheWarmer = cacheWarmer;
+	}
+
+	/**
+	 * @param minimumEntries
+	 *            The minimum number of local entries each cache has to hold. Defaults to 0.
+	 */
+	public void setMinimumEntries(final int minimumEntries) {
+		this.minimumEntries = minimumEntries;
+	}
+
+	/**
+	 * @param timeout
+	 *            The maximum number of milliseconds to wait for all caches. Defaults to five minutes.
+	 */
+	public void setTimeout(final long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param pollInterval
+	 *            The number of milliseconds between checks. Defaults to 100.
+	 */
+	public void setPollInterval(final long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * @param failOnTimeout
+	 *            Whether to fail startup if the caches are not ready in time. Defaults to <code>false</code>.
+	 */
+	public void setFailOnTimeout(final boolean failOnTimeout) {
+		this.failOnTimeout = failOnTimeout;
+	}
+
+	/**
+	 * @param phase
+	 *            The phase to start in. Defaults to <code>Integer.MAX_VALUE</code>.
+	 */
+	public void setPhase(final int phase) {
+		this.phase = phase;
+	}
+
+	// ------------------------------------------------------------------------
+	// Helper classes
+	// ------------------------------------------------------------------------
+
+	private static final class ReadinessTimeoutException extends Exception {
+
+		private static final long serialVersionUID = 3908512284725506118L;
+
+		ReadinessTimeoutException(final String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,374 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.infinispan.commands.DataCommand;
+import org.infinispan.commands.VisitableCommand;
+import org.infinispan.config.CustomInterceptorConfig;
+import org.infinispan.context.InvocationContext;
+import org.infinispan.interceptors.base.CommandInterceptor;
+import org.infinispan.jmx.annotations.MBean;
+import org.infinispan.jmx.annotations.ManagedAttribute;
+
+/**
+ * <p>
+ * A custom interceptor that detects the keys a single INFINISPAN cache is accessed by most frequently, so that
+ * hot keys overloading their owners in DIST mode can be spotted without taking heap dumps.
+ * </p>
+ * <p>
+ * Every command addressing a single key - reads as well as writes, whether originating locally or on a remote
+ * node - is counted in a count-min sketch of {@link #setSketchDepth(int) <code>sketchDepth</code>} rows of
+ * {@link #setSketchWidth(int) <code>sketchWidth</code>} counters. Next to it, at most
+ * {@link #setCapacity(int) <code>capacity</code>} candidate keys are tracked in the manner of the Space-Saving
+ * algorithm: a key not yet tracked is admitted once its estimated frequency exceeds that of the least frequent
+ * candidate, which it then replaces. Since candidates' frequencies are read from the sketch, counting an access
+ * to a key already tracked is lock-free. Memory use is therefore fixed at <code>sketchDepth</code> times
+ * <code>sketchWidth</code> counters plus <code>capacity</code> key references, no matter how many distinct keys
+ * the cache sees.
+ * </p>
+ * <p>
+ * Counting restarts every {@link #setWindowMillis(long) <code>windowMillis</code>}. The
+ * {@link #setTopK(int) <code>topK</code>} most frequent keys of the last complete window and of the current
+ * one, together with their access rates, are exposed over JMX as component <code>HotKeyInterceptor</code> of
+ * the cache this interceptor is installed in, provided that cache has <code>exposeJmxStatistics</code> turned
+ * on.
+ * </p>
+ * <p>
+ * Pass {@link #getCustomInterceptors()} to
+ * {@link org.infinispan.spring.ConfigurationOverrides#setCustomInterceptors(List) <code>setCustomInterceptors</code>}.
+ * Note that, like any interceptor, a <code>HotKeyInterceptor</code> must be installed in exactly <em>one</em>
+ * cache. Use it with an {@link org.infinispan.spring.support.embedded.InfinispanNamedEmbeddedCacheFactoryBean
+ * <code>InfinispanNamedEmbeddedCacheFactoryBean</code>}, not with a cache manager's default configuration.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+@MBean(objectName = "HotKeyInterceptor", description = "Tracks the most frequently accessed keys")
+public class HotKeyInterceptor extends CommandInterceptor {
+
+	public static final int DEFAULT_TOP_K = 10;
+
+	public static final int DEFAULT_CAPACITY = 100;
+
+	public static final int DEFAULT_SKETCH_WIDTH = 2048;
+
+	public static final int DEFAULT_SKETCH_DEPTH = 4;
+
+	public static final long DEFAULT_WINDOW_MILLIS = 60000L;
+
+	private static final int MAX_KEY_LENGTH = 100;
+
+	private final AtomicReference<Window> currentWindow = new AtomicReference<Window>();
+
+	private final AtomicLong observedAccesses = new AtomicLong(0);
+
+	private volatile List<HotKey> lastWindowTopKeys = Collections.emptyList();
+
+	private int topK = DEFAULT_TOP_K;
+
+	private int capacity = DEFAULT_CAPACITY;
+
+	private int sketchWidth = DEFAULT_SKETCH_WIDTH;
+
+	private int sketchDepth = DEFAULT_SKETCH_DEPTH;
+
+	private long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+	/**
+	 * Return this interceptor, to be placed first in the interceptor chain. Pass it to
+	 * {@link org.infinispan.spring.ConfigurationOverrides#setCustomInterceptors(List) <code>setCustomInterceptors</code>}
+	 * of the cache to monitor.
+	 *
+	 * @return This interceptor, to be placed first in the interceptor chain
+	 */
+	public List<CustomInterceptorConfig> getCustomInterceptors() {
+		return Collections.singletonList(new CustomInterceptorConfig(this, true, false, -1, null, null));
+	}
+
+	// ------------------------------------------------------------------------
+	// Interception
+	// ------------------------------------------------------------------------
+
+	@Override
+	protected Object handleDefault(final InvocationContext ctx, final VisitableCommand command) throws Throwable {
+		if (command instanceof DataCommand) {
+			final Object key = ((DataCommand) command).getKey();
+			if (key != null) {
+				recordAccess(key, System.currentTimeMillis());
+			}
+		}
+		return invokeNextInterceptor(ctx, command);
+	}
+
+	void recordAccess(final Object key, final long nowMillis) {
+		this.observedAccesses.incrementAndGet();
+		windowAt(nowMillis).record(key);
+	}
+
+	private Window windowAt(final long nowMillis) {
+		Window window = this.currentWindow.get();
+		while ((window == null) || (nowMillis >= window.startMillis + this.windowMillis)) {
+			final Window next = new Window(nowMillis, this.sketchWidth, this.sketchDepth, this.capacity);
+			if (this.currentWindow.compareAndSet(window, next)) {
+				if (window != null) {
+					this.lastWindowTopKeys = window.topKeys(this.topK, this.windowMillis);
+				}
+				return next;
+			}
+			window = this.currentWindow.get();
+		}
+		return window;
+	}
+
+	// ------------------------------------------------------------------------
+	// JMX
+	// ------------------------------------------------------------------------
+
+	@ManagedAttribute(description = "Most frequently accessed keys of the last complete window with their access rates per second")
+	public String[] getTopKeys() {
+		return format(this.lastWindowTopKeys);
+	}
+
+	@ManagedAttribute(description = "Most frequently accessed keys of the current window with their access rates per second")
+	public String[] getCurrentTopKeys() {
+		return format(currentTopKeys(System.currentTimeMillis()));
+	}
+
+	@ManagedAttribute(description = "Number of key accesses observed since this interceptor has been started")
+	public long getObservedAccesses() {
+		return this.observedAccesses.get();
+	}
+
+	@ManagedAttribute(description = "Length in milliseconds of the window over which access rates are computed")
+	public long getWindowMillis() {
+		return this.windowMillis;
+	}
+
+	List<HotKey> currentTopKeys(final long nowMillis) {
+		final Window window = this.currentWindow.get();
+		if (window == null) {
+			return Collections.emptyList();
+		}
+		return window.topKeys(this.topK, Math.max(1L, nowMillis - window.startMillis));
+	}
+
+	private static String[] format(final List<HotKey> hotKeys) {
+		final String[] formatted = new String[hotKeys.size()];
+		for (int i = 0; i < formatted.length; i++) {
+			formatted[i] = hotKeys.get(i).toString();
+		}
+		return formatted;
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param topK
+	 *            The number of most frequently accessed keys to report
+	 */
+	public void setTopK(final int topK) {
+		this.topK = topK;
+	}
+
+	/**
+	 * @param capacity
+	 *            The maximum number of candidate keys to track. Should be a generous multiple of
+	 *            <code>topK</code>.
+	 */
+	public void setCapacity(final int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param sketchWidth
+	 *            The number of counters per row of the count-min sketch, rounded up to a power of two. Wider
+	 *            sketches overestimate less.
+	 */
+	public void setSketchWidth(final int sketchWidth) {
+		this.sketchWidth = sketchWidth;
+	}
+
+	/**
+	 * @param sketchDepth
+	 *            The number of rows of the count-min sketch. Deeper sketches overestimate less often.
+	 */
+	public void setSketchDepth(final int sketchDepth) {
+		this.sketchDepth = sketchDepth;
+	}
+
+	/**
+	 * @param windowMillis
+	 *            The length in milliseconds of the window after which counting restarts
+	 */
+	public void setWindowMillis(final long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	// ------------------------------------------------------------------------
+	// Helper classes
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A key and its access rate.
+	 */
+	static final class HotKey {
+
+		final Object key;
+
+		final long accesses;
+
+		final double ratePerSecond;
+
+		HotKey(final Object key, final long accesses, final double ratePerSecond) {
+			this.key = key;
+			this.accesses = accesses;
+			this.ratePerSecond = ratePerSecond;
+		}
+
+		@Override
+		public String toString() {
+			String rendered = String.valueOf(this.key);
+			if (rendered.length() > MAX_KEY_LENGTH) {
+				rendered = rendered.substring(0, MAX_KEY_LENGTH) + "...";
+			}
+			return rendered + " = " + String.format(Locale.ENGLISH, "%.2f", this.ratePerSecond) + "/s";
+		}
+	}
+
+	/**
+	 * One counting window: a count-min sketch plus the candidate keys.
+	 */
+	private static final class Window {
+
+		final long startMillis;
+
+		private final AtomicLongArray counters;
+
+		private final int widthMask;
+
+		private final int depth;
+
+		private final int capacity;
+
+		private final ConcurrentMap<Object, Boolean> candidates;
+
+		private volatile long admissionThreshold;
+
+		Window(final long startMillis, final int width, final int depth, final int capacity) {
+			this.startMillis = startMillis;
+			int powerOfTwo = 1;
+			while (powerOfTwo < width) {
+				powerOfTwo <<= 1;
+			}
+			this.widthMask = powerOfTwo - 1;
+			this.depth = Math.max(1, depth);
+			this.capacity = Math.max(1, capacity);
+			this.counters = new AtomicLongArray(powerOfTwo * this.depth);
+			this.candidates = new ConcurrentHashMap<Object, Boolean>(this.capacity * 2);
+		}
+
+		void record(final Object key) {
+			final int h1 = spread(key.hashCode());
+			final int h2 = spread(h1 ^ 0x9E3779B9) | 1;
+			long estimate = Long.MAX_VALUE;
+			for (int row = 0; row < this.depth; row++) {
+				estimate = Math.min(estimate, this.counters.incrementAndGet(index(row, h1, h2)));
+			}
+			if ((estimate > this.admissionThreshold) && !this.candidates.containsKey(key)) {
+				admit(key, estimate);
+			}
+		}
+
+		long estimate(final Object key) {
+			final int h1 = spread(key.hashCode());
+			final int h2 = spread(h1 ^ 0x9E3779B9) | 1;
+			long estimate = Long.MAX_VALUE;
+			for (int row = 0; row < this.depth; row++) {
+				estimate = Math.min(estimate, this.counters.get(index(row, h1, h2)));
+			}
+			return estimate;
+		}
+
+		private int index(final int row, final int h1, final int h2) {
+			return row * (this.widthMask + 1) + ((h1 + row * h2) & this.widthMask);
+		}
+
+		private synchronized void admit(final Object key, final long estimate) {
+			if (this.candidates.containsKey(key)) {
+				return;
+			}
+			if (this.candidates.size() < this.capacity) {
+				this.candidates.put(key, Boolean.TRUE);
+				return;
+			}
+			Object leastFrequent = null;
+			long leastEstimate = Long.MAX_VALUE;
+			for (final Object candidate : this.candidates.keySet()) {
+				final long candidateEstimate = estimate(candidate);
+				if (candidateEstimate < leastEstimate) {
+					leastFrequent = candidate;
+					leastEstimate = candidateEstimate;
+				}
+			}
+			if (estimate > leastEstimate) {
+				this.candidates.remove(leastFrequent);
+				this.candidates.put(key, Boolean.TRUE);
+			}
+			// Keys not estimated to be more frequent than the least frequent candidate need not be considered
+			this.admissionThreshold = leastEstimate;
+		}
+
+		List<HotKey> topKeys(final int topK, final long elapsedMillis) {
+			final List<HotKey> hotKeys = new ArrayList<HotKey>(this.candidates.size());
+			for (final Object candidate : this.candidates.keySet()) {
+				final long accesses = estimate(candidate);
+				hotKeys.add(new HotKey(candidate, accesses, accesses * 1000.0 / Math.max(1L, elapsedMillis)));
+			}
+			Collections.sort(hotKeys, new Comparator<HotKey>() {
+				@Override
+				public int compare(final HotKey left, final HotKey right) {
+					return left.accesses < right.accesses ? 1 : (left.accesses == right.accesses ? 0 : -1);
+				}
+			});
+			return hotKeys.size() > topK ? new ArrayList<HotKey>(hotKeys.subList(0, topK)) : hotKeys;
+		}
+
+		private static int spread(final int hash) {
+			int h = hash * 0x85EBCA6B;
+			h ^= h >>> 13;
+			h *= 0xC2B2AE35;
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -133,5 +133,6 @@ public class InfinispanEmbeddedCacheManagerFactoryBean extends
 		if (this.cacheManager != null) {
 			this.cacheManager.stop();
 		}
+		unregisterStartupTimingReport();
 	}
 }
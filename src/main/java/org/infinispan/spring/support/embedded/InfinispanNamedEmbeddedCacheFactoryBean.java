@@ -19,6 +19,8 @@
 
 package org.infinispan.spring.support.embedded;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -31,6 +33,12 @@ import org.infinispan.eviction.EvictionStrategy;
 import org.infinispan.eviction.EvictionThreadPolicy;
 import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.spring.ConfigurationOverrides;
+import org.infinispan.spring.support.embedded.eviction.ByteBudgetEviction;
+import org.infinispan.spring.support.embedded.eviction.EntrySizer;
+import org.infinispan.spring.support.embedded.eviction.TimingWheelExpirationReaper;
+import org.infinispan.spring.support.embedded.eviction.WindowTinyLfuEviction;
+import org.infinispan.spring.support.embedded.snapshot.CacheSnapshot;
+import org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig.SyncPolicy;
 import org.infinispan.transaction.lookup.TransactionManagerLookup;
 import org.infinispan.util.concurrent.IsolationLevel;
 import org.springframework.beans.factory.BeanNameAware;
@@ -161,6 +169,14 @@ public class InfinispanNamedEmbeddedCacheFactoryBean<K, V> implements FactoryBea
 
 	private Cache<K, V> infinispanCache;
 
+	private Long evictionMaxBytes;
+
+	private EntrySizer entrySizer;
+
+	private File snapshotDirectory;
+
+	private Integer snapshotReaders;
+
 	// ------------------------------------------------------------------------
 	// org.springframework.beans.factory.InitializingBean
 	// ------------------------------------------------------------------------
@@ -176,6 +192,23 @@ public class InfinispanNamedEmbeddedCacheFactoryBean<K, V> implements FactoryBea
 		this.logger.info("Initializing named INFINISPAN embedded cache ...");
 		final String effectiveCacheName = obtainEffectiveCacheName();
 		this.infinispanCache = configureAndCreateNamedCache(effectiveCacheName);
+		if (this.configurationOverrides.isWindowTinyLfuEvictionSelected()) {
+			WindowTinyLfuEviction.installIn(this.infinispanCache);
+		}
+		if (this.configurationOverrides.isTimingWheelExpirationSelected()) {
+			TimingWheelExpirationReaper.installIn(this.infinispanCache);
+		}
+		if (this.evictionMaxBytes != null) {
+			ByteBudgetEviction.installIn(this.infinispanCache, this.evictionMaxBytes.longValue(), this.entrySizer);
+		}
+		if (this.snapshotDirectory != null) {
+			try {
+				createCacheSnapshot().restore(this.infinispanCache);
+			} catch (final IOException e) {
+				this.logger.error("Failed to restore cache [" + effectiveCacheName + "] from snapshot - starting cold: "
+						+ e.getMessage(), e);
+			}
+		}
 		this.logger.info("New INFINISPAN embedded cache [" + this.infinispanCache + "] initialized");
 	}
 
@@ -291,10 +324,26 @@ public class InfinispanNamedEmbeddedCacheFactoryBean<K, V> implements FactoryBea
 	public void destroy() throws Exception {
 		// Probably being paranoid here ...
 		if (this.infinispanCache != null) {
+			if (this.snapshotDirectory != null) {
+				try {
+					createCacheSnapshot().save(this.infinispanCache);
+				} catch (final IOException e) {
+					this.logger.error("Failed to save snapshot of cache [" + this.infinispanCache.getName() + "]: "
+							+ e.getMessage(), e);
+				}
+			}
 			this.infinispanCache.stop();
 		}
 	}
 
+	private CacheSnapshot createCacheSnapshot() {
+		final CacheSnapshot cacheSnapshot = new CacheSnapshot(this.snapshotDirectory);
+		if (this.snapshotReaders != null) {
+			cacheSnapshot.setParts(this.snapshotReaders.intValue());
+		}
+		return cacheSnapshot;
+	}
+
 	// ------------------------------------------------------------------------
 	// Properties
 	// ------------------------------------------------------------------------
@@ -338,6 +387,57 @@ public class InfinispanNamedEmbeddedCacheFactoryBean<K, V> implements FactoryBea
 		this.configurationTemplateMode = ConfigurationTemplateMode.valueOf(configurationTemplateMode);
 	}
 
+	/**
+	 * <p>
+	 * Sets the maximum number of bytes the <code>Cache</code> to be created may retain, as estimated by its
+	 * {@link #setEntrySizer(EntrySizer) <code>EntrySizer</code>}. Least recently used entries are evicted to
+	 * stay within this budget.
+	 * </p>
+	 * 
+	 * @param evictionMaxBytes
+	 * @see org.infinispan.spring.support.embedded.eviction.ByteBudgetEviction
+	 */
+	public void setEvictionMaxBytes(final Long evictionMaxBytes) {
+		this.evictionMaxBytes = evictionMaxBytes;
+	}
+
+	/**
+	 * <p>
+	 * Sets the {@link org.infinispan.spring.support.embedded.eviction.EntrySizer <code>EntrySizer</code>} used
+	 * to estimate entry sizes if an {@link #setEvictionMaxBytes(Long) <code>evictionMaxBytes</code>} budget has
+	 * been set. Defaults to using an entry's marshalled length.
+	 * </p>
+	 * 
+	 * @param entrySizer
+	 */
+	public void setEntrySizer(final EntrySizer entrySizer) {
+		this.entrySizer = entrySizer;
+	}
+
+	/**
+	 * <p>
+	 * Sets the directory to keep a snapshot of the <code>Cache</code> to be created in. If set, the cache's local
+	 * content is saved to a snapshot when this <code>FactoryBean</code> is {@link #destroy() destroyed}, and
+	 * restored - honoring remaining lifespans - when it is next {@link #afterPropertiesSet() initialized}.
+	 * </p>
+	 * 
+	 * @param snapshotDirectory
+	 * @see org.infinispan.spring.support.embedded.snapshot.CacheSnapshot
+	 */
+	public void setSnapshotDirectory(final File snapshotDirectory) {
+		this.snapshotDirectory = snapshotDirectory;
+	}
+
+	/**
+	 * @param snapshotReaders
+	 *            The number of threads restoring the snapshot in parallel. Defaults to the number of available
+	 *            processors.
+	 * @see #setSnapshotDirectory(File)
+	 */
+	public void setSnapshotReaders(final Integer snapshotReaders) {
+		this.snapshotReaders = snapshotReaders;
+	}
+
 	// ------------------------------------------------------------------------
 	// Setters for Configuration
 	// ------------------------------------------------------------------------
@@ -767,4 +867,100 @@ public class InfinispanNamedEmbeddedCacheFactoryBean<K, V> implements FactoryBea
 	public void setCustomInterceptors(final List<CustomInterceptorConfig> customInterceptors) {
 		this.configurationOverrides.setCustomInterceptors(customInterceptors);
 	}
+
+	/**
+	 * @param useAdaptiveReplQueue
+	 * @see org.infinispan.spring.ConfigurationOverrides#setUseAdaptiveReplQueue(java.lang.Boolean)
+	 */
+	public void setUseAdaptiveReplQueue(final Boolean useAdaptiveReplQueue) {
+		this.configurationOverrides.setUseAdaptiveReplQueue(useAdaptiveReplQueue);
+	}
+
+	/**
+	 * @param autoLockStriping
+	 * @see org.infinispan.spring.ConfigurationOverrides#setAutoLockStriping(java.lang.Boolean)
+	 */
+	public void setAutoLockStriping(final Boolean autoLockStriping) {
+		this.configurationOverrides.setAutoLockStriping(autoLockStriping);
+	}
+
+	/**
+	 * @param expectedEntryCount
+	 * @see org.infinispan.spring.ConfigurationOverrides#setExpectedEntryCount(java.lang.Integer)
+	 */
+	public void setExpectedEntryCount(final Integer expectedEntryCount) {
+		this.configurationOverrides.setExpectedEntryCount(expectedEntryCount);
+	}
+
+	/**
+	 * @param lockStripingAdvisor
+	 * @see org.infinispan.spring.ConfigurationOverrides#setLockStripingAdvisor(org.infinispan.spring.support.embedded.LockStripingAdvisor)
+	 */
+	public void setLockStripingAdvisor(final LockStripingAdvisor lockStripingAdvisor) {
+		this.configurationOverrides.setLockStripingAdvisor(lockStripingAdvisor);
+	}
+
+	/**
+	 * @param useTimingWheelExpiration
+	 * @see org.infinispan.spring.ConfigurationOverrides#setUseTimingWheelExpiration(java.lang.Boolean)
+	 */
+	public void setUseTimingWheelExpiration(final Boolean useTimingWheelExpiration) {
+		this.configurationOverrides.setUseTimingWheelExpiration(useTimingWheelExpiration);
+	}
+
+	/**
+	 * @param segmentFileStoreLocation
+	 * @see org.infinispan.spring.ConfigurationOverrides#setSegmentFileStoreLocation(java.lang.String)
+	 */
+	public void setSegmentFileStoreLocation(final String segmentFileStoreLocation) {
+		this.configurationOverrides.setSegmentFileStoreLocation(segmentFileStoreLocation);
+	}
+
+	/**
+	 * @param segmentFileStoreSegmentSize
+	 * @see org.infinispan.spring.ConfigurationOverrides#setSegmentFileStoreSegmentSize(java.lang.Integer)
+	 */
+	public void setSegmentFileStoreSegmentSize(final Integer segmentFileStoreSegmentSize) {
+		this.configurationOverrides.setSegmentFileStoreSegmentSize(segmentFileStoreSegmentSize);
+	}
+
+	/**
+	 * @param segmentFileStoreSyncPolicy
+	 * @see org.infinispan.spring.ConfigurationOverrides#setSegmentFileStoreSyncPolicy(org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig.SyncPolicy)
+	 */
+	public void setSegmentFileStoreSyncPolicy(final SyncPolicy segmentFileStoreSyncPolicy) {
+		this.configurationOverrides.setSegmentFileStoreSyncPolicy(segmentFileStoreSyncPolicy);
+	}
+
+	/**
+	 * @param writeBehindEnabled
+	 * @see org.infinispan.spring.ConfigurationOverrides#setWriteBehindEnabled(java.lang.Boolean)
+	 */
+	public void setWriteBehindEnabled(final Boolean writeBehindEnabled) {
+		this.configurationOverrides.setWriteBehindEnabled(writeBehindEnabled);
+	}
+
+	/**
+	 * @param writeBehindBatchSize
+	 * @see org.infinispan.spring.ConfigurationOverrides#setWriteBehindBatchSize(java.lang.Integer)
+	 */
+	public void setWriteBehindBatchSize(final Integer writeBehindBatchSize) {
+		this.configurationOverrides.setWriteBehindBatchSize(writeBehindBatchSize);
+	}
+
+	/**
+	 * @param writeBehindFlushInterval
+	 * @see org.infinispan.spring.ConfigurationOverrides#setWriteBehindFlushInterval(java.lang.Long)
+	 */
+	public void setWriteBehindFlushInterval(final Long writeBehindFlushInterval) {
+		this.configurationOverrides.setWriteBehindFlushInterval(writeBehindFlushInterval);
+	}
+
+	/**
+	 * @param writeBehindMaxQueueDepth
+	 * @see org.infinispan.spring.ConfigurationOverrides#setWriteBehindMaxQueueDepth(java.lang.Integer)
+	 */
+	public void setWriteBehindMaxQueueDepth(final Integer writeBehindMaxQueueDepth) {
+		this.configurationOverrides.setWriteBehindMaxQueueDepth(writeBehindMaxQueueDepth);
+	}
 }
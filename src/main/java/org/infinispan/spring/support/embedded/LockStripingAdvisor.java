@@ -0,0 +1,412 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.commands.VisitableCommand;
+import org.infinispan.commands.control.LockControlCommand;
+import org.infinispan.commands.tx.PrepareCommand;
+import org.infinispan.commands.write.WriteCommand;
+import org.infinispan.config.CustomInterceptorConfig;
+import org.infinispan.context.InvocationContext;
+import org.infinispan.interceptors.LockingInterceptor;
+import org.infinispan.interceptors.base.CommandInterceptor;
+import org.infinispan.util.concurrent.TimeoutException;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * <p>
+ * Sizes and monitors lock striping for a single INFINISPAN cache.
+ * </p>
+ * <p>
+ * <code>concurrencyLevel</code> and <code>useLockStriping</code> are usually guesses made once and never
+ * revisited. A <code>LockStripingAdvisor</code>
+ * <ol>
+ * <li>
+ * {@link #recommendInitialConcurrencyLevel(int, int) derives} an initial concurrency level from the number of
+ * available processors and the expected number of entries,
+ * </li>
+ * <li>
+ * measures how long write commands wait for their locks, using a pair of
+ * {@link #getCustomInterceptors() custom interceptors} placed immediately before and after INFINISPAN's
+ * {@link org.infinispan.interceptors.LockingInterceptor <code>LockingInterceptor</code>}, and
+ * </li>
+ * <li>
+ * {@link #getRecommendedConcurrencyLevel() recommends} a higher concurrency level if too many lock acquisitions
+ * are contended. If a {@link #setRecommendationFile(File) recommendation file} has been set, that
+ * recommendation is persisted when the enclosing Spring application context is closed and applied by
+ * {@link org.infinispan.spring.ConfigurationOverrides#setAutoLockStriping(Boolean) auto mode} on the next
+ * restart.
+ * </li>
+ * </ol>
+ * </p>
+ * <p>
+ * Note that a <code>LockStripingAdvisor</code>'s interceptors must be installed in exactly <em>one</em> cache,
+ * since an interceptor instance cannot be part of more than one interceptor chain. Use it with an
+ * {@link org.infinispan.spring.support.embedded.InfinispanNamedEmbeddedCacheFactoryBean
+ * <code>InfinispanNamedEmbeddedCacheFactoryBean</code>}, not with a cache manager's default configuration.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class LockStripingAdvisor implements DisposableBean {
+
+	public static final int STRIPES_PER_PROCESSOR = 16;
+
+	public static final int MIN_CONCURRENCY_LEVEL = 16;
+
+	public static final int MAX_CONCURRENCY_LEVEL = 1 << 16;
+
+	public static final int PER_ENTRY_LOCKING_THRESHOLD = 10000;
+
+	public static final long DEFAULT_CONTENDED_WAIT_NANOS = 100000L;
+
+	public static final double DEFAULT_CONTENTION_RATIO_THRESHOLD = 0.05;
+
+	public static final long DEFAULT_MIN_SAMPLES = 1000L;
+
+	private static final String CONCURRENCY_LEVEL_PROPERTY = "concurrencyLevel";
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final ThreadLocal<long[]> lockAcquisitionStart = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	private final AtomicLong acquisitions = new AtomicLong(0);
+
+	private final AtomicLong contendedAcquisitions = new AtomicLong(0);
+
+	private final AtomicLong timedOutAcquisitions = new AtomicLong(0);
+
+	private final AtomicLong totalWaitNanos = new AtomicLong(0);
+
+	private final AtomicLong maxWaitNanos = new AtomicLong(0);
+
+	private final List<CustomInterceptorConfig> customInterceptors;
+
+	private long contendedWaitNanos = DEFAULT_CONTENDED_WAIT_NANOS;
+
+	private double contentionRatioThreshold = DEFAULT_CONTENTION_RATIO_THRESHOLD;
+
+	private long minSamples = DEFAULT_MIN_SAMPLES;
+
+	private int concurrencyLevelInUse = MIN_CONCURRENCY_LEVEL;
+
+	private File recommendationFile;
+
+	public LockStripingAdvisor() {
+		final List<CustomInterceptorConfig> interceptors = new ArrayList<CustomInterceptorConfig>(2);
+		interceptors.add(new CustomInterceptorConfig(new LockAcquisitionStartInterceptor(), false, false, -1, null,
+				LockingInterceptor.class.getName()));
+		interceptors.add(new CustomInterceptorConfig(new LockAcquisitionEndInterceptor(), false, false, -1,
+				LockingInterceptor.class.getName(), null));
+		this.customInterceptors = Collections.unmodifiableList(interceptors);
+	}
+
+	// ------------------------------------------------------------------------
+	// Initial sizing
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Derive an initial concurrency level: {@link #STRIPES_PER_PROCESSOR} lock stripes per available
+	 * processor, but no more stripes than expected entries, rounded up to the next power of two.
+	 *
+	 * @param availableProcessors
+	 *            The number of available processors
+	 * @param expectedEntryCount
+	 *            The expected number of entries, or a value <= 0 if unknown
+	 * @return The recommended initial concurrency level
+	 */
+	public static int recommendInitialConcurrencyLevel(final int availableProcessors, final int expectedEntryCount) {
+		int level = Math.max(1, availableProcessors) * STRIPES_PER_PROCESSOR;
+		if (expectedEntryCount > 0) {
+			level = Math.min(level, expectedEntryCount);
+		}
+		return nextPowerOfTwo(Math.max(MIN_CONCURRENCY_LEVEL, level));
+	}
+
+	/**
+	 * Lock striping saves memory for large caches at the price of false contention between keys sharing a
+	 * stripe. Recommend it unless the cache is expected to stay small.
+	 *
+	 * @param expectedEntryCount
+	 *            The expected number of entries, or a value <= 0 if unknown
+	 * @return <code>true</code> if lock striping is recommended
+	 */
+	public static boolean recommendInitialUseLockStriping(final int expectedEntryCount) {
+		return (expectedEntryCount <= 0) || (expectedEntryCount > PER_ENTRY_LOCKING_THRESHOLD);
+	}
+
+	static int nextPowerOfTwo(final int value) {
+		int powerOfTwo = 1;
+		while ((powerOfTwo < value) && (powerOfTwo < MAX_CONCURRENCY_LEVEL)) {
+			powerOfTwo <<= 1;
+		}
+		return powerOfTwo;
+	}
+
+	// ------------------------------------------------------------------------
+	// Measurement
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Return the pair of interceptors measuring lock acquisition wait times. Pass them to
+	 * {@link org.infinispan.spring.ConfigurationOverrides#setCustomInterceptors(List) <code>setCustomInterceptors</code>}
+	 * of the cache to monitor.
+	 *
+	 * @return The pair of interceptors measuring lock acquisition wait times
+	 */
+	public List<CustomInterceptorConfig> getCustomInterceptors() {
+		return this.customInterceptors;
+	}
+
+	void recordLockWait(final long waitNanos) {
+		this.acquisitions.incrementAndGet();
+		this.totalWaitNanos.addAndGet(waitNanos);
+		if (waitNanos >= this.contendedWaitNanos) {
+			this.contendedAcquisitions.incrementAndGet();
+		}
+		long currentMax = this.maxWaitNanos.get();
+		while ((waitNanos > currentMax) && !this.maxWaitNanos.compareAndSet(currentMax, waitNanos)) {
+			currentMax = this.maxWaitNanos.get();
+		}
+	}
+
+	void recordLockTimeout(final long waitNanos) {
+		this.timedOutAcquisitions.incrementAndGet();
+		recordLockWait(Math.max(waitNanos, this.contendedWaitNanos));
+	}
+
+	private static boolean acquiresLocks(final VisitableCommand command) {
+		return (command instanceof WriteCommand) || (command instanceof PrepareCommand)
+				|| (command instanceof LockControlCommand);
+	}
+
+	// ------------------------------------------------------------------------
+	// Recommendation
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @return The recommended concurrency level if lock contention is high, <code>null</code> otherwise
+	 */
+	public Integer getRecommendedConcurrencyLevel() {
+		final long samples = this.acquisitions.get();
+		if ((samples < this.minSamples) || (getContentionRatio() <= this.contentionRatioThreshold)) {
+			return null;
+		}
+		if (this.concurrencyLevelInUse >= MAX_CONCURRENCY_LEVEL) {
+			return null;
+		}
+		return Integer.valueOf(nextPowerOfTwo(this.concurrencyLevelInUse * 2));
+	}
+
+	/**
+	 * @return A human readable summary of measured lock contention and what to do about it
+	 */
+	public String getRecommendation() {
+		final Integer recommended = getRecommendedConcurrencyLevel();
+		final String measured = "[" + this.acquisitions.get() + "] lock acquisitions, ["
+				+ this.contendedAcquisitions.get() + "] contended, [" + this.timedOutAcquisitions.get()
+				+ "] timed out, average wait [" + getAverageWaitNanos() + " ns], max wait [" + this.maxWaitNanos.get()
+				+ " ns]";
+		if (recommended == null) {
+			return measured + " - concurrency level [" + this.concurrencyLevelInUse + "] is adequate";
+		}
+		return measured + " - raise concurrency level from [" + this.concurrencyLevelInUse + "] to [" + recommended
+				+ "]";
+	}
+
+	public double getContentionRatio() {
+		final long samples = this.acquisitions.get();
+		return samples > 0 ? (double) this.contendedAcquisitions.get() / samples : 0.0;
+	}
+
+	public long getAverageWaitNanos() {
+		final long samples = this.acquisitions.get();
+		return samples > 0 ? this.totalWaitNanos.get() / samples : 0L;
+	}
+
+	/**
+	 * Persist the current recommendation, if any, to the configured {@link #setRecommendationFile(File)
+	 * recommendation file}.
+	 *
+	 * @throws IOException
+	 */
+	public void saveRecommendation() throws IOException {
+		final Integer recommended = getRecommendedConcurrencyLevel();
+		if ((recommended == null) || (this.recommendationFile == null)) {
+			return;
+		}
+		final Properties recommendation = new Properties();
+		recommendation.setProperty(CONCURRENCY_LEVEL_PROPERTY, recommended.toString());
+		final OutputStream out = new FileOutputStream(this.recommendationFile);
+		try {
+			recommendation.store(out, "Concurrency level recommended by " + getClass().getName());
+		} finally {
+			out.close();
+		}
+		this.logger.info("Saved recommended concurrency level [" + recommended + "] to ["
+				+ this.recommendationFile + "]");
+	}
+
+	/**
+	 * Load a concurrency level previously {@link #saveRecommendation() saved} to <code>recommendationFile</code>.
+	 *
+	 * @param recommendationFile
+	 * @return The saved concurrency level, or <code>null</code> if there is none
+	 * @throws IOException
+	 */
+	public static Integer loadRecommendedConcurrencyLevel(final File recommendationFile) throws IOException {
+		if ((recommendationFile == null) || !recommendationFile.isFile()) {
+			return null;
+		}
+		final Properties recommendation = new Properties();
+		final InputStream in = new FileInputStream(recommendationFile);
+		try {
+			recommendation.load(in);
+		} finally {
+			in.close();
+		}
+		final String concurrencyLevel = recommendation.getProperty(CONCURRENCY_LEVEL_PROPERTY);
+		return concurrencyLevel != null ? Integer.valueOf(concurrencyLevel.trim()) : null;
+	}
+
+	// ------------------------------------------------------------------------
+	// org.springframework.beans.factory.DisposableBean
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Log the current recommendation and {@link #saveRecommendation() save} it, if there is one.
+	 *
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception {
+		if (getRecommendedConcurrencyLevel() != null) {
+			this.logger.warn("High lock contention: " + getRecommendation());
+			saveRecommendation();
+		} else {
+			this.logger.info(getRecommendation());
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Properties
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @param concurrencyLevelInUse
+	 *            The concurrency level the monitored cache has been configured with
+	 */
+	public void setConcurrencyLevelInUse(final int concurrencyLevelInUse) {
+		this.concurrencyLevelInUse = concurrencyLevelInUse;
+	}
+
+	/**
+	 * @param contendedWaitNanos
+	 *            The lock wait time in nanoseconds from which on an acquisition counts as contended
+	 */
+	public void setContendedWaitNanos(final long contendedWaitNanos) {
+		this.contendedWaitNanos = contendedWaitNanos;
+	}
+
+	/**
+	 * @param contentionRatioThreshold
+	 *            The ratio of contended acquisitions above which a higher concurrency level is recommended
+	 */
+	public void setContentionRatioThreshold(final double contentionRatioThreshold) {
+		this.contentionRatioThreshold = contentionRatioThreshold;
+	}
+
+	/**
+	 * @param minSamples
+	 *            The minimum number of measured acquisitions before any recommendation is made
+	 */
+	public void setMinSamples(final long minSamples) {
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * @param recommendationFile
+	 *            The file to persist a recommendation to, to be applied on the next restart
+	 */
+	public void setRecommendationFile(final File recommendationFile) {
+		this.recommendationFile = recommendationFile;
+	}
+
+	public File getRecommendationFile() {
+		return this.recommendationFile;
+	}
+
+	// ------------------------------------------------------------------------
+	// Interceptors
+	// ------------------------------------------------------------------------
+
+	private final class LockAcquisitionStartInterceptor extends CommandInterceptor {
+
+		@Override
+		protected Object handleDefault(final InvocationContext ctx, final VisitableCommand command) throws Throwable {
+			if (!acquiresLocks(command)) {
+				return invokeNextInterceptor(ctx, command);
+			}
+			final long started = System.nanoTime();
+			LockStripingAdvisor.this.lockAcquisitionStart.get()[0] = started;
+			try {
+				return invokeNextInterceptor(ctx, command);
+			} catch (final TimeoutException e) {
+				recordLockTimeout(System.nanoTime() - started);
+				throw e;
+			}
+		}
+	}
+
+	private final class LockAcquisitionEndInterceptor extends CommandInterceptor {
+
+		@Override
+		protected Object handleDefault(final InvocationContext ctx, final VisitableCommand command) throws Throwable {
+			if (acquiresLocks(command)) {
+				final long[] started = LockStripingAdvisor.this.lockAcquisitionStart.get();
+				if (started[0] != 0L) {
+					recordLockWait(System.nanoTime() - started[0]);
+					started[0] = 0L;
+				}
+			}
+			return invokeNextInterceptor(ctx, command);
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.Cache;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryVisited;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryVisitedEvent;
+import org.infinispan.notifications.cachemanagerlistener.annotation.CacheStarted;
+import org.infinispan.notifications.cachemanagerlistener.event.CacheStartedEvent;
+
+/**
+ * <p>
+ * Evicts entries from an INFINISPAN cache once their estimated total size exceeds a byte budget.
+ * </p>
+ * <p>
+ * <code>evictionMaxEntries</code> bounds the number of entries, which says little about heap use if values
+ * range from a hundred bytes to a megabyte. A <code>ByteBudgetEviction</code> instead estimates every entry's
+ * retained size using an {@link EntrySizer <code>EntrySizer</code>} - by default a
+ * {@link MarshalledEntrySizer <code>MarshalledEntrySizer</code>} -, keeps a running total and evicts least
+ * recently used entries until that total is back under budget. Like INFINISPAN's own eviction this only
+ * removes entries from memory: a passivating cache store will still see them.
+ * </p>
+ * <p>
+ * It is installed as an asynchronous cache listener. Its running total therefore lags slightly behind the
+ * cache's actual content, and a cache may briefly exceed its budget.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+@Listener(sync = false)
+public class ByteBudgetEviction {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final Cache<?, ?> cache;
+
+	private final long maxBytes;
+
+	private final EntrySizer entrySizer;
+
+	private final LinkedHashMap<Object, Long> entrySizes = new LinkedHashMap<Object, Long>(16, 0.75f, true);
+
+	private long totalBytes;
+
+	ByteBudgetEviction(final Cache<?, ?> cache, final long maxBytes, final EntrySizer entrySizer) {
+		this.cache = cache;
+		this.maxBytes = maxBytes;
+		this.entrySizer = entrySizer;
+	}
+
+	/**
+	 * Install a <code>ByteBudgetEviction</code> in <code>cache</code> unless one has already been installed.
+	 *
+	 * @param cache
+	 * @param maxBytes
+	 *            The maximum estimated number of bytes <code>cache</code> may retain
+	 * @param entrySizer
+	 *            The <code>EntrySizer</code> to use, or <code>null</code> to use a
+	 *            {@link MarshalledEntrySizer#forCache(Cache) <code>MarshalledEntrySizer</code>}
+	 * @return The <code>ByteBudgetEviction</code> installed in <code>cache</code>
+	 */
+	public static ByteBudgetEviction installIn(final Cache<?, ?> cache, final long maxBytes,
+			final EntrySizer entrySizer) {
+		if (maxBytes <= 0L) {
+			throw new IllegalArgumentException("maxBytes must be positive, was [" + maxBytes + "]");
+		}
+		synchronized (cache) {
+			for (final Object listener : cache.getListeners()) {
+				if (listener instanceof ByteBudgetEviction) {
+					return (ByteBudgetEviction) listener;
+				}
+			}
+			final EntrySizer entrySizerToUse = entrySizer != null ? entrySizer : MarshalledEntrySizer.forCache(cache);
+			final ByteBudgetEviction byteBudgetEviction = new ByteBudgetEviction(cache, maxBytes, entrySizerToUse);
+			cache.addListener(byteBudgetEviction);
+			LogFactory.getLog(ByteBudgetEviction.class).info(
+					"Installed byte budget eviction with budget [" + maxBytes + "] bytes in cache [" + cache.getName()
+							+ "]");
+			return byteBudgetEviction;
+		}
+	}
+
+	/**
+	 * Install a <code>ByteBudgetEviction</code> in every cache named in <code>maxBytesPerCache</code> that
+	 * <code>cacheManager</code> starts from now on.
+	 *
+	 * @param cacheManager
+	 * @param maxBytesPerCache
+	 *            Cache name -&gt; budget in bytes
+	 * @param entrySizer
+	 *            The <code>EntrySizer</code> to use, or <code>null</code> to use a
+	 *            <code>MarshalledEntrySizer</code>
+	 */
+	public static void installInCachesStartedBy(final EmbeddedCacheManager cacheManager,
+			final Map<String, Long> maxBytesPerCache, final EntrySizer entrySizer) {
+		cacheManager.addListener(new CacheStartedListener(maxBytesPerCache, entrySizer));
+	}
+
+	// ------------------------------------------------------------------------
+	// Listener callbacks
+	// ------------------------------------------------------------------------
+
+	@CacheEntryModified
+	public void entryModified(final CacheEntryModifiedEvent event) {
+		if (event.isPre()) {
+			return;
+		}
+		final long size = this.entrySizer.sizeOf(event.getKey(), event.getValue());
+		final List<Object> victims;
+		synchronized (this) {
+			final Long previousSize = this.entrySizes.put(event.getKey(), Long.valueOf(size));
+			this.totalBytes += size - (previousSize != null ? previousSize.longValue() : 0L);
+			victims = selectVictims();
+		}
+		for (final Object victim : victims) {
+			this.cache.evict(victim);
+		}
+	}
+
+	@CacheEntryVisited
+	public void entryVisited(final CacheEntryVisitedEvent event) {
+		if (!event.isPre()) {
+			synchronized (this) {
+				this.entrySizes.get(event.getKey());
+			}
+		}
+	}
+
+	@CacheEntryRemoved
+	public void entryRemoved(final CacheEntryRemovedEvent event) {
+		if (!event.isPre()) {
+			forget(event.getKey());
+		}
+	}
+
+	@CacheEntryEvicted
+	public void entryEvicted(final CacheEntryEvictedEvent event) {
+		forget(event.getKey());
+	}
+
+	private synchronized void forget(final Object key) {
+		final Long size = this.entrySizes.remove(key);
+		if (size != null) {
+			this.totalBytes -= size.longValue();
+		}
+	}
+
+	private List<Object> selectVictims() {
+		if (this.totalBytes <= this.maxBytes) {
+			return Collections.emptyList();
+		}
+		final List<Object> victims = new ArrayList<Object>();
+		final Iterator<Map.Entry<Object, Long>> eldestFirst = this.entrySizes.entrySet().iterator();
+		while ((this.totalBytes > this.maxBytes) && eldestFirst.hasNext()) {
+			final Map.Entry<Object, Long> eldest = eldestFirst.next();
+			victims.add(eldest.getKey());
+			this.totalBytes -= eldest.getValue().longValue();
+			eldestFirst.remove();
+		}
+		this.logger.trace("Evicting [" + victims.size() + "] entries from cache [" + this.cache.getName()
+				+ "] to get back under budget of [" + this.maxBytes + "] bytes");
+		return victims;
+	}
+
+	// ------------------------------------------------------------------------
+	// Statistics
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @return The estimated number of bytes currently retained by this cache's entries
+	 */
+	public synchronized long getTotalBytes() {
+		return this.totalBytes;
+	}
+
+	/**
+	 * @return This cache's budget in bytes
+	 */
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	// ------------------------------------------------------------------------
+	// Installing on cache start
+	// ------------------------------------------------------------------------
+
+	@Listener
+	public static final class CacheStartedListener {
+
+		private final Map<String, Long> maxBytesPerCache;
+
+		private final EntrySizer entrySizer;
+
+		CacheStartedListener(final Map<String, Long> maxBytesPerCache, final EntrySizer entrySizer) {
+			this.maxBytesPerCache = maxBytesPerCache;
+			this.entrySizer = entrySizer;
+		}
+
+		@CacheStarted
+		public void cacheStarted(final CacheStartedEvent event) {
+			final Long maxBytes = this.maxBytesPerCache.get(event.getCacheName());
+			if (maxBytes != null) {
+				installIn(event.getCacheManager().getCache(event.getCacheName()), maxBytes.longValue(),
+						this.entrySizer);
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+/**
+ * <p>
+ * Estimates how many bytes of heap a cache entry retains.
+ * </p>
+ * <p>
+ * Implementations are called once for every write and should therefore be cheap. They need not be exact, but
+ * should be consistent: the same entry should always be given the same size.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ * @see MarshalledEntrySizer
+ * @see ByteBudgetEviction
+ */
+public interface EntrySizer {
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return The estimated number of bytes retained by the entry <code>key</code> -&gt; <code>value</code>
+	 */
+	long sizeOf(Object key, Object value);
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+/**
+ * <p>
+ * A count-min sketch estimating how often a key has been accessed recently, using four rows of counters that
+ * saturate at 15. Each counter is held in a byte of its own, so memory use is fixed at four bytes per counter
+ * column, regardless of how many distinct keys are seen.
+ * </p>
+ * <p>
+ * To keep the estimates <em>recent</em>, all counters are halved once the number of recorded accesses reaches
+ * ten times the number of columns. Instances are not thread-safe.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public final class FrequencySketch {
+
+	private static final int DEPTH = 4;
+
+	private static final int MAX_COUNT = 15;
+
+	private static final int[] SEEDS = { 0x97cb3127, 0x7f4a7c15, 0x5bd1e995, 0x9e3779b9 };
+
+	private final byte[] counters;
+
+	private final int widthMask;
+
+	private final int sampleSize;
+
+	private int additions;
+
+	/**
+	 * @param expectedSize
+	 *            The number of entries the cache using this sketch may hold
+	 */
+	public FrequencySketch(final int expectedSize) {
+		int width = 16;
+		while (width < expectedSize) {
+			width <<= 1;
+		}
+		this.counters = new byte[DEPTH * width];
+		this.widthMask = width - 1;
+		this.sampleSize = 10 * width;
+	}
+
+	/**
+	 * Record one access to <code>key</code>.
+	 *
+	 * @param key
+	 */
+	public void increment(final Object key) {
+		final int hash = spread(key.hashCode());
+		boolean incremented = false;
+		for (int row = 0; row < DEPTH; row++) {
+			final int index = indexOf(hash, row);
+			if (this.counters[index] < MAX_COUNT) {
+				this.counters[index]++;
+				incremented = true;
+			}
+		}
+		if (incremented && (++this.additions >= this.sampleSize)) {
+			reset();
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return The estimated number of recent accesses to <code>key</code>, at most 15
+	 */
+	public int frequency(final Object key) {
+		final int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++) {
+			frequency = Math.min(frequency, this.counters[indexOf(hash, row)]);
+		}
+		return frequency;
+	}
+
+	private void reset() {
+		for (int i = 0; i < this.counters.length; i++) {
+			this.counters[i] = (byte) (this.counters[i] >>> 1);
+		}
+		this.additions >>>= 1;
+	}
+
+	private int indexOf(final int hash, final int row) {
+		int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+		h ^= h >>> 16;
+		return row * (this.widthMask + 1) + (h & this.widthMask);
+	}
+
+	private static int spread(final int hashCode) {
+		int h = hashCode * 0x9e3779b9;
+		h ^= h >>> 15;
+		return h;
+	}
+}
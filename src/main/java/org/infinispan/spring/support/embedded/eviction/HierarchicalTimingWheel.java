@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A hierarchical timing wheel: four wheels of 64 buckets each, the first spanning 64 ticks, the second 64
+ * times as many and so on. Keys are bucketed by their deadline, and {@link #advance(long) advancing} the
+ * wheel only touches the buckets that have become due - plus, once every 64 ticks, one bucket of a coarser
+ * wheel whose keys are redistributed to finer ones. Scheduling, rescheduling and cancelling a key are O(1).
+ * </p>
+ * <p>
+ * Deadlines beyond the span of the coarsest wheel are parked in its farthest bucket and redistributed when
+ * that bucket comes around. All methods are synchronized.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class HierarchicalTimingWheel<K> {
+
+	private static final int LEVELS = 4;
+
+	private static final int BITS_PER_LEVEL = 6;
+
+	private static final int SLOTS = 1 << BITS_PER_LEVEL;
+
+	private static final int SLOT_MASK = SLOTS - 1;
+
+	private final long tickMillis;
+
+	private final Node<K>[][] buckets;
+
+	private final Map<K, Node<K>> nodes = new HashMap<K, Node<K>>();
+
+	private long currentTick;
+
+	/**
+	 * @param tickMillis
+	 *            The wheel's resolution in milliseconds
+	 * @param nowMillis
+	 *            The current time in milliseconds
+	 */
+	@SuppressWarnings("unchecked")
+	public HierarchicalTimingWheel(final long tickMillis, final long nowMillis) {
+		if (tickMillis <= 0L) {
+			throw new IllegalArgumentException("tickMillis must be positive, was [" + tickMillis + "]");
+		}
+		this.tickMillis = tickMillis;
+		this.buckets = new Node[LEVELS][SLOTS];
+		this.currentTick = nowMillis / tickMillis;
+	}
+
+	/**
+	 * Schedule <code>key</code> to become due at <code>deadlineMillis</code>, replacing any previous deadline.
+	 *
+	 * @param key
+	 * @param deadlineMillis
+	 */
+	public synchronized void schedule(final K key, final long deadlineMillis) {
+		Node<K> node = this.nodes.get(key);
+		if (node != null) {
+			unlink(node);
+		} else {
+			node = new Node<K>(key);
+			this.nodes.put(key, node);
+		}
+		// Round up so that a key never becomes due before its deadline
+		node.dueTick = Math.max(this.currentTick + 1, (deadlineMillis + this.tickMillis - 1) / this.tickMillis);
+		place(node);
+	}
+
+	/**
+	 * @param key
+	 * @return <code>true</code> if <code>key</code> had been scheduled
+	 */
+	public synchronized boolean cancel(final K key) {
+		final Node<K> node = this.nodes.remove(key);
+		if (node == null) {
+			return false;
+		}
+		unlink(node);
+		return true;
+	}
+
+	/**
+	 * Advance this wheel to <code>nowMillis</code>.
+	 *
+	 * @param nowMillis
+	 * @return All keys that have become due, in no particular order. They are no longer scheduled.
+	 */
+	public synchronized List<K> advance(final long nowMillis) {
+		final long targetTick = nowMillis / this.tickMillis;
+		List<K> due = null;
+		while (this.currentTick < targetTick) {
+			this.currentTick++;
+			cascade();
+			Node<K> node = detach(0, (int) (this.currentTick & SLOT_MASK));
+			while (node != null) {
+				final Node<K> next = node.next;
+				node.prev = null;
+				node.next = null;
+				if (node.dueTick <= this.currentTick) {
+					if (due == null) {
+						due = new ArrayList<K>();
+					}
+					this.nodes.remove(node.key);
+					due.add(node.key);
+				} else {
+					place(node);
+				}
+				node = next;
+			}
+		}
+		return due != null ? due : Collections.<K> emptyList();
+	}
+
+	public synchronized int size() {
+		return this.nodes.size();
+	}
+
+	private void cascade() {
+		for (int level = 1; level < LEVELS; level++) {
+			final int shift = level * BITS_PER_LEVEL;
+			if ((this.currentTick & ((1L << shift) - 1)) != 0L) {
+				return;
+			}
+			Node<K> node = detach(level, (int) ((this.currentTick >>> shift) & SLOT_MASK));
+			while (node != null) {
+				final Node<K> next = node.next;
+				node.prev = null;
+				node.next = null;
+				place(node);
+				node = next;
+			}
+		}
+	}
+
+	private void place(final Node<K> node) {
+		final long delta = node.dueTick - this.currentTick;
+		for (int level = 0; level < LEVELS; level++) {
+			final int shift = level * BITS_PER_LEVEL;
+			if (delta < (1L << (shift + BITS_PER_LEVEL))) {
+				link(node, level, (int) ((node.dueTick >>> shift) & SLOT_MASK));
+				return;
+			}
+		}
+		// Beyond the coarsest wheel: park in its farthest bucket
+		final int shift = (LEVELS - 1) * BITS_PER_LEVEL;
+		link(node, LEVELS - 1, (int) (((this.currentTick >>> shift) + SLOT_MASK) & SLOT_MASK));
+	}
+
+	private void link(final Node<K> node, final int level, final int slot) {
+		node.level = level;
+		node.slot = slot;
+		node.prev = null;
+		node.next = this.buckets[level][slot];
+		if (node.next != null) {
+			node.next.prev = node;
+		}
+		this.buckets[level][slot] = node;
+	}
+
+	private void unlink(final Node<K> node) {
+		if (node.prev != null) {
+			node.prev.next = node.next;
+		} else if (this.buckets[node.level][node.slot] == node) {
+			this.buckets[node.level][node.slot] = node.next;
+		}
+		if (node.next != null) {
+			node.next.prev = node.prev;
+		}
+		node.prev = null;
+		node.next = null;
+	}
+
+	private Node<K> detach(final int level, final int slot) {
+		final Node<K> head = this.buckets[level][slot];
+		this.buckets[level][slot] = null;
+		return head;
+	}
+
+	private static final class Node<K> {
+
+		final K key;
+
+		long dueTick;
+
+		int level;
+
+		int slot;
+
+		Node<K> prev;
+
+		Node<K> next;
+
+		Node(final K key) {
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.Cache;
+import org.infinispan.factories.KnownComponentNames;
+import org.infinispan.marshall.Marshaller;
+import org.infinispan.marshall.StreamingMarshaller;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * An {@link EntrySizer <code>EntrySizer</code>} that uses an entry's marshalled length, plus a fixed
+ * {@link #DEFAULT_ENTRY_OVERHEAD per-entry overhead} for the container's internal bookkeeping, as an
+ * estimate for its retained size. The marshalled length underestimates the heap used by strings and boxed
+ * primitives, yet it scales with the entry's actual size, which is what matters for a byte budget.
+ * </p>
+ * <p>
+ * Entries that cannot be marshalled are given a size of {@link #DEFAULT_UNMARSHALLABLE_SIZE}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class MarshalledEntrySizer implements EntrySizer {
+
+	public static final long DEFAULT_ENTRY_OVERHEAD = 96L;
+
+	public static final long DEFAULT_UNMARSHALLABLE_SIZE = 1024L;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final Marshaller marshaller;
+
+	private long entryOverhead = DEFAULT_ENTRY_OVERHEAD;
+
+	public MarshalledEntrySizer(final Marshaller marshaller) {
+		Assert.notNull(marshaller, "marshaller must not be null");
+		this.marshaller = marshaller;
+	}
+
+	/**
+	 * Create a <code>MarshalledEntrySizer</code> using the global marshaller of <code>cache</code>'s cache
+	 * manager.
+	 *
+	 * @param cache
+	 * @return A <code>MarshalledEntrySizer</code> for <code>cache</code>
+	 */
+	public static MarshalledEntrySizer forCache(final Cache<?, ?> cache) {
+		final StreamingMarshaller marshaller = cache.getAdvancedCache().getComponentRegistry()
+				.getGlobalComponentRegistry()
+				.getComponent(StreamingMarshaller.class, KnownComponentNames.GLOBAL_MARSHALLER);
+		return new MarshalledEntrySizer(marshaller);
+	}
+
+	/**
+	 * @see org.infinispan.spring.support.embedded.eviction.EntrySizer#sizeOf(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public long sizeOf(final Object key, final Object value) {
+		return this.entryOverhead + marshalledLength(key) + marshalledLength(value);
+	}
+
+	private long marshalledLength(final Object object) {
+		if (object == null) {
+			return 0L;
+		}
+		try {
+			return this.marshaller.objectToByteBuffer(object).length;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return DEFAULT_UNMARSHALLABLE_SIZE;
+		} catch (final Exception e) {
+			this.logger.debug("Failed to marshal [" + object + "] - assuming size [" + DEFAULT_UNMARSHALLABLE_SIZE
+					+ "]: " + e.getMessage());
+			return DEFAULT_UNMARSHALLABLE_SIZE;
+		}
+	}
+
+	/**
+	 * @param entryOverhead
+	 *            The number of bytes to add to every entry's marshalled length
+	 */
+	public void setEntryOverhead(final long entryOverhead) {
+		this.entryOverhead = entryOverhead;
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.Cache;
+import org.infinispan.container.DataContainer;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.factories.KnownComponentNames;
+import org.infinispan.lifecycle.ComponentStatus;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.infinispan.notifications.cachemanagerlistener.annotation.CacheStarted;
+import org.infinispan.notifications.cachemanagerlistener.event.CacheStartedEvent;
+
+/**
+ * <p>
+ * Purges expired entries from an INFINISPAN cache as they expire, instead of waiting for the eviction thread's
+ * next full scan of the data container.
+ * </p>
+ * <p>
+ * Every entry written with a lifespan or max-idle time is bucketed by its expiry time in a
+ * {@link HierarchicalTimingWheel <code>HierarchicalTimingWheel</code>}. Every {@link #DEFAULT_TICK_MILLIS tick}
+ * only the buckets that have become due are processed: an entry that has indeed expired is dropped from the
+ * data container, while an entry whose expiry time has moved in the meantime - because it has been read and
+ * has a max-idle time, or because it has been overwritten - is rescheduled. Reads therefore never touch the
+ * wheel.
+ * </p>
+ * <p>
+ * Ticks are driven by the scheduled executor INFINISPAN uses for eviction, i.e. the one created by the factory
+ * set through <code>setEvictionScheduledExecutorFactoryClass</code>. Selecting timing wheel expiration through
+ * {@link org.infinispan.spring.ConfigurationOverrides#setUseTimingWheelExpiration(Boolean)} also stretches the
+ * eviction thread's wake-up interval to {@link #SAFETY_SWEEP_INTERVAL}, unless that has been set explicitly:
+ * the eviction thread is then only needed for purging cache stores and as a safety net.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+@Listener(sync = false)
+public class TimingWheelExpirationReaper {
+
+	public static final long DEFAULT_TICK_MILLIS = 100L;
+
+	public static final long SAFETY_SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final Cache<?, ?> cache;
+
+	private final DataContainer dataContainer;
+
+	private final HierarchicalTimingWheel<Object> wheel;
+
+	private final AtomicLong reapedEntries = new AtomicLong(0);
+
+	private volatile ScheduledFuture<?> tickTask;
+
+	TimingWheelExpirationReaper(final Cache<?, ?> cache, final long tickMillis) {
+		this.cache = cache;
+		this.dataContainer = cache.getAdvancedCache().getDataContainer();
+		this.wheel = new HierarchicalTimingWheel<Object>(tickMillis, System.currentTimeMillis());
+	}
+
+	/**
+	 * Install a <code>TimingWheelExpirationReaper</code> in <code>cache</code> unless one has already been
+	 * installed, scheduling all mortal entries <code>cache</code> already contains.
+	 *
+	 * @param cache
+	 * @return The <code>TimingWheelExpirationReaper</code> installed in <code>cache</code>
+	 */
+	public static TimingWheelExpirationReaper installIn(final Cache<?, ?> cache) {
+		synchronized (cache) {
+			for (final Object listener : cache.getListeners()) {
+				if (listener instanceof TimingWheelExpirationReaper) {
+					return (TimingWheelExpirationReaper) listener;
+				}
+			}
+			final TimingWheelExpirationReaper reaper = new TimingWheelExpirationReaper(cache, DEFAULT_TICK_MILLIS);
+			cache.addListener(reaper);
+			reaper.scheduleExistingEntries();
+			reaper.start(evictionScheduledExecutorOf(cache));
+			return reaper;
+		}
+	}
+
+	/**
+	 * Install a <code>TimingWheelExpirationReaper</code> in every cache <code>cacheManager</code> starts from now
+	 * on.
+	 *
+	 * @param cacheManager
+	 */
+	public static void installInCachesStartedBy(final EmbeddedCacheManager cacheManager) {
+		cacheManager.addListener(new CacheStartedListener());
+	}
+
+	private static ScheduledExecutorService evictionScheduledExecutorOf(final Cache<?, ?> cache) {
+		return cache.getAdvancedCache().getComponentRegistry().getGlobalComponentRegistry()
+				.getComponent(ScheduledExecutorService.class, KnownComponentNames.EVICTION_SCHEDULED_EXECUTOR);
+	}
+
+	void start(final ScheduledExecutorService executor) {
+		if (executor == null) {
+			throw new IllegalStateException("Cache [" + this.cache.getName()
+					+ "] has no eviction scheduled executor to drive timing wheel expiration");
+		}
+		this.tickTask = executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		}, DEFAULT_TICK_MILLIS, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+		this.logger.info("Started timing wheel expiration for cache [" + this.cache.getName() + "]");
+	}
+
+	void stop() {
+		final ScheduledFuture<?> task = this.tickTask;
+		if (task != null) {
+			task.cancel(false);
+			this.tickTask = null;
+		}
+	}
+
+	private void scheduleExistingEntries() {
+		for (final InternalCacheEntry entry : this.dataContainer) {
+			if (entry.canExpire()) {
+				this.wheel.schedule(entry.getKey(), entry.getExpiryTime());
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Reaping
+	// ------------------------------------------------------------------------
+
+	void tick() {
+		final ComponentStatus status = this.cache.getStatus();
+		if (status == ComponentStatus.STOPPING || status == ComponentStatus.TERMINATED) {
+			stop();
+			return;
+		}
+		try {
+			reapDueEntries(System.currentTimeMillis());
+		} catch (final RuntimeException e) {
+			this.logger.error("Timing wheel expiration for cache [" + this.cache.getName() + "] failed: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	int reapDueEntries(final long nowMillis) {
+		int reaped = 0;
+		for (final Object key : this.wheel.advance(nowMillis)) {
+			final InternalCacheEntry entry = this.dataContainer.peek(key);
+			if ((entry == null) || !entry.canExpire()) {
+				continue;
+			}
+			if (entry.isExpired()) {
+				// DataContainer.get() drops expired entries, exactly as a read would
+				this.dataContainer.get(key);
+				reaped++;
+			} else {
+				this.wheel.schedule(key, entry.getExpiryTime());
+			}
+		}
+		this.reapedEntries.addAndGet(reaped);
+		return reaped;
+	}
+
+	// ------------------------------------------------------------------------
+	// Listener callbacks
+	// ------------------------------------------------------------------------
+
+	@CacheEntryModified
+	public void entryModified(final CacheEntryModifiedEvent event) {
+		if (event.isPre()) {
+			return;
+		}
+		final InternalCacheEntry entry = this.dataContainer.peek(event.getKey());
+		if ((entry != null) && entry.canExpire()) {
+			this.wheel.schedule(event.getKey(), entry.getExpiryTime());
+		} else {
+			this.wheel.cancel(event.getKey());
+		}
+	}
+
+	@CacheEntryRemoved
+	public void entryRemoved(final CacheEntryRemovedEvent event) {
+		if (!event.isPre()) {
+			this.wheel.cancel(event.getKey());
+		}
+	}
+
+	@CacheEntryEvicted
+	public void entryEvicted(final CacheEntryEvictedEvent event) {
+		this.wheel.cancel(event.getKey());
+	}
+
+	// ------------------------------------------------------------------------
+	// Statistics
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @return The number of entries currently scheduled for expiration
+	 */
+	public int getScheduledEntries() {
+		return this.wheel.size();
+	}
+
+	/**
+	 * @return The number of expired entries purged so far
+	 */
+	public long getReapedEntries() {
+		return this.reapedEntries.get();
+	}
+
+	// ------------------------------------------------------------------------
+	// Installing on cache start
+	// ------------------------------------------------------------------------
+
+	@Listener
+	public static final class CacheStartedListener {
+
+		@CacheStarted
+		public void cacheStarted(final CacheStartedEvent event) {
+			installIn(event.getCacheManager().getCache(event.getCacheName()));
+		}
+	}
+}
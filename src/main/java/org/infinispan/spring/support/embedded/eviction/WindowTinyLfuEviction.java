@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.Cache;
+import org.infinispan.config.Configuration;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryVisited;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryVisitedEvent;
+import org.infinispan.notifications.cachemanagerlistener.annotation.CacheStarted;
+import org.infinispan.notifications.cachemanagerlistener.event.CacheStartedEvent;
+
+/**
+ * <p>
+ * Window-TinyLFU eviction for INFINISPAN caches.
+ * </p>
+ * <p>
+ * INFINISPAN 4.2 only knows the eviction strategies enumerated in
+ * {@link org.infinispan.eviction.EvictionStrategy <code>EvictionStrategy</code>} and offers no way to plug in
+ * another one. Selecting {@link #STRATEGY_NAME <code>W_TINYLFU</code>} through
+ * {@link org.infinispan.spring.ConfigurationOverrides#setEvictionStrategyClass(String)
+ * <code>setEvictionStrategyClass</code>} therefore turns INFINISPAN's own eviction off - strategy
+ * <code>NONE</code>, while keeping <code>evictionMaxEntries</code> as the capacity - and installs an
+ * asynchronous cache listener instead. That listener feeds reads and writes into a
+ * {@link WindowTinyLfuPolicy <code>WindowTinyLfuPolicy</code>} and {@link org.infinispan.Cache#evict(Object)
+ * evicts} the victims it selects. Since it runs asynchronously a cache may briefly exceed its capacity.
+ * </p>
+ * <p>
+ * The factory beans install that listener automatically in every cache they configured for W-TinyLFU, i.e. in
+ * caches using the default configuration the override has been applied to, but not in caches having a named
+ * configuration of their own.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public final class WindowTinyLfuEviction {
+
+	public static final String STRATEGY_NAME = "W_TINYLFU";
+
+	private static final Log LOGGER = LogFactory.getLog(WindowTinyLfuEviction.class);
+
+	private WindowTinyLfuEviction() {
+		// Not instantiable
+	}
+
+	/**
+	 * @param evictionStrategyClass
+	 * @return <code>true</code> if <code>evictionStrategyClass</code> selects W-TinyLFU eviction
+	 */
+	public static boolean isSelectedBy(final String evictionStrategyClass) {
+		if (evictionStrategyClass == null) {
+			return false;
+		}
+		final String normalized = evictionStrategyClass.trim().toUpperCase().replace("-", "_");
+		return STRATEGY_NAME.equals(normalized) || "WTINYLFU".equals(normalized)
+				|| WindowTinyLfuEviction.class.getName().equals(evictionStrategyClass.trim());
+	}
+
+	/**
+	 * Turn INFINISPAN's own eviction off in <code>configuration</code>, leaving it to W-TinyLFU.
+	 *
+	 * @param configuration
+	 */
+	public static void prepare(final Configuration configuration) {
+		configuration.setEvictionStrategy(EvictionStrategy.NONE);
+	}
+
+	/**
+	 * Install W-TinyLFU eviction in <code>cache</code> if it has been {@link #prepare(Configuration) prepared}
+	 * for it and it has not been installed yet.
+	 *
+	 * @param cache
+	 * @return <code>true</code> if W-TinyLFU eviction is active in <code>cache</code> after this call
+	 */
+	public static boolean installIn(final Cache<?, ?> cache) {
+		final Configuration configuration = cache.getConfiguration();
+		if ((configuration.getEvictionStrategy() != EvictionStrategy.NONE)
+				|| (configuration.getEvictionMaxEntries() < 2)) {
+			return false;
+		}
+		synchronized (cache) {
+			for (final Object listener : cache.getListeners()) {
+				if (listener instanceof EvictionListener) {
+					return true;
+				}
+			}
+			cache.addListener(new EvictionListener(cache, configuration.getEvictionMaxEntries()));
+		}
+		LOGGER.info("Installed W-TinyLFU eviction with capacity [" + configuration.getEvictionMaxEntries()
+				+ "] in cache [" + cache.getName() + "]");
+		return true;
+	}
+
+	/**
+	 * Install W-TinyLFU eviction in every cache <code>cacheManager</code> starts from now on using its default
+	 * configuration, which has been {@link #prepare(Configuration) prepared} for it. Caches having a configuration
+	 * of their own, named in <code>explicitlyConfiguredCacheNames</code>, are left alone even if their eviction
+	 * strategy is <code>NONE</code>: that is how their configuration turns eviction off.
+	 *
+	 * @param cacheManager
+	 * @param explicitlyConfiguredCacheNames
+	 */
+	public static void installInCachesStartedBy(final EmbeddedCacheManager cacheManager,
+			final Collection<String> explicitlyConfiguredCacheNames) {
+		cacheManager.addListener(new CacheStartedListener(explicitlyConfiguredCacheNames));
+	}
+
+	// ------------------------------------------------------------------------
+	// Listeners
+	// ------------------------------------------------------------------------
+
+	@Listener(sync = false)
+	public static final class EvictionListener {
+
+		private final Cache<?, ?> cache;
+
+		private final WindowTinyLfuPolicy<Object> policy;
+
+		EvictionListener(final Cache<?, ?> cache, final int maximumSize) {
+			this.cache = cache;
+			this.policy = new WindowTinyLfuPolicy<Object>(maximumSize);
+		}
+
+		@CacheEntryVisited
+		public void entryVisited(final CacheEntryVisitedEvent event) {
+			if (!event.isPre()) {
+				this.policy.recordAccess(event.getKey());
+			}
+		}
+
+		@CacheEntryCreated
+		public void entryCreated(final CacheEntryCreatedEvent event) {
+			if (event.isPre()) {
+				return;
+			}
+			for (final Object victim : this.policy.recordInsertion(event.getKey())) {
+				this.policy.recordRemoval(victim);
+				this.cache.evict(victim);
+			}
+		}
+
+		@CacheEntryRemoved
+		public void entryRemoved(final CacheEntryRemovedEvent event) {
+			if (!event.isPre()) {
+				this.policy.recordRemoval(event.getKey());
+			}
+		}
+
+		@CacheEntryEvicted
+		public void entryEvicted(final CacheEntryEvictedEvent event) {
+			this.policy.recordRemoval(event.getKey());
+		}
+
+		WindowTinyLfuPolicy<Object> getPolicy() {
+			return this.policy;
+		}
+	}
+
+	@Listener
+	public static final class CacheStartedListener {
+
+		private final Set<String> excludedCacheNames;
+
+		CacheStartedListener(final Collection<String> excludedCacheNames) {
+			this.excludedCacheNames = excludedCacheNames != null ? new HashSet<String>(excludedCacheNames)
+					: Collections.<String> emptySet();
+		}
+
+		@CacheStarted
+		public void cacheStarted(final CacheStartedEvent event) {
+			if (!this.excludedCacheNames.contains(event.getCacheName())) {
+				installIn(event.getCacheManager().getCache(event.getCacheName()));
+			}
+		}
+	}
+}
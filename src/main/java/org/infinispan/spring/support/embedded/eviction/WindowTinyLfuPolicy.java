@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * <p>
+ * Bookkeeping for Window-TinyLFU eviction. Keys enter a small LRU <em>window</em> (1% of capacity). Keys
+ * leaving the window compete for admission to the <em>main</em> region with main's least recently used
+ * <em>probation</em> key: whichever a {@link FrequencySketch <code>FrequencySketch</code>} estimates to have
+ * been accessed less often is evicted. Keys accessed again while on probation are promoted to the
+ * <em>protected</em> segment (80% of main), whose least recently used keys are demoted back to probation.
+ * </p>
+ * <p>
+ * The window lets bursts of new keys build up frequency before they have to compete, while the frequency
+ * filter keeps one-off scans from flushing popular keys out of main. This class only tracks keys; it is up to
+ * the caller to actually remove the victims it returns. All methods are synchronized.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class WindowTinyLfuPolicy<K> {
+
+	private static final double WINDOW_RATIO = 0.01;
+
+	private static final double PROTECTED_RATIO = 0.8;
+
+	private final FrequencySketch sketch;
+
+	private final LinkedHashMap<K, Boolean> window = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+
+	private final LinkedHashMap<K, Boolean> probation = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+
+	private final LinkedHashMap<K, Boolean> protectedSegment = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+
+	private final int maximumWindowSize;
+
+	private final int maximumMainSize;
+
+	private final int maximumProtectedSize;
+
+	/**
+	 * @param maximumSize
+	 *            The maximum number of keys to retain
+	 */
+	public WindowTinyLfuPolicy(final int maximumSize) {
+		if (maximumSize < 2) {
+			throw new IllegalArgumentException("maximumSize must be at least 2, was [" + maximumSize + "]");
+		}
+		this.maximumWindowSize = Math.max(1, (int) (maximumSize * WINDOW_RATIO));
+		this.maximumMainSize = maximumSize - this.maximumWindowSize;
+		this.maximumProtectedSize = Math.max(1, (int) (this.maximumMainSize * PROTECTED_RATIO));
+		this.sketch = new FrequencySketch(maximumSize);
+	}
+
+	/**
+	 * Record a read of a cached <code>key</code>.
+	 *
+	 * @param key
+	 */
+	public synchronized void recordAccess(final K key) {
+		this.sketch.increment(key);
+		if (this.window.get(key) != null) {
+			return;
+		}
+		if (this.protectedSegment.get(key) != null) {
+			return;
+		}
+		if (this.probation.remove(key) != null) {
+			this.protectedSegment.put(key, Boolean.TRUE);
+			if (this.protectedSegment.size() > this.maximumProtectedSize) {
+				final K demoted = eldest(this.protectedSegment);
+				this.protectedSegment.remove(demoted);
+				this.probation.put(demoted, Boolean.TRUE);
+			}
+		}
+	}
+
+	/**
+	 * Record that <code>key</code> has been added to the cache.
+	 *
+	 * @param key
+	 * @return The keys to evict in order to stay within capacity, possibly including <code>key</code> itself
+	 */
+	public synchronized List<K> recordInsertion(final K key) {
+		if (contains(key)) {
+			recordAccess(key);
+			return Collections.emptyList();
+		}
+		this.sketch.increment(key);
+		this.window.put(key, Boolean.TRUE);
+		if (this.window.size() <= this.maximumWindowSize) {
+			return Collections.emptyList();
+		}
+
+		final K candidate = eldest(this.window);
+		this.window.remove(candidate);
+		if (this.probation.size() + this.protectedSegment.size() < this.maximumMainSize) {
+			this.probation.put(candidate, Boolean.TRUE);
+			return Collections.emptyList();
+		}
+
+		final K victim = this.probation.isEmpty() ? eldest(this.protectedSegment) : eldest(this.probation);
+		if (this.sketch.frequency(candidate) > this.sketch.frequency(victim)) {
+			this.probation.remove(victim);
+			this.protectedSegment.remove(victim);
+			this.probation.put(candidate, Boolean.TRUE);
+			return Collections.singletonList(victim);
+		}
+		return Collections.singletonList(candidate);
+	}
+
+	/**
+	 * Record that <code>key</code> has been removed from the cache.
+	 *
+	 * @param key
+	 */
+	public synchronized void recordRemoval(final K key) {
+		if (this.window.remove(key) == null && this.probation.remove(key) == null) {
+			this.protectedSegment.remove(key);
+		}
+	}
+
+	public synchronized boolean contains(final K key) {
+		return this.window.containsKey(key) || this.probation.containsKey(key)
+				|| this.protectedSegment.containsKey(key);
+	}
+
+	public synchronized int size() {
+		return this.window.size() + this.probation.size() + this.protectedSegment.size();
+	}
+
+	private static <K> K eldest(final LinkedHashMap<K, Boolean> segment) {
+		final Iterator<K> keys = segment.keySet().iterator();
+		return keys.next();
+	}
+}
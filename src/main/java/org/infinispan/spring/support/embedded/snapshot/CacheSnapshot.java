@@ -0,0 +1,352 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.context.Flag;
+import org.infinispan.factories.KnownComponentNames;
+import org.infinispan.marshall.StreamingMarshaller;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * Saves the local content of an INFINISPAN cache to a compact binary snapshot, and restores it from there.
+ * </p>
+ * <p>
+ * A snapshot of cache <code>name</code> consists of {@link #setParts(int) <code>parts</code>} files
+ * <code>name.&lt;part&gt;.snapshot</code> in this <code>CacheSnapshot</code>'s directory, entries being
+ * distributed across them by key hash. Any character in <code>name</code> other than a lower case letter, a digit
+ * or <code>-</code> is escaped as <code>_</code> followed by its four hex digits, so that different cache names
+ * never share a file, not even on case-insensitive file systems. Each entry is stored as its marshalled key and
+ * value plus its absolute lifespan expiry time and its max idle time. Restoring reads all parts in parallel and
+ * puts each entry with its <em>remaining</em> lifespan; entries that have expired in the meantime are skipped.
+ * Restored entries are put locally only and bypass any cache store, since they have been there before.
+ * </p>
+ * <p>
+ * Only caches in <code>LOCAL</code> mode are saved and restored. A node restarting in a replicated or distributed
+ * cluster would otherwise reinstate stale values locally that differ from those held by the current owners;
+ * it has to obtain its state through state transfer or rehashing instead. Clustered caches are skipped, and any
+ * snapshot left over for them is deleted.
+ * </p>
+ * <p>
+ * A snapshot is deleted once it has been restored, so that a node that crashes before it could save a new one
+ * does not later restore stale data.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheSnapshot {
+
+	private static final int MAGIC = 0x15CA5AF0;
+
+	private static final int VERSION = 1;
+
+	private static final String SUFFIX = ".snapshot";
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final File directory;
+
+	private int parts = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param directory
+	 *            The directory to keep snapshot files in
+	 */
+	public CacheSnapshot(final File directory) {
+		Assert.notNull(directory, "directory must not be null");
+		this.directory = directory;
+	}
+
+	/**
+	 * @param parts
+	 *            The number of files each snapshot is split into, and hence the number of threads reading a
+	 *            snapshot in parallel. Defaults to the number of available processors.
+	 */
+	public void setParts(final int parts) {
+		Assert.isTrue(parts > 0, "parts must be positive");
+		this.parts = parts;
+	}
+
+	// ------------------------------------------------------------------------
+	// Saving
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Save <code>cache</code>'s local, unexpired entries, replacing any previous snapshot of <code>cache</code>.
+	 * Clustered caches are not saved.
+	 *
+	 * @param cache
+	 * @return The number of entries saved
+	 * @throws IOException
+	 */
+	public int save(final Cache<?, ?> cache) throws IOException {
+		if (isClustered(cache)) {
+			this.logger.info("Not saving a snapshot of clustered cache [" + cache.getName() + "]");
+			return 0;
+		}
+		final long started = System.currentTimeMillis();
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Cannot create snapshot directory [" + this.directory + "]");
+		}
+		deleteSnapshotOf(cache.getName());
+
+		final StreamingMarshaller marshaller = marshallerOf(cache);
+		final File[] tempFiles = new File[this.parts];
+		final DataOutputStream[] outputs = new DataOutputStream[this.parts];
+		int saved = 0;
+		try {
+			for (int i = 0; i < this.parts; i++) {
+				tempFiles[i] = new File(this.directory, fileNameOf(cache.getName(), i) + ".tmp");
+				outputs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFiles[i])));
+				outputs[i].writeInt(MAGIC);
+				outputs[i].writeInt(VERSION);
+			}
+			final long now = System.currentTimeMillis();
+			for (final InternalCacheEntry entry : cache.getAdvancedCache().getDataContainer()) {
+				if (entry.isExpired()) {
+					continue;
+				}
+				final DataOutputStream output = outputs[(entry.getKey().hashCode() & Integer.MAX_VALUE) % this.parts];
+				final byte[] key = marshal(marshaller, entry.getKey());
+				final byte[] value = marshal(marshaller, entry.getValue());
+				output.writeBoolean(true);
+				output.writeInt(key.length);
+				output.write(key);
+				output.writeInt(value.length);
+				output.write(value);
+				output.writeLong(entry.getLifespan() >= 0 ? now + remainingLifespanOf(entry, now) : -1L);
+				output.writeLong(entry.getMaxIdle());
+				saved++;
+			}
+			for (final DataOutputStream output : outputs) {
+				output.writeBoolean(false);
+			}
+		} finally {
+			for (final DataOutputStream output : outputs) {
+				if (output != null) {
+					output.close();
+				}
+			}
+		}
+		for (int i = 0; i < this.parts; i++) {
+			if (!tempFiles[i].renameTo(new File(this.directory, fileNameOf(cache.getName(), i)))) {
+				throw new IOException("Failed to rename snapshot file [" + tempFiles[i] + "]");
+			}
+		}
+		this.logger.info("Saved [" + saved + "] entries of cache [" + cache.getName() + "] to [" + this.parts
+				+ "] snapshot files in [" + (System.currentTimeMillis() - started) + "] ms");
+		return saved;
+	}
+
+	private static boolean isClustered(final Cache<?, ?> cache) {
+		return cache.getConfiguration().getCacheMode().isClustered();
+	}
+
+	private static long remainingLifespanOf(final InternalCacheEntry entry, final long now) {
+		return Math.max(0L, entry.getCreated() + entry.getLifespan() - now);
+	}
+
+	// ------------------------------------------------------------------------
+	// Restoring
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Restore <code>cache</code> from its snapshot, if there is one, reading all parts in parallel. The snapshot is
+	 * deleted afterwards. Clustered caches are not restored.
+	 *
+	 * @param cache
+	 * @return The number of entries restored
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public int restore(final Cache<?, ?> cache) throws IOException, InterruptedException {
+		final File[] snapshotFiles = snapshotFilesOf(cache.getName());
+		if (isClustered(cache)) {
+			if (snapshotFiles.length > 0) {
+				this.logger.warn("Not restoring clustered cache [" + cache.getName()
+						+ "] from snapshot, as its values may be stale - deleting snapshot");
+				deleteSnapshotOf(cache.getName());
+			}
+			return 0;
+		}
+		if (snapshotFiles.length == 0) {
+			this.logger.info("No snapshot of cache [" + cache.getName() + "] found in [" + this.directory + "]");
+			return 0;
+		}
+		final long started = System.currentTimeMillis();
+		final StreamingMarshaller marshaller = marshallerOf(cache);
+		@SuppressWarnings("unchecked")
+		final AdvancedCache<Object, Object> target = (AdvancedCache<Object, Object>) cache.getAdvancedCache();
+
+		final ExecutorService readers = Executors.newFixedThreadPool(snapshotFiles.length);
+		int restored = 0;
+		try {
+			final List<Future<Integer>> results = new ArrayList<Future<Integer>>(snapshotFiles.length);
+			for (final File snapshotFile : snapshotFiles) {
+				results.add(readers.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						return Integer.valueOf(restorePart(snapshotFile, target, marshaller));
+					}
+				}));
+			}
+			for (final Future<Integer> result : results) {
+				restored += result.get().intValue();
+			}
+		} catch (final ExecutionException e) {
+			final IOException ioe = new IOException("Failed to restore cache [" + cache.getName()
+					+ "] from snapshot: " + e.getCause().getMessage());
+			ioe.initCause(e.getCause());
+			throw ioe;
+		} finally {
+			readers.shutdownNow();
+			readers.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		deleteSnapshotOf(cache.getName());
+		this.logger.info("Restored [" + restored + "] entries of cache [" + cache.getName() + "] from ["
+				+ snapshotFiles.length + "] snapshot files in [" + (System.currentTimeMillis() - started) + "] ms");
+		return restored;
+	}
+
+	private int restorePart(final File snapshotFile, final AdvancedCache<Object, Object> target,
+			final StreamingMarshaller marshaller) throws IOException, ClassNotFoundException {
+		final AdvancedCache<Object, Object> localOnly = target.withFlags(Flag.CACHE_MODE_LOCAL,
+				Flag.SKIP_CACHE_STORE);
+		final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+		int restored = 0;
+		try {
+			if ((input.readInt() != MAGIC) || (input.readInt() != VERSION)) {
+				this.logger.warn("Ignoring snapshot file [" + snapshotFile + "] in unknown format");
+				return 0;
+			}
+			while (input.readBoolean()) {
+				final byte[] key = new byte[input.readInt()];
+				input.readFully(key);
+				final byte[] value = new byte[input.readInt()];
+				input.readFully(value);
+				final long expiryTime = input.readLong();
+				final long maxIdle = input.readLong();
+
+				final long lifespan;
+				if (expiryTime < 0L) {
+					lifespan = -1L;
+				} else {
+					lifespan = expiryTime - System.currentTimeMillis();
+					if (lifespan <= 0L) {
+						continue;
+					}
+				}
+				localOnly.put(marshaller.objectFromByteBuffer(key), marshaller.objectFromByteBuffer(value), lifespan,
+						TimeUnit.MILLISECONDS, maxIdle, TimeUnit.MILLISECONDS);
+				restored++;
+			}
+		} catch (final EOFException e) {
+			this.logger.warn("Snapshot file [" + snapshotFile + "] is truncated. Restored [" + restored
+					+ "] entries from it.");
+		} finally {
+			input.close();
+		}
+		return restored;
+	}
+
+	// ------------------------------------------------------------------------
+	// Helpers
+	// ------------------------------------------------------------------------
+
+	private File[] snapshotFilesOf(final String cacheName) {
+		final String prefix = safeNameOf(cacheName) + ".";
+		final File[] snapshotFiles = this.directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.startsWith(prefix) && name.endsWith(SUFFIX)
+						&& name.substring(prefix.length(), name.length() - SUFFIX.length()).matches("\\d+");
+			}
+		});
+		return snapshotFiles != null ? snapshotFiles : new File[0];
+	}
+
+	private void deleteSnapshotOf(final String cacheName) throws IOException {
+		for (final File snapshotFile : snapshotFilesOf(cacheName)) {
+			if (!snapshotFile.delete()) {
+				throw new IOException("Failed to delete snapshot file [" + snapshotFile + "]");
+			}
+		}
+	}
+
+	private static String fileNameOf(final String cacheName, final int part) {
+		return safeNameOf(cacheName) + "." + part + SUFFIX;
+	}
+
+	/**
+	 * Escape <code>cacheName</code> reversibly. Upper case letters are escaped, too, as file names may not be case
+	 * sensitive.
+	 */
+	private static String safeNameOf(final String cacheName) {
+		final StringBuilder safeName = new StringBuilder(cacheName.length());
+		for (int i = 0; i < cacheName.length(); i++) {
+			final char c = cacheName.charAt(i);
+			if (((c >= 'a') && (c <= 'z')) || ((c >= '0') && (c <= '9')) || (c == '-')) {
+				safeName.append(c);
+			} else {
+				safeName.append('_').append(String.format("%04x", Integer.valueOf(c)));
+			}
+		}
+		return safeName.toString();
+	}
+
+	private static StreamingMarshaller marshallerOf(final Cache<?, ?> cache) {
+		return cache.getAdvancedCache().getComponentRegistry().getGlobalComponentRegistry()
+				.getComponent(StreamingMarshaller.class, KnownComponentNames.GLOBAL_MARSHALLER);
+	}
+
+	private static byte[] marshal(final StreamingMarshaller marshaller, final Object object) throws IOException {
+		try {
+			return marshaller.objectToByteBuffer(object);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while marshalling [" + object + "]");
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+/**
+ * <h1>Spring Infinispan - Warm restart for INFINISPAN embedded caches.</h1>
+ * <p>
+ * This package contains support for snapshotting the local content of embedded caches when their factory bean
+ * is destroyed, and for reloading it when the factory bean is next initialized, so that a restarted node does
+ * not start out cold.
+ * </p>
+ *
+ * @see org.infinispan.spring.support.embedded.snapshot.CacheSnapshot
+ */
+package org.infinispan.spring.support.embedded.snapshot;
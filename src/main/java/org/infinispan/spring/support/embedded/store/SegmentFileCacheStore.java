@@ -0,0 +1,745 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.store;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.Cache;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.loaders.AbstractCacheStore;
+import org.infinispan.loaders.CacheLoaderConfig;
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.CacheLoaderMetadata;
+import org.infinispan.marshall.StreamingMarshaller;
+import org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig.SyncPolicy;
+
+/**
+ * <p>
+ * A {@link org.infinispan.loaders.CacheStore <code>CacheStore</code>} keeping entries in memory-mapped,
+ * append-only segment files.
+ * </p>
+ * <p>
+ * Every write - a put or a tombstone for a remove - is appended to the current segment file, a new one being
+ * started once it is full. An in-memory index maps each key to the location of its latest record, so a load
+ * is a single read from mapped memory and no write ever rewrites existing data. Records superseded by later
+ * writes become dead; a background task compacts segment files with too many dead bytes by copying their live
+ * records forward and deleting them.
+ * </p>
+ * <p>
+ * On startup the index is rebuilt by scanning all segment files in order. Only keys are unmarshalled, and a
+ * torn record at the end of the last segment - left behind by a crash - is detected by its checksum and
+ * discarded.
+ * </p>
+ * <p>
+ * Record layout: <code>int length | int crc32 | byte type | long expiryTime | int keyLength | key | value</code>,
+ * where <code>length</code> and <code>crc32</code> cover everything from <code>type</code> on. The
+ * <code>value</code> is the marshalled {@link org.infinispan.container.entries.InternalCacheEntry
+ * <code>InternalCacheEntry</code>}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+@CacheLoaderMetadata(configurationClass = SegmentFileCacheStoreConfig.class)
+public class SegmentFileCacheStore extends AbstractCacheStore {
+
+	private static final byte PUT = 1;
+
+	private static final byte DELETE = 2;
+
+	private static final int HEADER_SIZE = 4 + 4;
+
+	private static final int FIXED_BODY_SIZE = 1 + 8 + 4;
+
+	private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final ConcurrentMap<Object, RecordLocation> index = new ConcurrentHashMap<Object, RecordLocation>();
+
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private SegmentFileCacheStoreConfig config;
+
+	private File directory;
+
+	private Segment activeSegment;
+
+	private ScheduledExecutorService backgroundExecutor;
+
+	// ------------------------------------------------------------------------
+	// Lifecycle
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.loaders.AbstractCacheStore#init(org.infinispan.loaders.CacheLoaderConfig,
+	 *      org.infinispan.Cache, org.infinispan.marshall.StreamingMarshaller)
+	 */
+	@Override
+	public void init(final CacheLoaderConfig config, final Cache<?, ?> cache, final StreamingMarshaller m)
+			throws CacheLoaderException {
+		super.init(config, cache, m);
+		this.config = (SegmentFileCacheStoreConfig) config;
+		this.directory = new File(this.config.getLocation(), cache.getName());
+	}
+
+	/**
+	 * @see org.infinispan.loaders.AbstractCacheStore#start()
+	 */
+	@Override
+	public void start() throws CacheLoaderException {
+		super.start();
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new CacheLoaderException("Cannot create directory [" + this.directory + "]");
+		}
+		final long started = System.currentTimeMillis();
+		this.lock.writeLock().lock();
+		try {
+			rebuildIndex();
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to rebuild index from segment files in [" + this.directory + "]",
+					e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		this.logger.info("Rebuilt index of [" + this.index.size() + "] keys from [" + this.segments.size()
+				+ "] segment files in [" + this.directory + "] in [" + (System.currentTimeMillis() - started)
+				+ "] ms");
+
+		this.backgroundExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "SegmentFileCacheStore-" + SegmentFileCacheStore.this.directory
+						.getName());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.backgroundExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (final Exception e) {
+					SegmentFileCacheStore.this.logger.error("Compacting segment files failed: " + e.getMessage(), e);
+				}
+			}
+		}, this.config.getCompactionInterval(), this.config.getCompactionInterval(), TimeUnit.MILLISECONDS);
+		if (this.config.getSyncPolicy() == SyncPolicy.PERIODIC) {
+			this.backgroundExecutor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					sync();
+				}
+			}, this.config.getSyncInterval(), this.config.getSyncInterval(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @see org.infinispan.loaders.AbstractCacheStore#stop()
+	 */
+	@Override
+	public void stop() throws CacheLoaderException {
+		super.stop();
+		if (this.backgroundExecutor != null) {
+			this.backgroundExecutor.shutdownNow();
+		}
+		this.lock.writeLock().lock();
+		try {
+			for (final Segment segment : this.segments.values()) {
+				if (this.config.getSyncPolicy() != SyncPolicy.NEVER) {
+					segment.buffer.force();
+				}
+				segment.close();
+			}
+			this.segments.clear();
+			this.index.clear();
+			this.activeSegment = null;
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to close segment files in [" + this.directory + "]", e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#getConfigurationClass()
+	 */
+	@Override
+	public Class<? extends CacheLoaderConfig> getConfigurationClass() {
+		return SegmentFileCacheStoreConfig.class;
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.loaders.CacheLoader
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#load(java.lang.Object)
+	 */
+	@Override
+	public InternalCacheEntry load(final Object key) throws CacheLoaderException {
+		final byte[] value;
+		this.lock.readLock().lock();
+		try {
+			final RecordLocation location = this.index.get(key);
+			if ((location == null) || location.isExpired(System.currentTimeMillis())) {
+				return null;
+			}
+			value = readValue(location);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		final InternalCacheEntry entry = (InternalCacheEntry) unmarshal(value);
+		return entry.isExpired() ? null : entry;
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#loadAll()
+	 */
+	@Override
+	public Set<InternalCacheEntry> loadAll() throws CacheLoaderException {
+		return load(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#load(int)
+	 */
+	@Override
+	public Set<InternalCacheEntry> load(final int numEntries) throws CacheLoaderException {
+		final Set<InternalCacheEntry> entries = new HashSet<InternalCacheEntry>();
+		for (final Object key : this.index.keySet()) {
+			if (entries.size() >= numEntries) {
+				break;
+			}
+			final InternalCacheEntry entry = load(key);
+			if (entry != null) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#loadAllKeys(java.util.Set)
+	 */
+	@Override
+	public Set<Object> loadAllKeys(final Set<Object> keysToExclude) throws CacheLoaderException {
+		final long now = System.currentTimeMillis();
+		final Set<Object> keys = new HashSet<Object>();
+		for (final Map.Entry<Object, RecordLocation> entry : this.index.entrySet()) {
+			if (!entry.getValue().isExpired(now) && ((keysToExclude == null) || !keysToExclude.contains(entry
+					.getKey()))) {
+				keys.add(entry.getKey());
+			}
+		}
+		return keys;
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.loaders.CacheStore
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#store(org.infinispan.container.entries.InternalCacheEntry)
+	 */
+	@Override
+	public void store(final InternalCacheEntry entry) throws CacheLoaderException {
+		final byte[] key = marshal(entry.getKey());
+		final byte[] value = marshal(entry);
+		this.lock.writeLock().lock();
+		try {
+			final RecordLocation location = append(PUT, entry.getExpiryTime(), key, value);
+			markDead(this.index.put(entry.getKey(), location));
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to store [" + entry.getKey() + "]", e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#remove(java.lang.Object)
+	 */
+	@Override
+	public boolean remove(final Object key) throws CacheLoaderException {
+		if (!this.index.containsKey(key)) {
+			return false;
+		}
+		final byte[] marshalledKey = marshal(key);
+		this.lock.writeLock().lock();
+		try {
+			final RecordLocation previous = this.index.remove(key);
+			if (previous == null) {
+				return false;
+			}
+			markDead(previous);
+			final RecordLocation tombstone = append(DELETE, -1L, marshalledKey, new byte[0]);
+			markDead(tombstone);
+			return true;
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to remove [" + key + "]", e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#clear()
+	 */
+	@Override
+	public void clear() throws CacheLoaderException {
+		this.lock.writeLock().lock();
+		try {
+			for (final Segment segment : new ArrayList<Segment>(this.segments.values())) {
+				deleteSegment(segment);
+			}
+			this.index.clear();
+			this.activeSegment = openSegment(0);
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to clear [" + this.directory + "]", e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#toStream(java.io.ObjectOutput)
+	 */
+	@Override
+	public void toStream(final ObjectOutput outputStream) throws CacheLoaderException {
+		final Set<InternalCacheEntry> entries = loadAll();
+		try {
+			outputStream.writeInt(entries.size());
+			for (final InternalCacheEntry entry : entries) {
+				getMarshaller().objectToObjectStream(entry, outputStream);
+			}
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to write entries to stream", e);
+		}
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#fromStream(java.io.ObjectInput)
+	 */
+	@Override
+	public void fromStream(final ObjectInput inputStream) throws CacheLoaderException {
+		try {
+			final int count = inputStream.readInt();
+			for (int i = 0; i < count; i++) {
+				store((InternalCacheEntry) getMarshaller().objectFromObjectStream(inputStream));
+			}
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to read entries from stream", e);
+		} catch (final ClassNotFoundException e) {
+			throw new CacheLoaderException("Failed to read entries from stream", e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CacheLoaderException("Interrupted while reading entries from stream", e);
+		}
+	}
+
+	/**
+	 * Drop expired entries from the index and compact.
+	 *
+	 * @see org.infinispan.loaders.AbstractCacheStore#purgeInternal()
+	 */
+	@Override
+	protected void purgeInternal() throws CacheLoaderException {
+		final long now = System.currentTimeMillis();
+		this.lock.writeLock().lock();
+		try {
+			for (final Map.Entry<Object, RecordLocation> entry : this.index.entrySet()) {
+				if (entry.getValue().isExpired(now) && this.index.remove(entry.getKey(), entry.getValue())) {
+					markDead(entry.getValue());
+				}
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		compact();
+	}
+
+	// ------------------------------------------------------------------------
+	// Segment files
+	// ------------------------------------------------------------------------
+
+	private RecordLocation append(final byte type, final long expiryTime, final byte[] key, final byte[] value)
+			throws IOException, CacheLoaderException {
+		final int bodyLength = FIXED_BODY_SIZE + key.length + value.length;
+		final int recordLength = HEADER_SIZE + bodyLength;
+		if (recordLength > this.config.getSegmentSize()) {
+			throw new CacheLoaderException("Record of [" + recordLength + "] bytes exceeds segment size ["
+					+ this.config.getSegmentSize() + "]");
+		}
+		if (this.activeSegment.remaining() < recordLength) {
+			this.activeSegment = openSegment(this.activeSegment.id + 1);
+		}
+		final Segment segment = this.activeSegment;
+		final int offset = segment.writePosition;
+		final ByteBuffer view = segment.buffer.duplicate();
+		view.position(offset + HEADER_SIZE);
+		view.put(type);
+		view.putLong(expiryTime);
+		view.putInt(key.length);
+		view.put(key);
+		view.put(value);
+
+		final CRC32 crc = new CRC32();
+		crc.update(type);
+		final ByteBuffer body = segment.buffer.duplicate();
+		body.position(offset + HEADER_SIZE + 1);
+		body.limit(offset + recordLength);
+		final byte[] rest = new byte[bodyLength - 1];
+		body.get(rest);
+		crc.update(rest);
+		// Write length last so that a torn record is never mistaken for a complete one
+		segment.buffer.putInt(offset + 4, (int) crc.getValue());
+		segment.buffer.putInt(offset, bodyLength);
+		segment.writePosition = offset + recordLength;
+		if (this.config.getSyncPolicy() == SyncPolicy.ALWAYS) {
+			segment.buffer.force();
+		}
+		return new RecordLocation(segment.id, offset, recordLength, HEADER_SIZE + FIXED_BODY_SIZE + key.length,
+				value.length, expiryTime);
+	}
+
+	private byte[] readValue(final RecordLocation location) {
+		final Segment segment = this.segments.get(Integer.valueOf(location.segmentId));
+		final ByteBuffer view = segment.buffer.duplicate();
+		view.position(location.offset + location.valueOffset);
+		final byte[] value = new byte[location.valueLength];
+		view.get(value);
+		return value;
+	}
+
+	private void markDead(final RecordLocation location) {
+		if (location != null) {
+			final Segment segment = this.segments.get(Integer.valueOf(location.segmentId));
+			if (segment != null) {
+				segment.deadBytes += location.recordLength;
+			}
+		}
+	}
+
+	private void rebuildIndex() throws IOException, CacheLoaderException {
+		final TreeMap<Integer, File> files = new TreeMap<Integer, File>();
+		final File[] segmentFiles = this.directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return SEGMENT_FILE_NAME.matcher(name).matches();
+			}
+		});
+		for (final File file : segmentFiles) {
+			final Matcher matcher = SEGMENT_FILE_NAME.matcher(file.getName());
+			matcher.matches();
+			files.put(Integer.valueOf(matcher.group(1)), file);
+		}
+
+		final long now = System.currentTimeMillis();
+		for (final Integer id : files.keySet()) {
+			final Segment segment = openSegment(id.intValue());
+			scan(segment, now);
+			this.activeSegment = segment;
+		}
+		if (this.activeSegment == null) {
+			this.activeSegment = openSegment(0);
+		}
+	}
+
+	private void scan(final Segment segment, final long now) throws CacheLoaderException {
+		final ByteBuffer view = segment.buffer.duplicate();
+		int position = 0;
+		while (position + HEADER_SIZE + FIXED_BODY_SIZE <= segment.size) {
+			final int bodyLength = view.getInt(position);
+			if ((bodyLength < FIXED_BODY_SIZE) || (position + HEADER_SIZE + bodyLength > segment.size)) {
+				break;
+			}
+			final int storedCrc = view.getInt(position + 4);
+			final byte[] body = new byte[bodyLength];
+			view.position(position + HEADER_SIZE);
+			view.get(body);
+			final CRC32 crc = new CRC32();
+			crc.update(body);
+			if ((int) crc.getValue() != storedCrc) {
+				this.logger.warn("Discarding torn record at offset [" + position + "] of segment file ["
+						+ segment.file + "]");
+				break;
+			}
+
+			final ByteBuffer fields = ByteBuffer.wrap(body);
+			final byte type = fields.get();
+			final long expiryTime = fields.getLong();
+			final int keyLength = fields.getInt();
+			final byte[] key = new byte[keyLength];
+			fields.get(key);
+			final Object unmarshalledKey = unmarshal(key);
+			final int recordLength = HEADER_SIZE + bodyLength;
+			final RecordLocation location = new RecordLocation(segment.id, position, recordLength, HEADER_SIZE
+					+ FIXED_BODY_SIZE + keyLength, bodyLength - FIXED_BODY_SIZE - keyLength, expiryTime);
+			if (type == PUT && !location.isExpired(now)) {
+				markDead(this.index.put(unmarshalledKey, location));
+			} else {
+				markDead(this.index.remove(unmarshalledKey));
+				segment.deadBytes += recordLength;
+			}
+			position += recordLength;
+		}
+		segment.writePosition = position;
+	}
+
+	/**
+	 * Copy live records out of every sealed segment with too many dead bytes, then delete it. Keys no longer in
+	 * the index - removed or expired - are carried forward as tombstones unless the segment is the oldest one, as
+	 * an older segment might otherwise bring a previous put for them back to life on restart.
+	 */
+	void compact() throws CacheLoaderException {
+		this.lock.writeLock().lock();
+		try {
+			for (final Segment segment : new ArrayList<Segment>(this.segments.values())) {
+				if ((segment != this.activeSegment) && (segment.writePosition > 0)
+						&& ((double) segment.deadBytes / segment.writePosition >= this.config.getCompactionThreshold())) {
+					compact(segment);
+				}
+			}
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to compact segment files in [" + this.directory + "]", e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private void compact(final Segment segment) throws IOException, CacheLoaderException {
+		final boolean oldest = this.segments.firstKey().intValue() == segment.id;
+		final ByteBuffer view = segment.buffer.duplicate();
+		final Set<Object> tombstoned = new HashSet<Object>();
+		int position = 0;
+		int copied = 0;
+		while (position < segment.writePosition) {
+			final int bodyLength = view.getInt(position);
+			final int recordLength = HEADER_SIZE + bodyLength;
+			final byte type = view.get(position + HEADER_SIZE);
+			final long expiryTime = view.getLong(position + HEADER_SIZE + 1);
+			final int keyLength = view.getInt(position + HEADER_SIZE + 9);
+			final byte[] key = new byte[keyLength];
+			final byte[] value = new byte[bodyLength - FIXED_BODY_SIZE - keyLength];
+			view.position(position + HEADER_SIZE + FIXED_BODY_SIZE);
+			view.get(key);
+			view.get(value);
+			final Object unmarshalledKey = unmarshal(key);
+
+			final RecordLocation current = this.index.get(unmarshalledKey);
+			if ((type == PUT) && (current != null) && (current.segmentId == segment.id)
+					&& (current.offset == position)) {
+				this.index.put(unmarshalledKey, append(PUT, expiryTime, key, value));
+				copied++;
+			} else if (!oldest && (current == null) && tombstoned.add(unmarshalledKey)) {
+				// Older segments may still hold a put this record's removal - or expiry - cancels
+				markDead(append(DELETE, -1L, key, new byte[0]));
+			}
+			position += recordLength;
+		}
+		deleteSegment(segment);
+		this.logger.debug("Compacted segment file [" + segment.file + "]: copied [" + copied + "] live records");
+	}
+
+	private Segment openSegment(final int id) throws IOException {
+		final File file = new File(this.directory, "segment-" + id + ".dat");
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		final int size = (int) Math.max(raf.length(), this.config.getSegmentSize());
+		final FileChannel channel = raf.getChannel();
+		final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		final Segment segment = new Segment(id, file, raf, buffer, size);
+		this.segments.put(Integer.valueOf(id), segment);
+		return segment;
+	}
+
+	private void deleteSegment(final Segment segment) throws IOException {
+		this.segments.remove(Integer.valueOf(segment.id));
+		segment.close();
+		// The mapping itself is only released once the buffer has been garbage collected
+		if (!segment.file.delete()) {
+			// Typically on Windows while the mapping is alive. A later segment with the same id reuses this file,
+			// and a restart scans it, so none of its records may survive. Truncating is refused while mapped.
+			zero(segment.file);
+			segment.file.deleteOnExit();
+		}
+	}
+
+	static void zero(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			final byte[] zeros = new byte[8192];
+			long remaining = raf.length();
+			while (remaining > 0L) {
+				final int length = (int) Math.min(zeros.length, remaining);
+				raf.write(zeros, 0, length);
+				remaining -= length;
+			}
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void sync() {
+		this.lock.readLock().lock();
+		try {
+			if (this.activeSegment != null) {
+				this.activeSegment.buffer.force();
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Marshalling
+	// ------------------------------------------------------------------------
+
+	private byte[] marshal(final Object object) throws CacheLoaderException {
+		try {
+			return getMarshaller().objectToByteBuffer(object);
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to marshal [" + object + "]", e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CacheLoaderException("Interrupted while marshalling [" + object + "]", e);
+		}
+	}
+
+	private Object unmarshal(final byte[] bytes) throws CacheLoaderException {
+		try {
+			return getMarshaller().objectFromByteBuffer(bytes);
+		} catch (final IOException e) {
+			throw new CacheLoaderException("Failed to unmarshal record", e);
+		} catch (final ClassNotFoundException e) {
+			throw new CacheLoaderException("Failed to unmarshal record", e);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Statistics
+	// ------------------------------------------------------------------------
+
+	int getSegmentCount() {
+		this.lock.readLock().lock();
+		try {
+			return this.segments.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Helper classes
+	// ------------------------------------------------------------------------
+
+	private static final class Segment {
+
+		final int id;
+
+		final File file;
+
+		final RandomAccessFile raf;
+
+		final MappedByteBuffer buffer;
+
+		final int size;
+
+		int writePosition;
+
+		long deadBytes;
+
+		Segment(final int id, final File file, final RandomAccessFile raf, final MappedByteBuffer buffer,
+				final int size) {
+			this.id = id;
+			this.file = file;
+			this.raf = raf;
+			this.buffer = buffer;
+			this.size = size;
+		}
+
+		int remaining() {
+			return this.size - this.writePosition;
+		}
+
+		void close() throws IOException {
+			this.raf.close();
+		}
+	}
+
+	private static final class RecordLocation {
+
+		final int segmentId;
+
+		final int offset;
+
+		final int recordLength;
+
+		final int valueOffset;
+
+		final int valueLength;
+
+		final long expiryTime;
+
+		RecordLocation(final int segmentId, final int offset, final int recordLength, final int valueOffset,
+				final int valueLength, final long expiryTime) {
+			this.segmentId = segmentId;
+			this.offset = offset;
+			this.recordLength = recordLength;
+			this.valueOffset = valueOffset;
+			this.valueLength = valueLength;
+			this.expiryTime = expiryTime;
+		}
+
+		boolean isExpired(final long now) {
+			return (this.expiryTime > 0L) && (this.expiryTime <= now);
+		}
+	}
+}
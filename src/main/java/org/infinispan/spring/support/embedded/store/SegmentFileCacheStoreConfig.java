@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.store;
+
+import org.infinispan.loaders.AbstractCacheStoreConfig;
+
+/**
+ * <p>
+ * Configuration for a {@link SegmentFileCacheStore <code>SegmentFileCacheStore</code>}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class SegmentFileCacheStoreConfig extends AbstractCacheStoreConfig {
+
+	/**
+	 * <p>
+	 * When to force writes to a segment file out to disk.
+	 * </p>
+	 */
+	public enum SyncPolicy {
+
+		/**
+		 * Leave it to the operating system. Fastest, but writes may be lost if the machine - not just the JVM -
+		 * crashes.
+		 */
+		NEVER,
+
+		/**
+		 * Force all segment files out to disk every {@link SegmentFileCacheStoreConfig#setSyncInterval(long)
+		 * <code>syncInterval</code>} milliseconds.
+		 */
+		PERIODIC,
+
+		/**
+		 * Force every single write out to disk before returning.
+		 */
+		ALWAYS
+	}
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	public static final long DEFAULT_SYNC_INTERVAL = 1000L;
+
+	public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+	public static final long DEFAULT_COMPACTION_INTERVAL = 60000L;
+
+	private static final long serialVersionUID = -2347563212386213849L;
+
+	private String location = "Infinispan-SegmentFileCacheStore";
+
+	private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+	private SyncPolicy syncPolicy = SyncPolicy.PERIODIC;
+
+	private long syncInterval = DEFAULT_SYNC_INTERVAL;
+
+	private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+	private long compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+
+	public SegmentFileCacheStoreConfig() {
+		setCacheLoaderClassName(SegmentFileCacheStore.class.getName());
+	}
+
+	public String getLocation() {
+		return this.location;
+	}
+
+	/**
+	 * @param location
+	 *            The directory to keep segment files in. Each cache uses a subdirectory named after it.
+	 */
+	public void setLocation(final String location) {
+		testImmutability("location");
+		this.location = location;
+	}
+
+	public int getSegmentSize() {
+		return this.segmentSize;
+	}
+
+	/**
+	 * @param segmentSize
+	 *            The size in bytes of each segment file. Bounds the size of a single entry.
+	 */
+	public void setSegmentSize(final int segmentSize) {
+		testImmutability("segmentSize");
+		this.segmentSize = segmentSize;
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return this.syncPolicy;
+	}
+
+	/**
+	 * @param syncPolicy
+	 */
+	public void setSyncPolicy(final SyncPolicy syncPolicy) {
+		testImmutability("syncPolicy");
+		this.syncPolicy = syncPolicy;
+	}
+
+	public long getSyncInterval() {
+		return this.syncInterval;
+	}
+
+	/**
+	 * @param syncInterval
+	 *            Milliseconds between forcing segment files out to disk if using {@link SyncPolicy#PERIODIC}
+	 */
+	public void setSyncInterval(final long syncInterval) {
+		testImmutability("syncInterval");
+		this.syncInterval = syncInterval;
+	}
+
+	public double getCompactionThreshold() {
+		return this.compactionThreshold;
+	}
+
+	/**
+	 * @param compactionThreshold
+	 *            The ratio of dead to written bytes from which on a segment file is compacted
+	 */
+	public void setCompactionThreshold(final double compactionThreshold) {
+		testImmutability("compactionThreshold");
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	public long getCompactionInterval() {
+		return this.compactionInterval;
+	}
+
+	/**
+	 * @param compactionInterval
+	 *            Milliseconds between background compaction runs
+	 */
+	public void setCompactionInterval(final long compactionInterval) {
+		testImmutability("compactionInterval");
+		this.compactionInterval = compactionInterval;
+	}
+}
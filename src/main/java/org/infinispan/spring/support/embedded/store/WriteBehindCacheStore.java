@@ -0,0 +1,554 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.store;
+
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.Cache;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.loaders.CacheLoaderConfig;
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.CacheLoaderMetadata;
+import org.infinispan.loaders.CacheStore;
+import org.infinispan.loaders.CacheStoreConfig;
+import org.infinispan.loaders.modifications.Clear;
+import org.infinispan.loaders.modifications.Modification;
+import org.infinispan.loaders.modifications.Remove;
+import org.infinispan.loaders.modifications.Store;
+import org.infinispan.marshall.StreamingMarshaller;
+import org.infinispan.transaction.xa.GlobalTransaction;
+import org.infinispan.util.Util;
+
+/**
+ * <p>
+ * A {@link org.infinispan.loaders.CacheStore <code>CacheStore</code>} decorator that queues modifications and
+ * writes them to the decorated store in batches from a background thread.
+ * </p>
+ * <p>
+ * Only the <em>latest</em> modification queued for a given key is retained, so a burst of writes to the same key
+ * results in a single write to the decorated store. Batches of up to {@link WriteBehindCacheStoreConfig#setBatchSize(int)
+ * <code>batchSize</code>} modifications are written through the store's one-phase
+ * {@link org.infinispan.loaders.CacheStore#prepare(List, GlobalTransaction, boolean) <code>prepare</code>}, which
+ * lets stores such as JDBC based ones apply a whole batch at once. A batch is written once
+ * <code>batchSize</code> modifications have been queued or <code>flushInterval</code> milliseconds have passed,
+ * whichever comes first. The queue is bounded: a writer finding
+ * {@link WriteBehindCacheStoreConfig#setMaxQueueDepth(int) <code>maxQueueDepth</code>} keys queued flushes the
+ * queue itself, which throttles writers to the decorated store's pace.
+ * </p>
+ * <p>
+ * Loads of single keys are answered from the queue first, so a cache always sees its own writes. Bulk loads and
+ * streaming first flush the queue. Since removals are only queued, {@link #remove(Object)} always returns
+ * <code>true</code>. A batch the decorated store fails to write is logged and queued again, unless its keys
+ * have been modified in the meantime.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+@CacheLoaderMetadata(configurationClass = WriteBehindCacheStoreConfig.class)
+public class WriteBehindCacheStore implements CacheStore {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final Lock queueLock = new ReentrantLock();
+
+	private final Condition flushRequested = this.queueLock.newCondition();
+
+	private final Lock flushLock = new ReentrantLock();
+
+	private final LinkedHashMap<Object, Modification> pending = new LinkedHashMap<Object, Modification>();
+
+	private final Map<Object, Modification> inFlight = new HashMap<Object, Modification>();
+
+	private final AtomicLong coalescedWrites = new AtomicLong(0);
+
+	private final AtomicLong flushedBatches = new AtomicLong(0);
+
+	private boolean clearPending;
+
+	private boolean clearInFlight;
+
+	private WriteBehindCacheStoreConfig config;
+
+	private CacheStore delegate;
+
+	private String cacheName;
+
+	private volatile boolean running;
+
+	private Thread flusher;
+
+	// ------------------------------------------------------------------------
+	// Lifecycle
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#init(org.infinispan.loaders.CacheLoaderConfig, org.infinispan.Cache,
+	 *      org.infinispan.marshall.StreamingMarshaller)
+	 */
+	@Override
+	public void init(final CacheLoaderConfig config, final Cache<?, ?> cache, final StreamingMarshaller m)
+			throws CacheLoaderException {
+		this.config = (WriteBehindCacheStoreConfig) config;
+		this.cacheName = cache.getName();
+		final CacheStoreConfig delegateConfig = this.config.getDelegateConfig();
+		if (delegateConfig == null) {
+			throw new CacheLoaderException("WriteBehindCacheStore of cache [" + this.cacheName
+					+ "] has not been given a store to decorate");
+		}
+		try {
+			this.delegate = (CacheStore) Util.getInstance(delegateConfig.getCacheLoaderClassName());
+		} catch (final Exception e) {
+			throw new CacheLoaderException("Failed to instantiate cache store ["
+					+ delegateConfig.getCacheLoaderClassName() + "]", e);
+		}
+		this.delegate.init(delegateConfig, cache, m);
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#start()
+	 */
+	@Override
+	public void start() throws CacheLoaderException {
+		this.delegate.start();
+		this.running = true;
+		this.flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runFlusher();
+			}
+		}, "WriteBehindCacheStore-" + this.cacheName);
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Flushes all queued modifications before stopping the decorated store.
+	 *
+	 * @see org.infinispan.loaders.CacheLoader#stop()
+	 */
+	@Override
+	public void stop() throws CacheLoaderException {
+		this.running = false;
+		if (this.flusher != null) {
+			this.flusher.interrupt();
+			try {
+				this.flusher.join(this.config.getFlushInterval());
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.flusher = null;
+		}
+		flush();
+		this.delegate.stop();
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#getConfigurationClass()
+	 */
+	@Override
+	public Class<? extends CacheLoaderConfig> getConfigurationClass() {
+		return WriteBehindCacheStoreConfig.class;
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#getCacheStoreConfig()
+	 */
+	@Override
+	public CacheStoreConfig getCacheStoreConfig() {
+		return this.config;
+	}
+
+	/**
+	 * @return The cache store modifications are eventually written to
+	 */
+	public CacheStore getDelegate() {
+		return this.delegate;
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.loaders.CacheLoader
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#load(java.lang.Object)
+	 */
+	@Override
+	public InternalCacheEntry load(final Object key) throws CacheLoaderException {
+		this.queueLock.lock();
+		try {
+			Modification queued = this.pending.get(key);
+			if ((queued == null) && !this.clearPending) {
+				// A pending clear hides the in-flight batch, which was drained before it was issued. An in-flight
+				// clear does not: its batch only holds modifications queued after it.
+				queued = this.inFlight.get(key);
+			}
+			if (queued instanceof Store) {
+				final InternalCacheEntry entry = ((Store) queued).getStoredEntry();
+				return entry.isExpired() ? null : entry;
+			}
+			if ((queued instanceof Remove) || this.clearPending || this.clearInFlight) {
+				return null;
+			}
+		} finally {
+			this.queueLock.unlock();
+		}
+		return this.delegate.load(key);
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(final Object key) throws CacheLoaderException {
+		return load(key) != null;
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#loadAll()
+	 */
+	@Override
+	public Set<InternalCacheEntry> loadAll() throws CacheLoaderException {
+		flush();
+		return this.delegate.loadAll();
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#load(int)
+	 */
+	@Override
+	public Set<InternalCacheEntry> load(final int numEntries) throws CacheLoaderException {
+		flush();
+		return this.delegate.load(numEntries);
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheLoader#loadAllKeys(java.util.Set)
+	 */
+	@Override
+	public Set<Object> loadAllKeys(final Set<Object> keysToExclude) throws CacheLoaderException {
+		flush();
+		return this.delegate.loadAllKeys(keysToExclude);
+	}
+
+	// ------------------------------------------------------------------------
+	// org.infinispan.loaders.CacheStore
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#store(org.infinispan.container.entries.InternalCacheEntry)
+	 */
+	@Override
+	public void store(final InternalCacheEntry entry) throws CacheLoaderException {
+		enqueue(entry.getKey(), new Store(entry));
+	}
+
+	/**
+	 * Queue the removal of <code>key</code>.
+	 *
+	 * @return Always <code>true</code>
+	 * @see org.infinispan.loaders.CacheStore#remove(java.lang.Object)
+	 */
+	@Override
+	public boolean remove(final Object key) throws CacheLoaderException {
+		enqueue(key, new Remove(key));
+		return true;
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#removeAll(java.util.Set)
+	 */
+	@Override
+	public void removeAll(final Set<Object> keys) throws CacheLoaderException {
+		for (final Object key : keys) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * Discards all queued modifications and queues clearing the decorated store.
+	 *
+	 * @see org.infinispan.loaders.CacheStore#clear()
+	 */
+	@Override
+	public void clear() throws CacheLoaderException {
+		this.queueLock.lock();
+		try {
+			this.coalescedWrites.addAndGet(this.pending.size());
+			this.pending.clear();
+			this.clearPending = true;
+			this.flushRequested.signal();
+		} finally {
+			this.queueLock.unlock();
+		}
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#purgeExpired()
+	 */
+	@Override
+	public void purgeExpired() throws CacheLoaderException {
+		this.delegate.purgeExpired();
+	}
+
+	/**
+	 * One-phase modifications are queued like any other. Two-phase ones are passed on to the decorated store
+	 * after flushing the queue, so that they are not overtaken by earlier modifications.
+	 *
+	 * @see org.infinispan.loaders.CacheStore#prepare(java.util.List,
+	 *      org.infinispan.transaction.xa.GlobalTransaction, boolean)
+	 */
+	@Override
+	public void prepare(final List<? extends Modification> modifications, final GlobalTransaction tx,
+			final boolean isOnePhase) throws CacheLoaderException {
+		if (!isOnePhase) {
+			flush();
+			this.delegate.prepare(modifications, tx, false);
+			return;
+		}
+		for (final Modification modification : modifications) {
+			switch (modification.getType()) {
+			case STORE:
+				store(((Store) modification).getStoredEntry());
+				break;
+			case REMOVE:
+				remove(((Remove) modification).getKey());
+				break;
+			case CLEAR:
+				clear();
+				break;
+			default:
+				flush();
+				this.delegate.prepare(Collections.singletonList(modification), tx, true);
+			}
+		}
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#commit(org.infinispan.transaction.xa.GlobalTransaction)
+	 */
+	@Override
+	public void commit(final GlobalTransaction tx) throws CacheLoaderException {
+		this.delegate.commit(tx);
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#rollback(org.infinispan.transaction.xa.GlobalTransaction)
+	 */
+	@Override
+	public void rollback(final GlobalTransaction tx) {
+		this.delegate.rollback(tx);
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#toStream(java.io.ObjectOutput)
+	 */
+	@Override
+	public void toStream(final ObjectOutput outputStream) throws CacheLoaderException {
+		flush();
+		this.delegate.toStream(outputStream);
+	}
+
+	/**
+	 * @see org.infinispan.loaders.CacheStore#fromStream(java.io.ObjectInput)
+	 */
+	@Override
+	public void fromStream(final ObjectInput inputStream) throws CacheLoaderException {
+		flush();
+		this.delegate.fromStream(inputStream);
+	}
+
+	// ------------------------------------------------------------------------
+	// Queueing and flushing
+	// ------------------------------------------------------------------------
+
+	private void enqueue(final Object key, final Modification modification) throws CacheLoaderException {
+		final boolean full;
+		this.queueLock.lock();
+		try {
+			if (this.pending.remove(key) != null) {
+				this.coalescedWrites.incrementAndGet();
+			}
+			this.pending.put(key, modification);
+			if (this.pending.size() >= this.config.getBatchSize()) {
+				this.flushRequested.signal();
+			}
+			full = this.pending.size() >= this.config.getMaxQueueDepth();
+		} finally {
+			this.queueLock.unlock();
+		}
+		if (full) {
+			flush();
+		}
+	}
+
+	private void runFlusher() {
+		while (this.running) {
+			this.queueLock.lock();
+			try {
+				if (!this.clearPending && (this.pending.size() < this.config.getBatchSize())) {
+					this.flushRequested.await(this.config.getFlushInterval(), TimeUnit.MILLISECONDS);
+				}
+			} catch (final InterruptedException e) {
+				// Interrupted by stop(), which flushes itself
+				return;
+			} finally {
+				this.queueLock.unlock();
+			}
+			try {
+				flush();
+			} catch (final CacheLoaderException e) {
+				this.logger.error("Writing queued modifications of cache [" + this.cacheName + "] failed: "
+						+ e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Write all queued modifications to the decorated store, in batches of at most <code>batchSize</code>.
+	 *
+	 * @throws CacheLoaderException
+	 *             If the decorated store fails to write a batch. The batch will have been queued again.
+	 */
+	public void flush() throws CacheLoaderException {
+		this.flushLock.lock();
+		try {
+			List<Modification> batch;
+			while (!(batch = drainBatch()).isEmpty()) {
+				try {
+					this.delegate.prepare(batch, null, true);
+					this.flushedBatches.incrementAndGet();
+				} catch (final CacheLoaderException e) {
+					requeue(batch);
+					throw e;
+				} catch (final RuntimeException e) {
+					requeue(batch);
+					throw e;
+				} finally {
+					finishBatch();
+				}
+			}
+		} finally {
+			this.flushLock.unlock();
+		}
+	}
+
+	private List<Modification> drainBatch() {
+		this.queueLock.lock();
+		try {
+			final List<Modification> batch = new ArrayList<Modification>(Math.min(this.pending.size() + 1,
+					this.config.getBatchSize()));
+			if (this.clearPending) {
+				batch.add(new Clear());
+				this.clearPending = false;
+				this.clearInFlight = true;
+			}
+			final Iterator<Map.Entry<Object, Modification>> oldestFirst = this.pending.entrySet().iterator();
+			while ((batch.size() < this.config.getBatchSize()) && oldestFirst.hasNext()) {
+				final Map.Entry<Object, Modification> queued = oldestFirst.next();
+				this.inFlight.put(queued.getKey(), queued.getValue());
+				batch.add(queued.getValue());
+				oldestFirst.remove();
+			}
+			return batch;
+		} finally {
+			this.queueLock.unlock();
+		}
+	}
+
+	private void finishBatch() {
+		this.queueLock.lock();
+		try {
+			this.inFlight.clear();
+			this.clearInFlight = false;
+		} finally {
+			this.queueLock.unlock();
+		}
+	}
+
+	private void requeue(final List<Modification> batch) {
+		this.queueLock.lock();
+		try {
+			if (this.clearPending) {
+				// A newer clear supersedes the whole batch
+				return;
+			}
+			for (final Modification modification : batch) {
+				if (modification instanceof Clear) {
+					this.clearPending = true;
+				} else {
+					final Object key = modification instanceof Store ? ((Store) modification).getStoredEntry()
+							.getKey() : ((Remove) modification).getKey();
+					if (!this.pending.containsKey(key)) {
+						this.pending.put(key, modification);
+					}
+				}
+			}
+		} finally {
+			this.queueLock.unlock();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Statistics
+	// ------------------------------------------------------------------------
+
+	/**
+	 * @return The number of keys currently queued
+	 */
+	public int getQueueDepth() {
+		this.queueLock.lock();
+		try {
+			return this.pending.size();
+		} finally {
+			this.queueLock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of queued modifications superseded by later ones before being written
+	 */
+	public long getCoalescedWrites() {
+		return this.coalescedWrites.get();
+	}
+
+	/**
+	 * @return The number of batches written to the decorated store so far
+	 */
+	public long getFlushedBatches() {
+		return this.flushedBatches.get();
+	}
+}
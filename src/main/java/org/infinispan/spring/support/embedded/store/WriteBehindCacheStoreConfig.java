@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.store;
+
+import org.infinispan.loaders.AbstractCacheStoreConfig;
+import org.infinispan.loaders.CacheStoreConfig;
+
+/**
+ * <p>
+ * Configuration for a {@link WriteBehindCacheStore <code>WriteBehindCacheStore</code>}, wrapping the
+ * configuration of the cache store it decorates.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class WriteBehindCacheStoreConfig extends AbstractCacheStoreConfig {
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+
+	public static final int DEFAULT_MAX_QUEUE_DEPTH = 10000;
+
+	private static final long serialVersionUID = 6124539182370012457L;
+
+	private CacheStoreConfig delegateConfig;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+	private int maxQueueDepth = DEFAULT_MAX_QUEUE_DEPTH;
+
+	public WriteBehindCacheStoreConfig() {
+		setCacheLoaderClassName(WriteBehindCacheStore.class.getName());
+	}
+
+	/**
+	 * Create a <code>WriteBehindCacheStoreConfig</code> decorating the cache store configured by
+	 * <code>delegateConfig</code>, adopting its purge, fetch and ignore settings.
+	 *
+	 * @param delegateConfig
+	 */
+	public WriteBehindCacheStoreConfig(final CacheStoreConfig delegateConfig) {
+		this();
+		this.delegateConfig = delegateConfig;
+		setPurgeOnStartup(delegateConfig.isPurgeOnStartup());
+		setPurgeSynchronously(delegateConfig.isPurgeSynchronously());
+		setFetchPersistentState(delegateConfig.isFetchPersistentState());
+		setIgnoreModifications(delegateConfig.isIgnoreModifications());
+	}
+
+	public CacheStoreConfig getDelegateConfig() {
+		return this.delegateConfig;
+	}
+
+	/**
+	 * @param delegateConfig
+	 *            The configuration of the cache store modifications are eventually written to
+	 */
+	public void setDelegateConfig(final CacheStoreConfig delegateConfig) {
+		testImmutability("delegateConfig");
+		this.delegateConfig = delegateConfig;
+	}
+
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * @param batchSize
+	 *            The maximum number of modifications written to the decorated store in one batch
+	 */
+	public void setBatchSize(final int batchSize) {
+		testImmutability("batchSize");
+		this.batchSize = batchSize;
+	}
+
+	public long getFlushInterval() {
+		return this.flushInterval;
+	}
+
+	/**
+	 * @param flushInterval
+	 *            The maximum number of milliseconds a modification stays queued
+	 */
+	public void setFlushInterval(final long flushInterval) {
+		testImmutability("flushInterval");
+		this.flushInterval = flushInterval;
+	}
+
+	public int getMaxQueueDepth() {
+		return this.maxQueueDepth;
+	}
+
+	/**
+	 * @param maxQueueDepth
+	 *            The maximum number of distinct keys queued. A writer finding the queue full flushes it itself.
+	 */
+	public void setMaxQueueDepth(final int maxQueueDepth) {
+		testImmutability("maxQueueDepth");
+		this.maxQueueDepth = maxQueueDepth;
+	}
+}
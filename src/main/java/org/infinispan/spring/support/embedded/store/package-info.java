@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+/**
+ * <h1>Spring Infinispan - Cache stores for INFINISPAN embedded caches.</h1>
+ * <p>
+ * This package contains {@link org.infinispan.loaders.CacheStore <code>CacheStore</code>} implementations that can
+ * be configured through typed setters on {@link org.infinispan.spring.ConfigurationOverrides
+ * <code>ConfigurationOverrides</code>} and the embedded factory beans, as an alternative to passing a raw
+ * {@link org.infinispan.config.CacheLoaderManagerConfig <code>CacheLoaderManagerConfig</code>}.
+ * </p>
+ *
+ * @see org.infinispan.spring.support.embedded.store.SegmentFileCacheStore
+ * @see org.infinispan.spring.support.embedded.store.WriteBehindCacheStore
+ */
+package org.infinispan.spring.support.embedded.store;
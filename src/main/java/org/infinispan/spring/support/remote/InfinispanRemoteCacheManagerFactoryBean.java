@@ -84,8 +84,9 @@ public class InfinispanRemoteCacheManagerFactoryBean extends
 	public void afterPropertiesSet() throws Exception {
 		assertCorrectlyConfigured();
 		this.logger.info("Creating new instance of RemoteCacheManager ...");
+		final long started = System.nanoTime();
 		final Properties configurationPropertiesToUse = configurationProperties();
-		this.nativeRemoteCacheManager = new RemoteCacheManager(configurationPropertiesToUse, this.startAutomatically);
+		this.nativeRemoteCacheManager = createBackingRemoteCacheManager(configurationPropertiesToUse, started);
 		this.logger.info("Finished creating new instance of RemoteCacheManager");
 	}
 
@@ -136,5 +137,6 @@ public class InfinispanRemoteCacheManagerFactoryBean extends
 		if (this.nativeRemoteCacheManager != null) {
 			this.nativeRemoteCacheManager.stop();
 		}
+		unregisterStartupTimingReport();
 	}
 }
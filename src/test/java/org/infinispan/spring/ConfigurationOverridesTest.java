@@ -21,7 +21,10 @@ package org.infinispan.spring;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.Arrays;
 import java.util.List;
 
@@ -31,6 +34,13 @@ import org.infinispan.config.Configuration.CacheMode;
 import org.infinispan.config.CustomInterceptorConfig;
 import org.infinispan.eviction.EvictionStrategy;
 import org.infinispan.eviction.EvictionThreadPolicy;
+import org.infinispan.loaders.CacheLoaderConfig;
+import org.infinispan.spring.support.embedded.AdaptiveReplicationQueue;
+import org.infinispan.spring.support.embedded.LockStripingAdvisor;
+import org.infinispan.spring.support.embedded.eviction.TimingWheelExpirationReaper;
+import org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig;
+import org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig.SyncPolicy;
+import org.infinispan.spring.support.embedded.store.WriteBehindCacheStoreConfig;
 import org.infinispan.transaction.lookup.JBossTransactionManagerLookup;
 import org.infinispan.transaction.lookup.TransactionManagerLookup;
 import org.infinispan.util.concurrent.IsolationLevel;
@@ -965,4 +975,160 @@ public class ConfigurationOverridesTest {
 				"ConfigurationOverrides should have overridden default value with explicitly set CustomInterceptors property. However, it didn't.",
 				expectedCustomInterceptors, defaultConfiguration.getCustomInterceptors());
 	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.ConfigurationOverrides#applyOverridesTo(org.infinispan.config.Configuration)}.
+	 */
+	@Test
+	public final void configurationOverridesShouldInstallAdaptiveReplicationQueueIfExplicitlySet() throws Exception {
+		final ConfigurationOverrides objectUnderTest = new ConfigurationOverrides();
+		objectUnderTest.setUseAdaptiveReplQueue(true);
+		final Configuration defaultConfiguration = new Configuration();
+		objectUnderTest.applyOverridesTo(defaultConfiguration);
+
+		assertEquals(
+				"ConfigurationOverrides should have turned on useReplQueue when useAdaptiveReplQueue is set. However, it didn't.",
+				true, defaultConfiguration.isUseReplQueue());
+		assertEquals(
+				"ConfigurationOverrides should have installed AdaptiveReplicationQueue when useAdaptiveReplQueue is set. However, it didn't.",
+				AdaptiveReplicationQueue.class.getName(), defaultConfiguration.getReplQueueClass());
+	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.ConfigurationOverrides#applyOverridesTo(org.infinispan.config.Configuration)}.
+	 */
+	@Test
+	public final void configurationOverridesShouldDeriveConcurrencyLevelIfAutoLockStripingIsSet() throws Exception {
+		final ConfigurationOverrides objectUnderTest = new ConfigurationOverrides();
+		objectUnderTest.setAutoLockStriping(true);
+		objectUnderTest.setExpectedEntryCount(1000000);
+		final Configuration defaultConfiguration = new Configuration();
+		objectUnderTest.applyOverridesTo(defaultConfiguration);
+
+		assertEquals(
+				"ConfigurationOverrides should have derived concurrencyLevel from available processors when autoLockStriping is set. However, it didn't.",
+				LockStripingAdvisor.recommendInitialConcurrencyLevel(Runtime.getRuntime().availableProcessors(), 1000000),
+				defaultConfiguration.getConcurrencyLevel());
+		assertEquals(
+				"ConfigurationOverrides should have turned on useLockStriping for a large expected entry count. However, it didn't.",
+				true, defaultConfiguration.isUseLockStriping());
+	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.ConfigurationOverrides#applyOverridesTo(org.infinispan.config.Configuration)}.
+	 */
+	@Test
+	public final void configurationOverridesShouldPreferExplicitConcurrencyLevelOverAutoLockStriping() throws Exception {
+		final int expectedConcurrencyLevel = 7;
+		final ConfigurationOverrides objectUnderTest = new ConfigurationOverrides();
+		objectUnderTest.setAutoLockStriping(true);
+		objectUnderTest.setConcurrencyLevel(expectedConcurrencyLevel);
+		final Configuration defaultConfiguration = new Configuration();
+		objectUnderTest.applyOverridesTo(defaultConfiguration);
+
+		assertEquals(
+				"ConfigurationOverrides should have kept an explicitly set concurrencyLevel. However, it didn't.",
+				expectedConcurrencyLevel, defaultConfiguration.getConcurrencyLevel());
+	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.ConfigurationOverrides#applyOverridesTo(org.infinispan.config.Configuration)}.
+	 */
+	@Test
+	public final void configurationOverridesShouldApplyPersistedRecommendationAndInstallAdvisorInterceptors()
+			throws Exception {
+		final File recommendationFile = File.createTempFile("lockStriping", ".properties");
+		recommendationFile.deleteOnExit();
+		final FileOutputStream out = new FileOutputStream(recommendationFile);
+		try {
+			out.write("concurrencyLevel=256\n".getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+		final LockStripingAdvisor advisor = new LockStripingAdvisor();
+		advisor.setRecommendationFile(recommendationFile);
+
+		final ConfigurationOverrides objectUnderTest = new ConfigurationOverrides();
+		objectUnderTest.setAutoLockStriping(true);
+		objectUnderTest.setLockStripingAdvisor(advisor);
+		final Configuration defaultConfiguration = new Configuration();
+		objectUnderTest.applyOverridesTo(defaultConfiguration);
+
+		assertEquals(
+				"ConfigurationOverrides should have applied the concurrencyLevel recommended during a previous run. However, it didn't.",
+				256, defaultConfiguration.getConcurrencyLevel());
+		assertTrue(
+				"ConfigurationOverrides should have installed the LockStripingAdvisor's interceptors. However, it didn't.",
+				defaultConfiguration.getCustomInterceptors().containsAll(advisor.getCustomInterceptors()));
+	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.ConfigurationOverrides#applyOverridesTo(org.infinispan.config.Configuration)}.
+	 */
+	@Test
+	public final void configurationOverridesShouldStretchEvictionWakeUpIntervalForTimingWheelExpiration()
+			throws Exception {
+		final ConfigurationOverrides objectUnderTest = new ConfigurationOverrides();
+		objectUnderTest.setUseTimingWheelExpiration(true);
+		final Configuration defaultConfiguration = new Configuration();
+		objectUnderTest.applyOverridesTo(defaultConfiguration);
+
+		assertEquals(
+				"ConfigurationOverrides should have stretched evictionWakeUpInterval when useTimingWheelExpiration is set. However, it didn't.",
+				TimingWheelExpirationReaper.SAFETY_SWEEP_INTERVAL, defaultConfiguration.getEvictionWakeUpInterval());
+	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.ConfigurationOverrides#applyOverridesTo(org.infinispan.config.Configuration)}.
+	 */
+	@Test
+	public final void configurationOverridesShouldAddSegmentFileCacheStoreIfLocationIsSet() throws Exception {
+		final ConfigurationOverrides objectUnderTest = new ConfigurationOverrides();
+		objectUnderTest.setSegmentFileStoreLocation("target/segment-files");
+		objectUnderTest.setSegmentFileStoreSegmentSize(1024 * 1024);
+		objectUnderTest.setSegmentFileStoreSyncPolicy(SyncPolicy.ALWAYS);
+		final Configuration defaultConfiguration = new Configuration();
+		objectUnderTest.applyOverridesTo(defaultConfiguration);
+
+		final List<CacheLoaderConfig> loaderConfigs = defaultConfiguration.getCacheLoaderManagerConfig()
+				.getCacheLoaderConfigs();
+		assertEquals("ConfigurationOverrides should have added exactly one cache store. However, it didn't.", 1,
+				loaderConfigs.size());
+		final SegmentFileCacheStoreConfig storeConfig = (SegmentFileCacheStoreConfig) loaderConfigs.get(0);
+		assertEquals("ConfigurationOverrides should have set the segment file store's location. However, it didn't.",
+				"target/segment-files", storeConfig.getLocation());
+		assertEquals("ConfigurationOverrides should have set the segment file store's segment size. However, it didn't.",
+				1024 * 1024, storeConfig.getSegmentSize());
+		assertEquals("ConfigurationOverrides should have set the segment file store's sync policy. However, it didn't.",
+				SyncPolicy.ALWAYS, storeConfig.getSyncPolicy());
+	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.ConfigurationOverrides#applyOverridesTo(org.infinispan.config.Configuration)}.
+	 */
+	@Test
+	public final void configurationOverridesShouldDecorateCacheStoresIfWriteBehindIsEnabled() throws Exception {
+		final ConfigurationOverrides objectUnderTest = new ConfigurationOverrides();
+		objectUnderTest.setSegmentFileStoreLocation("target/segment-files");
+		objectUnderTest.setWriteBehindEnabled(true);
+		objectUnderTest.setWriteBehindBatchSize(50);
+		objectUnderTest.setWriteBehindFlushInterval(200L);
+		objectUnderTest.setWriteBehindMaxQueueDepth(5000);
+		final Configuration defaultConfiguration = new Configuration();
+		objectUnderTest.applyOverridesTo(defaultConfiguration);
+
+		final List<CacheLoaderConfig> loaderConfigs = defaultConfiguration.getCacheLoaderManagerConfig()
+				.getCacheLoaderConfigs();
+		assertEquals("ConfigurationOverrides should have kept exactly one cache store. However, it didn't.", 1,
+				loaderConfigs.size());
+		final WriteBehindCacheStoreConfig writeBehindConfig = (WriteBehindCacheStoreConfig) loaderConfigs.get(0);
+		assertTrue("ConfigurationOverrides should have decorated the configured cache store. However, it didn't.",
+				writeBehindConfig.getDelegateConfig() instanceof SegmentFileCacheStoreConfig);
+		assertEquals("ConfigurationOverrides should have set the write-behind batch size. However, it didn't.", 50,
+				writeBehindConfig.getBatchSize());
+		assertEquals("ConfigurationOverrides should have set the write-behind flush interval. However, it didn't.",
+				200L, writeBehindConfig.getFlushInterval());
+		assertEquals("ConfigurationOverrides should have set the write-behind queue depth. However, it didn't.",
+				5000, writeBehindConfig.getMaxQueueDepth());
+	}
 }
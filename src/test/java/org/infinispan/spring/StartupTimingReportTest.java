@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.infinispan.spring.support.embedded.InfinispanEmbeddedCacheManagerFactoryBean;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link StartupTimingReport}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class StartupTimingReportTest {
+
+	@Test
+	public final void recordShouldAddUpRepeatedPhasesInOrder() throws Exception {
+		final StartupTimingReport objectUnderTest = new StartupTimingReport("test");
+
+		long started = System.nanoTime();
+		Thread.sleep(20L);
+		started = objectUnderTest.record("first", started);
+		started = objectUnderTest.record("second", started);
+		Thread.sleep(20L);
+		objectUnderTest.record("first", started);
+
+		final String[] phases = objectUnderTest.getPhases();
+		assertEquals("record() should have recorded each phase once. However, it didn't.", 2, phases.length);
+		assertTrue("record() should have kept phases in the order they first ran. However, it didn't.",
+				phases[0].startsWith("first: "));
+		assertTrue("record() should have added up the durations of a repeated phase. However, it didn't.",
+				objectUnderTest.getPhaseMillis("first") >= 40L);
+	}
+
+	@Test
+	public final void registeredReportShouldBeVisibleOverJmx() throws Exception {
+		final StartupTimingReport objectUnderTest = new StartupTimingReport("jmxTest");
+		objectUnderTest.record("only", System.nanoTime());
+
+		objectUnderTest.registerInJmxDomain("startupTimingTest");
+		try {
+			final Object phases = ManagementFactory.getPlatformMBeanServer().getAttribute(
+					new ObjectName("startupTimingTest:type=StartupTiming,name=\"jmxTest\""), "Phases");
+
+			assertEquals("A registered report should have exposed its phases over JMX. However, it didn't.", 1,
+					((String[]) phases).length);
+		} finally {
+			objectUnderTest.unregister();
+		}
+	}
+
+	@Test
+	public final void creatingEmbeddedCacheManagerShouldRecordStartupPhases() throws Exception {
+		final InfinispanEmbeddedCacheManagerFactoryBean factory = new InfinispanEmbeddedCacheManagerFactoryBean();
+		factory.afterPropertiesSet();
+		try {
+			final StartupTimingReport report = factory.getStartupTimingReport();
+
+			assertNotNull("Creating an EmbeddedCacheManager should have recorded a startup timing report. "
+					+ "However, it didn't.", report);
+			assertTrue("The startup timing report should have recorded the construction of the DefaultCacheManager. "
+					+ "However, it didn't.", report.getPhaseMillis("construct DefaultCacheManager") >= 0L);
+			assertTrue("The startup timing report should have recorded starting the DefaultCacheManager. "
+					+ "However, it didn't.", report.getPhaseMillis("start DefaultCacheManager") >= 0L);
+			assertTrue("The startup timing report should have recorded joining the cluster. However, it didn't.",
+					report.getPhaseMillis("start default cache and join cluster") >= 0L);
+		} finally {
+			factory.destroy();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import java.util.Random;
+
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link KeyDistribution <code>KeyDistribution</code>} where a fraction of all operations target a hot set of
+ * keys at the start of the key space, the remaining operations targeting all other keys. Keys within either set
+ * are equally popular.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class HotspotKeyDistribution implements KeyDistribution {
+
+	public static final double DEFAULT_HOT_SET_FRACTION = 0.2;
+
+	public static final double DEFAULT_HOT_OPERATION_FRACTION = 0.8;
+
+	private final long items;
+
+	private final long hotItems;
+
+	private final double hotOperationFraction;
+
+	/**
+	 * @param items
+	 * @param hotSetFraction
+	 *            The fraction of keys that are hot
+	 * @param hotOperationFraction
+	 *            The fraction of operations targeting hot keys
+	 */
+	public HotspotKeyDistribution(final long items, final double hotSetFraction, final double hotOperationFraction) {
+		Assert.isTrue((hotSetFraction > 0.0) && (hotSetFraction < 1.0), "Hot set fraction must be in (0, 1)");
+		Assert.isTrue((hotOperationFraction >= 0.0) && (hotOperationFraction <= 1.0),
+				"Hot operation fraction must be in [0, 1]");
+		this.items = items;
+		this.hotItems = Math.max(1L, Math.min(items - 1L, (long) (items * hotSetFraction)));
+		this.hotOperationFraction = hotOperationFraction;
+	}
+
+	@Override
+	public long nextKey(final Random random) {
+		if (random.nextDouble() < this.hotOperationFraction) {
+			return nextLong(random, this.hotItems);
+		}
+		return this.hotItems + nextLong(random, this.items - this.hotItems);
+	}
+
+	static long nextLong(final Random random, final long bound) {
+		return (random.nextLong() & Long.MAX_VALUE) % bound;
+	}
+
+	long getHotItems() {
+		return this.hotItems;
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * Chooses which key a {@link LoadHarness <code>LoadHarness</code>} operation targets. Keys are identified by
+ * their index in <code>[0, items)</code>.
+ * </p>
+ * <p>
+ * Implementations are shared by all worker threads and must therefore be thread-safe. Any randomness should be
+ * drawn from the <code>Random</code> passed in, which is confined to the calling thread.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public interface KeyDistribution {
+
+	/**
+	 * @param random
+	 *            The calling thread's source of randomness
+	 * @return The index of the next key to access
+	 */
+	long nextKey(Random random);
+}
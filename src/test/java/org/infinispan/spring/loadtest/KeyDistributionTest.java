@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test the {@link KeyDistribution <code>KeyDistributions</code>} used by {@link LoadHarness}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class KeyDistributionTest {
+
+	private static final int DRAWS = 100000;
+
+	@Test
+	public final void zipfianDistributionShouldFavourLowRanks() {
+		final ZipfianKeyDistribution objectUnderTest = new ZipfianKeyDistribution(10000L, 0.99, false);
+		final Random random = new Random(1L);
+		int topTenPercent = 0;
+		for (int i = 0; i < DRAWS; i++) {
+			final long key = objectUnderTest.nextKey(random);
+			assertTrue("ZipfianKeyDistribution should only have returned keys in [0, items). However, it returned ["
+					+ key + "]", (key >= 0L) && (key < 10000L));
+			if (key < 1000L) {
+				topTenPercent++;
+			}
+		}
+
+		assertTrue("ZipfianKeyDistribution should have drawn most keys from the top ten percent of ranks. "
+				+ "However, it drew only [" + topTenPercent + "] of [" + DRAWS + "]", topTenPercent > DRAWS * 0.6);
+	}
+
+	@Test
+	public final void hotspotDistributionShouldDirectConfiguredFractionOfOperationsAtHotSet() {
+		final HotspotKeyDistribution objectUnderTest = new HotspotKeyDistribution(1000L, 0.2, 0.8);
+		final Random random = new Random(1L);
+		int hot = 0;
+		for (int i = 0; i < DRAWS; i++) {
+			if (objectUnderTest.nextKey(random) < objectUnderTest.getHotItems()) {
+				hot++;
+			}
+		}
+
+		assertEquals("HotspotKeyDistribution should have directed 80% of all operations at the hot set. "
+				+ "However, it didn't.", 0.8, (double) hot / DRAWS, 0.01);
+	}
+
+	@Test
+	public final void scanDistributionShouldWrapAround() {
+		final ScanKeyDistribution objectUnderTest = new ScanKeyDistribution(3L);
+		final Random random = new Random(1L);
+
+		for (long expected : new long[] { 0L, 1L, 2L, 0L }) {
+			assertEquals("ScanKeyDistribution should have walked the key space sequentially. However, it didn't.",
+					expected, objectUnderTest.nextKey(random));
+		}
+	}
+
+	@Test
+	public final void latestDistributionShouldFollowInserts() {
+		final AtomicLong insertedItems = new AtomicLong(1000L);
+		final LatestKeyDistribution objectUnderTest = new LatestKeyDistribution(insertedItems, 1000L, 0.99);
+		final Random random = new Random(1L);
+		insertedItems.set(5000L);
+		int recent = 0;
+		for (int i = 0; i < DRAWS; i++) {
+			final long key = objectUnderTest.nextKey(random);
+			assertTrue("LatestKeyDistribution should not have returned keys not yet inserted. However, it returned ["
+					+ key + "]", key < 5000L);
+			if (key >= 4900L) {
+				recent++;
+			}
+		}
+
+		assertTrue("LatestKeyDistribution should have favoured the keys inserted last. However, it didn't.",
+				recent > DRAWS / 2);
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.spring.spi.CompactKey;
+import org.infinispan.spring.spi.CompactKeyGenerator;
+
+/**
+ * <p>
+ * Compares keys built by {@link CompactKeyGenerator <code>CompactKeyGenerator</code>} to the plain argument
+ * arrays they replace, reporting for a few representative argument lists
+ * </p>
+ * <ul>
+ * <li>the number of bytes either key takes up when serialized, and</li>
+ * <li>the nanoseconds it takes to compute either key's hash code, as INFINISPAN's consistent hash does to locate
+ * an embedded key's owners.</li>
+ * </ul>
+ * <p>
+ * Serialized size is measured using Java serialization. INFINISPAN's JBoss Marshalling based marshaller writes
+ * somewhat smaller class descriptors, but the relation between both keys stays the same. Hash codes are only
+ * relevant for embedded caches: the HotRod client hashes a key's marshalled bytes and never calls
+ * {@link CompactKey#hashCode()}, so remote caches only profit from the smaller size. Usage:
+ * </p>
+ * 
+ * <pre>
+ * java org.infinispan.spring.loadtest.KeyEncodingReport [iterations]
+ * </pre>
+ * 
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ * 
+ */
+public class KeyEncodingReport {
+
+	public static final Object[][] ARGUMENT_LISTS = new Object[][] {
+			{ "acme", Integer.valueOf(42), Boolean.TRUE },
+			{ Long.valueOf(7L), TimeUnit.SECONDS, new Date(1287000000000L) } };
+
+	private static final int DEFAULT_ITERATIONS = 10000000;
+
+	// Keeps the JIT from eliminating the hashing loops
+	private static volatile int sink;
+
+	private final CompactKeyGenerator keyGenerator = new CompactKeyGenerator();
+
+	public static void main(final String[] args) throws IOException {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		final KeyEncodingReport report = new KeyEncodingReport();
+		for (final Object[] arguments : ARGUMENT_LISTS) {
+			System.out.println(report.reportOn(arguments, iterations));
+		}
+	}
+
+	/**
+	 * @param arguments
+	 * @param iterations
+	 *            How often to compute either key's hash code
+	 * @return One line of JSON comparing the <code>CompactKey</code> built from <code>arguments</code> to
+	 *         <code>arguments</code> themselves
+	 * @throws IOException
+	 */
+	public String reportOn(final Object[] arguments, final int iterations) throws IOException {
+		final CompactKey compactKey = this.keyGenerator.generate(arguments);
+		return String.format(Locale.ENGLISH, "{\"arguments\":\"%s\",\"argumentsBytes\":%d,\"compactKeyBytes\":%d,"
+				+ "\"argumentsHashNanos\":%.1f,\"compactKeyHashNanos\":%.1f}", Arrays.toString(arguments),
+				serializedSize(arguments), serializedSize(compactKey), hashNanos(arguments, iterations),
+				hashNanos(compactKey, iterations));
+	}
+
+	/**
+	 * @param key
+	 * @return The number of bytes <code>key</code> takes up when serialized
+	 * @throws IOException
+	 */
+	public static int serializedSize(final Object key) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(key);
+		out.close();
+		return bytes.size();
+	}
+
+	// ------------------------------------------------------------------------
+	// Timing
+	// ------------------------------------------------------------------------
+
+	private static double hashNanos(final Object key, final int iterations) {
+		// Warm up first, then measure
+		consume(hashRepeatedly(key, iterations));
+		final long started = System.nanoTime();
+		consume(hashRepeatedly(key, iterations));
+		return (double) (System.nanoTime() - started) / iterations;
+	}
+
+	private static int hashRepeatedly(final Object key, final int iterations) {
+		int hashes = 0;
+		for (int i = 0; i < iterations; i++) {
+			hashes += key instanceof Object[] ? Arrays.deepHashCode((Object[]) key) : key.hashCode();
+		}
+		return hashes;
+	}
+
+	private static void consume(final int hashes) {
+		sink += hashes;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A fixed-size, log-linear histogram of latencies in nanoseconds, recording any value with a relative error of
+ * no more than about 3%. Each worker thread records into a histogram of its own. The reporting thread periodically
+ * {@link #drainInto(long[]) drains} those into a plain <code>long[]</code>, from which percentiles are computed.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	public static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(final long nanos) {
+		this.counts.incrementAndGet(bucketOf(Math.max(0L, nanos)));
+	}
+
+	/**
+	 * Add the counts recorded since the last call to <code>counts</code> and reset them.
+	 * 
+	 * @param counts
+	 *            An array of {@link #BUCKETS} counts
+	 */
+	public void drainInto(final long[] counts) {
+		for (int i = 0; i < BUCKETS; i++) {
+			if (this.counts.get(i) != 0L) {
+				counts[i] += this.counts.getAndSet(i, 0L);
+			}
+		}
+	}
+
+	static int bucketOf(final long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	static long lowestValueIn(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int shift = bucket / SUB_BUCKETS - 1;
+		return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+	}
+
+	/**
+	 * @param counts
+	 * @return The total number of values recorded in <code>counts</code>
+	 */
+	public static long totalCount(final long[] counts) {
+		long total = 0L;
+		for (final long count : counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * @param counts
+	 * @param percentile
+	 *            In <code>[0, 100]</code>
+	 * @return The lowest value in nanoseconds of the bucket holding the value at <code>percentile</code>, or
+	 *         <code>0</code> if nothing has been recorded
+	 */
+	public static long valueAtPercentile(final long[] counts, final double percentile) {
+		final long total = totalCount(counts);
+		if (total == 0L) {
+			return 0L;
+		}
+		final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0L;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return lowestValueIn(i);
+			}
+		}
+		return lowestValueIn(counts.length - 1);
+	}
+}
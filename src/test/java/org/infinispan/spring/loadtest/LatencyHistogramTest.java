@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link LatencyHistogram}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public final void bucketsShouldBoundRelativeError() {
+		for (long nanos = 1L; nanos < Long.MAX_VALUE / 3; nanos = nanos * 3 + 1) {
+			final long lowest = LatencyHistogram.lowestValueIn(LatencyHistogram.bucketOf(nanos));
+
+			assertTrue("The bucket of [" + nanos + "] should have started no higher than it. However, it started at ["
+					+ lowest + "]", lowest <= nanos);
+			assertTrue("The bucket of [" + nanos + "] should have started within 1/32 of it. However, it started at ["
+					+ lowest + "]", nanos - lowest <= nanos / 32);
+		}
+	}
+
+	@Test
+	public final void drainIntoShouldYieldPercentilesAndReset() {
+		final LatencyHistogram objectUnderTest = new LatencyHistogram();
+		for (long micros = 1L; micros <= 100L; micros++) {
+			objectUnderTest.record(micros * 1000L);
+		}
+		final long[] counts = new long[LatencyHistogram.BUCKETS];
+
+		objectUnderTest.drainInto(counts);
+
+		assertEquals("drainInto() should have transferred all values recorded. However, it didn't.", 100L,
+				LatencyHistogram.totalCount(counts));
+		assertEquals("The 99th percentile should have been within the histogram's precision. However, it wasn't.",
+				99000.0, LatencyHistogram.valueAtPercentile(counts, 99.0), 99000.0 / 32);
+		final long[] drainedAgain = new long[LatencyHistogram.BUCKETS];
+		objectUnderTest.drainInto(drainedAgain);
+		assertEquals("drainInto() should have reset all counts. However, it didn't.", 0L,
+				LatencyHistogram.totalCount(drainedAgain));
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A {@link KeyDistribution <code>KeyDistribution</code>} favouring the keys inserted most recently: the most
+ * recently inserted key is the most popular one, the one before the second most popular one and so forth,
+ * following a Zipfian distribution over a window of the most recent <code>window</code> keys. Combined with
+ * inserts, this models workloads like timelines, where new entries are hot and cool down as they age.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class LatestKeyDistribution implements KeyDistribution {
+
+	private final AtomicLong insertedItems;
+
+	private final ZipfianKeyDistribution recency;
+
+	/**
+	 * @param insertedItems
+	 *            The number of keys inserted so far, advanced by whoever inserts keys
+	 * @param window
+	 *            The number of most recent keys to choose from
+	 * @param zipfianConstant
+	 */
+	public LatestKeyDistribution(final AtomicLong insertedItems, final long window, final double zipfianConstant) {
+		this.insertedItems = insertedItems;
+		this.recency = new ZipfianKeyDistribution(window, zipfianConstant, false);
+	}
+
+	@Override
+	public long nextKey(final Random random) {
+		final long latest = this.insertedItems.get() - 1L;
+		return Math.max(0L, latest - this.recency.nextRank(random));
+	}
+}
@@ -0,0 +1,516 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.spring.spi.SpringEmbeddedCacheManagerFactoryBean;
+import org.infinispan.spring.spi.SpringRemoteCacheManagerFactoryBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * <p>
+ * Drives a {@link org.infinispan.spring.spi.SpringEmbeddedCacheManager <code>SpringEmbeddedCacheManager</code>} or
+ * a {@link org.infinispan.spring.spi.SpringRemoteCacheManager <code>SpringRemoteCacheManager</code>} with a
+ * configurable, skewed workload and reports how the cache behaves under it.
+ * </p>
+ * <p>
+ * A number of worker threads repeatedly read, update, insert or remove keys chosen by a
+ * {@link KeyDistribution <code>KeyDistribution</code>} - <code>zipfian</code>, <code>hotspot</code>,
+ * <code>scan</code> or <code>latest</code> - in the proportions configured. Values are random byte arrays of
+ * configurable size. Unless <code>populateOnMiss</code> is turned off, a read missing the cache is followed by a
+ * write of that key, as a cache-aside client would do.
+ * </p>
+ * <p>
+ * Every <code>reportIntervalSeconds</code> one line of JSON is written to <code>output</code>, holding throughput,
+ * latency percentiles in microseconds, hit ratio, errors and the number of and time spent in garbage collections
+ * during that interval. A final line of type <code>summary</code> covers the whole run. Garbage collection is
+ * reported per interval as collection count and accumulated collection time, as individual pauses are not
+ * exposed by the platform MXBeans.
+ * </p>
+ * <p>
+ * Settings are passed as <code>name=value</code> arguments, optionally preceded by <code>config=&lt;file&gt;</code>
+ * naming a properties file to read defaults from, e.g.
+ * </p>
+ * 
+ * <pre>
+ * java org.infinispan.spring.loadtest.LoadHarness target=embedded distribution=zipfian items=1000000 \
+ *     readProportion=0.95 updateProportion=0.05 threads=16 durationSeconds=120 output=results.jsonl
+ * </pre>
+ * 
+ * <p>
+ * See {@link #DEFAULTS} for all settings and their defaults.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class LoadHarness {
+
+	public static final Properties DEFAULTS = new Properties();
+
+	static {
+		// embedded or remote
+		DEFAULTS.setProperty("target", "embedded");
+		// INFINISPAN configuration file for target=embedded, HotRod client properties for target=remote
+		DEFAULTS.setProperty("configurationLocation", "");
+		DEFAULTS.setProperty("cacheName", "loadtest");
+		// zipfian, hotspot, scan or latest
+		DEFAULTS.setProperty("distribution", "zipfian");
+		DEFAULTS.setProperty("items", "100000");
+		DEFAULTS.setProperty("zipfianConstant", String.valueOf(ZipfianKeyDistribution.DEFAULT_ZIPFIAN_CONSTANT));
+		DEFAULTS.setProperty("scrambled", "true");
+		DEFAULTS.setProperty("hotSetFraction", String.valueOf(HotspotKeyDistribution.DEFAULT_HOT_SET_FRACTION));
+		DEFAULTS.setProperty("hotOperationFraction",
+				String.valueOf(HotspotKeyDistribution.DEFAULT_HOT_OPERATION_FRACTION));
+		DEFAULTS.setProperty("readProportion", "0.9");
+		DEFAULTS.setProperty("updateProportion", "0.1");
+		DEFAULTS.setProperty("insertProportion", "0");
+		DEFAULTS.setProperty("removeProportion", "0");
+		DEFAULTS.setProperty("populateOnMiss", "true");
+		DEFAULTS.setProperty("preload", "false");
+		DEFAULTS.setProperty("minValueSize", "100");
+		DEFAULTS.setProperty("maxValueSize", "1000");
+		DEFAULTS.setProperty("threads", "8");
+		DEFAULTS.setProperty("durationSeconds", "60");
+		DEFAULTS.setProperty("reportIntervalSeconds", "1");
+		// a file name, or - for standard output
+		DEFAULTS.setProperty("output", "-");
+		DEFAULTS.setProperty("seed", "42");
+	}
+
+	private static final int VALUE_POOL_SIZE = 1 << 20;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final Properties settings;
+
+	private final AtomicLong insertedItems;
+
+	private final KeyDistribution keyDistribution;
+
+	private final double[] cumulativeProportions;
+
+	private final byte[] valuePool;
+
+	private final int minValueSize;
+
+	private final int maxValueSize;
+
+	private final boolean populateOnMiss;
+
+	private volatile boolean running;
+
+	// Only accessed by the reporting thread
+	private long[] lastGarbageCollections;
+
+	// Only accessed by the reporting thread
+	private long lastReportNanos;
+
+	/**
+	 * @param settings
+	 *            Overriding {@link #DEFAULTS}
+	 */
+	public LoadHarness(final Properties settings) {
+		this.settings = new Properties(DEFAULTS);
+		this.settings.putAll(settings);
+		final long items = longSetting("items");
+		this.insertedItems = new AtomicLong(items);
+		this.keyDistribution = createKeyDistribution(this.settings.getProperty("distribution"), items);
+		this.cumulativeProportions = cumulativeProportions();
+		this.minValueSize = (int) longSetting("minValueSize");
+		this.maxValueSize = Math.max(this.minValueSize, (int) longSetting("maxValueSize"));
+		this.populateOnMiss = Boolean.parseBoolean(this.settings.getProperty("populateOnMiss"));
+		this.valuePool = new byte[VALUE_POOL_SIZE + this.maxValueSize];
+		new Random(longSetting("seed")).nextBytes(this.valuePool);
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Properties settings = new Properties();
+		for (final String arg : args) {
+			final int separator = arg.indexOf('=');
+			if (separator < 1) {
+				throw new IllegalArgumentException("Expected name=value, got [" + arg + "]");
+			}
+			final String name = arg.substring(0, separator);
+			final String value = arg.substring(separator + 1);
+			if ("config".equals(name)) {
+				final InputStream configuration = new FileInputStream(value);
+				try {
+					settings.load(configuration);
+				} finally {
+					configuration.close();
+				}
+			} else {
+				settings.setProperty(name, value);
+			}
+		}
+		new LoadHarness(settings).run();
+	}
+
+	// ------------------------------------------------------------------------
+	// Setup
+	// ------------------------------------------------------------------------
+
+	private KeyDistribution createKeyDistribution(final String distribution, final long items) {
+		final double zipfianConstant = doubleSetting("zipfianConstant");
+		if ("zipfian".equals(distribution)) {
+			return new ZipfianKeyDistribution(items, zipfianConstant,
+					Boolean.parseBoolean(this.settings.getProperty("scrambled")));
+		}
+		if ("hotspot".equals(distribution)) {
+			return new HotspotKeyDistribution(items, doubleSetting("hotSetFraction"),
+					doubleSetting("hotOperationFraction"));
+		}
+		if ("scan".equals(distribution)) {
+			return new ScanKeyDistribution(items);
+		}
+		if ("latest".equals(distribution)) {
+			return new LatestKeyDistribution(this.insertedItems, items, zipfianConstant);
+		}
+		throw new IllegalArgumentException("Unknown distribution [" + distribution
+				+ "]. Expected one of zipfian, hotspot, scan or latest.");
+	}
+
+	private double[] cumulativeProportions() {
+		final double[] proportions = new double[] { doubleSetting("readProportion"),
+				doubleSetting("updateProportion"), doubleSetting("insertProportion"),
+				doubleSetting("removeProportion") };
+		double total = 0.0;
+		for (final double proportion : proportions) {
+			total += proportion;
+		}
+		if (total <= 0.0) {
+			throw new IllegalArgumentException("At least one operation proportion needs to be positive");
+		}
+		double cumulative = 0.0;
+		for (int i = 0; i < proportions.length; i++) {
+			cumulative += proportions[i] / total;
+			proportions[i] = cumulative;
+		}
+		return proportions;
+	}
+
+	private Object createCacheManagerFactory() throws Exception {
+		final String target = this.settings.getProperty("target");
+		final String configurationLocation = this.settings.getProperty("configurationLocation");
+		final ResourceLoader resourceLoader = new DefaultResourceLoader();
+		if ("embedded".equals(target)) {
+			final SpringEmbeddedCacheManagerFactoryBean factory = new SpringEmbeddedCacheManagerFactoryBean();
+			if (configurationLocation.length() > 0) {
+				factory.setConfigurationFileLocation(resourceLoader.getResource(configurationLocation));
+			}
+			factory.afterPropertiesSet();
+			return factory;
+		}
+		if ("remote".equals(target)) {
+			final SpringRemoteCacheManagerFactoryBean factory = new SpringRemoteCacheManagerFactoryBean();
+			if (configurationLocation.length() > 0) {
+				factory.setConfigurationPropertiesFileLocation(resourceLoader.getResource(configurationLocation));
+			}
+			factory.afterPropertiesSet();
+			return factory;
+		}
+		throw new IllegalArgumentException("Unknown target [" + target + "]. Expected embedded or remote.");
+	}
+
+	// ------------------------------------------------------------------------
+	// Running
+	// ------------------------------------------------------------------------
+
+	public void run() throws Exception {
+		final Object factory = createCacheManagerFactory();
+		final PrintWriter output = openOutput();
+		try {
+			final CacheManager cacheManager = factory instanceof SpringEmbeddedCacheManagerFactoryBean ? ((SpringEmbeddedCacheManagerFactoryBean) factory)
+					.getObject() : ((SpringRemoteCacheManagerFactoryBean) factory).getObject();
+			final Cache<Object, Object> cache = cacheManager.getCache(this.settings.getProperty("cacheName"));
+			if (Boolean.parseBoolean(this.settings.getProperty("preload"))) {
+				preload(cache);
+			}
+			runWorkload(cache, output);
+		} finally {
+			output.flush();
+			if (!"-".equals(this.settings.getProperty("output"))) {
+				output.close();
+			}
+			if (factory instanceof SpringEmbeddedCacheManagerFactoryBean) {
+				((SpringEmbeddedCacheManagerFactoryBean) factory).destroy();
+			} else {
+				((SpringRemoteCacheManagerFactoryBean) factory).destroy();
+			}
+		}
+	}
+
+	private PrintWriter openOutput() throws IOException {
+		final String output = this.settings.getProperty("output");
+		if ("-".equals(output)) {
+			return new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"), true);
+		}
+		return new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"), true);
+	}
+
+	private void preload(final Cache<Object, Object> cache) {
+		final Random random = new Random(longSetting("seed"));
+		final long items = longSetting("items");
+		for (long key = 0; key < items; key++) {
+			cache.put(keyOf(key), nextValue(random));
+		}
+		this.logger.info("Preloaded [" + items + "] items into cache [" + cache.getName() + "]");
+	}
+
+	private void runWorkload(final Cache<Object, Object> cache, final PrintWriter output) throws InterruptedException {
+		final int threads = (int) longSetting("threads");
+		final long durationNanos = TimeUnit.SECONDS.toNanos(longSetting("durationSeconds"));
+		final long reportIntervalNanos = TimeUnit.SECONDS.toNanos(longSetting("reportIntervalSeconds"));
+		final List<Worker> workers = new ArrayList<Worker>(threads);
+		final CountDownLatch finished = new CountDownLatch(threads);
+		this.running = true;
+		this.lastGarbageCollections = garbageCollections();
+		for (int i = 0; i < threads; i++) {
+			final Worker worker = new Worker(cache, new Random(longSetting("seed") + i + 1), finished);
+			workers.add(worker);
+			final Thread thread = new Thread(worker, "LoadHarness-worker-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		this.logger.info("Started [" + threads + "] workers against cache [" + cache.getName() + "]");
+
+		final Interval total = new Interval();
+		final long started = System.nanoTime();
+		this.lastReportNanos = started;
+		long nextReport = started + reportIntervalNanos;
+		while (System.nanoTime() - started < durationNanos) {
+			final long sleepNanos = Math.min(nextReport, started + durationNanos) - System.nanoTime();
+			if (sleepNanos > 0L) {
+				TimeUnit.NANOSECONDS.sleep(sleepNanos);
+			}
+			if (System.nanoTime() - nextReport >= 0L) {
+				reportInterval(workers, total, started, output);
+				nextReport += reportIntervalNanos;
+			}
+		}
+		this.running = false;
+		finished.await();
+		reportInterval(workers, total, started, output);
+		output.println(total.toJson("summary", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+				System.nanoTime() - started));
+	}
+
+	private void reportInterval(final List<Worker> workers, final Interval total, final long started,
+			final PrintWriter output) {
+		final Interval interval = new Interval();
+		for (final Worker worker : workers) {
+			worker.drainInto(interval);
+		}
+		final long[] garbageCollections = garbageCollections();
+		interval.gcCount = garbageCollections[0] - this.lastGarbageCollections[0];
+		interval.gcMillis = garbageCollections[1] - this.lastGarbageCollections[1];
+		this.lastGarbageCollections = garbageCollections;
+		total.add(interval);
+		// An interval spans the time since the previous report, not the time since its Interval was created
+		final long now = System.nanoTime();
+		output.println(interval.toJson("interval", TimeUnit.NANOSECONDS.toMillis(now - started), now
+				- this.lastReportNanos));
+		this.lastReportNanos = now;
+	}
+
+	/**
+	 * @return The number of and the accumulated time in milliseconds spent in garbage collections since the JVM
+	 *         started
+	 */
+	private static long[] garbageCollections() {
+		final long[] garbageCollections = new long[2];
+		for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			garbageCollections[0] += Math.max(0L, collector.getCollectionCount());
+			garbageCollections[1] += Math.max(0L, collector.getCollectionTime());
+		}
+		return garbageCollections;
+	}
+
+	// ------------------------------------------------------------------------
+	// Workload
+	// ------------------------------------------------------------------------
+
+	private String keyOf(final long key) {
+		return "user" + key;
+	}
+
+	private byte[] nextValue(final Random random) {
+		final int size = this.minValueSize + random.nextInt(this.maxValueSize - this.minValueSize + 1);
+		final byte[] value = new byte[size];
+		System.arraycopy(this.valuePool, random.nextInt(VALUE_POOL_SIZE), value, 0, size);
+		return value;
+	}
+
+	private final class Worker implements Runnable {
+
+		private final Cache<Object, Object> cache;
+
+		private final Random random;
+
+		private final CountDownLatch finished;
+
+		private final LatencyHistogram latencies = new LatencyHistogram();
+
+		private final AtomicLong operations = new AtomicLong(0);
+
+		private final AtomicLong reads = new AtomicLong(0);
+
+		private final AtomicLong hits = new AtomicLong(0);
+
+		private final AtomicLong errors = new AtomicLong(0);
+
+		Worker(final Cache<Object, Object> cache, final Random random, final CountDownLatch finished) {
+			this.cache = cache;
+			this.random = random;
+			this.finished = finished;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (LoadHarness.this.running) {
+					final double operation = this.random.nextDouble();
+					final long started = System.nanoTime();
+					try {
+						if (operation < LoadHarness.this.cumulativeProportions[0]) {
+							read();
+						} else if (operation < LoadHarness.this.cumulativeProportions[1]) {
+							this.cache.put(keyOf(LoadHarness.this.keyDistribution.nextKey(this.random)),
+									nextValue(this.random));
+						} else if (operation < LoadHarness.this.cumulativeProportions[2]) {
+							this.cache.put(keyOf(LoadHarness.this.insertedItems.getAndIncrement()),
+									nextValue(this.random));
+						} else {
+							this.cache.remove(keyOf(LoadHarness.this.keyDistribution.nextKey(this.random)));
+						}
+					} catch (final RuntimeException e) {
+						this.errors.incrementAndGet();
+					}
+					this.latencies.record(System.nanoTime() - started);
+					this.operations.incrementAndGet();
+				}
+			} finally {
+				this.finished.countDown();
+			}
+		}
+
+		private void read() {
+			final String key = keyOf(LoadHarness.this.keyDistribution.nextKey(this.random));
+			this.reads.incrementAndGet();
+			if (this.cache.get(key) != null) {
+				this.hits.incrementAndGet();
+			} else if (LoadHarness.this.populateOnMiss) {
+				this.cache.put(key, nextValue(this.random));
+			}
+		}
+
+		void drainInto(final Interval interval) {
+			this.latencies.drainInto(interval.latencies);
+			interval.operations += this.operations.getAndSet(0);
+			interval.reads += this.reads.getAndSet(0);
+			interval.hits += this.hits.getAndSet(0);
+			interval.errors += this.errors.getAndSet(0);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Reporting
+	// ------------------------------------------------------------------------
+
+	private static final class Interval {
+
+		private final long[] latencies = new long[LatencyHistogram.BUCKETS];
+
+		private long operations;
+
+		private long reads;
+
+		private long hits;
+
+		private long errors;
+
+		private long gcCount;
+
+		private long gcMillis;
+
+		void add(final Interval other) {
+			for (int i = 0; i < this.latencies.length; i++) {
+				this.latencies[i] += other.latencies[i];
+			}
+			this.operations += other.operations;
+			this.reads += other.reads;
+			this.hits += other.hits;
+			this.errors += other.errors;
+			this.gcCount += other.gcCount;
+			this.gcMillis += other.gcMillis;
+		}
+
+		String toJson(final String type, final long elapsedMillis, final long durationNanos) {
+			final double seconds = Math.max(1L, durationNanos) / 1e9;
+			return String.format(Locale.ENGLISH, "{\"type\":\"%s\",\"elapsedMillis\":%d,\"operations\":%d,"
+					+ "\"throughput\":%.1f,\"latencyMicros\":{\"p50\":%.1f,\"p90\":%.1f,\"p99\":%.1f,"
+					+ "\"p999\":%.1f,\"max\":%.1f},\"reads\":%d,\"hits\":%d,\"hitRatio\":%.4f,\"errors\":%d,"
+					+ "\"gcCount\":%d,\"gcMillis\":%d}", type, Long.valueOf(elapsedMillis),
+					Long.valueOf(this.operations), Double.valueOf(this.operations / seconds),
+					micros(50.0), micros(90.0), micros(99.0), micros(99.9), micros(100.0),
+					Long.valueOf(this.reads), Long.valueOf(this.hits),
+					Double.valueOf(this.reads > 0L ? (double) this.hits / this.reads : 0.0),
+					Long.valueOf(this.errors), Long.valueOf(this.gcCount), Long.valueOf(this.gcMillis));
+		}
+
+		private Double micros(final double percentile) {
+			return Double.valueOf(LatencyHistogram.valueAtPercentile(this.latencies, percentile) / 1000.0);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Settings
+	// ------------------------------------------------------------------------
+
+	private long longSetting(final String name) {
+		return Long.parseLong(this.settings.getProperty(name).trim());
+	}
+
+	private double doubleSetting(final String name) {
+		return Double.parseDouble(this.settings.getProperty(name).trim());
+	}
+}
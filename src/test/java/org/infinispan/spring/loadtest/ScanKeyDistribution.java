@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A {@link KeyDistribution <code>KeyDistribution</code>} that walks the key space sequentially and wraps around at
+ * its end, shared by all threads. A scan touches every key exactly once per pass and so defeats recency based
+ * eviction whenever the key space exceeds a cache's capacity.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class ScanKeyDistribution implements KeyDistribution {
+
+	private final long items;
+
+	private final AtomicLong cursor = new AtomicLong(0);
+
+	/**
+	 * @param items
+	 */
+	public ScanKeyDistribution(final long items) {
+		this.items = items;
+	}
+
+	@Override
+	public long nextKey(final Random random) {
+		return (this.cursor.getAndIncrement() & Long.MAX_VALUE) % this.items;
+	}
+}
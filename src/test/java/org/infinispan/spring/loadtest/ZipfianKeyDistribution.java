@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.loadtest;
+
+import java.util.Random;
+
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * A {@link KeyDistribution <code>KeyDistribution</code>} where the popularity of a key is inversely proportional to
+ * its rank raised to <code>zipfianConstant</code>, as observed in most real-world caching workloads.
+ * </p>
+ * <p>
+ * Keys are drawn in constant time following J. Gray et al., "Quickly Generating Billion-Record Synthetic
+ * Databases", once the zeta constant over all items has been computed at construction time. Unless scrambling is
+ * turned off, ranks are hashed onto keys so that popular keys are spread across the key space instead of being
+ * clustered at its start.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class ZipfianKeyDistribution implements KeyDistribution {
+
+	public static final double DEFAULT_ZIPFIAN_CONSTANT = 0.99;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 1099511628211L;
+
+	private final long items;
+
+	private final double zipfianConstant;
+
+	private final boolean scrambled;
+
+	private final double zetaN;
+
+	private final double alpha;
+
+	private final double eta;
+
+	private final double halfPowTheta;
+
+	/**
+	 * @param items
+	 * @param zipfianConstant
+	 *            The skew, in <code>(0, 1)</code>
+	 * @param scrambled
+	 *            Whether to spread popular keys across the key space
+	 */
+	public ZipfianKeyDistribution(final long items, final double zipfianConstant, final boolean scrambled) {
+		Assert.isTrue(items > 1L, "At least two items are required");
+		Assert.isTrue((zipfianConstant > 0.0) && (zipfianConstant < 1.0), "Zipfian constant must be in (0, 1)");
+		this.items = items;
+		this.zipfianConstant = zipfianConstant;
+		this.scrambled = scrambled;
+		this.zetaN = zeta(items, zipfianConstant);
+		this.alpha = 1.0 / (1.0 - zipfianConstant);
+		this.halfPowTheta = Math.pow(0.5, zipfianConstant);
+		this.eta = (1.0 - Math.pow(2.0 / items, 1.0 - zipfianConstant)) / (1.0 - (1.0 + this.halfPowTheta) / this.zetaN);
+	}
+
+	private static double zeta(final long items, final double theta) {
+		double sum = 0.0;
+		for (long i = 1; i <= items; i++) {
+			sum += 1.0 / Math.pow(i, theta);
+		}
+		return sum;
+	}
+
+	@Override
+	public long nextKey(final Random random) {
+		final long rank = nextRank(random);
+		return this.scrambled ? scramble(rank) : rank;
+	}
+
+	/**
+	 * @param random
+	 * @return A rank in <code>[0, items)</code>, <code>0</code> being the most popular
+	 */
+	long nextRank(final Random random) {
+		final double u = random.nextDouble();
+		final double uz = u * this.zetaN;
+		if (uz < 1.0) {
+			return 0L;
+		}
+		if (uz < 1.0 + this.halfPowTheta) {
+			return 1L;
+		}
+		final long rank = (long) (this.items * Math.pow(this.eta * u - this.eta + 1.0, this.alpha));
+		return Math.min(rank, this.items - 1L);
+	}
+
+	private long scramble(final long rank) {
+		// FNV-1a over the rank's bytes
+		long hash = FNV_OFFSET_BASIS;
+		long remaining = rank;
+		for (int i = 0; i < 8; i++) {
+			hash ^= remaining & 0xff;
+			hash *= FNV_PRIME;
+			remaining >>>= 8;
+		}
+		return (hash & Long.MAX_VALUE) % this.items;
+	}
+
+	public long getItems() {
+		return this.items;
+	}
+
+	public double getZipfianConstant() {
+		return this.zipfianConstant;
+	}
+}
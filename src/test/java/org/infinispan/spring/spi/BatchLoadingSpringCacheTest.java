@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+
+/**
+ * <p>
+ * Test {@link BatchLoadingSpringCache}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class BatchLoadingSpringCacheTest {
+
+	private static final String CACHE_NAME = "batchLoadingTestCache";
+
+	private EmbeddedCacheManager nativeCacheManager;
+
+	private org.infinispan.Cache<String, String> nativeCache;
+
+	private RecordingBulkLoader bulkLoader;
+
+	private BatchLoadingSpringCache<String, String> objectUnderTest;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+		this.nativeCache = this.nativeCacheManager.getCache(CACHE_NAME);
+		this.bulkLoader = new RecordingBulkLoader();
+		this.objectUnderTest = new BatchLoadingSpringCache<String, String>(this.nativeCache, this.bulkLoader);
+		this.objectUnderTest.setBatchWindow(100L);
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void concurrentMissesShouldBeLoadedInOneBatch() throws Exception {
+		final List<Future<String>> results = getConcurrently(20);
+
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals("get() should have returned the value loaded. However, it didn't.", "value" + i, results
+					.get(i).get());
+		}
+		assertEquals("Concurrent misses should have been loaded in a single batch. However, they weren't: "
+				+ this.bulkLoader.batches, 1, this.bulkLoader.batches.size());
+		assertEquals("The values loaded should have been written into the cache. However, they weren't.", "value7",
+				this.nativeCache.get("key7"));
+	}
+
+	@Test
+	public final void concurrentMissesThroughCacheManagerShouldBeLoadedInOneBatch() throws Exception {
+		final SpringEmbeddedCacheManager cacheManager = new SpringEmbeddedCacheManager(this.nativeCacheManager);
+		cacheManager.setBulkLoaders(Collections.singletonMap(CACHE_NAME, this.bulkLoader));
+		cacheManager.setBulkLoadBatchWindow(100L);
+
+		final List<Future<String>> results = getConcurrently(20, cacheManager);
+
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals("get() should have returned the value loaded. However, it didn't.", "value" + i, results
+					.get(i).get());
+		}
+		assertEquals("Concurrent misses on caches obtained from the same CacheManager should have been loaded in a "
+				+ "single batch. However, they weren't: " + this.bulkLoader.batches, 1, this.bulkLoader.batches.size());
+	}
+
+	@Test
+	public final void batchShouldBeDispatchedOnceMaxBatchSizeIsReached() throws Exception {
+		this.objectUnderTest.setBatchWindow(10000L);
+		this.objectUnderTest.setMaxBatchSize(5);
+		final long start = System.currentTimeMillis();
+		final List<Future<String>> results = getConcurrently(5);
+		for (final Future<String> result : results) {
+			result.get();
+		}
+
+		assertTrue("A full batch should have been dispatched before the batch window elapsed. However, it wasn't.",
+				System.currentTimeMillis() - start < 5000L);
+		assertEquals("A full batch should have held maxBatchSize keys. However, it didn't.", 5,
+				this.bulkLoader.batches.get(0).size());
+	}
+
+	@Test
+	public final void getShouldNotLoadCachedValue() {
+		this.nativeCache.put("key1", "cached");
+
+		assertEquals("get() should have returned the cached value. However, it didn't.", "cached",
+				this.objectUnderTest.get("key1"));
+		assertTrue("get() should not have loaded a cached value. However, it did.", this.bulkLoader.batches.isEmpty());
+	}
+
+	@Test
+	public final void keyMissingFromBackendShouldBeCachedAsNullIfNegativeCachingIsEnabled() {
+		this.objectUnderTest.setNegativeCacheLifespan(60000L);
+
+		assertNull("get() should have returned null for a key missing from the backend. However, it didn't.",
+				this.objectUnderTest.get("missing"));
+		assertNull("get() should have returned null for a key cached as null. However, it didn't.",
+				this.objectUnderTest.get("missing"));
+		assertEquals("A key cached as null should not have been loaded again. However, it was.", 1,
+				this.bulkLoader.batches.size());
+	}
+
+	@Test
+	public final void loaderFailureShouldBePropagatedToCaller() {
+		this.bulkLoader.failure = new RuntimeException("Backend unavailable");
+		try {
+			this.objectUnderTest.get("key1");
+			fail("get() should have propagated the loader's failure. However, it didn't.");
+		} catch (final IllegalStateException e) {
+			assertEquals("The exception thrown should have had the loader's failure as its cause. However, it didn't.",
+					this.bulkLoader.failure, e.getCause());
+		}
+	}
+
+	private List<Future<String>> getConcurrently(final int count) throws InterruptedException {
+		return getConcurrently(count, null);
+	}
+
+	/**
+	 * Get <code>count</code> keys concurrently, each from the cache <code>cacheManager</code> returns to the
+	 * calling thread, or from the <code>objectUnderTest</code> if <code>cacheManager</code> is <code>null</code>.
+	 */
+	private List<Future<String>> getConcurrently(final int count, final SpringEmbeddedCacheManager cacheManager)
+			throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(count);
+		try {
+			final List<Callable<String>> gets = new ArrayList<Callable<String>>(count);
+			for (int i = 0; i < count; i++) {
+				final String key = "key" + i;
+				gets.add(new Callable<String>() {
+					@Override
+					public String call() {
+						final Cache<String, String> cache = cacheManager != null ? cacheManager
+								.<String, String> getCache(CACHE_NAME)
+								: BatchLoadingSpringCacheTest.this.objectUnderTest;
+						return cache.get(key);
+					}
+				});
+			}
+			return executor.invokeAll(gets);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static final class RecordingBulkLoader implements BulkLoader<String, String> {
+
+		final List<Collection<String>> batches = new CopyOnWriteArrayList<Collection<String>>();
+
+		volatile RuntimeException failure;
+
+		@Override
+		public Map<String, String> loadAll(final Collection<String> keys) {
+			this.batches.add(new ArrayList<String>(keys));
+			if (this.failure != null) {
+				throw this.failure;
+			}
+			final Map<String, String> values = new HashMap<String, String>();
+			for (final String key : keys) {
+				if (key.startsWith("key")) {
+					values.put(key, "value" + key.substring(3));
+				}
+			}
+			return values;
+		}
+	}
+}
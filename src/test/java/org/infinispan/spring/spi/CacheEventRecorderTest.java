@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.spring.spi.CacheOperationListener.Operation;
+import org.infinispan.spring.spi.CacheOperationListener.Outcome;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link CacheEventRecorder}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheEventRecorderTest {
+
+	private static final String CACHE_NAME = "cacheEventTestCache";
+
+	private EmbeddedCacheManager nativeCacheManager;
+
+	private RecordingLog eventLog;
+
+	private CacheEventRecorder objectUnderTest;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+		this.eventLog = new RecordingLog();
+		this.objectUnderTest = new CacheEventRecorder(this.eventLog);
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void operationShouldOnlyBeRecordedFromThreshold() {
+		final SpringCache<Object, Object> cache = new SpringCache<Object, Object>(
+				this.nativeCacheManager.<Object, Object> getCache(CACHE_NAME));
+		this.objectUnderTest.setThreshold(10L);
+
+		this.objectUnderTest.afterOperation(cache, Operation.GET, "key", Outcome.HIT, TimeUnit.MILLISECONDS
+				.toNanos(9L));
+		this.objectUnderTest.afterOperation(cache, Operation.GET, "key", Outcome.MISS, TimeUnit.MILLISECONDS
+				.toNanos(10L));
+
+		assertEquals("Only the operation reaching the threshold should have been recorded. However, it wasn't: "
+				+ this.eventLog.events, 1, this.eventLog.events.size());
+		assertTrue("The event recorded should have described the operation. However, it didn't: "
+				+ this.eventLog.events, this.eventLog.events.get(0).startsWith("event=CacheOperation ")
+				&& this.eventLog.events.get(0).contains(" cache=" + CACHE_NAME + " operation=GET outcome=MISS"));
+	}
+
+	@Test
+	public final void failedOperationShouldAlwaysBeRecorded() {
+		final SpringCache<Object, Object> cache = new SpringCache<Object, Object>(
+				this.nativeCacheManager.<Object, Object> getCache(CACHE_NAME));
+		this.objectUnderTest.setThreshold(10000L);
+		this.objectUnderTest.setServerAddress("host1:11222");
+
+		this.objectUnderTest.afterOperation(cache, Operation.PUT, "key", Outcome.FAILED, 1L);
+
+		assertEquals("A failed operation should have been recorded regardless of the threshold. However, it wasn't.",
+				1, this.eventLog.events.size());
+		assertTrue("The event recorded should have named the servers tried. However, it didn't: "
+				+ this.eventLog.events, this.eventLog.events.get(0).startsWith("event=CacheOperationFailed ")
+				&& this.eventLog.events.get(0).contains(" servers=host1:11222"));
+	}
+
+	@Test
+	public final void cacheCreationShouldBeRecordedOnlyOnce() {
+		final SpringEmbeddedCacheManager cacheManager = new SpringEmbeddedCacheManager(this.nativeCacheManager,
+				this.objectUnderTest);
+
+		cacheManager.getCache(CACHE_NAME);
+		cacheManager.getCache(CACHE_NAME);
+
+		assertEquals("Creating a cache should have been recorded exactly once. However, it wasn't: "
+				+ this.eventLog.events, 1, this.eventLog.events.size());
+		assertTrue("The event recorded should have named the cache created. However, it didn't: "
+				+ this.eventLog.events, this.eventLog.events.get(0).startsWith("event=CacheCreated ")
+				&& this.eventLog.events.get(0).endsWith(" cache=" + CACHE_NAME));
+	}
+
+	@Test
+	public final void recorderShouldNotBeAttachedToCachesObtainedWhileDebugIsOff() {
+		final SpringEmbeddedCacheManager cacheManager = new SpringEmbeddedCacheManager(this.nativeCacheManager,
+				this.objectUnderTest);
+		cacheManager.setCacheEventThreshold(0L);
+		this.eventLog.debugEnabled = false;
+		final SpringCache<Object, Object> obtainedWhileOff = cacheManager.getCache(CACHE_NAME);
+		this.eventLog.debugEnabled = true;
+		final SpringCache<Object, Object> obtainedWhileOn = cacheManager.getCache("otherCacheEventTestCache");
+		this.eventLog.events.clear();
+
+		obtainedWhileOff.put("key", "value");
+
+		assertTrue("No operation on a cache obtained while DEBUG was off should have been recorded. However, one "
+				+ "was: " + this.eventLog.events, this.eventLog.events.isEmpty());
+		obtainedWhileOn.put("key", "value");
+		assertEquals("An operation on a cache obtained while DEBUG was on should have been recorded. However, it "
+				+ "wasn't.", 1, this.eventLog.events.size());
+	}
+
+	/**
+	 * A <code>Log</code> keeping the <code>DEBUG</code> messages it has been passed.
+	 */
+	private static final class RecordingLog implements Log {
+
+		final List<String> events = new CopyOnWriteArrayList<String>();
+
+		volatile boolean debugEnabled = true;
+
+		@Override
+		public boolean isDebugEnabled() {
+			return this.debugEnabled;
+		}
+
+		@Override
+		public boolean isErrorEnabled() {
+			return true;
+		}
+
+		@Override
+		public boolean isFatalEnabled() {
+			return true;
+		}
+
+		@Override
+		public boolean isInfoEnabled() {
+			return true;
+		}
+
+		@Override
+		public boolean isTraceEnabled() {
+			return false;
+		}
+
+		@Override
+		public boolean isWarnEnabled() {
+			return true;
+		}
+
+		@Override
+		public void debug(final Object message) {
+			if (this.debugEnabled) {
+				this.events.add(String.valueOf(message));
+			}
+		}
+
+		@Override
+		public void debug(final Object message, final Throwable t) {
+			debug(message);
+		}
+
+		@Override
+		public void trace(final Object message) {
+		}
+
+		@Override
+		public void trace(final Object message, final Throwable t) {
+		}
+
+		@Override
+		public void info(final Object message) {
+		}
+
+		@Override
+		public void info(final Object message, final Throwable t) {
+		}
+
+		@Override
+		public void warn(final Object message) {
+		}
+
+		@Override
+		public void warn(final Object message, final Throwable t) {
+		}
+
+		@Override
+		public void error(final Object message) {
+		}
+
+		@Override
+		public void error(final Object message, final Throwable t) {
+		}
+
+		@Override
+		public void fatal(final Object message) {
+		}
+
+		@Override
+		public void fatal(final Object message, final Throwable t) {
+		}
+	}
+}
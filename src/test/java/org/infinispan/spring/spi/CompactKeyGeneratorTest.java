@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.infinispan.spring.loadtest.KeyEncodingReport;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link CompactKeyGenerator}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CompactKeyGeneratorTest {
+
+	private final CompactKeyGenerator objectUnderTest = new CompactKeyGenerator();
+
+	@Test
+	public final void equalArgumentsShouldYieldEqualKeys() {
+		final CompactKey first = this.objectUnderTest.generate("acme", Integer.valueOf(42), Boolean.TRUE);
+		final CompactKey second = this.objectUnderTest.generate("acme", Integer.valueOf(42), Boolean.TRUE);
+
+		assertEquals("generate() should have returned equal keys for equal arguments. However, it didn't.", first,
+				second);
+		assertEquals("generate() should have returned keys having equal hash codes for equal arguments. However, "
+				+ "it didn't.", first.hashCode(), second.hashCode());
+	}
+
+	@Test
+	public final void argumentBoundariesShouldBePartOfTheKey() {
+		assertFalse("generate() should have distinguished differently split arguments. However, it didn't.",
+				this.objectUnderTest.generate("ab", "c").equals(this.objectUnderTest.generate("a", "bc")));
+		assertFalse("generate() should have distinguished arguments of different types. However, it didn't.",
+				this.objectUnderTest.generate(Integer.valueOf(1), "x").equals(
+						this.objectUnderTest.generate(Long.valueOf(1L), "x")));
+	}
+
+	@Test
+	public final void singleStringArgumentShouldBeUsedAsIs() {
+		final String argument = "customer-4711";
+
+		assertSame("extract() should have used a single String argument as is. However, it didn't.", argument,
+				this.objectUnderTest.extract(null, null, argument));
+	}
+
+	@Test
+	public final void compactKeyShouldSurviveSerializationAndBeSmallerThanItsArguments() throws Exception {
+		final Object[] arguments = new Object[] { "acme", Integer.valueOf(42), Boolean.TRUE };
+		final CompactKey key = this.objectUnderTest.generate(arguments);
+
+		final byte[] serializedKey = serialize(key);
+		final Object deserializedKey = new ObjectInputStream(new ByteArrayInputStream(serializedKey)).readObject();
+
+		assertEquals("A deserialized CompactKey should have equalled the original. However, it didn't.", key,
+				deserializedKey);
+		assertEquals("A deserialized CompactKey should have had the original's hash code. However, it didn't.",
+				key.hashCode(), deserializedKey.hashCode());
+		assertTrue("A serialized CompactKey should have been smaller than its serialized arguments. However, it "
+				+ "wasn't: [" + serializedKey.length + "] vs. [" + serialize(arguments).length + "] bytes",
+				serializedKey.length < serialize(arguments).length);
+	}
+
+	@Test
+	public final void compactKeyShouldTakeUpLessThanHalfTheBytesOfItsArguments() throws Exception {
+		for (final Object[] arguments : KeyEncodingReport.ARGUMENT_LISTS) {
+			final int compactKeyBytes = KeyEncodingReport.serializedSize(this.objectUnderTest.generate(arguments));
+			final int argumentsBytes = KeyEncodingReport.serializedSize(arguments);
+
+			assertTrue("A serialized CompactKey should have taken up less than half the bytes of its serialized "
+					+ "arguments " + Arrays.toString(arguments) + ". However, it didn't: [" + compactKeyBytes
+					+ "] vs. [" + argumentsBytes + "] bytes", 2 * compactKeyBytes < argumentsBytes);
+		}
+	}
+
+	private static byte[] serialize(final Object object) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+}
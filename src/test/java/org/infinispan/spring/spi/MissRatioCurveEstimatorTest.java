@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link MissRatioCurveEstimator}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class MissRatioCurveEstimatorTest {
+
+	@Test
+	public final void cyclicAccessShouldOnlyHitOnceAllKeysFit() {
+		final MissRatioCurveEstimator objectUnderTest = new MissRatioCurveEstimator();
+		objectUnderTest.setSamplingRate(1.0);
+		objectUnderTest.setMaxCacheSize(2000L);
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < 1000; i++) {
+				objectUnderTest.recordRead("key" + i);
+			}
+		}
+
+		assertTrue("An LRU cache smaller than a cyclic working set should have been estimated to never hit. "
+				+ "However, it wasn't: [" + objectUnderTest.getEstimatedHitRatio(900L) + "]",
+				objectUnderTest.getEstimatedHitRatio(900L) < 0.01);
+		assertTrue("An LRU cache holding a cyclic working set should have been estimated to hit on all but "
+				+ "the first round. However, it wasn't: [" + objectUnderTest.getEstimatedHitRatio(1000L) + "]",
+				objectUnderTest.getEstimatedHitRatio(1000L) > 0.94);
+	}
+
+	@Test
+	public final void removalShouldMakeTheNextReadAMiss() {
+		final MissRatioCurveEstimator objectUnderTest = new MissRatioCurveEstimator();
+		objectUnderTest.setSamplingRate(1.0);
+		objectUnderTest.setMaxCacheSize(10L);
+		objectUnderTest.setCurvePoints(10);
+		objectUnderTest.recordRead("key");
+		objectUnderTest.recordRemoval("key");
+		objectUnderTest.recordRead("key");
+
+		assertTrue("A read following a removal should have been counted as a miss. However, it wasn't.",
+				objectUnderTest.getEstimatedHitRatio(10L) == 0.0);
+	}
+
+	@Test
+	public final void numberOfSampledKeysShouldBeBounded() {
+		final MissRatioCurveEstimator objectUnderTest = new MissRatioCurveEstimator();
+		objectUnderTest.setSamplingRate(1.0);
+		objectUnderTest.setMaxSamples(64);
+		for (int i = 0; i < 10000; i++) {
+			objectUnderTest.recordRead("key" + i);
+		}
+
+		assertTrue("No more than maxSamples keys should have been tracked. However, ["
+				+ objectUnderTest.getSampledKeys() + "] were.", objectUnderTest.getSampledKeys() <= 64);
+		assertTrue("Exceeding maxSamples should have lowered the sampling rate. However, it didn't.",
+				objectUnderTest.getSamplingRate() < 0.05);
+	}
+}
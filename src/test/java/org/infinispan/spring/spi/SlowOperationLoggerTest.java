@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link SlowOperationLogger}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class SlowOperationLoggerTest {
+
+	@Test
+	public final void perCacheThresholdShouldOnlyEnableLoggingForThatCache() {
+		final SlowOperationLogger objectUnderTest = new SlowOperationLogger();
+		objectUnderTest.setThresholds(Collections.singletonMap("slowCache", Long.valueOf(100L)));
+
+		assertTrue("A per-cache threshold should have enabled logging for that cache. However, it didn't.",
+				objectUnderTest.isEnabledFor("slowCache"));
+		assertFalse("A per-cache threshold should not have enabled logging for other caches. However, it did.",
+				objectUnderTest.isEnabledFor("otherCache"));
+	}
+
+	@Test
+	public final void defaultThresholdShouldEnableLoggingForAllCaches() {
+		final SlowOperationLogger objectUnderTest = new SlowOperationLogger();
+		objectUnderTest.setDefaultThreshold(Long.valueOf(100L));
+
+		assertTrue("A default threshold should have enabled logging for all caches. However, it didn't.",
+				objectUnderTest.isEnabledFor("anyCache"));
+	}
+
+	@Test
+	public final void loggingShouldBeRateLimited() {
+		final SlowOperationLogger objectUnderTest = new SlowOperationLogger();
+		objectUnderTest.setMaxLogsPerMinute(3);
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue("Logging should have been permitted up to maxLogsPerMinute times. However, it wasn't.",
+					objectUnderTest.acquireLogPermit());
+		}
+		assertFalse("Logging should have been suppressed beyond maxLogsPerMinute. However, it wasn't.",
+				objectUnderTest.acquireLogPermit());
+	}
+
+	@Test
+	public final void keyDigestShouldBeStableAndNotRevealTheKey() {
+		final String digest = SlowOperationLogger.digestOf("secret-customer-id");
+
+		assertEquals("The digest of a key should be stable. However, it wasn't.", digest,
+				SlowOperationLogger.digestOf("secret-customer-id"));
+		assertFalse("The digest of a key should not reveal the key. However, it did: [" + digest + "]",
+				digest.contains("secret"));
+	}
+}
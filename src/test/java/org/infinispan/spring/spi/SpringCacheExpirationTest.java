@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test default lifespans, max idle times and lifespan jitter in {@link SpringCache}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class SpringCacheExpirationTest {
+
+	private static final String CACHE_NAME = "expirationTestCache";
+
+	private EmbeddedCacheManager nativeCacheManager;
+
+	private org.infinispan.Cache<Object, Object> nativeCache;
+
+	private SpringCache<Object, Object> objectUnderTest;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+		this.nativeCache = this.nativeCacheManager.getCache(CACHE_NAME);
+		this.objectUnderTest = new SpringCache<Object, Object>(this.nativeCache);
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void putShouldStoreValueWithDefaultLifespan() throws InterruptedException {
+		this.objectUnderTest.setDefaultLifespan(200L);
+		this.objectUnderTest.put("key", "value");
+
+		assertEquals("put() should have stored the value with the default lifespan. However, it didn't.", 200L,
+				lifespanOf("key"));
+		Thread.sleep(400L);
+		assertNull("The value should have expired after the default lifespan. However, it didn't.",
+				this.objectUnderTest.get("key"));
+	}
+
+	@Test
+	public final void putShouldStoreExpirableValueWithItsOwnLifespan() {
+		this.objectUnderTest.setDefaultLifespan(200L);
+		this.objectUnderTest.put("key", new ExpirableValue(5000L));
+		this.objectUnderTest.put("defaulted", new ExpirableValue(-1L));
+
+		assertEquals("put() should have stored an Expirable value with its own lifespan. However, it didn't.",
+				5000L, lifespanOf("key"));
+		assertEquals("put() should have stored an Expirable value without a lifespan of its own with the default "
+				+ "lifespan. However, it didn't.", 200L, lifespanOf("defaulted"));
+	}
+
+	@Test
+	public final void putShouldStoreValueWithDefaultMaxIdle() {
+		this.objectUnderTest.setDefaultMaxIdle(300L);
+		this.objectUnderTest.put("key", "value");
+
+		assertEquals("put() should have stored the value with the default max idle time. However, it didn't.",
+				300L, this.nativeCache.getAdvancedCache().getDataContainer().get("key").getMaxIdle());
+	}
+
+	@Test
+	public final void putShouldShortenLifespanByAtMostJitter() {
+		this.objectUnderTest.setDefaultLifespan(10000L);
+		this.objectUnderTest.setLifespanJitter(0.2D);
+		boolean jittered = false;
+		for (int i = 0; i < 50; i++) {
+			this.objectUnderTest.put("key" + i, "value");
+			final long lifespan = lifespanOf("key" + i);
+
+			assertTrue("put() should have shortened the lifespan by at most the jitter. However, it didn't: ["
+					+ lifespan + "]", (lifespan > 8000L) && (lifespan <= 10000L));
+			jittered |= lifespan != 10000L;
+		}
+		assertTrue("put() should have varied the lifespans stored. However, it didn't.", jittered);
+	}
+
+	@Test
+	public final void putShouldRoundSubSecondExpirationUpToWholeSecondsIfRequired() {
+		this.objectUnderTest.setWholeSecondExpiration(true);
+		this.objectUnderTest.setNegativeCacheLifespan(200L);
+		this.objectUnderTest.setDefaultLifespan(1500L);
+		this.objectUnderTest.setDefaultMaxIdle(1L);
+		this.objectUnderTest.put("key", "value");
+		this.objectUnderTest.put("missing", null);
+
+		assertEquals("put() should have rounded the lifespan up to whole seconds. However, it didn't.", 2000L,
+				lifespanOf("key"));
+		assertEquals("put() should have rounded the max idle time up to whole seconds. However, it didn't.", 1000L,
+				this.nativeCache.getAdvancedCache().getDataContainer().get("key").getMaxIdle());
+		assertEquals("put() should have rounded a sub-second negative cache lifespan up to a second rather than "
+				+ "truncating it to 0. However, it didn't.", 1000L, lifespanOf("missing"));
+	}
+
+	private long lifespanOf(final Object key) {
+		return this.nativeCache.getAdvancedCache().getDataContainer().get(key).getLifespan();
+	}
+
+	private static final class ExpirableValue implements Expirable, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long lifespan;
+
+		ExpirableValue(final long lifespan) {
+			this.lifespan = lifespan;
+		}
+
+		@Override
+		public long getLifespan() {
+			return this.lifespan;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test negative caching in {@link SpringCache}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class SpringCacheNegativeCachingTest {
+
+	private static final String CACHE_NAME = "negativeCachingTestCache";
+
+	private EmbeddedCacheManager nativeCacheManager;
+
+	private org.infinispan.Cache<Object, Object> nativeCache;
+
+	private SpringCache<Object, Object> objectUnderTest;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+		this.nativeCache = this.nativeCacheManager.getCache(CACHE_NAME);
+		this.objectUnderTest = new SpringCache<Object, Object>(this.nativeCache);
+		this.objectUnderTest.setNegativeCacheLifespan(200L);
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void nullValueShouldBeCachedAndReadBackAsNull() {
+		this.objectUnderTest.put("missing", null);
+
+		assertTrue("containsKey() should have reported a key cached as null. However, it didn't.",
+				this.objectUnderTest.containsKey("missing"));
+		assertNull("get() should have translated the null sentinel back to null. However, it didn't.",
+				this.objectUnderTest.get("missing"));
+		assertTrue("The native cache should have held the null sentinel. However, it didn't.",
+				this.nativeCache.get("missing") instanceof NullValue);
+	}
+
+	@Test
+	public final void nullValueShouldExpireAfterNegativeCacheLifespan() throws InterruptedException {
+		this.objectUnderTest.put("missing", null);
+
+		Thread.sleep(400L);
+
+		assertFalse("A key cached as null should have expired after the negative cache lifespan. However, it "
+				+ "didn't.", this.objectUnderTest.containsKey("missing"));
+	}
+
+	@Test
+	public final void putIfAbsentShouldNotOverwriteKeyCachedAsNull() {
+		this.objectUnderTest.put("missing", null);
+
+		assertNull("putIfAbsent() should have returned null for a key cached as null. However, it didn't.",
+				this.objectUnderTest.putIfAbsent("missing", "value"));
+		assertNull("putIfAbsent() should not have overwritten a key cached as null. However, it did.",
+				this.objectUnderTest.get("missing"));
+	}
+}
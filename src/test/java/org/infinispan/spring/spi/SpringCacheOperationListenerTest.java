@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.spring.spi.CacheOperationListener.Operation;
+import org.infinispan.spring.spi.CacheOperationListener.Outcome;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+
+/**
+ * <p>
+ * Test {@link SpringCache}'s support for {@link CacheOperationListener}s.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class SpringCacheOperationListenerTest {
+
+	private static final String CACHE_NAME = "operationListenerTestCache";
+
+	private DefaultCacheManager nativeCacheManager;
+
+	private SpringCache<Object, Object> objectUnderTest;
+
+	private RecordingListener listener;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+		this.objectUnderTest = new SpringCache<Object, Object>(this.nativeCacheManager.<Object, Object> getCache(CACHE_NAME));
+		this.listener = new RecordingListener();
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void listenerShouldBeNotifiedOfOperationAndOutcome() {
+		this.objectUnderTest.setOperationListeners(Collections.singletonList(this.listener));
+
+		this.objectUnderTest.get("key");
+		this.objectUnderTest.put("key", "value");
+		this.objectUnderTest.get("key");
+		this.objectUnderTest.putIfAbsent("key", "other");
+
+		assertEquals("Each operation should have been reported before it was performed. However, it wasn't.",
+				Arrays.asList(Operation.GET, Operation.PUT, Operation.GET, Operation.PUT_IF_ABSENT),
+				this.listener.before);
+		assertEquals("Each operation should have been reported with its outcome. However, it wasn't.",
+				Arrays.asList(Outcome.MISS, Outcome.APPLIED, Outcome.HIT, Outcome.NOT_APPLIED), this.listener.outcomes);
+		assertTrue("Each operation should have been reported with its duration. However, it wasn't.",
+				this.listener.durationsNanos.get(0) >= 0L);
+	}
+
+	@Test
+	public final void samplingIntervalShouldOnlyReportEveryNthOperation() {
+		this.objectUnderTest.setOperationListeners(Collections.singletonList(this.listener));
+		this.objectUnderTest.setSamplingInterval(4);
+
+		for (int i = 0; i < 20; i++) {
+			this.objectUnderTest.get("key" + i);
+		}
+
+		assertEquals("A sampling interval of 4 should have reported every 4th operation. However, it didn't.", 5,
+				this.listener.outcomes.size());
+	}
+
+	@Test
+	public final void failingListenerShouldNotAbortOperation() {
+		final CacheOperationListener failing = new RecordingListener() {
+			@Override
+			public void beforeOperation(final Cache<?, ?> cache, final Operation operation, final Object key) {
+				throw new IllegalStateException("Expected");
+			}
+		};
+		this.objectUnderTest.setOperationListeners(Arrays.asList(failing, this.listener));
+
+		this.objectUnderTest.put("key", "value");
+
+		assertEquals("A failing listener should not have aborted the operation. However, it did.", "value",
+				this.nativeCacheManager.getCache(CACHE_NAME).get("key"));
+		assertEquals("A failing listener should not have kept other listeners from being notified. However, it did.",
+				1, this.listener.outcomes.size());
+	}
+
+	@Test
+	public final void cacheManagerShouldRegisterListenersWithNamedCacheOnly() {
+		final SpringEmbeddedCacheManager cacheManager = new SpringEmbeddedCacheManager(this.nativeCacheManager);
+		cacheManager.setCacheOperationListeners(Collections.singletonMap(CACHE_NAME,
+				Collections.singletonList(this.listener)));
+
+		cacheManager.getCache("otherCache").get("key");
+		cacheManager.getCache(CACHE_NAME).get("key");
+
+		assertEquals("SpringEmbeddedCacheManager should have registered listeners with the named cache only. "
+				+ "However, it didn't.", 1, this.listener.outcomes.size());
+	}
+
+	@Test
+	public final void samplingIntervalShouldApplyAcrossCachesObtainedFromCacheManager() {
+		final SpringEmbeddedCacheManager cacheManager = new SpringEmbeddedCacheManager(this.nativeCacheManager);
+		cacheManager.setCacheOperationListeners(Collections.singletonMap(CACHE_NAME,
+				Collections.singletonList(this.listener)));
+		cacheManager.setCacheOperationSamplingInterval(4);
+
+		// As Spring's cache aspect does, obtain the cache anew for each operation
+		for (int i = 0; i < 20; i++) {
+			cacheManager.getCache(CACHE_NAME).get("key" + i);
+		}
+
+		assertEquals("A sampling interval of 4 should have reported every 4th operation on caches obtained from "
+				+ "SpringEmbeddedCacheManager. However, it didn't.", 5, this.listener.outcomes.size());
+	}
+
+	private static class RecordingListener implements CacheOperationListener {
+
+		final List<Operation> before = Collections.synchronizedList(new ArrayList<Operation>());
+
+		final List<Outcome> outcomes = Collections.synchronizedList(new ArrayList<Outcome>());
+
+		final List<Long> durationsNanos = Collections.synchronizedList(new ArrayList<Long>());
+
+		@Override
+		public void beforeOperation(final Cache<?, ?> cache, final Operation operation, final Object key) {
+			this.before.add(operation);
+		}
+
+		@Override
+		public void afterOperation(final Cache<?, ?> cache, final Operation operation, final Object key,
+				final Outcome outcome, final long durationNanos) {
+			this.outcomes.add(outcome);
+			this.durationsNanos.add(durationNanos);
+		}
+	}
+}
@@ -24,6 +24,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.Properties;
 
 import javax.management.MBeanServer;
@@ -701,4 +703,34 @@ public class SpringEmbeddedCacheManagerFactoryBeanTest {
 						.getGlobalConfiguration().getDistributedSyncTimeout());
 		springEmbeddedCacheManager.stop();
 	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.spi.SpringEmbeddedCacheManagerFactoryBean#setSnapshotDirectory(java.io.File)}.
+	 */
+	@Test
+	public final void springEmbeddedCacheManagerFactoryBeanShouldRestoreSnapshotSavedWhenBeingDestroyed()
+			throws Exception {
+		final File snapshotDirectory = File.createTempFile("warm-restart", "");
+		snapshotDirectory.delete();
+		final String cacheName = "warmRestartCache";
+
+		final SpringEmbeddedCacheManagerFactoryBean firstFactoryBean = new SpringEmbeddedCacheManagerFactoryBean();
+		firstFactoryBean.setSnapshotDirectory(snapshotDirectory);
+		firstFactoryBean.setSnapshotCacheNames(Collections.singleton(cacheName));
+		firstFactoryBean.afterPropertiesSet();
+		firstFactoryBean.getObject().getCache(cacheName).put("key", "value");
+		firstFactoryBean.destroy();
+
+		final SpringEmbeddedCacheManagerFactoryBean objectUnderTest = new SpringEmbeddedCacheManagerFactoryBean();
+		objectUnderTest.setSnapshotDirectory(snapshotDirectory);
+		objectUnderTest.setSnapshotCacheNames(Collections.singleton(cacheName));
+		objectUnderTest.afterPropertiesSet();
+		final SpringEmbeddedCacheManager springEmbeddedCacheManager = objectUnderTest.getObject();
+
+		assertEquals(
+				"SpringEmbeddedCacheManagerFactoryBean should have restored the snapshot saved when it was last destroyed. However, it didn't.",
+				"value", springEmbeddedCacheManager.getNativeCacheManager().getCache(cacheName).get("key"));
+		springEmbeddedCacheManager.stop();
+		snapshotDirectory.delete();
+	}
 }
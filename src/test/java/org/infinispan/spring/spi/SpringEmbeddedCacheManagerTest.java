@@ -20,12 +20,14 @@
 package org.infinispan.spring.spi;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Collection;
 
+import org.infinispan.config.Configuration;
 import org.infinispan.lifecycle.ComponentStatus;
 import org.infinispan.manager.DefaultCacheManager;
 import org.infinispan.manager.EmbeddedCacheManager;
@@ -153,4 +155,47 @@ public class SpringEmbeddedCacheManagerTest {
 				"getNativeCacheManager() should have returned the EmbeddedCacheManager supplied at construction time. However, it retuned a different one.",
 				nativeCacheManager, nativeCacheManagerReturned);
 	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.spi.SpringEmbeddedCacheManager#getMetricsSnapshot()}.
+	 */
+	@Test
+	public final void getMetricsSnapshotShouldReportHitsAndMissesOfRunningCaches() {
+		final Configuration configuration = new Configuration();
+		configuration.setExposeJmxStatistics(true);
+		final EmbeddedCacheManager nativeCacheManager = new DefaultCacheManager(configuration);
+		final SpringEmbeddedCacheManager objectUnderTest = new SpringEmbeddedCacheManager(nativeCacheManager);
+		final Cache<Object, Object> cache = objectUnderTest.getCache("metricsCache");
+		cache.put("key", "value");
+		cache.get("key");
+		cache.get("missing");
+
+		final CacheMetricsSnapshot.CacheMetrics metrics = objectUnderTest.getMetricsSnapshot().getCacheMetrics(
+				"metricsCache");
+
+		assertEquals("getMetricsSnapshot() should have reported one hit. However, it didn't.", 1L, metrics.getHits());
+		assertEquals("getMetricsSnapshot() should have reported one miss. However, it didn't.", 1L,
+				metrics.getMisses());
+		assertEquals("getMetricsSnapshot() should have reported one entry. However, it didn't.", 1,
+				metrics.getNumberOfEntries());
+		nativeCacheManager.stop();
+	}
+
+	/**
+	 * Test method for {@link org.infinispan.spring.spi.SpringEmbeddedCacheManager#getMetricsSnapshot()}.
+	 */
+	@Test
+	public final void getMetricsSnapshotShouldNotStartCachesNotYetRunning() {
+		final EmbeddedCacheManager nativeCacheManager = new DefaultCacheManager();
+		nativeCacheManager.defineConfiguration("notYetStarted", new Configuration());
+		final SpringEmbeddedCacheManager objectUnderTest = new SpringEmbeddedCacheManager(nativeCacheManager);
+
+		final CacheMetricsSnapshot snapshot = objectUnderTest.getMetricsSnapshot();
+
+		assertFalse("getMetricsSnapshot() should not have included a cache not yet started. However, it did.",
+				snapshot.getCacheMetrics().containsKey("notYetStarted"));
+		assertFalse("getMetricsSnapshot() should not have started a cache not yet started. However, it did.",
+				nativeCacheManager.isRunning("notYetStarted"));
+		nativeCacheManager.stop();
+	}
 }
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link TieredSpringCache}, using two embedded caches as L1 and L2.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class TieredSpringCacheTest {
+
+	private static final String CACHE_NAME = "tieredTestCache";
+
+	private EmbeddedCacheManager l1CacheManager;
+
+	private EmbeddedCacheManager l2CacheManager;
+
+	private SpringCache<Object, Object> l1;
+
+	private SpringCache<Object, Object> l2;
+
+	private TierStatistics statistics;
+
+	private TieredSpringCache<Object, Object> objectUnderTest;
+
+	@Before
+	public void setUp() {
+		this.l1CacheManager = new DefaultCacheManager();
+		this.l2CacheManager = new DefaultCacheManager();
+		this.l1 = new SpringCache<Object, Object>(this.l1CacheManager.<Object, Object> getCache(CACHE_NAME));
+		this.l2 = new SpringCache<Object, Object>(this.l2CacheManager.<Object, Object> getCache(CACHE_NAME));
+		this.statistics = new TierStatistics();
+		this.objectUnderTest = new TieredSpringCache<Object, Object>(this.l1, this.l2, this.statistics);
+	}
+
+	@After
+	public void tearDown() {
+		this.l1CacheManager.stop();
+		this.l2CacheManager.stop();
+	}
+
+	@Test
+	public final void putShouldWriteThroughToBothTiers() {
+		this.objectUnderTest.put("key", "value");
+
+		assertEquals("put() should have written to L1. However, it didn't.", "value", this.l1.get("key"));
+		assertEquals("put() should have written to L2. However, it didn't.", "value", this.l2.get("key"));
+	}
+
+	@Test
+	public final void getShouldPromoteL2HitToL1() {
+		this.l2.put("key", "value");
+
+		assertEquals("get() should have returned the value held by L2. However, it didn't.", "value",
+				this.objectUnderTest.get("key"));
+		assertEquals("get() should have promoted the L2 hit to L1. However, it didn't.", "value",
+				this.l1.get("key"));
+		this.objectUnderTest.get("key");
+
+		assertEquals("The second get() should have been an L1 hit. However, it wasn't.", 1L,
+				this.statistics.getL1Hits());
+		assertEquals("The first get() should have been an L2 hit. However, it wasn't.", 1L,
+				this.statistics.getL2Hits());
+		assertEquals("The first get() should have been an L1 miss. However, it wasn't.", 1L,
+				this.statistics.getL1Misses());
+	}
+
+	@Test
+	public final void getShouldRecordMissInBothTiers() {
+		assertNull("get() should have returned null for an absent key. However, it didn't.",
+				this.objectUnderTest.get("absent"));
+
+		assertEquals("get() should have recorded an L1 miss. However, it didn't.", 1L,
+				this.statistics.getL1Misses());
+		assertEquals("get() should have recorded an L2 miss. However, it didn't.", 1L,
+				this.statistics.getL2Misses());
+	}
+
+	@Test
+	public final void failedReplaceShouldDropStaleEntryFromL1() {
+		this.objectUnderTest.put("key", "value");
+		this.l2.put("key", "changedByAnotherClient");
+
+		assertFalse("replace() should have failed against L2. However, it didn't.",
+				this.objectUnderTest.replace("key", "value", "newValue"));
+		assertNull("A failed replace() should have dropped the stale entry from L1. However, it didn't.",
+				this.l1.get("key"));
+	}
+
+	@Test
+	public final void promotionShouldNotOverwriteConcurrentWriteToL1() throws Exception {
+		this.l2.put("key", "stale");
+		final CountDownLatch readFromL2 = new CountDownLatch(1);
+		final CountDownLatch written = new CountDownLatch(1);
+		final SpringCache<Object, Object> slowL2 = new SpringCache<Object, Object>(this.l2.getNativeCache()) {
+			@Override
+			public Object get(final Object key) {
+				final Object value = super.get(key);
+				readFromL2.countDown();
+				try {
+					written.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return value;
+			}
+		};
+		final TieredSpringCache<Object, Object> slowReader = new TieredSpringCache<Object, Object>(this.l1, slowL2,
+				this.statistics);
+		final FutureTask<Object> read = new FutureTask<Object>(new Callable<Object>() {
+			@Override
+			public Object call() {
+				return slowReader.get("key");
+			}
+		});
+		new Thread(read).start();
+		readFromL2.await();
+
+		this.objectUnderTest.put("key", "fresh");
+		written.countDown();
+
+		assertEquals("The reader should have returned the value it read from L2. However, it didn't.", "stale",
+				read.get());
+		assertEquals("Promoting a value read from L2 should not have overwritten a concurrent write to L1. "
+				+ "However, it did.", "fresh", this.l1.get("key"));
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.infinispan.config.Configuration;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * <p>
+ * Test {@link TransactionAwareSpringCache}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class TransactionAwareSpringCacheTest {
+
+	private static final String CACHE_NAME = "transactionAwareTestCache";
+
+	private DefaultCacheManager nativeCacheManager;
+
+	private org.infinispan.Cache<Object, Object> nativeCache;
+
+	private TransactionAwareSpringCache<Object, Object> objectUnderTest;
+
+	@Before
+	public void setUp() {
+		final Configuration configuration = new Configuration();
+		configuration.setInvocationBatchingEnabled(true);
+		this.nativeCacheManager = new DefaultCacheManager(configuration);
+		this.nativeCache = this.nativeCacheManager.getCache(CACHE_NAME);
+		this.objectUnderTest = new TransactionAwareSpringCache<Object, Object>(this.nativeCache, true);
+	}
+
+	@After
+	public void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void writesWithinTransactionShouldOnlyBeAppliedAfterCommit() {
+		this.nativeCache.put("evicted", "value");
+		TransactionSynchronizationManager.initSynchronization();
+		this.objectUnderTest.put("key", "value");
+		this.objectUnderTest.remove("evicted");
+
+		assertNull("A write within a transaction should not have been applied before commit. However, it was.",
+				this.nativeCache.get("key"));
+		assertEquals("A read within a transaction should have seen that transaction's writes. However, it didn't.",
+				"value", this.objectUnderTest.get("key"));
+		assertNull("A read within a transaction should have seen that transaction's removals. However, it didn't.",
+				this.objectUnderTest.get("evicted"));
+
+		completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+		assertEquals("A write within a transaction should have been applied after commit. However, it wasn't.",
+				"value", this.nativeCache.get("key"));
+		assertFalse("A removal within a transaction should have been applied after commit. However, it wasn't.",
+				this.nativeCache.containsKey("evicted"));
+	}
+
+	@Test
+	public final void writesWithinTransactionShouldBeDiscardedOnRollback() {
+		TransactionSynchronizationManager.initSynchronization();
+		this.objectUnderTest.put("key", "value");
+
+		completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+		assertNull("A write within a rolled back transaction should have been discarded. However, it wasn't.",
+				this.nativeCache.get("key"));
+	}
+
+	@Test
+	public final void writesOutsideTransactionShouldBeAppliedImmediately() {
+		this.objectUnderTest.put("key", "value");
+
+		assertEquals("A write outside of a transaction should have been applied immediately. However, it wasn't.",
+				"value", this.nativeCache.get("key"));
+	}
+
+	@Test
+	public final void cachesObtainedSeparatelyShouldShareTransactionBuffer() {
+		final TransactionAwareSpringCache<Object, Object> other = new TransactionAwareSpringCache<Object, Object>(
+				this.nativeCache, true);
+		TransactionSynchronizationManager.initSynchronization();
+		this.objectUnderTest.put("key", "value");
+
+		assertEquals("Another instance for the same cache should have seen the transaction's writes. However, it didn't.",
+				"value", other.get("key"));
+	}
+
+	@Test
+	public final void writesWithinRequiresNewTransactionShouldNotGoToSuspendedTransactionsBuffer() {
+		final TransactionTemplate outer = new TransactionTemplate(new SimpleTransactionManager());
+		final TransactionTemplate inner = new TransactionTemplate(outer.getTransactionManager());
+		inner.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		outer.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(final TransactionStatus status) {
+				TransactionAwareSpringCacheTest.this.objectUnderTest.put("outer", "value");
+				inner.execute(new TransactionCallbackWithoutResult() {
+					@Override
+					protected void doInTransactionWithoutResult(final TransactionStatus innerStatus) {
+						TransactionAwareSpringCacheTest.this.objectUnderTest.put("inner", "value");
+					}
+				});
+
+				assertEquals("A write within a REQUIRES_NEW transaction should have been applied on its commit. "
+						+ "However, it wasn't.", "value",
+						TransactionAwareSpringCacheTest.this.nativeCache.get("inner"));
+				assertEquals("The suspended transaction's writes should have been visible again after resuming it. "
+						+ "However, they weren't.", "value",
+						TransactionAwareSpringCacheTest.this.objectUnderTest.get("outer"));
+				status.setRollbackOnly();
+			}
+		});
+
+		assertNull("A write within a rolled back outer transaction should have been discarded. However, it wasn't.",
+				this.nativeCache.get("outer"));
+		assertEquals("A write within a committed REQUIRES_NEW transaction should have survived the outer rollback. "
+				+ "However, it didn't.", "value", this.nativeCache.get("inner"));
+	}
+
+	private static void completeTransaction(final int status) {
+		TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+				status);
+		TransactionSynchronizationManager.clearSynchronization();
+	}
+
+	/**
+	 * A resource-less transaction manager that just drives transaction synchronization, including suspension.
+	 */
+	private static final class SimpleTransactionManager extends AbstractPlatformTransactionManager {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ThreadLocal<Boolean> active = new ThreadLocal<Boolean>();
+
+		@Override
+		protected Object doGetTransaction() {
+			return new Object();
+		}
+
+		@Override
+		protected boolean isExistingTransaction(final Object transaction) {
+			return Boolean.TRUE.equals(this.active.get());
+		}
+
+		@Override
+		protected void doBegin(final Object transaction, final TransactionDefinition definition) {
+			this.active.set(Boolean.TRUE);
+		}
+
+		@Override
+		protected Object doSuspend(final Object transaction) {
+			this.active.remove();
+			return Boolean.TRUE;
+		}
+
+		@Override
+		protected void doResume(final Object transaction, final Object suspendedResources) {
+			this.active.set(Boolean.TRUE);
+		}
+
+		@Override
+		protected void doCommit(final DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doRollback(final DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doCleanupAfterCompletion(final Object transaction) {
+			this.active.remove();
+		}
+	}
+}
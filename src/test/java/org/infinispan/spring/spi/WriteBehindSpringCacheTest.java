@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.spi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link WriteBehindSpringCache}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class WriteBehindSpringCacheTest {
+
+	private static final String CACHE_NAME = "writeBehindTestCache";
+
+	private DefaultCacheManager nativeCacheManager;
+
+	private org.infinispan.Cache<Object, Object> nativeCache;
+
+	private WriteBehindSpringCache<Object, Object> objectUnderTest;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+		this.nativeCache = this.nativeCacheManager.getCache(CACHE_NAME);
+		this.objectUnderTest = new WriteBehindSpringCache<Object, Object>(this.nativeCache);
+		// Long enough for no background flush to interfere with our assertions
+		this.objectUnderTest.setFlushInterval(60000L);
+		this.objectUnderTest.start();
+	}
+
+	@After
+	public void tearDown() {
+		this.objectUnderTest.stop();
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void putShouldBeServedFromBufferBeforeBeingFlushed() {
+		this.objectUnderTest.put("key", "value");
+
+		assertNull("put() should have been buffered. However, it has been written to the native cache.",
+				this.nativeCache.get("key"));
+		assertEquals("get() should have returned the buffered value. However, it didn't.", "value",
+				this.objectUnderTest.get("key"));
+		assertTrue("containsKey() should have seen the buffered value. However, it didn't.",
+				this.objectUnderTest.containsKey("key"));
+	}
+
+	@Test
+	public final void repeatedPutsToTheSameKeyShouldBeCoalesced() {
+		this.objectUnderTest.put("key", "first");
+		this.objectUnderTest.put("key", "second");
+		this.objectUnderTest.put("key", "third");
+
+		assertEquals("Three puts to the same key should have been coalesced into one pending write. However, "
+				+ "they weren't.", 1, this.objectUnderTest.getPendingWritesCount());
+
+		this.objectUnderTest.flush();
+
+		assertEquals("flush() should have written the latest value. However, it didn't.", "third",
+				this.nativeCache.get("key"));
+		assertEquals("flush() should have emptied the buffer. However, it didn't.", 0,
+				this.objectUnderTest.getPendingWritesCount());
+	}
+
+	@Test
+	public final void bufferedRemoveShouldHideValueInNativeCache() {
+		this.nativeCache.put("key", "value");
+
+		this.objectUnderTest.remove("key");
+
+		assertNull("get() should have seen the buffered remove. However, it didn't.", this.objectUnderTest.get("key"));
+		assertFalse("containsKey() should have seen the buffered remove. However, it didn't.",
+				this.objectUnderTest.containsKey("key"));
+
+		this.objectUnderTest.flush();
+
+		assertFalse("flush() should have removed the key from the native cache. However, it didn't.",
+				this.nativeCache.containsKey("key"));
+	}
+
+	@Test
+	public final void conditionalOperationShouldFlushPendingWriteForItsKeyFirst() {
+		this.objectUnderTest.put("key", "buffered");
+
+		final Object previous = this.objectUnderTest.putIfAbsent("key", "other");
+
+		assertEquals("putIfAbsent() should have seen the previously buffered value. However, it didn't.",
+				"buffered", previous);
+		assertEquals("putIfAbsent() should have flushed the pending write first. However, it didn't.", "buffered",
+				this.nativeCache.get("key"));
+	}
+
+	@Test
+	public final void exceedingMaxBufferedEntriesShouldTriggerSynchronousFlush() {
+		this.objectUnderTest.setMaxBufferedEntries(2);
+
+		this.objectUnderTest.put("one", "1");
+		this.objectUnderTest.put("two", "2");
+		this.objectUnderTest.put("three", "3");
+
+		assertEquals("Exceeding maxBufferedEntries should have flushed the buffer. However, it didn't.", "1",
+				this.nativeCache.get("one"));
+		assertEquals("Only the newest key should still be buffered. However, it isn't.", 1,
+				this.objectUnderTest.getPendingWritesCount());
+	}
+
+	@Test
+	public final void stopShouldFlushAllPendingWrites() {
+		this.objectUnderTest.put("key", "value");
+
+		this.objectUnderTest.stop();
+
+		assertEquals("stop() should have flushed all pending writes. However, it didn't.", "value",
+				this.nativeCache.get("key"));
+	}
+
+	@Test
+	public final void writesAfterStopShouldBeWrittenThrough() {
+		this.nativeCache.put("removed", "value");
+		this.objectUnderTest.stop();
+
+		this.objectUnderTest.put("key", "value");
+		this.objectUnderTest.remove("removed");
+
+		assertEquals("put() on a stopped WriteBehindSpringCache should have written through to the native cache. "
+				+ "However, it didn't.", "value", this.nativeCache.get("key"));
+		assertFalse("remove() on a stopped WriteBehindSpringCache should have written through to the native cache. "
+				+ "However, it didn't.", this.nativeCache.containsKey("removed"));
+		assertEquals("A stopped WriteBehindSpringCache should not have buffered any write. However, it did.", 0,
+				this.objectUnderTest.getPendingWritesCount());
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.infinispan.commands.CommandsFactory;
+import org.infinispan.commands.ReplicableCommand;
+import org.infinispan.config.Configuration;
+import org.infinispan.remoting.rpc.ResponseMode;
+import org.infinispan.remoting.rpc.RpcManager;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link AdaptiveReplicationQueue}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class AdaptiveReplicationQueueTest {
+
+	private static final long LATENCY_TARGET = 1000L;
+
+	private static final int MAX_BATCH_SIZE = 500;
+
+	private AdaptiveReplicationQueue objectUnderTest;
+
+	@Before
+	public void setUp() {
+		final Configuration configuration = new Configuration();
+		configuration.setReplQueueInterval(LATENCY_TARGET);
+		configuration.setReplQueueMaxElements(MAX_BATCH_SIZE);
+		this.objectUnderTest = new AdaptiveReplicationQueue();
+		this.objectUnderTest.injectDependencies(null, null, configuration, null);
+	}
+
+	@Test
+	public final void lowWriteRateShouldResultInImmediateFlushes() {
+		for (int i = 0; i < 50; i++) {
+			this.objectUnderTest.recordWrites(1, LATENCY_TARGET);
+		}
+
+		assertEquals("A write rate of one element per latency target should not have been batched. However, it was.",
+				1, this.objectUnderTest.getCurrentBatchSize());
+		assertEquals("A write rate of one element per latency target should have been flushed on the next tick. "
+				+ "However, it wasn't.", AdaptiveReplicationQueue.TICK_INTERVAL_MILLIS,
+				this.objectUnderTest.getCurrentFlushInterval());
+	}
+
+	@Test
+	public final void moderateWriteRateShouldBeBatchedWithinLatencyTarget() {
+		// 100 elements per second
+		for (int i = 0; i < 50; i++) {
+			this.objectUnderTest.recordWrites(10, 100L);
+		}
+
+		final int batchSize = this.objectUnderTest.getCurrentBatchSize();
+		assertTrue("A write rate of 100 elements per second should have been batched. However, current batch size is ["
+				+ batchSize + "]", batchSize > 1 && batchSize < MAX_BATCH_SIZE);
+		assertTrue("Flush interval should not have exceeded latency target. However, it did.",
+				this.objectUnderTest.getCurrentFlushInterval() <= LATENCY_TARGET);
+	}
+
+	@Test
+	public final void highWriteRateShouldBeCappedAtReplQueueMaxElements() {
+		// 100000 elements per second
+		for (int i = 0; i < 50; i++) {
+			this.objectUnderTest.recordWrites(1000, 10L);
+		}
+
+		assertEquals("Batch size should have been capped at replQueueMaxElements. However, it wasn't.",
+				MAX_BATCH_SIZE, this.objectUnderTest.getCurrentBatchSize());
+	}
+
+	@Test
+	public final void failedReplicationShouldNotEscapeAdd() {
+		// No CommandsFactory has been injected, so building the replication command fails
+		this.objectUnderTest.add(newReplicableCommand());
+		this.objectUnderTest.add(newReplicableCommand());
+
+		assertEquals("add() should have logged a failed replication and drained the queue. However, it didn't.", 0,
+				this.objectUnderTest.getElementsCount());
+	}
+
+	@Test
+	public final void rpcLatencyShouldBeSampledFromSynchronousProbesOnly() {
+		final Configuration configuration = new Configuration();
+		configuration.setReplQueueInterval(LATENCY_TARGET);
+		configuration.setReplQueueMaxElements(MAX_BATCH_SIZE);
+		this.objectUnderTest.injectDependencies(null, (RpcManager) Proxy.newProxyInstance(
+				RpcManager.class.getClassLoader(), new Class<?>[] { RpcManager.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args)
+							throws InterruptedException {
+						// A synchronous RPC takes a round trip, an asynchronous one returns right away
+						if ("invokeRemotely".equals(method.getName()) && (args[2] == ResponseMode.SYNCHRONOUS)) {
+							Thread.sleep(50L);
+						}
+						return null;
+					}
+				}), configuration, (CommandsFactory) newProxy(CommandsFactory.class));
+
+		this.objectUnderTest.add(newReplicableCommand());
+		assertEquals("Sending a batch asynchronously should not have counted as RPC latency. However, it did.", 0.0,
+				this.objectUnderTest.getAverageRpcLatency(), 0.0);
+
+		for (int i = 0; i < 5; i++) {
+			this.objectUnderTest.probeRpcLatency();
+		}
+		assertTrue("Probing should have measured the round trip of a synchronous RPC. However, average RPC latency "
+				+ "is [" + this.objectUnderTest.getAverageRpcLatency() + "] ms",
+				this.objectUnderTest.getAverageRpcLatency() >= 25.0);
+	}
+
+	private static ReplicableCommand newReplicableCommand() {
+		return (ReplicableCommand) newProxy(ReplicableCommand.class);
+	}
+
+	private static Object newProxy(final Class<?> type) {
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import org.infinispan.Cache;
+import org.infinispan.config.GlobalConfiguration;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.spring.support.embedded.eviction.EntrySizer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link CacheFootprintEstimator}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheFootprintEstimatorTest {
+
+	private static final String CACHE_NAME = "footprintTestCache";
+
+	private static final String JMX_DOMAIN = "footprintTest";
+
+	private DefaultCacheManager nativeCacheManager;
+
+	private MBeanServer mBeanServer;
+
+	private CacheFootprintEstimator objectUnderTest;
+
+	@Before
+	public void setUp() throws Exception {
+		final GlobalConfiguration globalConfiguration = GlobalConfiguration.getNonClusteredDefault();
+		globalConfiguration.setJmxDomain(JMX_DOMAIN);
+		this.nativeCacheManager = new DefaultCacheManager(globalConfiguration);
+		this.mBeanServer = MBeanServerFactory.newMBeanServer();
+		this.objectUnderTest = new CacheFootprintEstimator();
+		this.objectUnderTest.setInfinispanEmbeddedCacheManager(this.nativeCacheManager);
+		this.objectUnderTest.setCacheNames(Collections.singleton(CACHE_NAME));
+		this.objectUnderTest.setMBeanServer(this.mBeanServer);
+		this.objectUnderTest.setSampleInterval(Long.MAX_VALUE / 2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.objectUnderTest.destroy();
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void footprintShouldBeScaledFromSampledEntries() throws Exception {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		for (int i = 0; i < 100; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+		this.objectUnderTest.setSampleSize(10);
+		this.objectUnderTest.setEntrySizer(new EntrySizer() {
+			@Override
+			public long sizeOf(final Object key, final Object value) {
+				return 50L;
+			}
+		});
+		this.objectUnderTest.afterPropertiesSet();
+
+		this.objectUnderTest.sample();
+
+		final CacheFootprint footprint = this.objectUnderTest.getFootprint(CACHE_NAME);
+		assertEquals("CacheFootprintEstimator should have sized no more than sampleSize entries. However, it didn't.",
+				10, footprint.getSampledEntries());
+		assertEquals("CacheFootprintEstimator should have scaled the sampled size by the entry count. However, it didn't.",
+				5000L, footprint.getEstimatedBytes());
+	}
+
+	@Test
+	public final void footprintShouldBePublishedUnderConfiguredJmxDomain() throws Exception {
+		this.nativeCacheManager.getCache(CACHE_NAME).put("key", "value");
+		this.objectUnderTest.afterPropertiesSet();
+
+		this.objectUnderTest.sample();
+
+		final Object estimatedBytes = this.mBeanServer.getAttribute(this.objectUnderTest.objectNameOf(CACHE_NAME),
+				"EstimatedBytes");
+		assertTrue("CacheFootprintEstimator should have published a positive footprint under JMX domain ["
+				+ JMX_DOMAIN + "]. However, it didn't.", ((Long) estimatedBytes).longValue() > 0L);
+	}
+
+	@Test
+	public final void cachesNotRunningShouldNotBeSampled() throws Exception {
+		this.objectUnderTest.afterPropertiesSet();
+
+		this.objectUnderTest.sample();
+
+		assertEquals("CacheFootprintEstimator should not have started a cache to sample it. However, it did.", null,
+				this.objectUnderTest.getFootprint(CACHE_NAME));
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link CacheReadinessGate}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheReadinessGateTest {
+
+	private static final String CACHE_NAME = "readinessTestCache";
+
+	private DefaultCacheManager nativeCacheManager;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void startShouldReturnOnceCacheHasBeenWarmedUpToMinimumEntries() {
+		final CacheReadinessGate objectUnderTest = new CacheReadinessGate();
+		objectUnderTest.setInfinispanEmbeddedCacheManager(this.nativeCacheManager);
+		objectUnderTest.setCacheNames(Collections.singleton(CACHE_NAME));
+		objectUnderTest.setMinimumEntries(100);
+		objectUnderTest.setFailOnTimeout(true);
+		objectUnderTest.setCacheWarmer(new CacheWarmer() {
+			@Override
+			public void warmUp(final Cache<Object, Object> cache) throws Exception {
+				for (int i = 0; i < 100; i++) {
+					cache.put("key" + i, "value" + i);
+				}
+			}
+		});
+
+		objectUnderTest.start();
+
+		assertTrue("CacheReadinessGate should be running once its caches are ready. However, it isn't.",
+				objectUnderTest.isRunning());
+		assertTrue("CacheReadinessGate should have warmed up its cache. However, it didn't.", this.nativeCacheManager
+				.getCache(CACHE_NAME).size() >= 100);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public final void startShouldFailIfMinimumEntriesAreNotReachedInTimeAndFailOnTimeoutIsSet() {
+		final CacheReadinessGate objectUnderTest = new CacheReadinessGate();
+		objectUnderTest.setInfinispanEmbeddedCacheManager(this.nativeCacheManager);
+		objectUnderTest.setCacheNames(Collections.singleton(CACHE_NAME));
+		objectUnderTest.setMinimumEntries(10);
+		objectUnderTest.setTimeout(200L);
+		objectUnderTest.setPollInterval(20L);
+		objectUnderTest.setFailOnTimeout(true);
+
+		objectUnderTest.start();
+	}
+
+	@Test
+	public final void startShouldOpenAnywayIfMinimumEntriesAreNotReachedInTime() {
+		final CacheReadinessGate objectUnderTest = new CacheReadinessGate();
+		objectUnderTest.setInfinispanEmbeddedCacheManager(this.nativeCacheManager);
+		objectUnderTest.setCacheNames(Collections.singleton(CACHE_NAME));
+		objectUnderTest.setMinimumEntries(10);
+		objectUnderTest.setTimeout(200L);
+		objectUnderTest.setPollInterval(20L);
+
+		objectUnderTest.start();
+
+		assertTrue("CacheReadinessGate should have opened after timing out. However, it didn't.",
+				objectUnderTest.isRunning());
+		assertTrue("CacheReadinessGate should have accounted for the time spent waiting for entries. However, it didn't.",
+				objectUnderTest.getFillMillis() >= 200L);
+	}
+
+	@Test
+	public final void localCacheShouldHaveStableTopologyOnceRunning() {
+		assertTrue("A running local cache should have a stable topology. However, it didn't.",
+				CacheReadinessGate.hasStableTopology(this.nativeCacheManager.getCache(CACHE_NAME)));
+	}
+
+	@Test
+	public final void stopShouldCloseTheGate() {
+		final CacheReadinessGate objectUnderTest = new CacheReadinessGate();
+		objectUnderTest.setInfinispanEmbeddedCacheManager(this.nativeCacheManager);
+		objectUnderTest.setCacheNames(Collections.singleton(CACHE_NAME));
+		objectUnderTest.start();
+
+		objectUnderTest.stop();
+
+		assertFalse("CacheReadinessGate should not be running after having been stopped. However, it is.",
+				objectUnderTest.isRunning());
+	}
+}
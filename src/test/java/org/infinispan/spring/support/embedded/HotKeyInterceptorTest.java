@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.infinispan.Cache;
+import org.infinispan.config.Configuration;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.spring.support.embedded.HotKeyInterceptor.HotKey;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link HotKeyInterceptor}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class HotKeyInterceptorTest {
+
+	@Test
+	public final void hotKeysShouldBeReportedInOrderOfFrequency() {
+		final HotKeyInterceptor objectUnderTest = new HotKeyInterceptor();
+		objectUnderTest.setTopK(2);
+		objectUnderTest.setCapacity(10);
+		for (int i = 0; i < 10000; i++) {
+			objectUnderTest.recordAccess("cold" + i, 0L);
+			if (i % 2 == 0) {
+				objectUnderTest.recordAccess("hot", 0L);
+			}
+			if (i % 5 == 0) {
+				objectUnderTest.recordAccess("warm", 0L);
+			}
+		}
+
+		final List<HotKey> topKeys = objectUnderTest.currentTopKeys(1000L);
+
+		assertEquals("HotKeyInterceptor should have reported topK keys. However, it didn't.", 2, topKeys.size());
+		assertEquals("HotKeyInterceptor should have reported the most frequent key first. However, it didn't.",
+				"hot", topKeys.get(0).key);
+		assertEquals("HotKeyInterceptor should have reported the second most frequent key second. However, it didn't.",
+				"warm", topKeys.get(1).key);
+		assertTrue("HotKeyInterceptor should have reported the hot key's access rate. However, it didn't.",
+				topKeys.get(0).ratePerSecond >= 5000.0);
+	}
+
+	@Test
+	public final void completedWindowShouldBeReportedAfterRollover() {
+		final HotKeyInterceptor objectUnderTest = new HotKeyInterceptor();
+		objectUnderTest.setWindowMillis(1000L);
+		for (int i = 0; i < 100; i++) {
+			objectUnderTest.recordAccess("hot", 0L);
+		}
+
+		objectUnderTest.recordAccess("other", 1000L);
+
+		assertEquals("A completed window's hot keys should have been reported. However, they weren't.",
+				"hot = 100.00/s", objectUnderTest.getTopKeys()[0]);
+		assertEquals("Counting should have restarted in a new window. However, it didn't.", "other",
+				objectUnderTest.currentTopKeys(2000L).get(0).key);
+	}
+
+	@Test
+	public final void installedInterceptorShouldObserveCacheAccesses() {
+		final HotKeyInterceptor objectUnderTest = new HotKeyInterceptor();
+		final Configuration configuration = new Configuration();
+		configuration.setCustomInterceptors(objectUnderTest.getCustomInterceptors());
+		final DefaultCacheManager nativeCacheManager = new DefaultCacheManager(configuration);
+		try {
+			final Cache<Object, Object> cache = nativeCacheManager.getCache("hotKeyTestCache");
+			cache.put("key", "value");
+			for (int i = 0; i < 9; i++) {
+				cache.get("key");
+			}
+
+			assertEquals("An installed HotKeyInterceptor should have observed all key accesses. However, it didn't.",
+					10L, objectUnderTest.getObservedAccesses());
+		} finally {
+			nativeCacheManager.stop();
+		}
+	}
+}
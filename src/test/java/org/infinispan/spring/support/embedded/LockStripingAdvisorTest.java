@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link LockStripingAdvisor}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class LockStripingAdvisorTest {
+
+	@Test
+	public final void initialConcurrencyLevelShouldScaleWithAvailableProcessors() {
+		assertEquals("recommendInitialConcurrencyLevel() should have recommended 16 stripes per processor. However, "
+				+ "it didn't.", 128, LockStripingAdvisor.recommendInitialConcurrencyLevel(8, 0));
+	}
+
+	@Test
+	public final void initialConcurrencyLevelShouldNotExceedExpectedEntryCount() {
+		assertEquals("recommendInitialConcurrencyLevel() should have been bounded by a small expected entry count. "
+				+ "However, it wasn't.", 32, LockStripingAdvisor.recommendInitialConcurrencyLevel(8, 20));
+	}
+
+	@Test
+	public final void lockStripingShouldOnlyBeRecommendedForLargeCaches() {
+		assertFalse("recommendInitialUseLockStriping() should have recommended per-entry locks for a small cache. "
+				+ "However, it didn't.", LockStripingAdvisor.recommendInitialUseLockStriping(100));
+		assertTrue("recommendInitialUseLockStriping() should have recommended lock striping for a large cache. "
+				+ "However, it didn't.", LockStripingAdvisor.recommendInitialUseLockStriping(1000000));
+	}
+
+	@Test
+	public final void lowContentionShouldNotProduceARecommendation() {
+		final LockStripingAdvisor objectUnderTest = new LockStripingAdvisor();
+		objectUnderTest.setConcurrencyLevelInUse(32);
+		for (int i = 0; i < 2000; i++) {
+			objectUnderTest.recordLockWait(1000L);
+		}
+
+		assertNull("getRecommendedConcurrencyLevel() should not have recommended anything under low contention. "
+				+ "However, it did.", objectUnderTest.getRecommendedConcurrencyLevel());
+	}
+
+	@Test
+	public final void highContentionShouldRecommendDoublingTheConcurrencyLevel() {
+		final LockStripingAdvisor objectUnderTest = new LockStripingAdvisor();
+		objectUnderTest.setConcurrencyLevelInUse(32);
+		for (int i = 0; i < 2000; i++) {
+			objectUnderTest.recordLockWait(i % 5 == 0 ? 5000000L : 1000L);
+		}
+
+		assertEquals("getRecommendedConcurrencyLevel() should have recommended doubling the concurrency level "
+				+ "under high contention. However, it didn't.", Integer.valueOf(64),
+				objectUnderTest.getRecommendedConcurrencyLevel());
+	}
+
+	@Test
+	public final void savedRecommendationShouldBeLoadedOnNextStart() throws Exception {
+		final File recommendationFile = File.createTempFile("lockStriping", ".properties");
+		recommendationFile.delete();
+		recommendationFile.deleteOnExit();
+		final LockStripingAdvisor objectUnderTest = new LockStripingAdvisor();
+		objectUnderTest.setConcurrencyLevelInUse(32);
+		objectUnderTest.setRecommendationFile(recommendationFile);
+		for (int i = 0; i < 2000; i++) {
+			objectUnderTest.recordLockTimeout(1000L);
+		}
+
+		objectUnderTest.destroy();
+
+		assertEquals("destroy() should have saved the recommended concurrency level. However, it didn't.",
+				Integer.valueOf(64), LockStripingAdvisor.loadRecommendedConcurrencyLevel(recommendationFile));
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link ByteBudgetEviction}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class ByteBudgetEvictionTest {
+
+	private static final String CACHE_NAME = "byteBudgetTestCache";
+
+	private static final EntrySizer HUNDRED_BYTES_PER_ENTRY = new EntrySizer() {
+		@Override
+		public long sizeOf(final Object key, final Object value) {
+			return 100L;
+		}
+	};
+
+	private DefaultCacheManager nativeCacheManager;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void cacheShouldBeKeptWithinItsByteBudget() throws Exception {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		final ByteBudgetEviction objectUnderTest = ByteBudgetEviction.installIn(cache, 1000L,
+				HUNDRED_BYTES_PER_ENTRY);
+
+		for (int i = 0; i < 50; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+
+		awaitSizeAtMost(cache, 10);
+		assertTrue("ByteBudgetEviction should have kept the cache within its byte budget. However, it didn't: "
+				+ objectUnderTest.getTotalBytes(), objectUnderTest.getTotalBytes() <= 1000L);
+		assertTrue("ByteBudgetEviction should have evicted entries exceeding the budget. However, it didn't: "
+				+ cache.size(), cache.size() <= 10);
+	}
+
+	@Test
+	public final void removingEntriesShouldReduceRunningTotal() throws Exception {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		final ByteBudgetEviction objectUnderTest = ByteBudgetEviction.installIn(cache, 1000L,
+				HUNDRED_BYTES_PER_ENTRY);
+		cache.put("one", "1");
+		cache.put("two", "2");
+		cache.remove("one");
+
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while ((objectUnderTest.getTotalBytes() != 100L) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(20L);
+		}
+		assertEquals("Removing an entry should have reduced the running total. However, it didn't.", 100L,
+				objectUnderTest.getTotalBytes());
+	}
+
+	@Test
+	public final void installInShouldReturnAlreadyInstalledInstance() {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		final ByteBudgetEviction first = ByteBudgetEviction.installIn(cache, 1000L, HUNDRED_BYTES_PER_ENTRY);
+
+		assertSame("installIn() should have returned the already installed ByteBudgetEviction. However, it didn't.",
+				first, ByteBudgetEviction.installIn(cache, 2000L, HUNDRED_BYTES_PER_ENTRY));
+	}
+
+	@Test
+	public final void installInCachesStartedByShouldOnlyAffectListedCaches() throws Exception {
+		ByteBudgetEviction.installInCachesStartedBy(this.nativeCacheManager,
+				Collections.singletonMap(CACHE_NAME, Long.valueOf(500L)), HUNDRED_BYTES_PER_ENTRY);
+		final Cache<Object, Object> bounded = this.nativeCacheManager.getCache(CACHE_NAME);
+		final Cache<Object, Object> unbounded = this.nativeCacheManager.getCache("unboundedTestCache");
+
+		for (int i = 0; i < 20; i++) {
+			bounded.put("key" + i, "value" + i);
+			unbounded.put("key" + i, "value" + i);
+		}
+
+		awaitSizeAtMost(bounded, 5);
+		assertTrue("A listed cache should have been kept within its byte budget. However, it wasn't: "
+				+ bounded.size(), bounded.size() <= 5);
+		assertEquals("A cache not listed should not have been bounded. However, it was.", 20, unbounded.size());
+	}
+
+	@Test
+	public final void marshalledEntrySizerShouldGrowWithValueSize() {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		final MarshalledEntrySizer objectUnderTest = MarshalledEntrySizer.forCache(cache);
+
+		final long small = objectUnderTest.sizeOf("key", new byte[10]);
+		final long large = objectUnderTest.sizeOf("key", new byte[10000]);
+
+		assertTrue("MarshalledEntrySizer should have estimated a larger value to be larger. However, it didn't: ["
+				+ small + "] vs. [" + large + "]", large - small >= 9990L);
+	}
+
+	private static void awaitSizeAtMost(final Cache<Object, Object> cache, final int size) throws InterruptedException {
+		// Eviction happens asynchronously
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while ((cache.size() > size) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(20L);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link HierarchicalTimingWheel}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class HierarchicalTimingWheelTest {
+
+	private static final long TICK_MILLIS = 100L;
+
+	@Test
+	public final void keyShouldBecomeDueNeitherEarlyNorLaterThanOneTick() {
+		final Random random = new Random(7L);
+		final HierarchicalTimingWheel<Integer> objectUnderTest = new HierarchicalTimingWheel<Integer>(TICK_MILLIS, 0L);
+		final Map<Integer, Long> deadlines = new HashMap<Integer, Long>();
+		for (int i = 0; i < 5000; i++) {
+			// Spread deadlines across all four wheels
+			final long deadline = (long) Math.pow(10, 1 + random.nextDouble() * 8);
+			deadlines.put(Integer.valueOf(i), Long.valueOf(deadline));
+			objectUnderTest.schedule(Integer.valueOf(i), deadline);
+		}
+
+		long now = 0L;
+		while (!deadlines.isEmpty() && (now < 200000000L)) {
+			now += TICK_MILLIS * (1 + random.nextInt(100));
+			for (final Integer key : objectUnderTest.advance(now)) {
+				final long deadline = deadlines.remove(key).longValue();
+				assertTrue("Key [" + key + "] should not have become due before its deadline. However, it did.",
+						deadline <= now);
+			}
+		}
+
+		assertTrue("All keys should have become due. However, [" + deadlines.size() + "] didn't.",
+				deadlines.isEmpty());
+	}
+
+	@Test
+	public final void keyShouldBecomeDueWithinOneTickOfItsDeadline() {
+		final HierarchicalTimingWheel<String> objectUnderTest = new HierarchicalTimingWheel<String>(TICK_MILLIS, 0L);
+		objectUnderTest.schedule("key", 1234567L);
+
+		assertTrue("Key should not have become due before its deadline. However, it did.",
+				objectUnderTest.advance(1234500L).isEmpty());
+		final List<String> due = objectUnderTest.advance(1234600L);
+		assertEquals("Key should have become due within one tick of its deadline. However, it didn't.", 1,
+				due.size());
+	}
+
+	@Test
+	public final void cancelledKeyShouldNeverBecomeDue() {
+		final HierarchicalTimingWheel<String> objectUnderTest = new HierarchicalTimingWheel<String>(TICK_MILLIS, 0L);
+		objectUnderTest.schedule("key", 500L);
+
+		objectUnderTest.cancel("key");
+
+		assertTrue("A cancelled key should never have become due. However, it did.",
+				objectUnderTest.advance(10000L).isEmpty());
+		assertEquals("A cancelled key should no longer be scheduled. However, it is.", 0, objectUnderTest.size());
+	}
+
+	@Test
+	public final void reschedulingShouldReplacePreviousDeadline() {
+		final HierarchicalTimingWheel<String> objectUnderTest = new HierarchicalTimingWheel<String>(TICK_MILLIS, 0L);
+		objectUnderTest.schedule("key", 500L);
+
+		objectUnderTest.schedule("key", 50000L);
+
+		assertTrue("A rescheduled key should not have become due at its previous deadline. However, it did.",
+				objectUnderTest.advance(1000L).isEmpty());
+		assertEquals("A rescheduled key should have become due at its new deadline. However, it didn't.", 1,
+				objectUnderTest.advance(50000L).size());
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.Cache;
+import org.infinispan.container.DataContainer;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link TimingWheelExpirationReaper}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class TimingWheelExpirationReaperTest {
+
+	private DefaultCacheManager nativeCacheManager;
+
+	private Cache<Object, Object> cache;
+
+	@Before
+	public void setUp() {
+		this.nativeCacheManager = new DefaultCacheManager();
+		this.cache = this.nativeCacheManager.getCache("timingWheelTestCache");
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+	}
+
+	@Test
+	public final void expiredEntriesShouldBePurgedWithoutBeingRead() throws Exception {
+		final TimingWheelExpirationReaper objectUnderTest = TimingWheelExpirationReaper.installIn(this.cache);
+		final DataContainer dataContainer = this.cache.getAdvancedCache().getDataContainer();
+
+		for (int i = 0; i < 100; i++) {
+			this.cache.put("key" + i, "value" + i, 200L, TimeUnit.MILLISECONDS);
+		}
+		this.cache.put("immortal", "value");
+
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while ((dataContainer.size() > 1) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(50L);
+		}
+		assertEquals("TimingWheelExpirationReaper should have purged all expired entries. However, it didn't.", 1,
+				dataContainer.size());
+		assertNotNull("TimingWheelExpirationReaper should not have purged an immortal entry. However, it did.",
+				dataContainer.peek("immortal"));
+		assertEquals("TimingWheelExpirationReaper should have counted all purged entries. However, it didn't.", 100L,
+				objectUnderTest.getReapedEntries());
+	}
+
+	@Test
+	public final void entriesStillInUseShouldBeRescheduledInsteadOfPurged() throws Exception {
+		final TimingWheelExpirationReaper objectUnderTest = TimingWheelExpirationReaper.installIn(this.cache);
+		this.cache.put("key", "value", -1L, TimeUnit.MILLISECONDS, 10L, TimeUnit.SECONDS);
+		// Listener callbacks are asynchronous
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while ((objectUnderTest.getScheduledEntries() == 0) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(20L);
+		}
+
+		// Pretend the wheel has reached the entry's max idle deadline while the entry itself is still alive
+
+		final int reaped = objectUnderTest.reapDueEntries(System.currentTimeMillis() + 11000L);
+
+		assertEquals("An entry whose max idle time has not elapsed should not have been purged. However, it was.", 0,
+				reaped);
+		assertEquals("An entry whose max idle time has not elapsed should have been rescheduled. However, it wasn't.",
+				1, objectUnderTest.getScheduledEntries());
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.infinispan.Cache;
+import org.infinispan.config.Configuration;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link WindowTinyLfuEviction}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class WindowTinyLfuEvictionTest {
+
+	private static final int CAPACITY = 10;
+
+	private DefaultCacheManager nativeCacheManager;
+
+	@After
+	public void tearDown() {
+		if (this.nativeCacheManager != null) {
+			this.nativeCacheManager.stop();
+		}
+	}
+
+	@Test
+	public final void isSelectedByShouldAcceptCommonSpellingsOfWTinyLfu() {
+		assertTrue("isSelectedBy() should have accepted [W_TINYLFU]. However, it didn't.",
+				WindowTinyLfuEviction.isSelectedBy("W_TINYLFU"));
+		assertTrue("isSelectedBy() should have accepted [w-tinylfu]. However, it didn't.",
+				WindowTinyLfuEviction.isSelectedBy("w-tinylfu"));
+		assertFalse("isSelectedBy() should have rejected [LIRS]. However, it didn't.",
+				WindowTinyLfuEviction.isSelectedBy("LIRS"));
+	}
+
+	@Test
+	public final void prepareShouldTurnOffInfinispansOwnEviction() {
+		final Configuration configuration = new Configuration();
+		configuration.setEvictionStrategy(EvictionStrategy.LRU);
+
+		WindowTinyLfuEviction.prepare(configuration);
+
+		assertEquals("prepare() should have turned off INFINISPAN's own eviction. However, it didn't.",
+				EvictionStrategy.NONE, configuration.getEvictionStrategy());
+	}
+
+	@Test
+	public final void installedEvictionShouldBoundCacheSize() throws Exception {
+		final Cache<Object, Object> cache = startPreparedCache();
+
+		for (int i = 0; i < 20 * CAPACITY; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+
+		// Eviction happens asynchronously
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while ((cache.size() > CAPACITY) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(20L);
+		}
+		assertTrue("W-TinyLFU eviction should have bounded the cache's size to its capacity. However, it didn't: "
+				+ cache.size(), cache.size() <= CAPACITY);
+	}
+
+	@Test
+	public final void installInShouldBeIdempotent() throws Exception {
+		final Cache<Object, Object> cache = startPreparedCache();
+		final int listenersBefore = cache.getListeners().size();
+
+		assertTrue("installIn() should have reported W-TinyLFU eviction as active. However, it didn't.",
+				WindowTinyLfuEviction.installIn(cache));
+		assertEquals("installIn() should not have installed a second listener. However, it did.", listenersBefore,
+				cache.getListeners().size());
+	}
+
+	@Test
+	public final void installInCachesStartedByShouldLeaveExplicitlyConfiguredCachesAlone() {
+		final Configuration defaultConfiguration = new Configuration();
+		defaultConfiguration.setEvictionMaxEntries(CAPACITY);
+		WindowTinyLfuEviction.prepare(defaultConfiguration);
+		this.nativeCacheManager = new DefaultCacheManager(defaultConfiguration);
+		final Configuration explicitConfiguration = new Configuration();
+		explicitConfiguration.setEvictionStrategy(EvictionStrategy.NONE);
+		explicitConfiguration.setEvictionMaxEntries(CAPACITY);
+		this.nativeCacheManager.defineConfiguration("explicitlyConfigured", explicitConfiguration);
+		WindowTinyLfuEviction.installInCachesStartedBy(this.nativeCacheManager,
+				Collections.singleton("explicitlyConfigured"));
+
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache("explicitlyConfigured");
+
+		for (final Object listener : cache.getListeners()) {
+			assertFalse("W-TinyLFU eviction should not have been installed in an explicitly configured cache. "
+					+ "However, it was.", listener instanceof WindowTinyLfuEviction.EvictionListener);
+		}
+	}
+
+	private Cache<Object, Object> startPreparedCache() {
+		final Configuration defaultConfiguration = new Configuration();
+		defaultConfiguration.setEvictionMaxEntries(CAPACITY);
+		WindowTinyLfuEviction.prepare(defaultConfiguration);
+		this.nativeCacheManager = new DefaultCacheManager(defaultConfiguration);
+		WindowTinyLfuEviction.installInCachesStartedBy(this.nativeCacheManager, Collections.<String> emptySet());
+		return this.nativeCacheManager.getCache("wTinyLfuTestCache");
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.eviction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.infinispan.util.concurrent.BoundedConcurrentHashMap;
+import org.infinispan.util.concurrent.BoundedConcurrentHashMap.Eviction;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link WindowTinyLfuPolicy}, including a trace-driven hit ratio comparison against INFINISPAN's LRU and
+ * LIRS.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class WindowTinyLfuPolicyTest {
+
+	private static final int CAPACITY = 1000;
+
+	private static final int TRACE_LENGTH = 200000;
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	@Test
+	public final void policyShouldNeverRetainMoreKeysThanItsCapacity() {
+		final WindowTinyLfuPolicy<Integer> objectUnderTest = new WindowTinyLfuPolicy<Integer>(100);
+
+		final int[] trace = skewedTraceWithScans(new Random(1L), 20000);
+		simulateWindowTinyLfu(objectUnderTest, trace);
+
+		assertEquals("WindowTinyLfuPolicy should have retained exactly as many keys as its capacity. However, it "
+				+ "didn't.", 100, objectUnderTest.size());
+	}
+
+	@Test
+	public final void frequentlyAccessedKeyShouldSurviveAScan() {
+		final WindowTinyLfuPolicy<Integer> objectUnderTest = new WindowTinyLfuPolicy<Integer>(100);
+		final Set<Integer> cached = new HashSet<Integer>();
+		admit(objectUnderTest, cached, Integer.valueOf(-1));
+		for (int i = 0; i < 10; i++) {
+			objectUnderTest.recordAccess(Integer.valueOf(-1));
+		}
+
+		// A scan ten times the capacity, yet too short for the sketch to age the key's frequency away
+		for (int i = 0; i < 1000; i++) {
+			admit(objectUnderTest, cached, Integer.valueOf(i));
+		}
+
+		assertTrue("A frequently accessed key should have survived a scan of one-off keys. However, it didn't.",
+				objectUnderTest.contains(Integer.valueOf(-1)));
+	}
+
+	@Test
+	public final void windowTinyLfuShouldBeatLruAndMatchLirsOnASkewedScanHeavyTrace() {
+		final int[] trace = skewedTraceWithScans(new Random(42L), TRACE_LENGTH);
+
+		final double windowTinyLfu = simulateWindowTinyLfu(new WindowTinyLfuPolicy<Integer>(CAPACITY), trace);
+		final double lru = simulateBoundedMap(Eviction.LRU, trace);
+		final double lirs = simulateBoundedMap(Eviction.LIRS, trace);
+		this.logger.info("Hit ratios on skewed trace with scans: W-TinyLFU [" + windowTinyLfu + "], LRU [" + lru
+				+ "], LIRS [" + lirs + "]");
+
+		assertTrue("W-TinyLFU should have achieved a higher hit ratio than LRU. However, it didn't: [" + windowTinyLfu
+				+ "] vs. [" + lru + "]", windowTinyLfu > lru);
+		assertTrue("W-TinyLFU should have achieved a hit ratio at least on par with LIRS. However, it didn't: ["
+				+ windowTinyLfu + "] vs. [" + lirs + "]", windowTinyLfu + 0.01 >= lirs);
+	}
+
+	/**
+	 * Zipf(0.9) distributed accesses to 20000 keys, interrupted every 10000 accesses by a scan of 2000 keys
+	 * that are never accessed again.
+	 */
+	private static int[] skewedTraceWithScans(final Random random, final int length) {
+		final int keys = 20000;
+		final double[] cumulative = new double[keys];
+		double sum = 0.0;
+		for (int i = 0; i < keys; i++) {
+			sum += 1.0 / Math.pow(i + 1, 0.9);
+			cumulative[i] = sum;
+		}
+		final int[] trace = new int[length];
+		int scanKey = keys;
+		for (int i = 0; i < length; i++) {
+			if (i % 10000 < 2000) {
+				trace[i] = scanKey++;
+			} else {
+				final int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+				trace[i] = index >= 0 ? index : -index - 1;
+			}
+		}
+		return trace;
+	}
+
+	private static double simulateWindowTinyLfu(final WindowTinyLfuPolicy<Integer> policy, final int[] trace) {
+		final Set<Integer> cached = new HashSet<Integer>();
+		int hits = 0;
+		for (final int key : trace) {
+			final Integer boxed = Integer.valueOf(key);
+			if (cached.contains(boxed)) {
+				hits++;
+				policy.recordAccess(boxed);
+			} else {
+				admit(policy, cached, boxed);
+			}
+		}
+		return (double) hits / trace.length;
+	}
+
+	private static void admit(final WindowTinyLfuPolicy<Integer> policy, final Set<Integer> cached, final Integer key) {
+		cached.add(key);
+		for (final Integer victim : policy.recordInsertion(key)) {
+			cached.remove(victim);
+			policy.recordRemoval(victim);
+		}
+	}
+
+	private static double simulateBoundedMap(final Eviction eviction, final int[] trace) {
+		final BoundedConcurrentHashMap<Integer, Integer> cache = new BoundedConcurrentHashMap<Integer, Integer>(
+				CAPACITY, 1, eviction);
+		int hits = 0;
+		for (final int key : trace) {
+			final Integer boxed = Integer.valueOf(key);
+			if (cache.get(boxed) != null) {
+				hits++;
+			} else {
+				cache.put(boxed, boxed);
+			}
+		}
+		return (double) hits / trace.length;
+	}
+}
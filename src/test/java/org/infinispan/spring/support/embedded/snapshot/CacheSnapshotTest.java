@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link CacheSnapshot}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class CacheSnapshotTest {
+
+	private static final String CACHE_NAME = "snapshotTestCache";
+
+	private File directory;
+
+	private DefaultCacheManager nativeCacheManager;
+
+	@Before
+	public void setUp() throws Exception {
+		this.directory = File.createTempFile("cache-snapshot", "");
+		this.directory.delete();
+		this.nativeCacheManager = new DefaultCacheManager();
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+		final File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		this.directory.delete();
+	}
+
+	@Test
+	public final void restoreShouldReloadAllSavedEntries() throws Exception {
+		final CacheSnapshot objectUnderTest = new CacheSnapshot(this.directory);
+		objectUnderTest.setParts(4);
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+
+		assertEquals("save() should have saved all entries. However, it didn't.", 1000, objectUnderTest.save(cache));
+		final Cache<Object, Object> restartedCache = restart();
+
+		assertEquals("restore() should have restored all entries. However, it didn't.", 1000, objectUnderTest
+				.restore(restartedCache));
+		assertEquals("restore() should have restored each entry's value. However, it didn't.", "value999",
+				restartedCache.get("key999"));
+	}
+
+	@Test
+	public final void restoreShouldHonorRemainingLifespans() throws Exception {
+		final CacheSnapshot objectUnderTest = new CacheSnapshot(this.directory);
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		cache.put("shortLived", "value", 200L, TimeUnit.MILLISECONDS);
+		cache.put("longLived", "value", 1L, TimeUnit.HOURS);
+		objectUnderTest.save(cache);
+		Thread.sleep(300L);
+
+		final Cache<Object, Object> restartedCache = restart();
+		objectUnderTest.restore(restartedCache);
+
+		assertNull("restore() should have skipped an entry whose lifespan has run out. However, it didn't.",
+				restartedCache.get("shortLived"));
+		final long remainingLifespan = restartedCache.getAdvancedCache().getDataContainer().get("longLived")
+				.getLifespan();
+		assertTrue("restore() should have restored an entry with its remaining lifespan. However, it didn't: "
+				+ remainingLifespan, (remainingLifespan > 0L) && (remainingLifespan <= TimeUnit.HOURS.toMillis(1)));
+	}
+
+	@Test
+	public final void restoreShouldDeleteRestoredSnapshot() throws Exception {
+		final CacheSnapshot objectUnderTest = new CacheSnapshot(this.directory);
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		cache.put("key", "value");
+		objectUnderTest.save(cache);
+
+		objectUnderTest.restore(restart());
+
+		assertEquals("restore() should have deleted the restored snapshot. However, it didn't.", 0, this.directory
+				.listFiles().length);
+	}
+
+	@Test
+	public final void snapshotsOfCachesWithSimilarNamesShouldNotOverwriteEachOther() throws Exception {
+		final CacheSnapshot objectUnderTest = new CacheSnapshot(this.directory);
+		final String[] cacheNames = new String[] { "a.b", "a_b", "A_b" };
+		for (final String cacheName : cacheNames) {
+			this.nativeCacheManager.<Object, Object> getCache(cacheName).put("key", cacheName);
+			objectUnderTest.save(this.nativeCacheManager.getCache(cacheName));
+		}
+
+		restart();
+
+		for (final String cacheName : cacheNames) {
+			final Cache<Object, Object> restartedCache = this.nativeCacheManager.getCache(cacheName);
+			objectUnderTest.restore(restartedCache);
+			assertEquals("restore() should have restored cache [" + cacheName + "] from its own snapshot. However, "
+					+ "it didn't.", cacheName, restartedCache.get("key"));
+		}
+	}
+
+	private Cache<Object, Object> restart() {
+		this.nativeCacheManager.stop();
+		this.nativeCacheManager = new DefaultCacheManager();
+		return this.nativeCacheManager.getCache(CACHE_NAME);
+	}
+}
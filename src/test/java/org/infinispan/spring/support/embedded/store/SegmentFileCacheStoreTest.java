@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.Cache;
+import org.infinispan.config.CacheLoaderManagerConfig;
+import org.infinispan.config.Configuration;
+import org.infinispan.loaders.CacheLoaderManager;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.spring.support.embedded.store.SegmentFileCacheStoreConfig.SyncPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link SegmentFileCacheStore}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class SegmentFileCacheStoreTest {
+
+	private static final String CACHE_NAME = "segmentFileTestCache";
+
+	private File location;
+
+	private DefaultCacheManager nativeCacheManager;
+
+	@Before
+	public void setUp() throws Exception {
+		this.location = File.createTempFile("segment-file-store", "");
+		this.location.delete();
+		this.location.mkdirs();
+		this.nativeCacheManager = startCacheManager();
+	}
+
+	@After
+	public void tearDown() {
+		if (this.nativeCacheManager != null) {
+			this.nativeCacheManager.stop();
+		}
+		delete(this.location);
+	}
+
+	@Test
+	public final void loadShouldReturnStoredEntry() throws Exception {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		final SegmentFileCacheStore objectUnderTest = storeOf(cache);
+		cache.put("key", "value");
+
+		assertEquals("load() should have returned the stored entry's value. However, it didn't.", "value",
+				objectUnderTest.load("key").getValue());
+	}
+
+	@Test
+	public final void loadShouldReturnNullForRemovedEntry() throws Exception {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		final SegmentFileCacheStore objectUnderTest = storeOf(cache);
+		cache.put("key", "value");
+		cache.remove("key");
+
+		assertNull("load() should have returned null for a removed entry. However, it didn't.",
+				objectUnderTest.load("key"));
+	}
+
+	@Test
+	public final void entriesShouldSurviveRestart() throws Exception {
+		Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		for (int i = 0; i < 100; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+		cache.put("key0", "overwritten");
+		cache.remove("key1");
+		this.nativeCacheManager.stop();
+
+		this.nativeCacheManager = startCacheManager();
+		cache = this.nativeCacheManager.getCache(CACHE_NAME);
+
+		assertEquals("A restarted cache should have seen the latest value written. However, it didn't.",
+				"overwritten", cache.get("key0"));
+		assertNull("A restarted cache should not have seen a removed entry. However, it did.", cache.get("key1"));
+		assertEquals("A restarted cache should have seen all entries written. However, it didn't.", "value99",
+				cache.get("key99"));
+		assertEquals("A restarted store should have indexed all live keys. However, it didn't.", 99,
+				storeOf(cache).loadAllKeys(null).size());
+	}
+
+	@Test
+	public final void compactShouldDropSegmentsHoldingOnlyDeadRecords() throws Exception {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		final SegmentFileCacheStore objectUnderTest = storeOf(cache);
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < 10; i++) {
+				cache.put("key" + i, "value" + round + "-" + i);
+			}
+		}
+		final int segmentsBefore = objectUnderTest.getSegmentCount();
+
+		objectUnderTest.compact();
+
+		assertTrue("compact() should have dropped segments holding only dead records. However, it didn't: ["
+				+ segmentsBefore + "] vs. [" + objectUnderTest.getSegmentCount() + "]",
+				objectUnderTest.getSegmentCount() < segmentsBefore);
+		for (int i = 0; i < 10; i++) {
+			assertEquals("compact() should have preserved all live entries. However, it didn't.", "value19-" + i,
+					objectUnderTest.load("key" + i).getValue());
+		}
+	}
+
+	@Test
+	public final void purgedEntryShouldNotBeResurrectedByOlderPutOnRestart() throws Exception {
+		Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		final SegmentFileCacheStore objectUnderTest = storeOf(cache);
+		cache.put("key", "old");
+		// Keep the segment holding the old put mostly live so that it is not compacted
+		for (int i = 0; i < 30; i++) {
+			cache.put("live" + i, padding(300) + i);
+		}
+		churn(cache, 20);
+		cache.put("key", "new", 100L, TimeUnit.MILLISECONDS);
+		churn(cache, 20);
+		Thread.sleep(300L);
+
+		objectUnderTest.purgeInternal();
+		this.nativeCacheManager.stop();
+		this.nativeCacheManager = startCacheManager();
+		cache = this.nativeCacheManager.getCache(CACHE_NAME);
+
+		assertNull("A restarted cache should not have brought a purged entry back to life. However, it did.",
+				cache.get("key"));
+		assertEquals("A restarted cache should still have seen all live entries. However, it didn't.", padding(300)
+				+ 29, cache.get("live29"));
+	}
+
+	@Test
+	public final void recordsOfZeroedSegmentFileShouldNotSurviveRestart() throws Exception {
+		final Cache<Object, Object> cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		for (int i = 0; i < 10; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+		this.nativeCacheManager.stop();
+		// What deleteSegment() leaves behind if a segment file cannot be deleted
+		for (final File segmentFile : segmentFilesIn(this.location)) {
+			SegmentFileCacheStore.zero(segmentFile);
+		}
+
+		this.nativeCacheManager = startCacheManager();
+
+		assertTrue("A restarted store should not have found any record in a zeroed segment file. However, it did.",
+				storeOf(this.nativeCacheManager.getCache(CACHE_NAME)).loadAllKeys(null).isEmpty());
+	}
+
+	private static List<File> segmentFilesIn(final File directory) {
+		final List<File> segmentFiles = new ArrayList<File>();
+		for (final File file : directory.listFiles()) {
+			if (file.isDirectory()) {
+				segmentFiles.addAll(segmentFilesIn(file));
+			} else if (file.getName().startsWith("segment-")) {
+				segmentFiles.add(file);
+			}
+		}
+		return segmentFiles;
+	}
+
+	private static void churn(final Cache<Object, Object> cache, final int count) {
+		for (int i = 0; i < count; i++) {
+			cache.put("churn", padding(400) + i);
+		}
+	}
+
+	private static String padding(final int length) {
+		final StringBuilder padding = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			padding.append('x');
+		}
+		return padding.toString();
+	}
+
+	private DefaultCacheManager startCacheManager() {
+		final SegmentFileCacheStoreConfig storeConfig = new SegmentFileCacheStoreConfig();
+		storeConfig.setLocation(this.location.getAbsolutePath());
+		storeConfig.setSegmentSize(4096);
+		storeConfig.setSyncPolicy(SyncPolicy.NEVER);
+		final CacheLoaderManagerConfig loaderManagerConfig = new CacheLoaderManagerConfig();
+		loaderManagerConfig.addCacheLoaderConfig(storeConfig);
+		final Configuration configuration = new Configuration();
+		configuration.setCacheLoaderManagerConfig(loaderManagerConfig);
+
+		return new DefaultCacheManager(configuration);
+	}
+
+	private static SegmentFileCacheStore storeOf(final Cache<?, ?> cache) {
+		return (SegmentFileCacheStore) cache.getAdvancedCache().getComponentRegistry()
+				.getComponent(CacheLoaderManager.class).getCacheStore();
+	}
+
+	private static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
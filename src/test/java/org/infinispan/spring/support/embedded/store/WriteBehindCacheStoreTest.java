@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2010.
+ * Olaf Bergner.
+ * Hamburg, Germany. olaf.bergner@gmx.de
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.infinispan.spring.support.embedded.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.infinispan.Cache;
+import org.infinispan.config.CacheLoaderManagerConfig;
+import org.infinispan.config.Configuration;
+import org.infinispan.loaders.CacheLoaderManager;
+import org.infinispan.loaders.CacheStore;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>
+ * Test {@link WriteBehindCacheStore}.
+ * </p>
+ *
+ * @author <a href="mailto:olaf.bergner@gmx.de">Olaf Bergner</a>
+ *
+ */
+public class WriteBehindCacheStoreTest {
+
+	private static final String CACHE_NAME = "writeBehindTestCache";
+
+	private File location;
+
+	private DefaultCacheManager nativeCacheManager;
+
+	private Cache<Object, Object> cache;
+
+	private WriteBehindCacheStore objectUnderTest;
+
+	@Before
+	public void setUp() throws Exception {
+		this.location = File.createTempFile("write-behind-store", "");
+		this.location.delete();
+		this.location.mkdirs();
+
+		final SegmentFileCacheStoreConfig delegateConfig = new SegmentFileCacheStoreConfig();
+		delegateConfig.setLocation(this.location.getAbsolutePath());
+		final WriteBehindCacheStoreConfig storeConfig = new WriteBehindCacheStoreConfig(delegateConfig);
+		storeConfig.setBatchSize(100);
+		// Long enough for the background thread never to flush on its own during a test
+		storeConfig.setFlushInterval(60000L);
+		final CacheLoaderManagerConfig loaderManagerConfig = new CacheLoaderManagerConfig();
+		loaderManagerConfig.addCacheLoaderConfig(storeConfig);
+		final Configuration configuration = new Configuration();
+		configuration.setCacheLoaderManagerConfig(loaderManagerConfig);
+
+		this.nativeCacheManager = new DefaultCacheManager(configuration);
+		this.cache = this.nativeCacheManager.getCache(CACHE_NAME);
+		this.objectUnderTest = (WriteBehindCacheStore) this.cache.getAdvancedCache().getComponentRegistry()
+				.getComponent(CacheLoaderManager.class).getCacheStore();
+	}
+
+	@After
+	public void tearDown() {
+		this.nativeCacheManager.stop();
+		delete(this.location);
+	}
+
+	@Test
+	public final void repeatedWritesToSameKeyShouldBeCoalesced() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			this.cache.put("key", "value" + i);
+		}
+
+		assertEquals("WriteBehindCacheStore should have queued only the latest write. However, it didn't.", 1,
+				this.objectUnderTest.getQueueDepth());
+		assertEquals("WriteBehindCacheStore should have coalesced superseded writes. However, it didn't.", 9L,
+				this.objectUnderTest.getCoalescedWrites());
+	}
+
+	@Test
+	public final void loadShouldSeeQueuedWritesBeforeTheyAreFlushed() throws Exception {
+		this.cache.put("key", "value");
+
+		assertNull("The decorated store should not have seen a queued write. However, it did.", delegate().load(
+				"key"));
+		assertEquals("load() should have returned the queued value. However, it didn't.", "value",
+				this.objectUnderTest.load("key").getValue());
+	}
+
+	@Test
+	public final void loadShouldSeeQueuedRemovalsBeforeTheyAreFlushed() throws Exception {
+		this.cache.put("key", "value");
+		this.objectUnderTest.flush();
+		this.cache.remove("key");
+
+		assertNull("load() should have seen the queued removal. However, it didn't.", this.objectUnderTest
+				.load("key"));
+	}
+
+	@Test
+	public final void flushShouldWriteQueuedModificationsInBatches() throws Exception {
+		for (int i = 0; i < 250; i++) {
+			this.cache.put("key" + i, "value" + i);
+		}
+
+		this.objectUnderTest.flush();
+
+		assertTrue("flush() should have written 250 modifications in batches of at most 100. However, it didn't: "
+				+ this.objectUnderTest.getFlushedBatches(), this.objectUnderTest.getFlushedBatches() >= 3);
+		assertEquals("flush() should have written all queued modifications to the decorated store. However, it didn't.",
+				250, delegate().loadAllKeys(null).size());
+	}
+
+	private CacheStore delegate() {
+		return this.objectUnderTest.getDelegate();
+	}
+
+	private static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}